@@ -0,0 +1,179 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.authzforce.core.pdp.api.DecisionRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.api.DecisionResultPostprocessor;
+import org.ow2.authzforce.core.pdp.api.XmlUtils;
+import org.ow2.authzforce.core.pdp.api.io.PdpEngineInoutAdapter;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.io.PdpEngineAdapters;
+import org.ow2.authzforce.core.pdp.io.xacml.json.BaseXacmlJsonResultPostprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.IndividualXacmlJsonRequest;
+import org.ow2.authzforce.core.pdp.io.xacml.json.SingleDecisionXacmlJsonRequestPreprocessor;
+import org.ow2.authzforce.xacml.Xacml3JaxbHelper;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Request;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Response;
+
+/**
+ * End-to-end benchmarks of the XACML/XML and XACML/JSON {@link PdpEngineInoutAdapter}s, from serialized request to serialized response, on synthetic policies (see {@link SyntheticPolicies}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PdpEngineAdaptersBenchmark
+{
+	private static final long RANDOM_SEED = 0x5eed;
+
+	private static final int REQUEST_COUNT = 256;
+
+	/**
+	 * Number of Policies in the root PolicySet
+	 */
+	@Param({ "10", "1000" })
+	public int policyCount;
+
+	private Path tmpDirectory;
+	private PdpEngineInoutAdapter<Request, Response> xmlPdpEngine;
+	private PdpEngineInoutAdapter<JSONObject, JSONObject> jsonPdpEngine;
+	private Unmarshaller xacmlUnmarshaller;
+	private Marshaller xacmlMarshaller;
+	private byte[][] xmlRequests;
+	private String[] jsonRequests;
+	private int nextRequestIndex = 0;
+
+	/**
+	 * Creates the policies, PDP engines and requests
+	 *
+	 * @throws IOException
+	 *             error creating the policy files or PDP engines
+	 * @throws JAXBException
+	 *             error creating XACML/XML (un)marshaller
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, JAXBException
+	{
+		tmpDirectory = Files.createTempDirectory("pdp-benchmark-");
+		final Path pdpConfFile = SyntheticPolicies.writeRootPolicyConfiguration(tmpDirectory, policyCount, 1);
+		final PdpEngineConfiguration configuration = PdpEngineConfiguration.getInstance(pdpConfFile.toFile(), null, null);
+		xmlPdpEngine = PdpEngineAdapters.newXacmlJaxbInoutAdapter(configuration);
+
+		final DecisionResultPostprocessor<IndividualXacmlJsonRequest, JSONObject> jsonResultPostproc = new BaseXacmlJsonResultPostprocessor(configuration.getClientRequestErrorVerbosityLevel());
+		final DecisionRequestPreprocessor<JSONObject, IndividualXacmlJsonRequest> jsonReqPreproc = SingleDecisionXacmlJsonRequestPreprocessor.LaxVariantFactory.INSTANCE.getInstance(
+				configuration.getAttributeValueFactoryRegistry(), configuration.isStrictAttributeIssuerMatchEnabled(), configuration.isXpathEnabled(), XmlUtils.SAXON_PROCESSOR,
+				jsonResultPostproc.getFeatures());
+		/*
+		 * The same configuration is used for both adapters, each one creating its own engine from it
+		 */
+		jsonPdpEngine = PdpEngineAdapters.newInoutAdapter(JSONObject.class, JSONObject.class, configuration, jsonReqPreproc, jsonResultPostproc);
+
+		xacmlUnmarshaller = Xacml3JaxbHelper.createXacml3Unmarshaller();
+		xacmlMarshaller = Xacml3JaxbHelper.createXacml3Marshaller();
+
+		final Random random = new Random(RANDOM_SEED);
+		xmlRequests = new byte[REQUEST_COUNT][];
+		jsonRequests = new String[REQUEST_COUNT];
+		for (int i = 0; i < REQUEST_COUNT; i++)
+		{
+			final int policyIndex = random.nextInt(policyCount);
+			xmlRequests[i] = SyntheticPolicies.newXacmlXmlRequest(policyIndex).getBytes(StandardCharsets.UTF_8);
+			jsonRequests[i] = SyntheticPolicies.newXacmlJsonRequest(policyIndex);
+		}
+	}
+
+	/**
+	 * Closes the PDP engines and deletes the policies
+	 *
+	 * @throws IOException
+	 *             error closing the PDP engines or deleting the policy files
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		xmlPdpEngine.close();
+		jsonPdpEngine.close();
+		SyntheticPolicies.delete(tmpDirectory);
+	}
+
+	private int nextRequestIndex()
+	{
+		final int index = nextRequestIndex;
+		nextRequestIndex = (nextRequestIndex + 1) % REQUEST_COUNT;
+		return index;
+	}
+
+	/**
+	 * XACML/XML request parsing, evaluation and response serialization
+	 *
+	 * @return serialized XACML/XML response
+	 * @throws JAXBException
+	 *             error parsing request or serializing response
+	 */
+	@Benchmark
+	public byte[] evaluateXml() throws JAXBException
+	{
+		final Request request = (Request) xacmlUnmarshaller.unmarshal(new ByteArrayInputStream(xmlRequests[nextRequestIndex()]));
+		final Response response = xmlPdpEngine.evaluate(request, null);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		xacmlMarshaller.marshal(response, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * XACML/JSON request parsing, evaluation and response serialization
+	 *
+	 * @return serialized XACML/JSON response
+	 */
+	@Benchmark
+	public String evaluateJson()
+	{
+		final JSONObject request = new JSONObject(jsonRequests[nextRequestIndex()]);
+		return jsonPdpEngine.evaluate(request).toString();
+	}
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+
+/**
+ * Benchmarks of {@link BasePdpEngine#evaluate(DecisionRequest)} (single request) and {@link BasePdpEngine#evaluate(List)} (batch of Individual Decision Requests) on synthetic policies of growing size
+ * and depth (see {@link SyntheticPolicies}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PdpEngineBenchmark
+{
+	/*
+	 * Fixed seed for reproducible request sequences
+	 */
+	private static final long RANDOM_SEED = 0x5eed;
+
+	private static final int REQUEST_COUNT = 1024;
+
+	/**
+	 * Number of Policies in the root PolicySet (in total)
+	 */
+	@Param({ "10", "100", "1000" })
+	public int policyCount;
+
+	/**
+	 * Number of levels of nested PolicySets
+	 */
+	@Param({ "1", "3" })
+	public int depth;
+
+	/**
+	 * Number of Individual Decision Requests per batch
+	 */
+	@Param({ "32" })
+	public int batchSize;
+
+	private Path tmpDirectory;
+	private BasePdpEngine pdpEngine;
+	private DecisionRequest[] requests;
+	private List<List<DecisionRequest>> batches;
+	private int nextRequestIndex = 0;
+	private int nextBatchIndex = 0;
+
+	/**
+	 * Creates the policies and PDP engine
+	 *
+	 * @throws IOException
+	 *             error creating the policy files or PDP engine
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		tmpDirectory = Files.createTempDirectory("pdp-benchmark-");
+		final Path pdpConfFile = SyntheticPolicies.writeRootPolicyConfiguration(tmpDirectory, policyCount, depth);
+		pdpEngine = new BasePdpEngine(PdpEngineConfiguration.getInstance(pdpConfFile.toFile(), null, null));
+
+		final Random random = new Random(RANDOM_SEED);
+		requests = new DecisionRequest[REQUEST_COUNT];
+		for (int i = 0; i < REQUEST_COUNT; i++)
+		{
+			requests[i] = SyntheticPolicies.newDecisionRequest(pdpEngine, random.nextInt(policyCount));
+		}
+
+		batches = new ArrayList<>(REQUEST_COUNT / batchSize);
+		for (int i = 0; i + batchSize <= REQUEST_COUNT; i += batchSize)
+		{
+			final List<DecisionRequest> batch = new ArrayList<>(batchSize);
+			for (int j = i; j < i + batchSize; j++)
+			{
+				batch.add(requests[j]);
+			}
+
+			batches.add(batch);
+		}
+	}
+
+	/**
+	 * Closes the PDP engine and deletes the policies
+	 *
+	 * @throws IOException
+	 *             error closing the PDP engine or deleting the policy files
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		pdpEngine.close();
+		SyntheticPolicies.delete(tmpDirectory);
+	}
+
+	/**
+	 * Evaluates a single Individual Decision Request
+	 *
+	 * @return decision result
+	 */
+	@Benchmark
+	public DecisionResult evaluateSingle()
+	{
+		final DecisionRequest request = requests[nextRequestIndex];
+		nextRequestIndex = (nextRequestIndex + 1) % requests.length;
+		return pdpEngine.evaluate(request);
+	}
+
+	/**
+	 * Evaluates a batch of {@link #batchSize} Individual Decision Requests
+	 *
+	 * @return decision results
+	 * @throws IndeterminateEvaluationException
+	 *             batch evaluation error
+	 */
+	@Benchmark
+	public Collection<Entry<DecisionRequest, ? extends DecisionResult>> evaluateBatch() throws IndeterminateEvaluationException
+	{
+		final List<DecisionRequest> batch = batches.get(nextBatchIndex);
+		nextBatchIndex = (nextBatchIndex + 1) % batches.size();
+		return pdpEngine.evaluate(batch);
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRefPolicyProvider;
+
+/**
+ * Benchmark of PDP initialization with policies loaded (parsed and resolved) by the {@link CoreRefPolicyProvider} (StaticRefPolicyProvider configuration) from one file per Policy, the root PolicySet
+ * referencing all of them (see {@link SyntheticPolicies#writeRefPolicyConfiguration(Path, int, int)}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PolicyLoadingBenchmark
+{
+	/**
+	 * Number of Policy files
+	 */
+	@Param({ "10", "100", "1000" })
+	public int policyCount;
+
+	/**
+	 * Number of threads loading the policies (StaticRefPolicyProvider's loadingParallelism): 1 for sequential loading, 0 for the number of available processors
+	 */
+	@Param({ "1", "0" })
+	public int loadingParallelism;
+
+	private Path tmpDirectory;
+	private File pdpConfFile;
+
+	/**
+	 * Creates the policy files
+	 *
+	 * @throws IOException
+	 *             error creating the policy files
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		tmpDirectory = Files.createTempDirectory("pdp-benchmark-");
+		pdpConfFile = SyntheticPolicies.writeRefPolicyConfiguration(tmpDirectory, policyCount, loadingParallelism).toFile();
+	}
+
+	/**
+	 * Deletes the policy files
+	 *
+	 * @throws IOException
+	 *             error deleting the policy files
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException
+	{
+		SyntheticPolicies.delete(tmpDirectory);
+	}
+
+	/**
+	 * Loads the PDP configuration (policies included) and initializes the PDP engine
+	 *
+	 * @return policies used by the PDP engine
+	 * @throws IOException
+	 *             error loading the policies or closing the PDP engine
+	 */
+	@Benchmark
+	public Iterable<PrimaryPolicyMetadata> loadPolicies() throws IOException
+	{
+		try (final BasePdpEngine pdpEngine = new BasePdpEngine(PdpEngineConfiguration.getInstance(pdpConfFile, null, null)))
+		{
+			return pdpEngine.getApplicablePolicies();
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.ConstantExpression;
+import org.ow2.authzforce.core.pdp.api.expression.ConstantPrimitiveAttributeValueExpression;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.expression.ExpressionFactory;
+import org.ow2.authzforce.core.pdp.api.expression.FunctionExpression;
+import org.ow2.authzforce.core.pdp.api.func.FunctionCall;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.IntegerValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.api.value.Value;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+
+/**
+ * Micro-benchmarks of a few standard functions frequently used in policies, called on constant arguments (no evaluation context)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StandardFunctionBenchmark
+{
+	private static final class BagConstantExpression<BV extends Bag<?>> extends ConstantExpression<BV>
+	{
+		private BagConstantExpression(final Datatype<BV> datatype, final BV v) throws IllegalArgumentException
+		{
+			super(datatype, v);
+		}
+	}
+
+	/**
+	 * Size of the bag argument of the higher-order function
+	 */
+	@Param({ "10", "100" })
+	public int bagSize;
+
+	private FunctionCall<?> stringEqualCall;
+	private FunctionCall<?> integerAddCall;
+	private FunctionCall<?> stringRegexpMatchCall;
+	private FunctionCall<?> anyOfCall;
+
+	private static FunctionCall<?> newCall(final ExpressionFactory expressionFactory, final StandardFunction function, final Datatype<?> subFunctionReturnType, final Expression<?>... args)
+	{
+		final FunctionExpression functionExp = expressionFactory.getFunction(function.getId(), subFunctionReturnType);
+		return functionExp.getValue().get().newCall(Arrays.asList(args));
+	}
+
+	/**
+	 * Creates the function calls
+	 *
+	 * @throws IOException
+	 *             error creating the expression factory
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		final ExpressionFactory expressionFactory = new DepthLimitingExpressionFactory(StandardAttributeValueFactories.getRegistry(true, Optional.empty()),
+				StandardFunction.getRegistry(true, StandardAttributeValueFactories.BIG_INTEGER), null, 0, false, false);
+
+		stringEqualCall = newCall(expressionFactory, StandardFunction.STRING_EQUAL, null, new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, new StringValue("resource-42")),
+				new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, new StringValue("resource-42")));
+		integerAddCall = newCall(expressionFactory, StandardFunction.INTEGER_ADD, null, new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.INTEGER, IntegerValue.valueOf(40)),
+				new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.INTEGER, IntegerValue.valueOf(2)));
+		stringRegexpMatchCall = newCall(expressionFactory, StandardFunction.STRING_REGEXP_MATCH, null,
+				new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, new StringValue("^resource-[0-9]+$")),
+				new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, new StringValue("resource-42")));
+
+		final List<StringValue> bagValues = new ArrayList<>(bagSize);
+		for (int i = 0; i < bagSize; i++)
+		{
+			bagValues.add(new StringValue("role-" + i));
+		}
+
+		/*
+		 * Worst case: the searched value is the last one in the bag
+		 */
+		anyOfCall = newCall(expressionFactory, StandardFunction.ANY_OF, StandardDatatypes.BOOLEAN, expressionFactory.getFunction(StandardFunction.STRING_EQUAL.getId()),
+				new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, new StringValue("role-" + (bagSize - 1))),
+				new BagConstantExpression<>(StandardDatatypes.STRING.getBagDatatype(), Bags.newBag(StandardDatatypes.STRING, bagValues)));
+	}
+
+	/**
+	 * Calls string-equal
+	 *
+	 * @return result
+	 * @throws IndeterminateEvaluationException
+	 *             evaluation error
+	 */
+	@Benchmark
+	public Value stringEqual() throws IndeterminateEvaluationException
+	{
+		return stringEqualCall.evaluate(null);
+	}
+
+	/**
+	 * Calls integer-add
+	 *
+	 * @return result
+	 * @throws IndeterminateEvaluationException
+	 *             evaluation error
+	 */
+	@Benchmark
+	public Value integerAdd() throws IndeterminateEvaluationException
+	{
+		return integerAddCall.evaluate(null);
+	}
+
+	/**
+	 * Calls string-regexp-match
+	 *
+	 * @return result
+	 * @throws IndeterminateEvaluationException
+	 *             evaluation error
+	 */
+	@Benchmark
+	public Value stringRegexpMatch() throws IndeterminateEvaluationException
+	{
+		return stringRegexpMatchCall.evaluate(null);
+	}
+
+	/**
+	 * Calls any-of with string-equal on a bag of {@link #bagSize} values
+	 *
+	 * @return result
+	 * @throws IndeterminateEvaluationException
+	 *             evaluation error
+	 */
+	@Benchmark
+	public Value anyOf() throws IndeterminateEvaluationException
+	{
+		return anyOfCall.evaluate(null);
+	}
+}
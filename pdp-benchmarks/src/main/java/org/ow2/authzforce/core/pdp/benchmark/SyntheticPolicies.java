@@ -0,0 +1,299 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionRequestBuilder;
+import org.ow2.authzforce.core.pdp.api.PdpEngine;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeCategory;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeId;
+
+/**
+ * Generators of synthetic PDP configurations, policies and requests for benchmarks, parameterized by number of policies and depth of PolicySet nesting.
+ * <p>
+ * Each generated Policy #i applies to resource 'resource-i' (string-equal Match on resource-id in the Target) and permits actions 'read' and 'write' to subjects with role 'role-(i % 10)' (Condition
+ * using string-is-in and string-at-least-one-member-of), else denies. PolicySets combine their children with first-applicable.
+ */
+public final class SyntheticPolicies
+{
+	private static final String XACML_NS = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+	private static final String PDP_NS = "http://authzforce.github.io/core/xmlns/pdp/6.0";
+	private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+	private static final String FIRST_APPLICABLE_ALG = "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable";
+	private static final String DENY_UNLESS_PERMIT_ALG = "urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-unless-permit";
+
+	/**
+	 * Subject role attribute ID
+	 */
+	public static final String SUBJECT_ROLE_ATTRIBUTE_ID = "urn:oasis:names:tc:xacml:2.0:subject:role";
+
+	/**
+	 * Number of distinct subject roles used in the policies
+	 */
+	public static final int ROLE_COUNT = 10;
+
+	private static final AttributeFqn SUBJECT_ROLE_FQN = AttributeFqns.newInstance(XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), Optional.empty(), SUBJECT_ROLE_ATTRIBUTE_ID);
+	private static final AttributeFqn RESOURCE_ID_FQN = AttributeFqns.newInstance(XacmlAttributeCategory.XACML_3_0_RESOURCE.value(), Optional.empty(),
+			XacmlAttributeId.XACML_1_0_RESOURCE_ID.value());
+	private static final AttributeFqn ACTION_ID_FQN = AttributeFqns.newInstance(XacmlAttributeCategory.XACML_3_0_ACTION.value(), Optional.empty(), XacmlAttributeId.XACML_1_0_ACTION_ID.value());
+
+	private SyntheticPolicies()
+	{
+		// utility class
+	}
+
+	private static String getResourceId(final int policyIndex)
+	{
+		return "resource-" + policyIndex;
+	}
+
+	private static String getRole(final int policyIndex)
+	{
+		return "role-" + policyIndex % ROLE_COUNT;
+	}
+
+	private static void appendDesignator(final StringBuilder sb, final String category, final String attributeId)
+	{
+		sb.append("<AttributeDesignator Category=\"").append(category).append("\" AttributeId=\"").append(attributeId).append("\" DataType=\"").append(XSD_STRING)
+				.append("\" MustBePresent=\"false\" />");
+	}
+
+	private static void appendStringValue(final StringBuilder sb, final String value)
+	{
+		sb.append("<AttributeValue DataType=\"").append(XSD_STRING).append("\">").append(value).append("</AttributeValue>");
+	}
+
+	private static void appendPolicy(final StringBuilder sb, final int policyIndex, final boolean withXmlns)
+	{
+		sb.append("<Policy ");
+		if (withXmlns)
+		{
+			sb.append("xmlns=\"").append(XACML_NS).append("\" ");
+		}
+
+		sb.append("PolicyId=\"P").append(policyIndex).append("\" Version=\"1.0\" RuleCombiningAlgId=\"").append(DENY_UNLESS_PERMIT_ALG).append("\">");
+		sb.append("<Target><AnyOf><AllOf><Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">");
+		appendStringValue(sb, getResourceId(policyIndex));
+		appendDesignator(sb, XacmlAttributeCategory.XACML_3_0_RESOURCE.value(), XacmlAttributeId.XACML_1_0_RESOURCE_ID.value());
+		sb.append("</Match></AllOf></AnyOf></Target>");
+		sb.append("<Rule RuleId=\"R").append(policyIndex).append("\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:and\">");
+		sb.append("<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">");
+		appendStringValue(sb, getRole(policyIndex));
+		appendDesignator(sb, XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), SUBJECT_ROLE_ATTRIBUTE_ID);
+		sb.append("</Apply><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-at-least-one-member-of\">");
+		appendDesignator(sb, XacmlAttributeCategory.XACML_3_0_ACTION.value(), XacmlAttributeId.XACML_1_0_ACTION_ID.value());
+		sb.append("<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-bag\">");
+		appendStringValue(sb, "read");
+		appendStringValue(sb, "write");
+		sb.append("</Apply></Apply></Apply></Condition></Rule></Policy>");
+	}
+
+	/*
+	 * Appends a PolicySet with 'levels' levels of nested PolicySets, the Policies [firstPolicyIndex, endPolicyIndex) being the children of the deepest PolicySets
+	 */
+	private static void appendPolicySet(final StringBuilder sb, final String policySetId, final int firstPolicyIndex, final int endPolicyIndex, final int levels, final boolean withXmlns)
+	{
+		sb.append("<PolicySet ");
+		if (withXmlns)
+		{
+			sb.append("xmlns=\"").append(XACML_NS).append("\" ");
+		}
+
+		sb.append("PolicySetId=\"").append(policySetId).append("\" Version=\"1.0\" PolicyCombiningAlgId=\"").append(FIRST_APPLICABLE_ALG).append("\"><Target />");
+		final int policyCount = endPolicyIndex - firstPolicyIndex;
+		if (levels <= 1)
+		{
+			for (int i = firstPolicyIndex; i < endPolicyIndex; i++)
+			{
+				appendPolicy(sb, i, false);
+			}
+		}
+		else
+		{
+			/*
+			 * Same fan-out at every level so that the tree is balanced
+			 */
+			final int fanOut = Math.max(1, Math.min(policyCount, (int) Math.ceil(Math.pow(policyCount, 1.0 / levels))));
+			for (int j = 0; j < fanOut; j++)
+			{
+				final int childFirstPolicyIndex = firstPolicyIndex + j * policyCount / fanOut;
+				final int childEndPolicyIndex = firstPolicyIndex + (j + 1) * policyCount / fanOut;
+				appendPolicySet(sb, policySetId + "." + j, childFirstPolicyIndex, childEndPolicyIndex, levels - 1, false);
+			}
+		}
+
+		sb.append("</PolicySet>");
+	}
+
+	private static void write(final Path file, final CharSequence content) throws IOException
+	{
+		Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Generates a PDP configuration with a single root PolicySet file (StaticRootPolicyProvider), the root PolicySet containing {@code policyCount} Policies nested in {@code depth} levels of
+	 * PolicySets
+	 *
+	 * @param directory
+	 *            output directory
+	 * @param policyCount
+	 *            number of Policies
+	 * @param depth
+	 *            number of levels of PolicySets (at least 1, the root PolicySet)
+	 * @return PDP configuration file
+	 * @throws IOException
+	 *             error writing to {@code directory}
+	 */
+	public static Path writeRootPolicyConfiguration(final Path directory, final int policyCount, final int depth) throws IOException
+	{
+		final StringBuilder policySet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+		appendPolicySet(policySet, "root", 0, policyCount, depth, true);
+		write(directory.resolve("policy.xml"), policySet);
+
+		final Path pdpConfFile = directory.resolve("pdp.xml");
+		write(pdpConfFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><pdp xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"" + PDP_NS
+				+ "\" version=\"6.0.0\"><rootPolicyProvider id=\"rootPolicyProvider\" xsi:type=\"StaticRootPolicyProvider\" policyLocation=\"${PARENT_DIR}/policy.xml\" /></pdp>");
+		return pdpConfFile;
+	}
+
+	/**
+	 * Generates a PDP configuration with {@code policyCount} Policy files loaded by the StaticRefPolicyProvider, and a root PolicySet file referencing all of them (PolicyIdReferences)
+	 *
+	 * @param directory
+	 *            output directory
+	 * @param policyCount
+	 *            number of Policies
+	 * @param loadingParallelism
+	 *            loadingParallelism of the StaticRefPolicyProvider (number of threads loading the policies, 0 for the number of available processors)
+	 * @return PDP configuration file
+	 * @throws IOException
+	 *             error writing to {@code directory}
+	 */
+	public static Path writeRefPolicyConfiguration(final Path directory, final int policyCount, final int loadingParallelism) throws IOException
+	{
+		final Path policyDirectory = Files.createDirectories(directory.resolve("policies"));
+		final StringBuilder rootPolicySet = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><PolicySet xmlns=\"").append(XACML_NS)
+				.append("\" PolicySetId=\"root\" Version=\"1.0\" PolicyCombiningAlgId=\"").append(FIRST_APPLICABLE_ALG).append("\"><Target />");
+		for (int i = 0; i < policyCount; i++)
+		{
+			final StringBuilder policy = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			appendPolicy(policy, i, true);
+			write(policyDirectory.resolve("P" + i + ".xml"), policy);
+			rootPolicySet.append("<PolicyIdReference>P").append(i).append("</PolicyIdReference>");
+		}
+
+		rootPolicySet.append("</PolicySet>");
+		write(policyDirectory.resolve("root.xml"), rootPolicySet);
+
+		final Path pdpConfFile = directory.resolve("pdp.xml");
+		write(pdpConfFile, "<?xml version=\"1.0\" encoding=\"UTF-8\"?><pdp xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"" + PDP_NS
+				+ "\" version=\"6.0.0\"><refPolicyProvider id=\"refPolicyProvider\" xsi:type=\"StaticRefPolicyProvider\" loadingParallelism=\"" + loadingParallelism + "\"><policyLocation>file:${PARENT_DIR}/policies/*.xml</policyLocation></refPolicyProvider>"
+				+ "<rootPolicyProvider id=\"rootPolicyProvider\" xsi:type=\"StaticRefBasedRootPolicyProvider\"><policyRef>root</policyRef></rootPolicyProvider></pdp>");
+		return pdpConfFile;
+	}
+
+	/**
+	 * Deletes a directory created for a benchmark, and all its content
+	 *
+	 * @param directory
+	 *            directory to delete
+	 * @throws IOException
+	 *             error deleting the directory
+	 */
+	public static void delete(final Path directory) throws IOException
+	{
+		try (final Stream<Path> paths = Files.walk(directory))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Creates an Individual Decision Request permitted by Policy #{@code policyIndex}
+	 *
+	 * @param pdpEngine
+	 *            PDP engine providing the request builder
+	 * @param policyIndex
+	 *            index of the Policy applicable to the request
+	 * @return request
+	 */
+	public static DecisionRequest newDecisionRequest(final PdpEngine pdpEngine, final int policyIndex)
+	{
+		final DecisionRequestBuilder<?> requestBuilder = pdpEngine.newRequestBuilder(3, 3);
+		requestBuilder.putNamedAttributeIfAbsent(SUBJECT_ROLE_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue(getRole(policyIndex))));
+		requestBuilder.putNamedAttributeIfAbsent(RESOURCE_ID_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue(getResourceId(policyIndex))));
+		requestBuilder.putNamedAttributeIfAbsent(ACTION_ID_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("read")));
+		return requestBuilder.build(false);
+	}
+
+	/**
+	 * Creates a XACML/XML Request permitted by Policy #{@code policyIndex}
+	 *
+	 * @param policyIndex
+	 *            index of the Policy applicable to the request
+	 * @return XACML Request as XML string
+	 */
+	public static String newXacmlXmlRequest(final int policyIndex)
+	{
+		final StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Request xmlns=\"").append(XACML_NS)
+				.append("\" ReturnPolicyIdList=\"false\" CombinedDecision=\"false\">");
+		final String[][] attributes = { { XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value(), SUBJECT_ROLE_ATTRIBUTE_ID, getRole(policyIndex) },
+				{ XacmlAttributeCategory.XACML_3_0_RESOURCE.value(), XacmlAttributeId.XACML_1_0_RESOURCE_ID.value(), getResourceId(policyIndex) },
+				{ XacmlAttributeCategory.XACML_3_0_ACTION.value(), XacmlAttributeId.XACML_1_0_ACTION_ID.value(), "read" } };
+		for (final String[] attribute : attributes)
+		{
+			sb.append("<Attributes Category=\"").append(attribute[0]).append("\"><Attribute AttributeId=\"").append(attribute[1]).append("\" IncludeInResult=\"false\">");
+			appendStringValue(sb, attribute[2]);
+			sb.append("</Attribute></Attributes>");
+		}
+
+		return sb.append("</Request>").toString();
+	}
+
+	/**
+	 * Creates a XACML/JSON Request (JSON Profile of XACML) permitted by Policy #{@code policyIndex}
+	 *
+	 * @param policyIndex
+	 *            index of the Policy applicable to the request
+	 * @return XACML Request as JSON string
+	 */
+	public static String newXacmlJsonRequest(final int policyIndex)
+	{
+		return "{\"Request\":{\"ReturnPolicyIdList\":false,\"CombinedDecision\":false,\"Category\":[" //
+				+ "{\"CategoryId\":\"" + XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value() + "\",\"Attribute\":[{\"AttributeId\":\"" + SUBJECT_ROLE_ATTRIBUTE_ID + "\",\"Value\":\""
+				+ getRole(policyIndex) + "\"}]}," //
+				+ "{\"CategoryId\":\"" + XacmlAttributeCategory.XACML_3_0_RESOURCE.value() + "\",\"Attribute\":[{\"AttributeId\":\"" + XacmlAttributeId.XACML_1_0_RESOURCE_ID.value()
+				+ "\",\"Value\":\"" + getResourceId(policyIndex) + "\"}]}," //
+				+ "{\"CategoryId\":\"" + XacmlAttributeCategory.XACML_3_0_ACTION.value() + "\",\"Attribute\":[{\"AttributeId\":\"" + XacmlAttributeId.XACML_1_0_ACTION_ID.value()
+				+ "\",\"Value\":\"read\"}]}" //
+				+ "]}}";
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.cli;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * {@link Callable} allowing to (re)generate the binary snapshot of the policies referenced in a PDP configuration from the command-line, i.e. the file set by the 'snapshotLocation' attribute of the
+ * StaticRefPolicyProvider in the PDP configuration, so that the PDP does not have to parse the policy documents on the next startup. The snapshot is written only if it is missing or outdated.
+ * <p>
+ * The main class of the executable JAR is {@link PdpCommandLineCallable}. To run this one instead: {@code java -Dloader.main=org.ow2.authzforce.core.pdp.cli.PolicySnapshotCommandLineCallable -jar
+ * <executable JAR> <PDP configuration file>}
+ */
+@Command(name = "authzforce-ce-core-pdp-policy-snapshot", description = "Generates the binary snapshot of the policies referenced in a PDP configuration (StaticRefPolicyProvider's snapshotLocation), if missing or outdated")
+public final class PolicySnapshotCommandLineCallable implements Callable<Void>
+{
+	/*
+	 * WARNING: do not make picocli-annoated fields final here! Known issue: https://github.com/remkop/picocli/issues/68. Planned to be fixed in release 2.1.0.
+	 */
+	@Parameters(index = "0", description = "Path to PDP configuration file, valid against schema located at https://github.com/authzforce/core/blob/release-X.Y.Z/pdp-engine/src/main/resources/pdp.xsd (X.Y.Z is the version provided by -v option)")
+	private File confFile;
+
+	@Option(names = { "-c", "--catalog" }, description = "Path to XML catalog for resolving schemas used in extensions XSD specified by -e option, required only if -e specified")
+	private final String catalogLocation = null;
+
+	@Option(names = { "-e",
+	        "--extensions" }, description = "Path to extensions XSD (contains XSD namespace imports for all extensions used in the PDP configuration), required only if using any extension in the PDP configuration file")
+	private final String extensionXsdLocation = null;
+
+	@Override
+	public Void call() throws Exception
+	{
+		/*
+		 * Loading the PDP configuration loads the policies, and (re)writes the snapshot if necessary
+		 */
+		PdpEngineConfiguration.getInstance(confFile, catalogLocation, extensionXsdLocation);
+		return null;
+	}
+
+	/**
+	 * Method used for the command-line
+	 * 
+	 * @param args
+	 *            CLI args
+	 */
+	public static void main(final String[] args)
+	{
+		CommandLine.call(new PolicySnapshotCommandLineCallable(), System.out, args);
+	}
+
+}
@@ -89,6 +89,16 @@ public final class AllOfEvaluator
 		}
 	}
 
+	/**
+	 * Get the Match evaluators, in order of declaration
+	 * 
+	 * @return Match evaluators
+	 */
+	List<MatchEvaluator> getMatchEvaluators()
+	{
+		return evaluatableMatchList;
+	}
+
 	/**
 	 * Determines whether this <code>AllOf</code> matches the input request
 	 * (whether it is applicable).Here is the table shown in the specification:
@@ -92,6 +92,16 @@ public final class AnyOfEvaluator
 		}
 	}
 
+	/**
+	 * Get the AllOf evaluators, in order of declaration
+	 * 
+	 * @return AllOf evaluators
+	 */
+	List<AllOfEvaluator> getAllOfEvaluators()
+	{
+		return evaluatableAllOfList;
+	}
+
 	/**
 	 * Determines whether this <code>AnyOf</code> matches the input request
 	 * (whether it is applicable). If all the AllOf values is No_Match so it's a
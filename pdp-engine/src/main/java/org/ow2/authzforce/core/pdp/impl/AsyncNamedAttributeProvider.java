@@ -0,0 +1,101 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.NamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
+
+/**
+ * Attribute Provider (module) able to get attribute values asynchronously, e.g. from a remote attribute source (LDAP directory, database, etc.) with a non-blocking client, or with its own thread
+ * pool.
+ * <p>
+ * When asynchronous attribute prefetching is enabled in the PDP configuration, for each attribute used in policies (AttributeDesignator) that is provided by a single attribute provider module
+ * implementing this interface, the PDP calls {@link #getAsync(AttributeFqn, Datatype, EvaluationContext)} for all such attributes missing from the request context at once, i.e. the first time an
+ * attribute provider module is needed during the evaluation of a given request, then waits for all the results before resuming evaluation. Therefore, the fetches are done concurrently instead of one
+ * after the other as AttributeDesignators are evaluated. Else (prefetching disabled), {@link #get(AttributeFqn, Datatype, EvaluationContext)} is called when the attribute is needed, as for any
+ * other {@link NamedAttributeProvider}.
+ * <p>
+ * Note that the {@link EvaluationContext} is not thread-safe: implementations must use the {@code context} argument - including the dependency attribute provider based on it - only in the thread
+ * calling {@link #getAsync(AttributeFqn, Datatype, EvaluationContext)}, before returning the future, never in the task completing the future.
+ */
+public interface AsyncNamedAttributeProvider extends NamedAttributeProvider
+{
+	/**
+	 * Gets the value(s) of a given attribute asynchronously
+	 *
+	 * @param attributeFqn
+	 *            attribute name
+	 * @param datatype
+	 *            attribute datatype
+	 * @param context
+	 *            individual decision request context; to be used only in the calling thread (see above)
+	 * @return future attribute value(s), completed exceptionally with an {@link IndeterminateEvaluationException} if the attribute cannot be resolved
+	 */
+	<AV extends AttributeValue> CompletableFuture<AttributeBag<AV>> getAsync(AttributeFqn attributeFqn, Datatype<AV> datatype, EvaluationContext context);
+
+	/**
+	 * Gets the value(s) of a given attribute synchronously, i.e. waits for {@link #getAsync(AttributeFqn, Datatype, EvaluationContext)} to complete
+	 */
+	@Override
+	default <AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context) throws IndeterminateEvaluationException
+	{
+		return join(getAsync(attributeFqn, datatype, context));
+	}
+
+	/**
+	 * Waits for an attribute value fetch to complete and returns the result, converting any error to {@link IndeterminateEvaluationException}. Convenient for implementing
+	 * {@link #get(AttributeFqn, Datatype, EvaluationContext)} in classes inheriting an abstract one, e.g. from a base attribute provider class.
+	 *
+	 * @param future
+	 *            result of {@link #getAsync(AttributeFqn, Datatype, EvaluationContext)}
+	 * @return attribute value(s)
+	 * @throws IndeterminateEvaluationException
+	 *             if the future completed exceptionally or was cancelled
+	 */
+	static <AV extends AttributeValue> AttributeBag<AV> join(final CompletableFuture<AttributeBag<AV>> future) throws IndeterminateEvaluationException
+	{
+		try
+		{
+			return future.join();
+		}
+		catch (final CompletionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof IndeterminateEvaluationException)
+			{
+				throw (IndeterminateEvaluationException) cause;
+			}
+
+			throw new IndeterminateEvaluationException("Error getting attribute value(s) asynchronously", XacmlStatusCode.PROCESSING_ERROR.value(), cause);
+		}
+		catch (final CancellationException e)
+		{
+			throw new IndeterminateEvaluationException("Asynchronous attribute value fetch cancelled", XacmlStatusCode.PROCESSING_ERROR.value(), e);
+		}
+	}
+}
@@ -0,0 +1,375 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Cache of attribute values returned by attribute provider modules, shared by all evaluation contexts (requests), as opposed to the evaluation context that caches the values for the current request
+ * only. Only the attributes declared to this cache - with their time-to-live - are cached, and only when provided by a module explicitly declared to this cache as well (opt-in) and declaring its
+ * dependencies (required attributes, see {@link org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider.DependencyAwareFactory#getDependencies()}), since the module's result is then assumed
+ * to depend only on these attributes (the key attributes, e.g. subject-id), which are part of the cache key. Modules not declaring their dependencies (null) may use any attribute in the evaluation
+ * context, therefore their results are never cached here. Modules declaring no dependency (empty set) have their results cached regardless of the request, which is why a module must be declared to
+ * this cache explicitly.
+ * <p>
+ * Empty bags returned by a module (no value found) are cached as well (negative caching), with a specific time-to-live, whereas errors are never cached.
+ * <p>
+ * Bounded in size (least recently used entries evicted first), with entries spread over independently locked segments to limit contention between concurrent evaluations. Hit, miss and eviction
+ * counters are available for monitoring.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @version $Id: $
+ */
+public final class AttributeValueCache
+{
+	private static final IllegalArgumentException ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid maxEntries for attribute value cache: must be > 0");
+	private static final IllegalArgumentException ILLEGAL_TTL_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid time-to-live for attribute value cache: must be >= 0");
+	private static final IllegalArgumentException ILLEGAL_CONCURRENCY_LEVEL_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid concurrencyLevel for attribute value cache: must be > 0");
+	private static final IllegalArgumentException NULL_TTL_MAP_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined time-to-live by cached attribute for attribute value cache");
+	private static final IllegalArgumentException NULL_CACHED_MODULES_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined cached attribute provider modules for attribute value cache");
+
+	private static final int MAX_SEGMENT_COUNT = 1 << 16;
+
+	/**
+	 * Time-to-live of the cached values of a given attribute
+	 */
+	public static final class TimeToLive
+	{
+		private final long valueNanos;
+		private final long emptyBagNanos;
+
+		/**
+		 * Creates instance
+		 *
+		 * @param valueSeconds
+		 *            time-to-live (in seconds) of a cached non-empty bag of values; 0 means no expiry
+		 * @param emptyBagSeconds
+		 *            time-to-live (in seconds) of a cached empty bag (no value found by the attribute provider module); 0 means empty bags are not cached
+		 * @throws IllegalArgumentException
+		 *             if {@code valueSeconds < 0 || emptyBagSeconds < 0}
+		 */
+		public TimeToLive(final long valueSeconds, final long emptyBagSeconds) throws IllegalArgumentException
+		{
+			if (valueSeconds < 0 || emptyBagSeconds < 0)
+			{
+				throw ILLEGAL_TTL_ARGUMENT_EXCEPTION;
+			}
+
+			this.valueNanos = TimeUnit.SECONDS.toNanos(valueSeconds);
+			this.emptyBagNanos = TimeUnit.SECONDS.toNanos(emptyBagSeconds);
+		}
+	}
+
+	private static final class CachedBag
+	{
+		private final AttributeBag<?> bag;
+		private final long expiryNanoTime;
+		private final boolean expiring;
+
+		private CachedBag(final AttributeBag<?> bag, final long creationNanoTime, final long timeToLiveNanos)
+		{
+			this.bag = bag;
+			this.expiryNanoTime = creationNanoTime + timeToLiveNanos;
+			this.expiring = timeToLiveNanos > 0;
+		}
+
+		private boolean isExpired(final long nowNanos)
+		{
+			return expiring && nowNanos - expiryNanoTime >= 0;
+		}
+	}
+
+	/**
+	 * Cache segment: access-ordered map evicting the least recently used entry when full. Must be accessed only while holding the lock on the segment itself.
+	 */
+	private static final class Segment extends LinkedHashMap<KeyedAttributeProviderModule.Key, CachedBag>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+		private final transient LongAdder evictionCounter;
+
+		private Segment(final int maxEntries, final LongAdder evictionCounter)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.evictionCounter = evictionCounter;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Entry<KeyedAttributeProviderModule.Key, CachedBag> eldest)
+		{
+			if (size() > maxEntries)
+			{
+				evictionCounter.increment();
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	private final Map<AttributeFqn, TimeToLive> timeToLiveByAttribute;
+	private final Set<CloseableNamedAttributeProvider.DependencyAwareFactory> cachedModuleFactories;
+	private final LongSupplier nanoClock;
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private final LongAdder hitCounter = new LongAdder();
+	private final LongAdder missCounter = new LongAdder();
+	private final LongAdder evictionCounter = new LongAdder();
+
+	/**
+	 * Creates cache instance
+	 *
+	 * @param maxEntries
+	 *            maximum number of entries (bags of attribute values) in the cache (strictly positive)
+	 * @param concurrencyLevel
+	 *            estimated number of concurrent threads, used as number of independently locked segments (rounded up to the next power of two, and at most {@code maxEntries})
+	 * @param timeToLiveByAttribute
+	 *            attributes to be cached, with the time-to-live of their values. Attributes not in this map are never cached.
+	 * @param cachedModuleFactories
+	 *            factories of the attribute provider modules whose results may be cached (opt-in). Results of other modules are never cached.
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries <= 0 || concurrencyLevel <= 0 || timeToLiveByAttribute == null || cachedModuleFactories == null}
+	 */
+	public AttributeValueCache(final int maxEntries, final int concurrencyLevel, final Map<AttributeFqn, TimeToLive> timeToLiveByAttribute,
+			final Set<CloseableNamedAttributeProvider.DependencyAwareFactory> cachedModuleFactories) throws IllegalArgumentException
+	{
+		this(maxEntries, concurrencyLevel, timeToLiveByAttribute, cachedModuleFactories, System::nanoTime);
+	}
+
+	/*
+	 * nanoClock: source of the current time in nanoseconds, replaceable for testing expiry
+	 */
+	AttributeValueCache(final int maxEntries, final int concurrencyLevel, final Map<AttributeFqn, TimeToLive> timeToLiveByAttribute,
+			final Set<CloseableNamedAttributeProvider.DependencyAwareFactory> cachedModuleFactories, final LongSupplier nanoClock) throws IllegalArgumentException
+	{
+		if (maxEntries <= 0)
+		{
+			throw ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION;
+		}
+
+		if (concurrencyLevel <= 0)
+		{
+			throw ILLEGAL_CONCURRENCY_LEVEL_ARGUMENT_EXCEPTION;
+		}
+
+		if (timeToLiveByAttribute == null)
+		{
+			throw NULL_TTL_MAP_ARGUMENT_EXCEPTION;
+		}
+
+		if (cachedModuleFactories == null)
+		{
+			throw NULL_CACHED_MODULES_ARGUMENT_EXCEPTION;
+		}
+
+		this.timeToLiveByAttribute = ImmutableMap.copyOf(timeToLiveByAttribute);
+		this.cachedModuleFactories = ImmutableSet.copyOf(cachedModuleFactories);
+		this.nanoClock = nanoClock;
+
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < maxEntries && segmentCount < MAX_SEGMENT_COUNT)
+		{
+			segmentCount <<= 1;
+		}
+
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		/*
+		 * Spread maxEntries over the segments so that the total never exceeds maxEntries
+		 */
+		final int maxEntriesPerSegment = Math.max(1, maxEntries / segmentCount);
+		for (int i = 0; i < segmentCount; i++)
+		{
+			this.segments[i] = new Segment(maxEntriesPerSegment, evictionCounter);
+		}
+	}
+
+	private Segment getSegment(final KeyedAttributeProviderModule.Key key)
+	{
+		final int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & segmentMask];
+	}
+
+	/**
+	 * Returns true iff the results of the attribute provider module created by a given factory may be cached
+	 *
+	 * @param moduleFactory
+	 *            attribute provider module factory
+	 * @return true iff the module is declared to be cached (opt-in)
+	 */
+	boolean isCached(final CloseableNamedAttributeProvider.DependencyAwareFactory moduleFactory)
+	{
+		return cachedModuleFactories.contains(moduleFactory);
+	}
+
+	/**
+	 * Returns true iff the values of a given attribute are to be cached
+	 *
+	 * @param attributeFqn
+	 *            attribute name
+	 * @return true iff the attribute is declared to be cached
+	 */
+	boolean isCached(final AttributeFqn attributeFqn)
+	{
+		return timeToLiveByAttribute.containsKey(attributeFqn);
+	}
+
+	/**
+	 * Gets a cached bag of attribute values
+	 *
+	 * @param key
+	 *            result key
+	 * @return cached bag; null if none or expired
+	 */
+	AttributeBag<?> get(final KeyedAttributeProviderModule.Key key)
+	{
+		final Segment segment = getSegment(key);
+		final long nowNanos = nanoClock.getAsLong();
+		final CachedBag cachedBag;
+		synchronized (segment)
+		{
+			final CachedBag entry = segment.get(key);
+			if (entry != null && entry.isExpired(nowNanos))
+			{
+				segment.remove(key);
+				evictionCounter.increment();
+				cachedBag = null;
+			}
+			else
+			{
+				cachedBag = entry;
+			}
+		}
+
+		if (cachedBag == null)
+		{
+			missCounter.increment();
+			return null;
+		}
+
+		hitCounter.increment();
+		return cachedBag.bag;
+	}
+
+	/**
+	 * Caches a bag of attribute values returned by an attribute provider module, with the time-to-live of the attribute; unless the attribute is not to be cached, or the bag is null, or empty
+	 * because of an error, or empty and negative caching is disabled for the attribute.
+	 *
+	 * @param key
+	 *            result key
+	 * @param bag
+	 *            attribute values
+	 */
+	void put(final KeyedAttributeProviderModule.Key key, final AttributeBag<?> bag)
+	{
+		final TimeToLive ttl = timeToLiveByAttribute.get(key.getAttributeFqn());
+		if (ttl == null || bag == null)
+		{
+			return;
+		}
+
+		final long timeToLiveNanos;
+		if (bag.isEmpty())
+		{
+			if (ttl.emptyBagNanos == 0 || bag.getReasonWhyEmpty() != null)
+			{
+				// negative caching disabled, or error: not cached
+				return;
+			}
+
+			timeToLiveNanos = ttl.emptyBagNanos;
+		}
+		else
+		{
+			timeToLiveNanos = ttl.valueNanos;
+		}
+
+		final Segment segment = getSegment(key);
+		final CachedBag newEntry = new CachedBag(bag, nanoClock.getAsLong(), timeToLiveNanos);
+		synchronized (segment)
+		{
+			segment.put(key, newEntry);
+		}
+	}
+
+	/**
+	 * Get number of cache hits since creation
+	 *
+	 * @return hit count
+	 */
+	public long getHitCount()
+	{
+		return hitCounter.sum();
+	}
+
+	/**
+	 * Get number of cache misses (calls to attribute provider modules for cached attributes) since creation
+	 *
+	 * @return miss count
+	 */
+	public long getMissCount()
+	{
+		return missCounter.sum();
+	}
+
+	/**
+	 * Get number of entries evicted since creation, because of the size limit or expiry
+	 *
+	 * @return eviction count
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCounter.sum();
+	}
+
+	/**
+	 * Get current number of entries in cache
+	 *
+	 * @return cache size
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (final Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+}
@@ -20,6 +20,7 @@ package org.ow2.authzforce.core.pdp.impl;
 import java.io.IOException;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.GregorianCalendar;
@@ -27,6 +28,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import javax.xml.datatype.XMLGregorianCalendar;
 
@@ -52,6 +57,9 @@ import org.ow2.authzforce.core.pdp.api.value.DateTimeValue;
 import org.ow2.authzforce.core.pdp.api.value.DateValue;
 import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
 import org.ow2.authzforce.core.pdp.api.value.TimeValue;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.policy.PolicyAttributeDependencies;
+import org.ow2.authzforce.core.pdp.impl.policy.ReloadableRootPolicyProvider;
 import org.ow2.authzforce.core.pdp.impl.policy.RootPolicyEvaluator;
 import org.ow2.authzforce.core.pdp.impl.policy.RootPolicyEvaluators;
 import org.ow2.authzforce.core.xmlns.pdp.StandardEnvironmentAttributeSource;
@@ -70,10 +78,20 @@ import net.sf.saxon.s9api.XdmNode;
  */
 public final class BasePdpEngine implements CloseablePdpEngine
 {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BasePdpEngine.class);
+
 	private static final String NULL_STD_ENV_ATTRIBUTE_SOURCE_ARG = "Undefined stdEnvAttributeSource arg (source of standard curent-* environment attributes)";
 
 	private static final IllegalArgumentException NULL_REQUEST_ARGUMENT_EXCEPTION = new IllegalArgumentException("No input Decision Request");
 
+	private static final IllegalArgumentException ILLEGAL_PARALLELISM_ARGUMENT_EXCEPTION = new IllegalArgumentException(
+			"Invalid maxBatchEvaluationParallelism arg: must be > 0 if parallelBatchEvaluationThreshold > 0");
+
+	/*
+	 * Number of chunks of a batch (multiple decision request) per evaluating thread, for better load balancing when evaluation times of individual decision requests differ
+	 */
+	private static final int BATCH_CHUNKS_PER_THREAD = 4;
+
 	private interface StandardEnvironmentAttributeIssuer
 	{
 		Map<AttributeFqn, AttributeBag<?>> get();
@@ -186,13 +204,15 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		private interface RequestAndPdpIssuedNamedAttributesMerger
 		{
 			/**
-			 * Return an updatable map after merging {@code pdpIssuedAttributes} and {@code requestAttributes} or one of each into it, depending on the implementation
+			 * Merge {@code pdpIssuedAttributes} and {@code requestAttributes} or one of each into {@code mergedAttributes}, depending on the implementation
 			 * 
 			 * @param pdpIssuedAttributes
 			 * @param requestAttributes
-			 * @return updatable map resulting from merger, or null if nothing merged
+			 * @param mergedAttributes
+			 *            (empty) updatable map where the merger result is put
 			 */
-			Map<AttributeFqn, AttributeBag<?>> merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes);
+			void merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes,
+					final Map<AttributeFqn, AttributeBag<?>> mergedAttributes);
 		}
 
 		private static final IndeterminateEvaluationException newReqMissingStdEnvAttrException(final AttributeFqn attrGUID)
@@ -215,7 +235,8 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		{
 
 			@Override
-			public Map<AttributeFqn, AttributeBag<?>> merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes)
+			public void merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes,
+					final Map<AttributeFqn, AttributeBag<?>> mergedAttributes)
 			{
 				/*
 				 * Request attribute values override PDP issued ones. Do not modify pdpIssuedAttributes directly as this may be used for other requests (Multiple Decision Profile) as well. so we must
@@ -223,13 +244,19 @@ public final class BasePdpEngine implements CloseablePdpEngine
 				 */
 				if (pdpIssuedAttributes == null)
 				{
-					return requestAttributes == null ? null : HashCollections.newUpdatableMap(requestAttributes);
+					if (requestAttributes != null)
+					{
+						mergedAttributes.putAll(requestAttributes);
+					}
+
+					return;
 				}
 
 				// pdpIssuedAttributes != null
 				if (requestAttributes == null)
 				{
-					return HashCollections.newUpdatableMap(pdpIssuedAttributes);
+					mergedAttributes.putAll(pdpIssuedAttributes);
+					return;
 				}
 				// requestAttributes != null
 
@@ -251,11 +278,15 @@ public final class BasePdpEngine implements CloseablePdpEngine
 					 * or not)
 					 */
 					// mappings in order of increasing priority
-					return HashCollections.newUpdatableMap(pdpIssuedAttributes, STD_ENV_RESET_MAP, requestAttributes);
+					mergedAttributes.putAll(pdpIssuedAttributes);
+					mergedAttributes.putAll(STD_ENV_RESET_MAP);
+					mergedAttributes.putAll(requestAttributes);
+					return;
 				}
 
 				// mappings in order of increasing priority
-				return HashCollections.newUpdatableMap(pdpIssuedAttributes, requestAttributes);
+				mergedAttributes.putAll(pdpIssuedAttributes);
+				mergedAttributes.putAll(requestAttributes);
 			}
 
 		};
@@ -264,7 +295,8 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		{
 
 			@Override
-			public Map<AttributeFqn, AttributeBag<?>> merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes)
+			public void merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes,
+					final Map<AttributeFqn, AttributeBag<?>> mergedAttributes)
 			{
 
 				// PDP issued attribute values override request attribute values
@@ -272,20 +304,16 @@ public final class BasePdpEngine implements CloseablePdpEngine
 				 * Do not modify pdpIssuedAttributes directly as this may be used for other requests (Multiple Decision Profile) as well. so we must not modify it but clone it before individual
 				 * decision request processing.
 				 */
-				if (pdpIssuedAttributes == null)
+				if (requestAttributes != null)
 				{
-					return requestAttributes == null ? null : HashCollections.newUpdatableMap(requestAttributes);
+					mergedAttributes.putAll(requestAttributes);
 				}
 
-				// pdpIssuedAttributes != null
-				if (requestAttributes == null)
+				// mappings of pdpIssuedAttributes have priority
+				if (pdpIssuedAttributes != null)
 				{
-					return HashCollections.newUpdatableMap(pdpIssuedAttributes);
+					mergedAttributes.putAll(pdpIssuedAttributes);
 				}
-				// requestAttributes != null
-
-				// mappings of pdpIssuedAttributes have priority
-				return HashCollections.newUpdatableMap(requestAttributes, pdpIssuedAttributes);
 
 			}
 
@@ -295,10 +323,14 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		{
 
 			@Override
-			public Map<AttributeFqn, AttributeBag<?>> merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes)
+			public void merge(final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final Map<AttributeFqn, AttributeBag<?>> requestAttributes,
+					final Map<AttributeFqn, AttributeBag<?>> mergedAttributes)
 			{
 				// PDP values completely ignored
-				return requestAttributes == null ? null : HashCollections.newUpdatableMap(requestAttributes);
+				if (requestAttributes != null)
+				{
+					mergedAttributes.putAll(requestAttributes);
+				}
 			}
 
 		};
@@ -306,6 +338,16 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		private final RootPolicyEvaluator rootPolicyEvaluator;
 		private final RequestAndPdpIssuedNamedAttributesMerger reqAndPdpIssuedAttributesMerger;
 
+		/*
+		 * Allocator of the evaluation context slots used by the policy evaluators of this PDP engine; null if none
+		 */
+		private final EvaluationContextSlots evaluationContextSlots;
+
+		/*
+		 * Evaluation context reused by each thread for successive Individual Decision Requests, where the context is not passed to any decision cache (may be retained by the cache implementation)
+		 */
+		private final ThreadLocal<IndividualDecisionRequestContext> threadLocalReusableEvalCtx;
+
 		/**
 		 * Creates an evaluator
 		 *
@@ -327,13 +369,18 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		 *            these attributes are not present in the decision request, then their values MUST be supplied by the context handler " but it does NOT say "If AND ONLY IF values..." So this
 		 *            option could still be considered XACML compliant in a strict sense.</li>
 		 *            </ul>
+		 * @param evaluationContextSlots
+		 *            allocator of the evaluation context slots used by the policy evaluators; null if none
 		 * @throws IllegalArgumentException
 		 *             if {@code stdEnvAttributeSource} is null or not supported
 		 */
-		protected IndividualDecisionRequestEvaluator(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource stdEnvAttributeSource) throws IllegalArgumentException
+		protected IndividualDecisionRequestEvaluator(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource stdEnvAttributeSource,
+				final EvaluationContextSlots evaluationContextSlots) throws IllegalArgumentException
 		{
 			assert rootPolicyEvaluator != null && stdEnvAttributeSource != null;
 			this.rootPolicyEvaluator = rootPolicyEvaluator;
+			this.evaluationContextSlots = evaluationContextSlots;
+			this.threadLocalReusableEvalCtx = ThreadLocal.withInitial(() -> IndividualDecisionRequestContext.newReusableInstance(evaluationContextSlots));
 			switch (stdEnvAttributeSource)
 			{
 				case PDP_ONLY:
@@ -355,18 +402,54 @@ public final class BasePdpEngine implements CloseablePdpEngine
 			}
 		}
 
-		protected final EvaluationContext newEvaluationContext(final DecisionRequest request, final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes)
+		/*
+		 * batchAttributeValues: attribute values shared with the other Individual Decision Requests of the same multiple decision request; null if the request is not part of a multiple decision
+		 * request
+		 */
+		protected final EvaluationContext newEvaluationContext(final DecisionRequest request, final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes,
+				final BatchAttributeValues batchAttributeValues)
 		{
 			assert request != null;
-			final Map<AttributeFqn, AttributeBag<?>> mergedNamedAttributes = reqAndPdpIssuedAttributesMerger.merge(pdpIssuedAttributes, request.getNamedAttributes());
-			return new IndividualDecisionRequestContext(mergedNamedAttributes, request.getExtraContentsByCategory(), request.isApplicablePolicyIdListReturned());
+			final Map<AttributeFqn, AttributeBag<?>> mergedNamedAttributes = HashCollections.newUpdatableMap();
+			reqAndPdpIssuedAttributesMerger.merge(pdpIssuedAttributes, request.getNamedAttributes(), mergedNamedAttributes);
+			// no need to copy mergedNamedAttributes again
+			final EvaluationContext evalCtx = IndividualDecisionRequestContext.wrap(mergedNamedAttributes, request.getExtraContentsByCategory(), request.isApplicablePolicyIdListReturned(),
+					evaluationContextSlots);
+			if (batchAttributeValues != null)
+			{
+				batchAttributeValues.bindTo(evalCtx);
+			}
+
+			return evalCtx;
 		}
 
-		protected final DecisionResult evaluateInNewContext(final DecisionRequest request, final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes)
+		protected final DecisionResult evaluateInNewContext(final DecisionRequest request, final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes,
+				final BatchAttributeValues batchAttributeValues)
 		{
 			assert request != null;
-			final EvaluationContext evalCtx = newEvaluationContext(request, pdpIssuedAttributes);
-			return rootPolicyEvaluator.findAndEvaluate(evalCtx);
+			final IndividualDecisionRequestContext reusableEvalCtx = threadLocalReusableEvalCtx.get();
+			final Map<AttributeFqn, AttributeBag<?>> namedAttributes = reusableEvalCtx.acquire(request.getExtraContentsByCategory(), request.isApplicablePolicyIdListReturned());
+			if (namedAttributes == null)
+			{
+				/*
+				 * Context already in use by this thread, i.e. nested evaluation (e.g. from an AttributeProvider calling the same PDP), so not reusable
+				 */
+				return rootPolicyEvaluator.findAndEvaluate(newEvaluationContext(request, pdpIssuedAttributes, batchAttributeValues));
+			}
+
+			try
+			{
+				reqAndPdpIssuedAttributesMerger.merge(pdpIssuedAttributes, request.getNamedAttributes(), namedAttributes);
+				if (batchAttributeValues != null)
+				{
+					batchAttributeValues.bindTo(reusableEvalCtx);
+				}
+
+				return rootPolicyEvaluator.findAndEvaluate(reusableEvalCtx);
+			} finally
+			{
+				reusableEvalCtx.release();
+			}
 		}
 
 		/**
@@ -405,12 +488,15 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		 *            a {@link java.util.List} of individual decision requests.
 		 * @param pdpStdEnvAttributeIssuer
 		 *            a {@link java.util.Map} of PDP-issued attributes including at least the standard environment attributes: current-time, current-date, current-dateTime.
+		 * @param batchAttributeValues
+		 *            attribute values shared by the Individual Decision Requests (of the same multiple decision request); null if none to be shared
 		 * @return individual decision request-result pairs, where the list of the requests is the same as {@code individualDecisionRequests}.
 		 * @throws IndeterminateEvaluationException
 		 *             if an error occurred preventing any request evaluation
 		 */
 		protected abstract <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> evaluate(
-				List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer) throws IndeterminateEvaluationException;
+				List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer, final BatchAttributeValues batchAttributeValues)
+				throws IndeterminateEvaluationException;
 
 	}
 
@@ -421,9 +507,10 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		private static final RuntimeException NULL_INDIVIDUAL_DECISION_REQUEST_EXCEPTION = new RuntimeException(
 				"One of the individual decision requests returned by the request filter is invalid (null).");
 
-		private NonCachingIndividualDecisionRequestEvaluator(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource stdEnvAttributeSource)
+		private NonCachingIndividualDecisionRequestEvaluator(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource stdEnvAttributeSource,
+				final EvaluationContextSlots evaluationContextSlots)
 		{
-			super(rootPolicyEvaluator, stdEnvAttributeSource);
+			super(rootPolicyEvaluator, stdEnvAttributeSource, evaluationContextSlots);
 		}
 
 		@Override
@@ -431,12 +518,13 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		{
 			assert request != null;
 			LOGGER.debug("Evaluating Individual Decision Request: {}", request);
-			return evaluateInNewContext(request, pdpStdEnvAttributeIssuer.get());
+			return evaluateInNewContext(request, pdpStdEnvAttributeIssuer.get(), null);
 		}
 
 		@Override
 		protected <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> evaluate(
-				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer) throws IndeterminateEvaluationException
+				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer, final BatchAttributeValues batchAttributeValues)
+				throws IndeterminateEvaluationException
 		{
 			assert individualDecisionRequests != null && pdpStdEnvAttributeIssuer != null;
 
@@ -449,7 +537,7 @@ public final class BasePdpEngine implements CloseablePdpEngine
 					throw NULL_INDIVIDUAL_DECISION_REQUEST_EXCEPTION;
 				}
 
-				final DecisionResult decisionResult = evaluateInNewContext(individualDecisionRequest, pdpIssuedAttributes);
+				final DecisionResult decisionResult = evaluateInNewContext(individualDecisionRequest, pdpIssuedAttributes, batchAttributeValues);
 				resultsByRequest.add(new SimpleImmutableEntry<>(individualDecisionRequest, decisionResult));
 			}
 
@@ -468,9 +556,9 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		private final DecisionCache decisionCache;
 
 		private IndividualRequestEvaluatorWithCacheIgnoringEvaluationContext(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource stdEnvAttributeSource,
-				final DecisionCache decisionCache)
+				final DecisionCache decisionCache, final EvaluationContextSlots evaluationContextSlots)
 		{
-			super(rootPolicyEvaluator, stdEnvAttributeSource);
+			super(rootPolicyEvaluator, stdEnvAttributeSource, evaluationContextSlots);
 			assert decisionCache != null;
 			this.decisionCache = decisionCache;
 		}
@@ -484,7 +572,7 @@ public final class BasePdpEngine implements CloseablePdpEngine
 			if (cachedResult == null)
 			{
 				LOGGER.debug("No result found in cache for Individual Decision Request: {}. Computing new result from policy evaluation...", individualDecisionRequest);
-				final DecisionResult newResult = evaluateInNewContext(individualDecisionRequest, pdpStdEnvAttributeIssuer.get());
+				final DecisionResult newResult = evaluateInNewContext(individualDecisionRequest, pdpStdEnvAttributeIssuer.get(), null);
 				LOGGER.debug("Caching new Result for Individual Decision Request: {} -> {}", individualDecisionRequest, newResult);
 				decisionCache.put(individualDecisionRequest, newResult, null);
 				return newResult;
@@ -496,7 +584,8 @@ public final class BasePdpEngine implements CloseablePdpEngine
 
 		@Override
 		protected <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> evaluate(
-				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer) throws IndeterminateEvaluationException
+				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer, final BatchAttributeValues batchAttributeValues)
+				throws IndeterminateEvaluationException
 		{
 			assert individualDecisionRequests != null && pdpStdEnvAttributeIssuer != null;
 
@@ -525,7 +614,7 @@ public final class BasePdpEngine implements CloseablePdpEngine
 				if (cachedResult == null)
 				{
 					LOGGER.debug("No result found in cache for Individual Decision Request: {}. Computing new result from policy evaluation...", individualDecisionRequest);
-					finalResult = evaluateInNewContext(individualDecisionRequest, pdpIssuedAttributes);
+					finalResult = evaluateInNewContext(individualDecisionRequest, pdpIssuedAttributes, batchAttributeValues);
 					LOGGER.debug("Caching new Result for Individual Decision Request: {} -> {}", individualDecisionRequest, finalResult);
 					newResultsByRequest.put(individualDecisionRequest, finalResult);
 				}
@@ -556,22 +645,22 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		private final DecisionCache decisionCache;
 
 		private IndividualRequestEvaluatorWithCacheUsingEvaluationContext(final RootPolicyEvaluator rootPolicyEvaluator, final StandardEnvironmentAttributeSource validStdEnvAttrSrc,
-				final DecisionCache decisionCache)
+				final DecisionCache decisionCache, final EvaluationContextSlots evaluationContextSlots)
 		{
-			super(rootPolicyEvaluator, validStdEnvAttrSrc);
+			super(rootPolicyEvaluator, validStdEnvAttrSrc, evaluationContextSlots);
 			assert decisionCache != null;
 			this.decisionCache = decisionCache;
 		}
 
 		private <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> DecisionResult evaluate(final INDIVIDUAL_DECISION_REQ_T individualDecisionRequest,
-				final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes)
+				final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes, final BatchAttributeValues batchAttributeValues)
 		{
 			assert individualDecisionRequest != null;
 			LOGGER.debug("Evaluating Individual Decision Request: {}", individualDecisionRequest);
 			/*
 			 * Check whether there is any decision result in cache for this request
 			 */
-			final EvaluationContext evalCtx = newEvaluationContext(individualDecisionRequest, pdpIssuedAttributes);
+			final EvaluationContext evalCtx = newEvaluationContext(individualDecisionRequest, pdpIssuedAttributes, batchAttributeValues);
 			final DecisionResult cachedResult = decisionCache.get(individualDecisionRequest, evalCtx);
 			if (cachedResult == null)
 			{
@@ -590,12 +679,13 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		protected DecisionResult evaluate(DecisionRequest individualDecisionRequest, StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer)
 		{
 			assert individualDecisionRequest != null && pdpStdEnvAttributeIssuer != null;
-			return evaluate(individualDecisionRequest, pdpStdEnvAttributeIssuer.get());
+			return evaluate(individualDecisionRequest, pdpStdEnvAttributeIssuer.get(), null);
 		}
 
 		@Override
 		protected <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> evaluate(
-				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer) throws IndeterminateEvaluationException
+				final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer, final BatchAttributeValues batchAttributeValues)
+				throws IndeterminateEvaluationException
 		{
 			assert individualDecisionRequests != null && pdpStdEnvAttributeIssuer != null;
 
@@ -606,7 +696,7 @@ public final class BasePdpEngine implements CloseablePdpEngine
 			final Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> finalResultsByRequest = new ArrayDeque<>(individualDecisionRequests.size());
 			for (final INDIVIDUAL_DECISION_REQ_T individualDecisionRequest : individualDecisionRequests)
 			{
-				final DecisionResult finalResult = evaluate(individualDecisionRequest, pdpIssuedAttributes);
+				final DecisionResult finalResult = evaluate(individualDecisionRequest, pdpIssuedAttributes, batchAttributeValues);
 				finalResultsByRequest.add(new SimpleImmutableEntry<>(individualDecisionRequest, finalResult));
 			}
 
@@ -620,6 +710,12 @@ public final class BasePdpEngine implements CloseablePdpEngine
 	private final DecisionCache decisionCache;
 	private final RootPolicyEvaluator rootPolicyEvaluator;
 	private final StandardEnvironmentAttributeIssuer pdpStdEnvAttributeIssuer;
+	private final int parallelBatchEvaluationThreshold;
+	/*
+	 * Null iff parallelBatchEvaluationThreshold == 0
+	 */
+	private final ForkJoinPool batchEvaluationPool;
+	private final boolean batchAttributeValueSharing;
 
 	/**
 	 * Constructs a new PDP engine with the given configuration information.
@@ -637,13 +733,23 @@ public final class BasePdpEngine implements CloseablePdpEngine
 	 *            attribute designator, then the matching of the attribute to the named attribute SHALL be governed by AttributeId and DataType attributes alone."
 	 * @param stdEnvAttributeSource
 	 *            (mandatory) source for standard environment current-time/current-date/current-dateTime attribute values (request or PDP, etc.).
+	 * @param parallelBatchEvaluationThreshold
+	 *            minimum number of Individual Decision Requests in a multiple decision request (batch) - passed to {@link #evaluate(List)} - for these Individual Decision Requests to be evaluated
+	 *            concurrently, results being still returned in the same order as the requests; 0 means batches are always evaluated sequentially.
+	 * @param maxBatchEvaluationParallelism
+	 *            maximum number of threads evaluating Individual Decision Requests concurrently (shared by all batches), used only if {@code parallelBatchEvaluationThreshold > 0}
+	 * @param batchAttributeValueSharing
+	 *            true iff the values returned by attribute provider modules declaring their dependencies (required attributes) are shared by the Individual Decision Requests of a multiple decision
+	 *            request (batch) where these dependencies have the same values, instead of calling the modules again for each Individual Decision Request
 	 * @throws java.lang.IllegalArgumentException
-	 *             if one of the mandatory arguments is null ({@code xacmlExpressionFactory}, {@code rootPolicyProvider})
+	 *             if one of the mandatory arguments is null ({@code xacmlExpressionFactory}, {@code rootPolicyProvider}), or {@code parallelBatchEvaluationThreshold < 0}, or
+	 *             {@code parallelBatchEvaluationThreshold > 0 && maxBatchEvaluationParallelism <= 0}
 	 * @throws java.io.IOException
 	 *             error closing the root policy Provider when static resolution is to be used
 	 */
 	public BasePdpEngine(final ExpressionFactory xacmlExpressionFactory, final RootPolicyProvider rootPolicyProvider, final boolean strictAttributeIssuerMatch,
-			final StandardEnvironmentAttributeSource stdEnvAttributeSource, final Optional<DecisionCache> decisionCache) throws IllegalArgumentException, IOException
+			final StandardEnvironmentAttributeSource stdEnvAttributeSource, final Optional<DecisionCache> decisionCache, final int parallelBatchEvaluationThreshold,
+			final int maxBatchEvaluationParallelism, final boolean batchAttributeValueSharing) throws IllegalArgumentException, IOException
 	{
 		final RootPolicyEvaluators.Base candidateRootPolicyEvaluator = new RootPolicyEvaluators.Base(xacmlExpressionFactory, rootPolicyProvider);
 		// Use static resolution if possible
@@ -657,24 +763,149 @@ public final class BasePdpEngine implements CloseablePdpEngine
 			this.rootPolicyEvaluator = staticRootPolicyEvaluator;
 		}
 
+		setPrefetchedAttributes(xacmlExpressionFactory, this.rootPolicyEvaluator);
+
 		this.strictAttributeIssuerMatch = strictAttributeIssuerMatch;
 
 		Preconditions.checkNotNull(stdEnvAttributeSource, NULL_STD_ENV_ATTRIBUTE_SOURCE_ARG);
 		this.pdpStdEnvAttributeIssuer = stdEnvAttributeSource == StandardEnvironmentAttributeSource.REQUEST_ONLY ? NULL_STD_ENV_ATTRIBUTE_ISSUER : DEFAULT_TZ_BASED_STD_ENV_ATTRIBUTE_ISSUER;
 
+		/*
+		 * Evaluation context slots are allocated per expression factory, i.e. per PDP engine
+		 */
+		final EvaluationContextSlots evaluationContextSlots = xacmlExpressionFactory instanceof DepthLimitingExpressionFactory
+				? ((DepthLimitingExpressionFactory) xacmlExpressionFactory).getEvaluationContextSlots()
+				: null;
 		this.decisionCache = decisionCache.orElse(null);
 		if (this.decisionCache == null)
 		{
-			this.individualReqEvaluator = new NonCachingIndividualDecisionRequestEvaluator(rootPolicyEvaluator, stdEnvAttributeSource);
+			this.individualReqEvaluator = new NonCachingIndividualDecisionRequestEvaluator(rootPolicyEvaluator, stdEnvAttributeSource, evaluationContextSlots);
 		}
 		else
 		{
 			this.individualReqEvaluator = this.decisionCache.isEvaluationContextRequired()
-					? new IndividualRequestEvaluatorWithCacheUsingEvaluationContext(rootPolicyEvaluator, stdEnvAttributeSource, this.decisionCache)
-					: new IndividualRequestEvaluatorWithCacheIgnoringEvaluationContext(rootPolicyEvaluator, stdEnvAttributeSource, this.decisionCache);
+					? new IndividualRequestEvaluatorWithCacheUsingEvaluationContext(rootPolicyEvaluator, stdEnvAttributeSource, this.decisionCache, evaluationContextSlots)
+					: new IndividualRequestEvaluatorWithCacheIgnoringEvaluationContext(rootPolicyEvaluator, stdEnvAttributeSource, this.decisionCache, evaluationContextSlots);
+		}
+
+		Preconditions.checkArgument(parallelBatchEvaluationThreshold >= 0, "Invalid parallelBatchEvaluationThreshold arg: must be >= 0");
+		this.parallelBatchEvaluationThreshold = parallelBatchEvaluationThreshold;
+		if (parallelBatchEvaluationThreshold == 0)
+		{
+			this.batchEvaluationPool = null;
+		}
+		else
+		{
+			if (maxBatchEvaluationParallelism <= 0)
+			{
+				throw ILLEGAL_PARALLELISM_ARGUMENT_EXCEPTION;
+			}
+
+			this.batchEvaluationPool = new ForkJoinPool(maxBatchEvaluationParallelism);
+		}
+
+		this.batchAttributeValueSharing = batchAttributeValueSharing;
+
+		if (rootPolicyProvider instanceof ReloadableRootPolicyProvider)
+		{
+			if (this.decisionCache != null && !(this.decisionCache instanceof InMemoryDecisionCache))
+			{
+				LOGGER.warn("Decision cache {} cannot be invalidated when the policies are reloaded by the root policy provider: cached Results may be based on previous policies until they expire",
+						this.decisionCache);
+			}
+
+			final ReloadableRootPolicyProvider reloadableRootPolicyProvider = (ReloadableRootPolicyProvider) rootPolicyProvider;
+			reloadableRootPolicyProvider.addReloadListener(() -> onRootPolicyReloaded(xacmlExpressionFactory, reloadableRootPolicyProvider));
+		}
+	}
+
+	/*
+	 * Lets the attribute provider modules supporting it fetch the attributes that may be needed by the root policy in bulk, or asynchronously (prefetching)
+	 */
+	private static void setPrefetchedAttributes(final ExpressionFactory xacmlExpressionFactory, final RootPolicyEvaluator rootPolicyEvaluator)
+	{
+		if (!(xacmlExpressionFactory instanceof DepthLimitingExpressionFactory))
+		{
+			return;
+		}
+
+		((DepthLimitingExpressionFactory) xacmlExpressionFactory).getAttributeProvider().setPrefetchedAttributes(rootPolicyEvaluator.getAttributeDependencies());
+	}
+
+	/*
+	 * Called after the root policy provider has reloaded the policies: the attributes fetched in bulk or prefetched, and the cached decisions depend on the previous root policy; and the evaluation
+	 * metrics of the policies removed by the reload must be dropped
+	 */
+	private void onRootPolicyReloaded(final ExpressionFactory xacmlExpressionFactory, final ReloadableRootPolicyProvider rootPolicyProvider)
+	{
+		setPrefetchedAttributes(xacmlExpressionFactory, this.rootPolicyEvaluator);
+		if (this.decisionCache instanceof InMemoryDecisionCache)
+		{
+			((InMemoryDecisionCache) this.decisionCache).invalidateAll();
+		}
+
+		if (xacmlExpressionFactory instanceof DepthLimitingExpressionFactory)
+		{
+			((DepthLimitingExpressionFactory) xacmlExpressionFactory).getEvaluationMetricsRegistry()
+					.ifPresent(evaluationMetricsRegistry -> evaluationMetricsRegistry.retainPolicyMetrics(rootPolicyProvider.getLoadedPolicies()));
 		}
 	}
 
+	/**
+	 * Constructs a new PDP engine with the given configuration information, without sharing of attribute values between the Individual Decision Requests of multiple decision requests.
+	 *
+	 * @param xacmlExpressionFactory
+	 *            XACML Expression parser/factory - mandatory
+	 * @param rootPolicyProvider
+	 *            Root Policy Provider - mandatory
+	 * @param decisionCache
+	 *            (optional) decision response cache
+	 * @param strictAttributeIssuerMatch
+	 *            true iff strict Attribute Issuer matching is enabled, i.e. AttributeDesignators without Issuer only match request Attributes without Issuer (and same AttributeId, Category...).
+	 * @param stdEnvAttributeSource
+	 *            (mandatory) source for standard environment current-time/current-date/current-dateTime attribute values (request or PDP, etc.).
+	 * @param parallelBatchEvaluationThreshold
+	 *            minimum number of Individual Decision Requests in a multiple decision request (batch) for these Individual Decision Requests to be evaluated concurrently; 0 means batches are always
+	 *            evaluated sequentially.
+	 * @param maxBatchEvaluationParallelism
+	 *            maximum number of threads evaluating Individual Decision Requests concurrently (shared by all batches), used only if {@code parallelBatchEvaluationThreshold > 0}
+	 * @throws java.lang.IllegalArgumentException
+	 *             if one of the mandatory arguments is null ({@code xacmlExpressionFactory}, {@code rootPolicyProvider}), or {@code parallelBatchEvaluationThreshold < 0}, or
+	 *             {@code parallelBatchEvaluationThreshold > 0 && maxBatchEvaluationParallelism <= 0}
+	 * @throws java.io.IOException
+	 *             error closing the root policy Provider when static resolution is to be used
+	 */
+	public BasePdpEngine(final ExpressionFactory xacmlExpressionFactory, final RootPolicyProvider rootPolicyProvider, final boolean strictAttributeIssuerMatch,
+			final StandardEnvironmentAttributeSource stdEnvAttributeSource, final Optional<DecisionCache> decisionCache, final int parallelBatchEvaluationThreshold,
+			final int maxBatchEvaluationParallelism) throws IllegalArgumentException, IOException
+	{
+		this(xacmlExpressionFactory, rootPolicyProvider, strictAttributeIssuerMatch, stdEnvAttributeSource, decisionCache, parallelBatchEvaluationThreshold, maxBatchEvaluationParallelism, false);
+	}
+
+	/**
+	 * Constructs a new PDP engine with the given configuration information, evaluating the Individual Decision Requests of multiple decision requests sequentially.
+	 *
+	 * @param xacmlExpressionFactory
+	 *            XACML Expression parser/factory - mandatory
+	 * @param rootPolicyProvider
+	 *            Root Policy Provider - mandatory
+	 * @param decisionCache
+	 *            (optional) decision response cache
+	 * @param strictAttributeIssuerMatch
+	 *            true iff strict Attribute Issuer matching is enabled, i.e. AttributeDesignators without Issuer only match request Attributes without Issuer (and same AttributeId, Category...).
+	 * @param stdEnvAttributeSource
+	 *            (mandatory) source for standard environment current-time/current-date/current-dateTime attribute values (request or PDP, etc.).
+	 * @throws java.lang.IllegalArgumentException
+	 *             if one of the mandatory arguments is null ({@code xacmlExpressionFactory}, {@code rootPolicyProvider})
+	 * @throws java.io.IOException
+	 *             error closing the root policy Provider when static resolution is to be used
+	 */
+	public BasePdpEngine(final ExpressionFactory xacmlExpressionFactory, final RootPolicyProvider rootPolicyProvider, final boolean strictAttributeIssuerMatch,
+			final StandardEnvironmentAttributeSource stdEnvAttributeSource, final Optional<DecisionCache> decisionCache) throws IllegalArgumentException, IOException
+	{
+		this(xacmlExpressionFactory, rootPolicyProvider, strictAttributeIssuerMatch, stdEnvAttributeSource, decisionCache, 0, 0, false);
+	}
+
 	/**
 	 * Constructs a new PDP engine with the given configuration information.
 	 *
@@ -689,7 +920,8 @@ public final class BasePdpEngine implements CloseablePdpEngine
 	public BasePdpEngine(final PdpEngineConfiguration configuration) throws IllegalArgumentException, IOException
 	{
 		this(configuration.getXacmlExpressionFactory(), configuration.getRootPolicyProvider(), configuration.isStrictAttributeIssuerMatchEnabled(), configuration.getStdEnvAttributeSource(),
-				configuration.getDecisionCache());
+				configuration.getDecisionCache(), configuration.getParallelBatchEvaluationThreshold(), configuration.getMaxBatchEvaluationParallelism(),
+				configuration.isBatchAttributeValueSharingEnabled());
 	}
 
 	@Override
@@ -698,6 +930,17 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		return this.rootPolicyEvaluator.getStaticApplicablePolicies();
 	}
 
+	/**
+	 * Get the attributes that may be needed to evaluate the root policy, overall and per top-level branch (child Rule or Policy(Set)), as determined by static analysis of the policies at
+	 * initialization time. PEPs may use them to send these attributes proactively in their requests.
+	 *
+	 * @return attribute dependencies of the root policy (the current one if reloadable, see {@link ReloadableRootPolicyProvider}); empty if the root policy is neither statically resolved nor reloadable
+	 */
+	public Optional<PolicyAttributeDependencies> getRootPolicyAttributeDependencies()
+	{
+		return this.rootPolicyEvaluator.getAttributeDependencies();
+	}
+
 	@Override
 	public DecisionRequestBuilder<?> newRequestBuilder(final int expectedNumOfAttributeCategories, final int expectedTotalNumOfAttributes)
 	{
@@ -739,13 +982,79 @@ public final class BasePdpEngine implements CloseablePdpEngine
 		 * "If values for these attributes are not present in the decision request, then their values MUST be supplied by the context handler" . These current date/time values must be set here once
 		 * before every individual request is evaluated to make sure they all use the same value for current-time/current-date/current-dateTime, if they use the one from PDP.
 		 */
-		return individualReqEvaluator.evaluate(individualDecisionRequests, this.pdpStdEnvAttributeIssuer);
+		/*
+		 * If enabled, values returned by attribute provider modules depending only on attributes with same values in several individual decision requests (e.g. same subject-id) are shared by these
+		 * requests, instead of calling the modules again for each request (see KeyedAttributeProviderModule for the modules concerned)
+		 */
+		final BatchAttributeValues batchAttributeValues = batchAttributeValueSharing && individualDecisionRequests.size() > 1 ? new BatchAttributeValues() : null;
+		if (batchEvaluationPool != null && individualDecisionRequests.size() >= parallelBatchEvaluationThreshold)
+		{
+			return evaluateConcurrently(individualDecisionRequests, batchAttributeValues);
+		}
+
+		return individualReqEvaluator.evaluate(individualDecisionRequests, this.pdpStdEnvAttributeIssuer, batchAttributeValues);
+	}
+
+	/**
+	 * Evaluates the individual decision requests by consecutive chunks submitted to the batch evaluation thread pool, then concatenates the chunk results in the same order as the requests.
+	 */
+	private <INDIVIDUAL_DECISION_REQ_T extends DecisionRequest> Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> evaluateConcurrently(
+			final List<INDIVIDUAL_DECISION_REQ_T> individualDecisionRequests, final BatchAttributeValues batchAttributeValues) throws IndeterminateEvaluationException
+	{
+		/*
+		 * All chunks must use the same PDP-issued attribute values (current date/time), like in sequential evaluation
+		 */
+		final Map<AttributeFqn, AttributeBag<?>> pdpIssuedAttributes = this.pdpStdEnvAttributeIssuer.get();
+		final StandardEnvironmentAttributeIssuer batchStdEnvAttributeIssuer = () -> pdpIssuedAttributes;
+
+		final int requestCount = individualDecisionRequests.size();
+		final int chunkCount = Math.min(requestCount, batchEvaluationPool.getParallelism() * BATCH_CHUNKS_PER_THREAD);
+		final List<Callable<Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>>>> chunkEvaluations = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; i++)
+		{
+			final List<INDIVIDUAL_DECISION_REQ_T> chunk = individualDecisionRequests.subList(i * requestCount / chunkCount, (i + 1) * requestCount / chunkCount);
+			chunkEvaluations.add(() -> individualReqEvaluator.evaluate(chunk, batchStdEnvAttributeIssuer, batchAttributeValues));
+		}
+
+		final Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>> resultsByRequest = new ArrayDeque<>(requestCount);
+		try
+		{
+			for (final Future<Collection<Entry<INDIVIDUAL_DECISION_REQ_T, ? extends DecisionResult>>> chunkResult : batchEvaluationPool.invokeAll(chunkEvaluations))
+			{
+				resultsByRequest.addAll(chunkResult.get());
+			}
+		} catch (final InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IndeterminateEvaluationException("Interrupted while evaluating individual decision requests concurrently", XacmlStatusCode.PROCESSING_ERROR.value(), e);
+		} catch (final ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			if (cause instanceof IndeterminateEvaluationException)
+			{
+				throw (IndeterminateEvaluationException) cause;
+			}
+
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+
+			throw new IndeterminateEvaluationException("Error evaluating individual decision requests concurrently", XacmlStatusCode.PROCESSING_ERROR.value(), cause);
+		}
+
+		return resultsByRequest;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	public void close() throws IOException
 	{
+		if (batchEvaluationPool != null)
+		{
+			batchEvaluationPool.shutdown();
+		}
+
 		rootPolicyEvaluator.close();
 		if (decisionCache != null)
 		{
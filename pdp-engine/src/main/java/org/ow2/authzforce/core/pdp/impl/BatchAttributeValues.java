@@ -0,0 +1,84 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+
+/**
+ * Attribute values returned by attribute provider modules during the evaluation of the Individual Decision Requests of a given multiple decision request (batch), shared by these Individual Decision
+ * Requests. For instance, when a multiple decision request is about many resources for the same subject, the subject's attributes provided by a {@link KeyedAttributeProviderModule} depending only on
+ * the subject-id are requested from the module only once for the whole batch, instead of once per Individual Decision Request. Enabled by the PDP configuration (see
+ * {@link PdpEngineConfiguration#isBatchAttributeValueSharingEnabled()}); the results of modules not declaring their dependencies, or declaring none without being declared to the
+ * {@link AttributeValueCache}, are never shared.
+ * <p>
+ * Thread-safe, since Individual Decision Requests of the same batch may be evaluated concurrently.
+ */
+final class BatchAttributeValues
+{
+	/*
+	 * Key of this instance in the evaluation context (see EvaluationContext#getOther(String))
+	 */
+	private static final String CONTEXT_KEY = BatchAttributeValues.class.getName();
+
+	/**
+	 * Gets the values shared by the Individual Decision Requests of the same batch as the one being evaluated in a given context
+	 *
+	 * @param context
+	 *            evaluation context
+	 * @return shared values; null if the context is not part of a batch
+	 */
+	static BatchAttributeValues get(final EvaluationContext context)
+	{
+		return (BatchAttributeValues) context.getOther(CONTEXT_KEY);
+	}
+
+	private final Map<KeyedAttributeProviderModule.Key, AttributeBag<?>> bagsByKey = new ConcurrentHashMap<>();
+
+	/**
+	 * Makes this instance available to the attribute providers in a given evaluation context
+	 *
+	 * @param context
+	 *            context of one of the Individual Decision Requests of the batch
+	 */
+	void bindTo(final EvaluationContext context)
+	{
+		context.putOther(CONTEXT_KEY, this);
+	}
+
+	AttributeBag<?> get(final KeyedAttributeProviderModule.Key key)
+	{
+		return bagsByKey.get(key);
+	}
+
+	/**
+	 * Shares a bag of attribute values returned by an attribute provider module, unless null or empty because of an error (the module is called again for the other Individual Decision Requests)
+	 */
+	void put(final KeyedAttributeProviderModule.Key key, final AttributeBag<?> bag)
+	{
+		if (bag == null || bag.getReasonWhyEmpty() != null)
+		{
+			return;
+		}
+
+		bagsByKey.putIfAbsent(key, bag);
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.NamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+
+/**
+ * Attribute Provider (module) able to get the values of multiple attributes in a single operation, e.g. all the attributes of a subject in one round trip to a remote directory or database.
+ * <p>
+ * The PDP calls {@link #getAll(Set, EvaluationContext)} with all the attributes that may be needed to evaluate the root policy (see
+ * {@link org.ow2.authzforce.core.pdp.impl.policy.RootPolicyEvaluator#getAttributeDependencies()}, or the root policy resolved for the request if the root policy provider is dynamic) and are
+ * provided by this module only (no fall-back module), the first time an attribute provider module is needed during the evaluation of a given request, i.e. before the AttributeDesignators using
+ * these attributes are evaluated. The attributes that are not in the result, or whose values do not have the datatype of any AttributeDesignator using them, are requested later with
+ * {@link #get(org.ow2.authzforce.core.pdp.api.AttributeFqn, org.ow2.authzforce.core.pdp.api.value.Datatype, EvaluationContext)} as usual, if and when needed.
+ */
+public interface BulkNamedAttributeProvider extends NamedAttributeProvider
+{
+	/**
+	 * Gets the values of multiple attributes in a single operation
+	 *
+	 * @param attributeFqns
+	 *            names of the attributes to be fetched, all provided by this module
+	 * @param context
+	 *            individual decision request context
+	 * @return attribute values by attribute name; may not contain all {@code attributeFqns}, but must not contain any other attribute
+	 * @throws IndeterminateEvaluationException
+	 *             if the attribute values cannot be fetched; the attributes are then requested one by one later, if and when needed
+	 */
+	Map<AttributeFqn, AttributeBag<?>> getAll(Set<AttributeFqn> attributeFqns, EvaluationContext context) throws IndeterminateEvaluationException;
+}
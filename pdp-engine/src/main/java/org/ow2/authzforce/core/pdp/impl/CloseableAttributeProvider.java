@@ -21,6 +21,8 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import org.ow2.authzforce.core.pdp.api.AttributeFqn;
@@ -30,9 +32,14 @@ import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
 import org.ow2.authzforce.core.pdp.api.HashCollections;
 import org.ow2.authzforce.core.pdp.api.NamedAttributeProvider;
 import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
@@ -48,6 +55,7 @@ import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
  */
 public final class CloseableAttributeProvider extends ModularAttributeProvider implements Closeable
 {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CloseableAttributeProvider.class);
 
 	private static final class ModuleAdapter
 	{
@@ -115,15 +123,38 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 	private final Set<ModuleAdapter> moduleClosers;
 
 	private CloseableAttributeProvider(final ImmutableListMultimap<AttributeFqn, NamedAttributeProvider> modulesByAttributeId, final Set<ModuleAdapter> moduleClosers,
-	        final boolean strictAttributeIssuerMatch)
+	        final boolean strictAttributeIssuerMatch, final boolean asyncAttributePrefetch, final ImmutableMap<NamedAttributeProvider, KeyedAttributeProviderModule> keyedModules,
+	        final EvaluationMetricsRegistry evaluationMetricsRegistry)
 	{
-		super(modulesByAttributeId, null, strictAttributeIssuerMatch);
+		super(modulesByAttributeId, null, strictAttributeIssuerMatch, asyncAttributePrefetch, keyedModules, evaluationMetricsRegistry);
 		assert moduleClosers != null;
 		this.moduleClosers = moduleClosers;
 	}
 
 	private static final CloseableAttributeProvider EVALUATION_CONTEXT_ONLY_SCOPED_CLOSEABLE_ATTRIBUTE_PROVIDER = new CloseableAttributeProvider(ImmutableListMultimap.of(),
-	        Collections.<ModuleAdapter>emptySet(), true);
+	        Collections.<ModuleAdapter>emptySet(), true, false, ImmutableMap.of(), null);
+
+	/**
+	 * Instantiates attribute Provider that tries to find attribute values in evaluation context, then, if not there, query the {@code module} providing the requested attribute ID, if any. Same as
+	 * {@link #getInstance(List, AttributeValueFactoryRegistry, boolean, boolean, Optional, Optional)} with asynchronous attribute prefetching, attribute value cache and metrics disabled.
+	 *
+	 * @param attributeFactory
+	 *            (mandatory) attribute value factory
+	 * @param attributeProviderFactories
+	 *            Attribute Provider factories (Attribute Providers resolve values of attributes absent from the request context). Empty if none.
+	 * @return instance of this class
+	 * @param strictAttributeIssuerMatch
+	 *            true iff it is required that AttributeDesignator without Issuer only match request Attributes without Issuer.
+	 * @throws java.lang.IllegalArgumentException
+	 *             If any Attribute Provider created from {@code attributeProviderFactories} does not provide any attribute.
+	 * @throws java.io.IOException
+	 *             error closing the Attribute Providers created from {@code attributeProviderFactories}, when a {@link IllegalArgumentException} is raised
+	 */
+	public static CloseableAttributeProvider getInstance(final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories,
+	        final AttributeValueFactoryRegistry attributeFactory, final boolean strictAttributeIssuerMatch) throws IOException
+	{
+		return getInstance(attributeProviderFactories, attributeFactory, strictAttributeIssuerMatch, false, Optional.empty(), Optional.empty());
+	}
 
 	/**
 	 * Instantiates attribute Provider that tries to find attribute values in evaluation context, then, if not there, query the {@code module} providing the requested attribute ID, if any.
@@ -138,13 +169,22 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 	 *            the Issuer is not present; but it performs better and is recommended when all AttributeDesignators have an Issuer (best practice). Set it to false, if you want full compliance with
 	 *            the XACML 3.0 Attribute Evaluation: "If the Issuer is not present in the AttributeDesignator, then the matching of the attribute to the named attribute SHALL be governed by
 	 *            AttributeId and DataType attributes alone."
+	 * @param asyncAttributePrefetch
+	 *            true iff attributes declared with {@link #addPrefetchCandidate(AttributeFqn, org.ow2.authzforce.core.pdp.api.value.Datatype)}, provided by an {@link AsyncNamedAttributeProvider}
+	 *            module and used by the root policy (see {@link #setPrefetchedAttributes(Optional)}) are to be fetched concurrently, by group of attributes needed together
+	 * @param attributeValueCache
+	 *            (optional) cache of attribute values shared by all requests, caching the results of the modules declared to this cache and declaring their dependencies (see
+	 *            {@link AttributeValueCache})
+	 * @param evaluationMetricsRegistry
+	 *            (optional) registry of metrics where the lookups of each attribute and the calls to each module are recorded
 	 * @throws java.lang.IllegalArgumentException
 	 *             If any Attribute Provider created from {@code attributeProviderFactories} does not provide any attribute.
 	 * @throws java.io.IOException
 	 *             error closing the Attribute Providers created from {@code attributeProviderFactories}, when a {@link IllegalArgumentException} is raised
 	 */
 	public static CloseableAttributeProvider getInstance(final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories,
-	        final AttributeValueFactoryRegistry attributeFactory, final boolean strictAttributeIssuerMatch) throws IOException
+	        final AttributeValueFactoryRegistry attributeFactory, final boolean strictAttributeIssuerMatch, final boolean asyncAttributePrefetch,
+	        final Optional<AttributeValueCache> attributeValueCache, final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry) throws IOException
 	{
 		if (attributeProviderFactories == null || attributeProviderFactories.isEmpty())
 		{
@@ -154,6 +194,7 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 		final ListMultimap<AttributeFqn, NamedAttributeProvider> modulesByAttributeId = ArrayListMultimap.create();
 		final int moduleCount = attributeProviderFactories.size();
 		final Set<ModuleAdapter> mutableModuleCloserSet = HashCollections.newUpdatableSet(moduleCount);
+		final Map<NamedAttributeProvider, KeyedAttributeProviderModule> mutableKeyedModuleMap = HashCollections.newUpdatableMap(moduleCount);
 		for (final CloseableNamedAttributeProvider.DependencyAwareFactory attProviderFactory : attributeProviderFactories)
 		{
 			try
@@ -171,7 +212,11 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 				} else
 				{
 					final ImmutableListMultimap<AttributeFqn, NamedAttributeProvider> immutableCopyOfAttrProviderModsByAttrId = ImmutableListMultimap.copyOf(modulesByAttributeId);
-					depAttrProvider = new ModularAttributeProvider(immutableCopyOfAttrProviderModsByAttrId, requiredAttrs, strictAttributeIssuerMatch);
+					/*
+					 * No metrics here: the lookups of dependencies by modules are not lookups by the PDP
+					 */
+					depAttrProvider = new ModularAttributeProvider(immutableCopyOfAttrProviderModsByAttrId, requiredAttrs, strictAttributeIssuerMatch, false,
+					        ImmutableMap.copyOf(mutableKeyedModuleMap), null);
 				}
 
 				/*
@@ -179,6 +224,23 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 				 */
 				final ModuleAdapter moduleAdapter = new ModuleAdapter(attProviderFactory.getInstance(attributeFactory, depAttrProvider));
 				mutableModuleCloserSet.add(moduleAdapter);
+				/*
+				 * Results of modules declaring their dependencies may be shared with other evaluation contexts having the same values of these dependencies; and cached if the module is declared to
+				 * the attribute value cache (opt-in)
+				 */
+				final Optional<AttributeValueCache> moduleAttributeValueCache = attributeValueCache.filter(cache -> cache.isCached(attProviderFactory));
+				final KeyedAttributeProviderModule keyedModule = KeyedAttributeProviderModule.newInstance(moduleAdapter.getAdaptedModule(), requiredAttrs, depAttrProvider, attributeFactory,
+				        moduleAttributeValueCache.orElse(null));
+				if (keyedModule == null)
+				{
+					if (moduleAttributeValueCache.isPresent() && moduleAdapter.getProvidedAttributes().stream().anyMatch(attr -> moduleAttributeValueCache.get().isCached(AttributeFqns.newInstance(attr))))
+					{
+						LOGGER.warn("Attribute Provider module {} does not declare (supported) dependencies -> its results are not cached in the attribute value cache", moduleAdapter);
+					}
+				} else
+				{
+					mutableKeyedModuleMap.put(moduleAdapter.getAdaptedModule(), keyedModule);
+				}
 
 				for (final AttributeDesignatorType attrDesignator : moduleAdapter.getProvidedAttributes())
 				{
@@ -200,7 +262,8 @@ public final class CloseableAttributeProvider extends ModularAttributeProvider i
 			return EVALUATION_CONTEXT_ONLY_SCOPED_CLOSEABLE_ATTRIBUTE_PROVIDER;
 		}
 
-		return new CloseableAttributeProvider(ImmutableListMultimap.copyOf(modulesByAttributeId), HashCollections.newImmutableSet(mutableModuleCloserSet), strictAttributeIssuerMatch);
+		return new CloseableAttributeProvider(ImmutableListMultimap.copyOf(modulesByAttributeId), HashCollections.newImmutableSet(mutableModuleCloserSet), strictAttributeIssuerMatch,
+		        asyncAttributePrefetch, ImmutableMap.copyOf(mutableKeyedModuleMap), evaluationMetricsRegistry.orElse(null));
 	}
 
 	/** {@inheritDoc} */
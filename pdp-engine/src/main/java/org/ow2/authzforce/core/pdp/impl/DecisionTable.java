@@ -0,0 +1,352 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.ow2.authzforce.core.pdp.api.Decidable;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.DecisionResults;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.ow2.authzforce.core.pdp.impl.TargetIndex.DesignatorKey;
+import org.ow2.authzforce.core.pdp.impl.TargetIndex.EqualityMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Decision table compiled from a sequence of elements (e.g. Rules) combined by the first-applicable algorithm, where each element is applicable if and only if its Target matches (e.g. Rules without
+ * Condition), and each Target is a conjunction of one or two equality Matches (e.g. string-equal) comparing a constant AttributeValue to an AttributeDesignator, the AttributeDesignators being the
+ * same for all elements, as in generated access control lists. The position of the first element whose Target may match is looked up in hash tables keyed by the values of these AttributeDesignators,
+ * instead of evaluating the elements one after the other; then this element only is evaluated, so that the result (decision, PEP actions, etc.) is exactly the one of the first-applicable algorithm.
+ * <p>
+ * If the evaluation of an AttributeDesignator is Indeterminate (e.g. missing attribute with MustBePresent=true), the Targets of all elements are Indeterminate, except the ones with a Match on the
+ * other AttributeDesignator (if any) that is False (No-match). Therefore the first element that is not NotApplicable is the first element whose Match on the other AttributeDesignator is True, or the
+ * first element of the table if there is no other AttributeDesignator or if its evaluation is Indeterminate as well; and the evaluation of this element returns the Indeterminate result.
+ * <p>
+ * Note that the AttributeDesignators are evaluated before any element of the table, therefore possibly earlier than they would be without the table (e.g. by Attribute Providers).
+ * <p>
+ * The elements skipped by the table are not evaluated at all, therefore elements whose evaluation has side effects, e.g. Rules recording evaluation metrics, must not be part of a table.
+ *
+ * @param <T>
+ *            type of element
+ */
+public final class DecisionTable<T extends Decidable> implements Decidable
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(DecisionTable.class);
+
+	/**
+	 * Minimum number of consecutive elements for a decision table to be worth it
+	 */
+	private static final int MIN_ELEMENT_COUNT = 8;
+
+	/**
+	 * Maximum number of Matches (on distinct AttributeDesignators) in each element's Target
+	 */
+	private static final int MAX_KEY_DESIGNATOR_COUNT = 2;
+
+	/*
+	 * Position returned when no element may be applicable
+	 */
+	private static final int NO_ELEMENT = Integer.MAX_VALUE;
+
+	/**
+	 * Get the equality Matches of a Target if the Target is a conjunction of equality Matches on distinct AttributeDesignators, at most {@value #MAX_KEY_DESIGNATOR_COUNT}, i.e. each AnyOf has a single
+	 * AllOf made of such Matches only (AllOf and Target have the same semantics when they are conjunctions of Matches)
+	 *
+	 * @return equality Matches by AttributeDesignator; or null if the Target is not such a conjunction
+	 */
+	private static Map<DesignatorKey, EqualityMatch> getKeyMatches(final BooleanEvaluator targetEvaluator)
+	{
+		final List<AnyOfEvaluator> anyOfs = TargetEvaluators.getAnyOfEvaluators(targetEvaluator);
+		if (anyOfs.isEmpty())
+		{
+			return null;
+		}
+
+		// preserve order of declaration of the Matches
+		final Map<DesignatorKey, EqualityMatch> keyMatches = new LinkedHashMap<>();
+		for (final AnyOfEvaluator anyOf : anyOfs)
+		{
+			final List<AllOfEvaluator> allOfs = anyOf.getAllOfEvaluators();
+			if (allOfs.size() != 1)
+			{
+				return null;
+			}
+
+			for (final MatchEvaluator match : allOfs.get(0).getMatchEvaluators())
+			{
+				final EqualityMatch equalityMatch = match.getEqualityMatch().orElse(null);
+				if (equalityMatch == null || keyMatches.putIfAbsent(equalityMatch.getDesignatorKey(), equalityMatch) != null || keyMatches.size() > MAX_KEY_DESIGNATOR_COUNT)
+				{
+					return null;
+				}
+			}
+		}
+
+		return keyMatches;
+	}
+
+	private static <T extends Decidable> void addRun(final List<T> runElements, final List<Map<DesignatorKey, EqualityMatch>> runKeyMatches, final List<Decidable> outElements)
+	{
+		if (runElements.size() < MIN_ELEMENT_COUNT)
+		{
+			outElements.addAll(runElements);
+		}
+		else
+		{
+			outElements.add(new DecisionTable<>(runElements, runKeyMatches));
+		}
+
+		runElements.clear();
+		runKeyMatches.clear();
+	}
+
+	/**
+	 * Compiles the runs of consecutive elements that fit in a decision table (see {@link DecisionTable}), into decision tables
+	 *
+	 * @param elements
+	 *            elements combined by the first-applicable algorithm, in order of evaluation
+	 * @param targetEvaluators
+	 *            Target evaluators of {@code elements} (same order), null item if the applicability of the corresponding element does not depend only on its Target (e.g. Rule with Condition), in
+	 *            which case the element is never part of a decision table
+	 * @return elements to be evaluated by the first-applicable algorithm instead of {@code elements}, in order of evaluation, i.e. {@code elements} where the runs of at least
+	 *         {@value #MIN_ELEMENT_COUNT} elements fitting in a decision table are replaced with decision tables
+	 */
+	public static <T extends Decidable> List<Decidable> compile(final List<T> elements, final List<BooleanEvaluator> targetEvaluators)
+	{
+		assert elements != null && targetEvaluators != null && elements.size() == targetEvaluators.size();
+
+		final List<Decidable> compiledElements = new ArrayList<>(elements.size());
+		final List<T> runElements = new ArrayList<>();
+		final List<Map<DesignatorKey, EqualityMatch>> runKeyMatches = new ArrayList<>();
+		int elementIndex = 0;
+		for (final T element : elements)
+		{
+			final BooleanEvaluator targetEvaluator = targetEvaluators.get(elementIndex);
+			elementIndex++;
+			final Map<DesignatorKey, EqualityMatch> keyMatches = targetEvaluator == null ? null : getKeyMatches(targetEvaluator);
+			if (keyMatches == null)
+			{
+				addRun(runElements, runKeyMatches, compiledElements);
+				compiledElements.add(element);
+				continue;
+			}
+
+			if (!runKeyMatches.isEmpty() && !runKeyMatches.get(0).keySet().equals(keyMatches.keySet()))
+			{
+				// not the same AttributeDesignators -> new run
+				addRun(runElements, runKeyMatches, compiledElements);
+			}
+
+			runElements.add(element);
+			runKeyMatches.add(keyMatches);
+		}
+
+		addRun(runElements, runKeyMatches, compiledElements);
+		return compiledElements;
+	}
+
+	private final ImmutableList<T> elements;
+	private final ImmutableList<DesignatorKey> keyDesignators;
+	// evaluators of the keyDesignators (same order)
+	private final ImmutableList<Expression<?>> keyDesignatorExpressions;
+	// for each of the keyDesignators (same order), position of the first element by value of the designator in the element's Match
+	private final ImmutableList<Map<AttributeValue, Integer>> firstPositionsByValueByDesignator;
+	// position of the first element by values of the keyDesignators (same order) in the element's Matches; null if a single designator
+	private final Map<List<AttributeValue>, Integer> firstPositionsByValues;
+	private final transient String toString;
+
+	private DecisionTable(final List<T> elements, final List<Map<DesignatorKey, EqualityMatch>> keyMatchesByElement)
+	{
+		assert elements.size() == keyMatchesByElement.size() && !elements.isEmpty();
+
+		this.elements = ImmutableList.copyOf(elements);
+		final ImmutableList.Builder<DesignatorKey> keyDesignatorsBuilder = ImmutableList.builder();
+		final ImmutableList.Builder<Expression<?>> keyDesignatorExpressionsBuilder = ImmutableList.builder();
+		for (final Entry<DesignatorKey, EqualityMatch> keyMatch : keyMatchesByElement.get(0).entrySet())
+		{
+			keyDesignatorsBuilder.add(keyMatch.getKey());
+			keyDesignatorExpressionsBuilder.add(keyMatch.getValue().getDesignatorExpression());
+		}
+
+		this.keyDesignators = keyDesignatorsBuilder.build();
+		this.keyDesignatorExpressions = keyDesignatorExpressionsBuilder.build();
+
+		final List<Map<AttributeValue, Integer>> mutableFirstPositionsByValueByDesignator = new ArrayList<>(keyDesignators.size());
+		for (int i = 0; i < keyDesignators.size(); i++)
+		{
+			mutableFirstPositionsByValueByDesignator.add(HashCollections.newUpdatableMap());
+		}
+
+		final Map<List<AttributeValue>, Integer> mutableFirstPositionsByValues = keyDesignators.size() > 1 ? HashCollections.newUpdatableMap() : null;
+		int position = 0;
+		for (final Map<DesignatorKey, EqualityMatch> keyMatches : keyMatchesByElement)
+		{
+			final Integer boxedPosition = position;
+			final AttributeValue[] values = new AttributeValue[keyDesignators.size()];
+			for (int i = 0; i < values.length; i++)
+			{
+				values[i] = keyMatches.get(keyDesignators.get(i)).getValue();
+				// keep the first element only, the next ones with same value are never the first applicable
+				mutableFirstPositionsByValueByDesignator.get(i).putIfAbsent(values[i], boxedPosition);
+			}
+
+			final Integer firstPositionWithSameValues = mutableFirstPositionsByValues == null ? mutableFirstPositionsByValueByDesignator.get(0).get(values[0])
+			        : mutableFirstPositionsByValues.computeIfAbsent(ImmutableList.copyOf(values), k -> boxedPosition);
+			if (firstPositionWithSameValues.intValue() != position)
+			{
+				LOGGER.warn("Decision table on {}: {} is never applicable since it has the same Target as a previous element", keyDesignators, elements.get(position));
+			}
+
+			position++;
+		}
+
+		final ImmutableList.Builder<Map<AttributeValue, Integer>> firstPositionsByValueByDesignatorBuilder = ImmutableList.builder();
+		for (final Map<AttributeValue, Integer> firstPositionsByValue : mutableFirstPositionsByValueByDesignator)
+		{
+			firstPositionsByValueByDesignatorBuilder.add(HashCollections.newImmutableMap(firstPositionsByValue));
+		}
+
+		this.firstPositionsByValueByDesignator = firstPositionsByValueByDesignatorBuilder.build();
+		this.firstPositionsByValues = mutableFirstPositionsByValues == null ? null : HashCollections.newImmutableMap(mutableFirstPositionsByValues);
+		this.toString = "DecisionTable[" + this.elements.get(0) + ".." + this.elements.get(this.elements.size() - 1) + " on " + keyDesignators + "]";
+		LOGGER.debug("First-applicable elements compiled into {} ({} elements)", this, this.elements.size());
+	}
+
+	/*
+	 * Null if Indeterminate
+	 */
+	private Bag<?> evaluateKeyDesignator(final int designatorIndex, final EvaluationContext context)
+	{
+		try
+		{
+			return (Bag<?>) keyDesignatorExpressions.get(designatorIndex).evaluate(context);
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			LOGGER.debug("{}: {} -> Indeterminate", this, keyDesignators.get(designatorIndex), e);
+			return null;
+		}
+	}
+
+	/*
+	 * Position of the first element whose Match on a given designator is True
+	 */
+	private int getFirstPosition(final int designatorIndex, final Bag<?> designatorValues)
+	{
+		final Map<AttributeValue, Integer> firstPositionsByValue = firstPositionsByValueByDesignator.get(designatorIndex);
+		int firstPosition = NO_ELEMENT;
+		for (final AttributeValue value : designatorValues)
+		{
+			final Integer position = firstPositionsByValue.get(value);
+			if (position != null && position < firstPosition)
+			{
+				firstPosition = position;
+			}
+		}
+
+		return firstPosition;
+	}
+
+	/*
+	 * Position of the first element whose Matches on both designators are True
+	 */
+	private int getFirstPosition(final Bag<?> designator0Values, final Bag<?> designator1Values)
+	{
+		final Map<AttributeValue, Integer> firstPositionsByDesignator0Value = firstPositionsByValueByDesignator.get(0);
+		int firstPosition = NO_ELEMENT;
+		for (final AttributeValue value0 : designator0Values)
+		{
+			/*
+			 * The first element matching value0 on designator 0 is a lower bound
+			 */
+			final Integer lowerBound = firstPositionsByDesignator0Value.get(value0);
+			if (lowerBound == null || lowerBound >= firstPosition)
+			{
+				continue;
+			}
+
+			for (final AttributeValue value1 : designator1Values)
+			{
+				final Integer position = firstPositionsByValues.get(Arrays.asList(value0, value1));
+				if (position != null && position < firstPosition)
+				{
+					firstPosition = position;
+				}
+			}
+		}
+
+		return firstPosition;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Returns the result of the first applicable element, or NotApplicable if none.
+	 */
+	@Override
+	public DecisionResult evaluate(final EvaluationContext context)
+	{
+		final Bag<?> designator0Values = evaluateKeyDesignator(0, context);
+		final int firstPosition;
+		if (firstPositionsByValues == null)
+		{
+			firstPosition = designator0Values == null ? 0 : getFirstPosition(0, designator0Values);
+		}
+		else
+		{
+			final Bag<?> designator1Values = evaluateKeyDesignator(1, context);
+			if (designator0Values == null)
+			{
+				firstPosition = designator1Values == null ? 0 : getFirstPosition(1, designator1Values);
+			}
+			else
+			{
+				firstPosition = designator1Values == null ? getFirstPosition(0, designator0Values) : getFirstPosition(designator0Values, designator1Values);
+			}
+		}
+
+		if (firstPosition == NO_ELEMENT)
+		{
+			LOGGER.debug("{} -> no applicable element -> NotApplicable", this);
+			return DecisionResults.SIMPLE_NOT_APPLICABLE;
+		}
+
+		final T element = elements.get(firstPosition);
+		LOGGER.debug("{} -> first element that may be applicable: {}", this, element);
+		return element.evaluate(context);
+	}
+
+	@Override
+	public String toString()
+	{
+		return toString;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+
+/**
+ * Allocator of integer slots (array indexes) addressing VariableDefinition values and request-scoped policy evaluation results in {@link IndividualDecisionRequestContext}, as an alternative to
+ * String-keyed lookups ({@link EvaluationContext#getVariableValue(String, org.ow2.authzforce.core.pdp.api.value.Datatype)}, {@link EvaluationContext#getOther(String)}, etc.). Slots are meant to be
+ * assigned once at policy loading time, then used by the evaluators on every request, which removes hashing and {@link String#equals(Object)} calls from the evaluation.
+ * <p>
+ * One instance is owned by each PDP engine (more precisely by its expression factory, see {@link org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory#getEvaluationContextSlots()}),
+ * and slots are assigned densely from 0 per distinct VariableId, respectively per distinct policy (type, ID, version), so that reloading the same policies reuses the same slots. Therefore the number
+ * of slots (and size of the slot arrays in the engine's evaluation contexts) is bounded by the number of distinct VariableIds and policies loaded by this engine. Slots of different instances must not
+ * be mixed: an evaluator may only use its slots on a context created with the same instance (see {@link IndividualDecisionRequestContext#isSlottedBy(EvaluationContextSlots)}), and must use the
+ * String-keyed methods otherwise.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class EvaluationContextSlots
+{
+	/**
+	 * Value returned by lookup methods when no slot is assigned to the requested key
+	 */
+	public static final int UNASSIGNED_SLOT = -1;
+
+	private final AtomicInteger variableSlotCounter = new AtomicInteger(0);
+	private final ConcurrentMap<String, Integer> variableSlotsById = new ConcurrentHashMap<>();
+
+	private final AtomicInteger policySlotCounter = new AtomicInteger(0);
+	private final ConcurrentMap<String, Integer> policySlotsByKey = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the slot assigned to a given VariableId, assigning a new one if none yet. To be called at policy loading time, not during evaluation.
+	 *
+	 * @param variableId
+	 *            VariableId
+	 * @return slot (positive or zero)
+	 */
+	public int assignVariableSlot(final String variableId)
+	{
+		assert variableId != null;
+		return variableSlotsById.computeIfAbsent(variableId, id -> variableSlotCounter.getAndIncrement());
+	}
+
+	/**
+	 * Gets the slot assigned to a given VariableId, if any
+	 *
+	 * @param variableId
+	 *            VariableId
+	 * @return slot (positive or zero) or {@link #UNASSIGNED_SLOT} if none assigned
+	 */
+	public int getVariableSlot(final String variableId)
+	{
+		assert variableId != null;
+		final Integer slot = variableSlotsById.get(variableId);
+		return slot == null ? UNASSIGNED_SLOT : slot;
+	}
+
+	/**
+	 * Gets the slot assigned to a given policy, assigning a new one if none yet. To be called at policy loading time, not during evaluation.
+	 *
+	 * @param policyMetadata
+	 *            policy (type, ID, version)
+	 * @return slot (positive or zero)
+	 */
+	public int assignPolicySlot(final PrimaryPolicyMetadata policyMetadata)
+	{
+		assert policyMetadata != null;
+		final String key = policyMetadata.getType() + "[" + policyMetadata.getId() + "#v" + policyMetadata.getVersion() + "]";
+		return policySlotsByKey.computeIfAbsent(key, k -> policySlotCounter.getAndIncrement());
+	}
+
+	/**
+	 * Gets the number of variable slots assigned so far, i.e. the size of a variable slot array able to hold all of them
+	 *
+	 * @return number of variable slots
+	 */
+	public int getVariableSlotCount()
+	{
+		return variableSlotCounter.get();
+	}
+
+	/**
+	 * Gets the number of policy slots assigned so far, i.e. the size of a policy slot array able to hold all of them
+	 *
+	 * @return number of policy slots
+	 */
+	public int getPolicySlotCount()
+	{
+		return policySlotCounter.get();
+	}
+}
@@ -0,0 +1,624 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.DecisionCache;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.EnvironmentProperties;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.expression.AttributeSelectorExpression;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.ow2.authzforce.core.pdp.api.value.XPathValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * In-memory {@link DecisionCache}, bounded in size (least recently used entries evicted first) and with time-to-live expiry. Entries are spread over independently locked segments to limit contention
+ * between concurrent evaluations.
+ * <p>
+ * Cache keys are made only of the named attributes that the policies actually look up during evaluation, plus the ReturnPolicyIdList flag. These attributes are learnt from
+ * {@link EvaluationContext.Listener} notifications, therefore this cache requires the evaluation context (see {@link #isEvaluationContextRequired()}). Whenever an evaluation looks up an attribute
+ * that is not yet part of the key attributes, the set of key attributes is extended and the entries keyed on the previous set are no longer matched (they expire eventually). Requests with extra
+ * Content (Attributes/Content) are never cached since AttributeSelector results are not part of the key. Likewise, results depending on attributes resolved by attribute providers (as opposed to
+ * attributes from the request) are never cached, since provider results may change for the same request; and Indeterminate results are never cached, since they may be caused by transient errors.
+ * <p>
+ * Hit, miss and eviction counters are available for monitoring.
+ *
+ * @version $Id: $
+ */
+public final class InMemoryDecisionCache implements DecisionCache
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryDecisionCache.class);
+
+	private static final IllegalArgumentException ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid maxEntries for decision cache: must be > 0");
+	private static final IllegalArgumentException ILLEGAL_TTL_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid timeToLiveSeconds for decision cache: must be >= 0");
+	private static final IllegalArgumentException ILLEGAL_CONCURRENCY_LEVEL_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid concurrencyLevel for decision cache: must be > 0");
+
+	private static final int MAX_SEGMENT_COUNT = 1 << 16;
+
+	/**
+	 * Set of attributes used as cache keys, with generation number incremented every time the set is extended.
+	 */
+	private static final class KeySchema
+	{
+		private final long generation;
+		private final Set<AttributeFqn> attributeFqns;
+
+		private KeySchema(final long generation, final Set<AttributeFqn> attributeFqns)
+		{
+			this.generation = generation;
+			this.attributeFqns = attributeFqns;
+		}
+	}
+
+	private static final KeySchema INITIAL_KEY_SCHEMA = new KeySchema(0, Collections.emptySet());
+
+	private static final class CacheKey
+	{
+		private final long schemaGeneration;
+		private final boolean applicablePolicyIdListRequested;
+		private final Map<AttributeFqn, AttributeBag<?>> attributes;
+		private final int hashCode;
+
+		private CacheKey(final long schemaGeneration, final boolean applicablePolicyIdListRequested, final Map<AttributeFqn, AttributeBag<?>> attributes)
+		{
+			this.schemaGeneration = schemaGeneration;
+			this.applicablePolicyIdListRequested = applicablePolicyIdListRequested;
+			this.attributes = attributes;
+			this.hashCode = 31 * (31 * Long.hashCode(schemaGeneration) + Boolean.hashCode(applicablePolicyIdListRequested)) + attributes.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof CacheKey))
+			{
+				return false;
+			}
+
+			final CacheKey other = (CacheKey) obj;
+			return this.hashCode == other.hashCode && this.schemaGeneration == other.schemaGeneration && this.applicablePolicyIdListRequested == other.applicablePolicyIdListRequested
+					&& this.attributes.equals(other.attributes);
+		}
+	}
+
+	private static final class CachedResult
+	{
+		private final DecisionResult result;
+		private final long creationNanoTime;
+
+		private CachedResult(final DecisionResult result, final long creationNanoTime)
+		{
+			this.result = result;
+			this.creationNanoTime = creationNanoTime;
+		}
+	}
+
+	/**
+	 * Cache segment: access-ordered map evicting the least recently used entry when full. Must be accessed only while holding the lock on the segment itself.
+	 */
+	private static final class Segment extends LinkedHashMap<CacheKey, CachedResult>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+		private final transient LongAdder evictionCounter;
+
+		private Segment(final int maxEntries, final LongAdder evictionCounter)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.evictionCounter = evictionCounter;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Entry<CacheKey, CachedResult> eldest)
+		{
+			if (size() > maxEntries)
+			{
+				evictionCounter.increment();
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Records the named attributes looked up during the evaluation of a given request, and the key used for the cache lookup before evaluation
+	 */
+	private static final class KeyAttributeCollector implements EvaluationContext.Listener
+	{
+		private final KeySchema keySchema;
+		private final CacheKey cacheKey;
+		private final Set<AttributeFqn> usedAttributeFqns = HashCollections.newUpdatableSet();
+		private boolean attributeSelectorUsed = false;
+
+		private KeyAttributeCollector(final KeySchema keySchema, final CacheKey cacheKey)
+		{
+			this.keySchema = keySchema;
+			this.cacheKey = cacheKey;
+		}
+
+		@Override
+		public <AV extends AttributeValue> void namedAttributeValueConsumed(final AttributeFqn attributeFqn, final AttributeBag<AV> value)
+		{
+			usedAttributeFqns.add(attributeFqn);
+		}
+
+		@Override
+		public <AV extends AttributeValue> void namedAttributeValueProduced(final AttributeFqn attributeFqn, final AttributeBag<AV> value)
+		{
+			usedAttributeFqns.add(attributeFqn);
+		}
+
+		@Override
+		public <AV extends AttributeValue> void attributeSelectorResultConsumed(final AttributeSelectorExpression<AV> attributeSelector, final Bag<AV> value)
+		{
+			attributeSelectorUsed = true;
+		}
+
+		@Override
+		public <AV extends AttributeValue> void attributeSelectorResultProduced(final AttributeSelectorExpression<AV> attributeSelector, final Optional<AttributeBag<XPathValue>> contextSelectorValue,
+				final Bag<AV> value)
+		{
+			attributeSelectorUsed = true;
+		}
+	}
+
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final long timeToLiveNanos;
+	private final AtomicReference<KeySchema> keySchemaRef = new AtomicReference<>(INITIAL_KEY_SCHEMA);
+
+	private final LongAdder hitCounter = new LongAdder();
+	private final LongAdder missCounter = new LongAdder();
+	private final LongAdder evictionCounter = new LongAdder();
+
+	/**
+	 * Creates cache instance
+	 *
+	 * @param maxEntries
+	 *            maximum number of entries in the cache (strictly positive)
+	 * @param timeToLiveSeconds
+	 *            time-to-live of entries in seconds; 0 means no expiry
+	 * @param concurrencyLevel
+	 *            estimated number of concurrent threads, used as number of independently locked segments (rounded up to the next power of two, and at most {@code maxEntries})
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries <= 0 || timeToLiveSeconds < 0 || concurrencyLevel <= 0}
+	 */
+	public InMemoryDecisionCache(final int maxEntries, final long timeToLiveSeconds, final int concurrencyLevel) throws IllegalArgumentException
+	{
+		if (maxEntries <= 0)
+		{
+			throw ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION;
+		}
+
+		if (timeToLiveSeconds < 0)
+		{
+			throw ILLEGAL_TTL_ARGUMENT_EXCEPTION;
+		}
+
+		if (concurrencyLevel <= 0)
+		{
+			throw ILLEGAL_CONCURRENCY_LEVEL_ARGUMENT_EXCEPTION;
+		}
+
+		int segmentCount = 1;
+		while (segmentCount < concurrencyLevel && segmentCount < maxEntries && segmentCount < MAX_SEGMENT_COUNT)
+		{
+			segmentCount <<= 1;
+		}
+
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		/*
+		 * Spread maxEntries over the segments so that the total never exceeds maxEntries
+		 */
+		final int maxEntriesPerSegment = Math.max(1, maxEntries / segmentCount);
+		for (int i = 0; i < segmentCount; i++)
+		{
+			this.segments[i] = new Segment(maxEntriesPerSegment, evictionCounter);
+		}
+
+		this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+	}
+
+	private Segment getSegment(final CacheKey key)
+	{
+		final int h = key.hashCode;
+		return segments[(h ^ (h >>> 16)) & segmentMask];
+	}
+
+	private boolean isExpired(final CachedResult cachedResult, final long nowNanos)
+	{
+		return timeToLiveNanos > 0 && nowNanos - cachedResult.creationNanoTime >= timeToLiveNanos;
+	}
+
+	/*
+	 * namedAttributesIterator: the named attributes known before evaluation, from the evaluation context or the request
+	 */
+	private static CacheKey newCacheKey(final KeySchema keySchema, final Iterator<Entry<AttributeFqn, AttributeBag<?>>> namedAttributesIterator, final boolean applicablePolicyIdListRequested)
+	{
+		final Map<AttributeFqn, AttributeBag<?>> keyAttributes = HashCollections.newUpdatableMap(keySchema.attributeFqns.size());
+		while (namedAttributesIterator.hasNext())
+		{
+			final Entry<AttributeFqn, AttributeBag<?>> namedAttribute = namedAttributesIterator.next();
+			if (keySchema.attributeFqns.contains(namedAttribute.getKey()))
+			{
+				keyAttributes.put(namedAttribute.getKey(), namedAttribute.getValue());
+			}
+		}
+
+		return new CacheKey(keySchema.generation, applicablePolicyIdListRequested, keyAttributes);
+	}
+
+	/*
+	 * Gets the result cached for the key, unless expired (then removed)
+	 */
+	private CachedResult getUnexpired(final CacheKey key)
+	{
+		final Segment segment = getSegment(key);
+		final long nowNanos = System.nanoTime();
+		synchronized (segment)
+		{
+			final CachedResult entry = segment.get(key);
+			if (entry != null && isExpired(entry, nowNanos))
+			{
+				segment.remove(key);
+				evictionCounter.increment();
+				return null;
+			}
+
+			return entry;
+		}
+	}
+
+	private static boolean hasExtraContents(final DecisionRequest request)
+	{
+		final Map<String, ?> extraContents = request.getExtraContentsByCategory();
+		return extraContents != null && !extraContents.isEmpty();
+	}
+
+	/**
+	 * Extends the key schema with new attributes
+	 */
+	private void extendKeySchema(final Set<AttributeFqn> newAttributeFqns)
+	{
+		while (true)
+		{
+			final KeySchema oldSchema = keySchemaRef.get();
+			if (oldSchema.attributeFqns.containsAll(newAttributeFqns))
+			{
+				return;
+			}
+
+			final Set<AttributeFqn> extendedAttributeFqns = HashCollections.newImmutableSet(oldSchema.attributeFqns, newAttributeFqns);
+			if (keySchemaRef.compareAndSet(oldSchema, new KeySchema(oldSchema.generation + 1, extendedAttributeFqns)))
+			{
+				LOGGER.debug("Decision cache key attributes extended to: {}", extendedAttributeFqns);
+				return;
+			}
+		}
+	}
+
+	@Override
+	public boolean isEvaluationContextRequired()
+	{
+		return true;
+	}
+
+	@Override
+	public DecisionResult get(final DecisionRequest request, final EvaluationContext evalCtx)
+	{
+		if (evalCtx == null)
+		{
+			return null;
+		}
+
+		if (hasExtraContents(request))
+		{
+			LOGGER.debug("Request has extra Content -> not using decision cache");
+			return null;
+		}
+
+		final KeySchema keySchema = keySchemaRef.get();
+		final CacheKey key = newCacheKey(keySchema, evalCtx.getNamedAttributes(), evalCtx.isApplicablePolicyIdListRequested());
+		final CachedResult cachedResult = getUnexpired(key);
+		if (cachedResult == null)
+		{
+			missCounter.increment();
+			/*
+			 * Collect the attributes used by the evaluation to follow, for put()
+			 */
+			evalCtx.putListener(KeyAttributeCollector.class, new KeyAttributeCollector(keySchema, key));
+			return null;
+		}
+
+		hitCounter.increment();
+		return cachedResult.result;
+	}
+
+	@Override
+	public void put(final DecisionRequest request, final DecisionResult result, final EvaluationContext evalCtx)
+	{
+		if (evalCtx == null || result == null)
+		{
+			return;
+		}
+
+		if (result.getDecision() == DecisionType.INDETERMINATE)
+		{
+			LOGGER.debug("Indeterminate result -> not caching result");
+			return;
+		}
+
+		final KeyAttributeCollector keyAttributeCollector = evalCtx.getListener(KeyAttributeCollector.class);
+		if (keyAttributeCollector == null)
+		{
+			// get() did not try the cache for this request
+			return;
+		}
+
+		if (keyAttributeCollector.attributeSelectorUsed)
+		{
+			LOGGER.debug("AttributeSelector used during evaluation -> not caching result");
+			return;
+		}
+
+		if (ModularAttributeProvider.isProviderModuleRequested(evalCtx))
+		{
+			LOGGER.debug("Attribute(s) resolved by attribute provider(s) used during evaluation -> not caching result");
+			return;
+		}
+
+		if (!keyAttributeCollector.keySchema.attributeFqns.containsAll(keyAttributeCollector.usedAttributeFqns))
+		{
+			/*
+			 * The key computed before evaluation does not cover all the attributes that the result depends on. The result is not cached this time, but the next requests will use the extended
+			 * key.
+			 */
+			extendKeySchema(keyAttributeCollector.usedAttributeFqns);
+			return;
+		}
+
+		final CacheKey key = keyAttributeCollector.cacheKey;
+		final Segment segment = getSegment(key);
+		final CachedResult newEntry = new CachedResult(result, System.nanoTime());
+		synchronized (segment)
+		{
+			segment.put(key, newEntry);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This cache requires the evaluation context (see {@link #isEvaluationContextRequired()}), therefore this method is not used by the PDP engine. It looks up the results cached by
+	 * {@link #put(DecisionRequest, DecisionResult, EvaluationContext)}, the key attributes being taken from the requests instead of the evaluation contexts. Requests with extra Content and requests
+	 * without cached result are not in the returned map.
+	 */
+	@Override
+	public <REQ extends DecisionRequest> Map<REQ, DecisionResult> getAll(final List<REQ> requests)
+	{
+		final KeySchema keySchema = keySchemaRef.get();
+		final Map<REQ, DecisionResult> resultsByRequest = HashCollections.newUpdatableMap(requests.size());
+		for (final REQ request : requests)
+		{
+			if (hasExtraContents(request))
+			{
+				LOGGER.debug("Request has extra Content -> not using decision cache");
+				continue;
+			}
+
+			final CachedResult cachedResult = getUnexpired(newCacheKey(keySchema, request.getNamedAttributes().entrySet().iterator(), request.isApplicablePolicyIdListReturned()));
+			if (cachedResult == null)
+			{
+				missCounter.increment();
+			}
+			else
+			{
+				hitCounter.increment();
+				resultsByRequest.put(request, cachedResult.result);
+			}
+		}
+
+		return resultsByRequest;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This cache requires the evaluation context (see {@link #isEvaluationContextRequired()}), therefore this method is not used by the PDP engine. It does nothing: without the evaluation
+	 * context, the attributes that a result depends on, and whether attribute providers were used, are unknown, so the result cannot be cached safely. Results are cached by
+	 * {@link #put(DecisionRequest, DecisionResult, EvaluationContext)} only.
+	 */
+	@Override
+	public <REQ extends DecisionRequest> void putAll(final Map<REQ, DecisionResult> resultsByRequest)
+	{
+		LOGGER.debug("Decision cache requires the evaluation context -> not caching results without context");
+	}
+
+	/**
+	 * Invalidates all entries, e.g. when the policies have changed. The generation of the key attributes is incremented (and the set of key attributes reset), so that the results of evaluations in
+	 * progress, put in the cache after this call, are never matched either.
+	 */
+	public void invalidateAll()
+	{
+		while (true)
+		{
+			final KeySchema oldSchema = keySchemaRef.get();
+			if (keySchemaRef.compareAndSet(oldSchema, new KeySchema(oldSchema.generation + 1, Collections.emptySet())))
+			{
+				break;
+			}
+		}
+
+		for (final Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+
+		LOGGER.debug("Decision cache invalidated");
+	}
+
+	/**
+	 * Get number of cache hits since creation
+	 *
+	 * @return hit count
+	 */
+	public long getHitCount()
+	{
+		return hitCounter.sum();
+	}
+
+	/**
+	 * Get number of cache misses since creation
+	 *
+	 * @return miss count
+	 */
+	public long getMissCount()
+	{
+		return missCounter.sum();
+	}
+
+	/**
+	 * Get number of entries evicted since creation, because of either size limit or expiry
+	 *
+	 * @return eviction count
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCounter.sum();
+	}
+
+	/**
+	 * Get current number of entries in cache (including expired entries not evicted yet)
+	 *
+	 * @return cache size
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (final Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+
+	@Override
+	public void close()
+	{
+		LOGGER.debug("Closing decision cache (hits = {}, misses = {}, evictions = {})", hitCounter, missCounter, evictionCounter);
+		for (final Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * {@link InMemoryDecisionCache} factory
+	 *
+	 */
+	public static final class Factory extends DecisionCache.Factory<org.ow2.authzforce.core.xmlns.pdp.InMemoryDecisionCache>
+	{
+		private static final IllegalArgumentException ILLEGAL_JAXBCONF_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined DecisionCache configuration (JAXB/XML)");
+
+		private static int intValueExact(final BigInteger value, final String paramName) throws IllegalArgumentException
+		{
+			try
+			{
+				return value.intValueExact();
+			} catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid " + paramName + ": " + value, e);
+			}
+		}
+
+		@Override
+		public Class<org.ow2.authzforce.core.xmlns.pdp.InMemoryDecisionCache> getJaxbClass()
+		{
+			return org.ow2.authzforce.core.xmlns.pdp.InMemoryDecisionCache.class;
+		}
+
+		@Override
+		public DecisionCache getInstance(final org.ow2.authzforce.core.xmlns.pdp.InMemoryDecisionCache jaxbConf, final AttributeValueFactoryRegistry attributeValueFactories,
+				final EnvironmentProperties environmentProperties)
+		{
+			if (jaxbConf == null)
+			{
+				throw ILLEGAL_JAXBCONF_ARGUMENT_EXCEPTION;
+			}
+
+			final BigInteger ttl = jaxbConf.getTimeToLiveSeconds();
+			final long timeToLiveSeconds;
+			try
+			{
+				timeToLiveSeconds = ttl.longValueExact();
+			} catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid timeToLiveSeconds: " + ttl, e);
+			}
+
+			return new InMemoryDecisionCache(intValueExact(jaxbConf.getMaxEntries(), "maxEntries"), timeToLiveSeconds, intValueExact(jaxbConf.getConcurrencyLevel(), "concurrencyLevel"));
+		}
+	}
+}
@@ -17,6 +17,7 @@
  */
 package org.ow2.authzforce.core.pdp.impl;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Map;
@@ -65,6 +66,10 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	 */
 	private static final Logger LOGGER = LoggerFactory.getLogger(IndividualDecisionRequestContext.class);
 
+	private static final Value[] NO_VALUES = {};
+
+	private static final Object[] NO_OBJECTS = {};
+
 	private final Map<AttributeFqn, AttributeBag<?>> namedAttributes;
 
 	/*
@@ -72,20 +77,104 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	 * Content in Request or no feature requiring XPath evaluation against Content is supported/enabled.
 	 */
 	// Not null
-	private final Map<String, XdmNode> extraContentsByAttributeCategory;
+	private Map<String, XdmNode> extraContentsByAttributeCategory;
 
 	/*
 	 * AttributeSelector evaluation results. Not null
 	 */
-	private final UpdatableMap<AttributeSelectorId, Bag<?>> attributeSelectorResults;
+	private UpdatableMap<AttributeSelectorId, Bag<?>> attributeSelectorResults;
 
-	private final Map<String, Value> varValsById = HashCollections.newMutableMap();
+	/*
+	 * Allocator of the slots used by this context (those of the PDP engine that created it). Null iff slots are not supported, in which case all variables are kept in varValsById.
+	 */
+	private final EvaluationContextSlots slots;
+
+	/*
+	 * Variable values indexed by slot (see EvaluationContextSlots), sized from the number of slots assigned by this.slots (grown on demand if more slots have been assigned since). Not null
+	 */
+	private Value[] varValsBySlot = NO_VALUES;
+
+	/*
+	 * Number of leading elements of varValsBySlot that may be set, i.e. the range to be cleared on release()
+	 */
+	private int usedVarSlotCount = 0;
+
+	/*
+	 * Request-scoped policy evaluation results indexed by slot (see EvaluationContextSlots), sized the same way as varValsBySlot. Not null
+	 */
+	private Object[] policyEvalResultsBySlot = NO_OBJECTS;
+
+	/*
+	 * Number of leading elements of policyEvalResultsBySlot that may be set, i.e. the range to be cleared on release()
+	 */
+	private int usedPolicySlotCount = 0;
+
+	/*
+	 * Values of variables without any slot assigned by this.slots (e.g. set by extensions or by evaluators of another PDP engine). Created on first use. Null iff no such variable.
+	 */
+	private Map<String, Value> varValsById = null;
 
 	private final Map<String, Object> mutableProperties = HashCollections.newMutableMap();
 
-	private final boolean returnApplicablePolicyIdList;
+	private boolean returnApplicablePolicyIdList;
 
-	private final ClassToInstanceMap<Listener> listeners = MutableClassToInstanceMap.create();
+	/*
+	 * Created on first call to putListener(), since most contexts do not have any listener. Null iff no listener.
+	 */
+	private ClassToInstanceMap<Listener> listeners = null;
+
+	/*
+	 * True iff this context is reusable (see newReusableInstance()) and currently acquired (see acquire()/release())
+	 */
+	private boolean acquired = false;
+
+	/*
+	 * Takes ownership of updatableNamedAttributeMap (no copy)
+	 */
+	private IndividualDecisionRequestContext(final Map<AttributeFqn, AttributeBag<?>> updatableNamedAttributeMap, final EvaluationContextSlots slots)
+	{
+		assert updatableNamedAttributeMap != null;
+		this.namedAttributes = updatableNamedAttributeMap;
+		this.slots = slots;
+		ensureSlotCapacity();
+	}
+
+	/*
+	 * Makes sure the slot arrays can hold all the slots assigned so far, without growing them during evaluation
+	 */
+	private void ensureSlotCapacity()
+	{
+		if (slots == null)
+		{
+			return;
+		}
+
+		final int varSlotCount = slots.getVariableSlotCount();
+		if (varValsBySlot.length < varSlotCount)
+		{
+			varValsBySlot = Arrays.copyOf(varValsBySlot, varSlotCount);
+		}
+
+		final int policySlotCount = slots.getPolicySlotCount();
+		if (policyEvalResultsBySlot.length < policySlotCount)
+		{
+			policyEvalResultsBySlot = Arrays.copyOf(policyEvalResultsBySlot, policySlotCount);
+		}
+	}
+
+	private void setRequestProperties(final Map<String, XdmNode> extraContentsByCategory, final boolean returnApplicablePolicyIdList)
+	{
+		this.returnApplicablePolicyIdList = returnApplicablePolicyIdList;
+		if (extraContentsByCategory == null)
+		{
+			this.extraContentsByAttributeCategory = Collections.emptyMap();
+			this.attributeSelectorResults = UpdatableCollections.emptyMap();
+		} else
+		{
+			this.extraContentsByAttributeCategory = extraContentsByCategory;
+			this.attributeSelectorResults = UpdatableCollections.newUpdatableMap();
+		}
+	}
 
 	/**
 	 * Constructs a new <code>IndividualDecisionRequestContext</code> based on the given request attributes and extra contents with support for XPath evaluation against Content element in Attributes
@@ -100,18 +189,92 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	 */
 	public IndividualDecisionRequestContext(final Map<AttributeFqn, AttributeBag<?>> namedAttributeMap, final Map<String, XdmNode> extraContentsByCategory, final boolean returnApplicablePolicyIdList)
 	{
-		this.namedAttributes = namedAttributeMap == null ? HashCollections.<AttributeFqn, AttributeBag<?>>newUpdatableMap()
-				: HashCollections.<AttributeFqn, AttributeBag<?>>newUpdatableMap(namedAttributeMap);
-		this.returnApplicablePolicyIdList = returnApplicablePolicyIdList;
-		if (extraContentsByCategory == null)
+		this(namedAttributeMap == null ? HashCollections.<AttributeFqn, AttributeBag<?>>newUpdatableMap() : HashCollections.<AttributeFqn, AttributeBag<?>>newUpdatableMap(namedAttributeMap), null);
+		setRequestProperties(extraContentsByCategory, returnApplicablePolicyIdList);
+	}
+
+	/**
+	 * Creates a new context using the given named attribute map directly (without defensive copy), i.e. the caller hands over the map and must not use it afterwards.
+	 *
+	 * @param updatableNamedAttributeMap
+	 *            updatable named attribute map (not null), to be owned by the new context
+	 * @param extraContentsByCategory
+	 *            extra contents by attribute category; null iff no Content in the attribute category.
+	 * @param returnApplicablePolicyIdList
+	 *            true iff list of IDs of policies matched during evaluation must be returned
+	 * @param slots
+	 *            allocator of the slots used by the evaluators of the PDP engine evaluating the request; null if none
+	 * @return new context
+	 */
+	static IndividualDecisionRequestContext wrap(final Map<AttributeFqn, AttributeBag<?>> updatableNamedAttributeMap, final Map<String, XdmNode> extraContentsByCategory,
+			final boolean returnApplicablePolicyIdList, final EvaluationContextSlots slots)
+	{
+		final IndividualDecisionRequestContext ctx = new IndividualDecisionRequestContext(updatableNamedAttributeMap, slots);
+		ctx.setRequestProperties(extraContentsByCategory, returnApplicablePolicyIdList);
+		return ctx;
+	}
+
+	/**
+	 * Creates a reusable context, to be {@link #acquire(Map, boolean)}d before each Individual Decision Request evaluation, and {@link #release()}d after. Such context is meant to be pooled, e.g.
+	 * one per thread, to avoid allocating new internal maps for each Individual Decision Request: they are only cleared between evaluations, and keep their capacity.
+	 *
+	 * @param slots
+	 *            allocator of the slots used by the evaluators of the PDP engine owning the context; null if none
+	 * @return new reusable context
+	 */
+	static IndividualDecisionRequestContext newReusableInstance(final EvaluationContextSlots slots)
+	{
+		final IndividualDecisionRequestContext ctx = new IndividualDecisionRequestContext(HashCollections.<AttributeFqn, AttributeBag<?>>newUpdatableMap(), slots);
+		ctx.setRequestProperties(null, false);
+		return ctx;
+	}
+
+	/**
+	 * Acquires this (reusable) context for a new Individual Decision Request evaluation. The named attributes of the request must be put in the returned map before evaluation.
+	 *
+	 * @param extraContentsByCategory
+	 *            extra contents by attribute category; null iff no Content in the attribute category.
+	 * @param returnApplicablePolicyIdList
+	 *            true iff list of IDs of policies matched during evaluation must be returned
+	 * @return (empty) updatable named attribute map of this context; or null if this context is already acquired (not released yet), e.g. in case of nested evaluation in the same thread.
+	 */
+	Map<AttributeFqn, AttributeBag<?>> acquire(final Map<String, XdmNode> extraContentsByCategory, final boolean returnApplicablePolicyIdList)
+	{
+		if (acquired)
 		{
-			this.extraContentsByAttributeCategory = Collections.emptyMap();
-			this.attributeSelectorResults = UpdatableCollections.emptyMap();
-		} else
+			return null;
+		}
+
+		acquired = true;
+		// more slots may have been assigned since last evaluation, e.g. after a policy reload
+		ensureSlotCapacity();
+		setRequestProperties(extraContentsByCategory, returnApplicablePolicyIdList);
+		return namedAttributes;
+	}
+
+	/**
+	 * Releases this context after evaluation, i.e. clears all request-specific state (not to retain any reference to request data) and makes it available for next {@link #acquire(Map, boolean)}
+	 */
+	void release()
+	{
+		namedAttributes.clear();
+		Arrays.fill(varValsBySlot, 0, usedVarSlotCount, null);
+		usedVarSlotCount = 0;
+		Arrays.fill(policyEvalResultsBySlot, 0, usedPolicySlotCount, null);
+		usedPolicySlotCount = 0;
+		if (varValsById != null)
 		{
-			this.extraContentsByAttributeCategory = extraContentsByCategory;
-			this.attributeSelectorResults = UpdatableCollections.newUpdatableMap();
+			varValsById.clear();
+		}
+
+		mutableProperties.clear();
+		if (listeners != null)
+		{
+			listeners.clear();
 		}
+
+		setRequestProperties(null, false);
+		acquired = false;
 	}
 
 	/** {@inheritDoc} */
@@ -136,7 +299,11 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 		 * If datatype classes match, bagResult should have same type as datatypeClass.
 		 */
 		final AttributeBag<AV> result = (AttributeBag<AV>) bagResult;
-		this.listeners.forEach((lt, l) -> l.namedAttributeValueConsumed(attributeFqn, result));
+		if (this.listeners != null)
+		{
+			this.listeners.forEach((lt, l) -> l.namedAttributeValueConsumed(attributeFqn, result));
+		}
+
 		return result;
 	}
 
@@ -155,7 +322,11 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 			return false;
 		}
 
-		this.listeners.forEach((lt, l) -> l.namedAttributeValueProduced(attributeFqn, result));
+		if (this.listeners != null)
+		{
+			this.listeners.forEach((lt, l) -> l.namedAttributeValueProduced(attributeFqn, result));
+		}
+
 		/*
 		 * Attribute value cannot change during evaluation context, so if old value already there, put it back
 		 */
@@ -193,7 +364,11 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 		 * If datatype classes match, bagResult should has same type as datatypeClass.
 		 */
 		final Bag<AV> result = expectedBagDatatype.cast(bagResult);
-		this.listeners.forEach((lt, l) -> l.attributeSelectorResultConsumed(attributeSelector, result));
+		if (this.listeners != null)
+		{
+			this.listeners.forEach((lt, l) -> l.attributeSelectorResultConsumed(attributeSelector, result));
+		}
+
 		return result;
 	}
 
@@ -208,23 +383,132 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 			return false;
 		}
 
-		for (final Listener listener : this.listeners.values())
+		if (this.listeners != null)
+		{
+			for (final Listener listener : this.listeners.values())
+			{
+				final Optional<AttributeFqn> optionalContextSelectorFQN = attributeSelector.getContextSelectorFQN();
+				final Optional<AttributeBag<XPathValue>> contextSelectorValue = optionalContextSelectorFQN.isPresent()
+						? Optional.of(getNamedAttributeValue(optionalContextSelectorFQN.get(), StandardDatatypes.XPATH))
+						: Optional.empty();
+				listener.attributeSelectorResultProduced(attributeSelector, contextSelectorValue, result);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks whether this context uses the slots of a given allocator, i.e. whether the slots assigned by {@code slotAllocator} may be used with the slot-based methods of this context
+	 *
+	 * @param slotAllocator
+	 *            slot allocator
+	 * @return true iff this context has been created with {@code slotAllocator}
+	 */
+	public boolean isSlottedBy(final EvaluationContextSlots slotAllocator)
+	{
+		return slotAllocator != null && this.slots == slotAllocator;
+	}
+
+	/**
+	 * Gets the value of a variable by its slot (see {@link EvaluationContextSlots#assignVariableSlot(String)}), equivalent to {@link #getVariableValue(String, Datatype)} but without any variableId
+	 * lookup
+	 *
+	 * @param slot
+	 *            slot assigned to the variable
+	 * @param variableId
+	 *            variable ID (only used in error messages)
+	 * @param expectedDatatype
+	 *            expected datatype of the variable value
+	 * @return value of the variable; or null if not set in this context
+	 * @throws IndeterminateEvaluationException
+	 *             if the datatype of the value in context does not match {@code expectedDatatype}
+	 */
+	public <V extends Value> V getVariableValue(final int slot, final String variableId, final Datatype<V> expectedDatatype) throws IndeterminateEvaluationException
+	{
+		assert slot >= 0;
+		final Value val = slot < varValsBySlot.length ? varValsBySlot[slot] : null;
+		if (val == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return expectedDatatype.cast(val);
+		} catch (final ClassCastException e)
+		{
+			throw new IndeterminateEvaluationException("Datatype of variable '" + variableId + "' in context does not match expected datatype: " + expectedDatatype,
+					XacmlStatusCode.PROCESSING_ERROR.value(), e);
+		}
+	}
+
+	/**
+	 * Sets the value of a variable by its slot (see {@link EvaluationContextSlots#assignVariableSlot(String)}) if not already set, equivalent to {@link #putVariableIfAbsent(String, Value)} but without
+	 * any variableId lookup
+	 *
+	 * @param slot
+	 *            slot assigned to the variable
+	 * @param variableId
+	 *            variable ID (only used in log messages)
+	 * @param value
+	 *            variable value
+	 * @return false iff the variable value was already set (and therefore not changed)
+	 */
+	public boolean putVariableIfAbsent(final int slot, final String variableId, final Value value)
+	{
+		assert slot >= 0;
+		if (slot >= varValsBySlot.length)
+		{
+			// slot assigned after this context was last acquired (policy loaded meanwhile)
+			varValsBySlot = Arrays.copyOf(varValsBySlot, Math.max(slot + 1, slots == null ? 0 : slots.getVariableSlotCount()));
+		}
+		else if (varValsBySlot[slot] != null)
+		{
+			LOGGER.error("Attempt to override value of Variable '{}' already set in evaluation context. Overriding value: {}", variableId, value);
+			return false;
+		}
+
+		varValsBySlot[slot] = value;
+		if (slot >= usedVarSlotCount)
 		{
-			final Optional<AttributeFqn> optionalContextSelectorFQN = attributeSelector.getContextSelectorFQN();
-			final Optional<AttributeBag<XPathValue>> contextSelectorValue = optionalContextSelectorFQN.isPresent()
-					? Optional.of(getNamedAttributeValue(optionalContextSelectorFQN.get(), StandardDatatypes.XPATH))
-					: Optional.empty();
-			listener.attributeSelectorResultProduced(attributeSelector, contextSelectorValue, result);
+			usedVarSlotCount = slot + 1;
 		}
 
 		return true;
 	}
 
+	/**
+	 * Removes the value of a variable by its slot (see {@link EvaluationContextSlots#assignVariableSlot(String)}), equivalent to {@link #removeVariable(String)} but without any variableId lookup
+	 *
+	 * @param slot
+	 *            slot assigned to the variable
+	 * @return the removed value; or null if the variable was not set
+	 */
+	public Value removeVariable(final int slot)
+	{
+		assert slot >= 0;
+		if (slot >= varValsBySlot.length)
+		{
+			return null;
+		}
+
+		final Value val = varValsBySlot[slot];
+		varValsBySlot[slot] = null;
+		return val;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public <V extends Value> V getVariableValue(final String variableId, final Datatype<V> expectedDatatype) throws IndeterminateEvaluationException
 	{
-		final Value val = varValsById.get(variableId);
+		final int slot = slots == null ? EvaluationContextSlots.UNASSIGNED_SLOT : slots.getVariableSlot(variableId);
+		if (slot != EvaluationContextSlots.UNASSIGNED_SLOT)
+		{
+			return getVariableValue(slot, variableId, expectedDatatype);
+		}
+
+		final Value val = varValsById == null ? null : varValsById.get(variableId);
 		if (val == null)
 		{
 			return null;
@@ -244,7 +528,22 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	@Override
 	public boolean putVariableIfAbsent(final String variableId, final Value value)
 	{
-		if (varValsById.putIfAbsent(variableId, value) != null)
+		/*
+		 * Slots are only assigned at policy loading time, never during evaluation
+		 */
+		final int slot = slots == null ? EvaluationContextSlots.UNASSIGNED_SLOT : slots.getVariableSlot(variableId);
+		if (slot != EvaluationContextSlots.UNASSIGNED_SLOT)
+		{
+			return putVariableIfAbsent(slot, variableId, value);
+		}
+
+		if (varValsById == null)
+		{
+			varValsById = HashCollections.newMutableMap();
+		}
+
+		final Value prevValue = varValsById.putIfAbsent(variableId, value);
+		if (prevValue != null)
 		{
 			LOGGER.error("Attempt to override value of Variable '{}' already set in evaluation context. Overriding value: {}", variableId, value);
 			return false;
@@ -257,7 +556,50 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	@Override
 	public Value removeVariable(final String variableId)
 	{
-		return varValsById.remove(variableId);
+		final int slot = slots == null ? EvaluationContextSlots.UNASSIGNED_SLOT : slots.getVariableSlot(variableId);
+		if (slot != EvaluationContextSlots.UNASSIGNED_SLOT)
+		{
+			return removeVariable(slot);
+		}
+
+		return varValsById == null ? null : varValsById.remove(variableId);
+	}
+
+	/**
+	 * Gets the request-scoped evaluation results of a policy, cached by the policy evaluator in this context
+	 *
+	 * @param slot
+	 *            slot assigned to the policy (see {@link EvaluationContextSlots#assignPolicySlot(org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata)})
+	 * @return policy evaluation results; or null if none
+	 */
+	public Object getPolicyEvaluationResults(final int slot)
+	{
+		assert slot >= 0;
+		return slot < policyEvalResultsBySlot.length ? policyEvalResultsBySlot[slot] : null;
+	}
+
+	/**
+	 * Sets the request-scoped evaluation results of a policy, to be cached in this context
+	 *
+	 * @param slot
+	 *            slot assigned to the policy (see {@link EvaluationContextSlots#assignPolicySlot(org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata)})
+	 * @param results
+	 *            policy evaluation results
+	 */
+	public void putPolicyEvaluationResults(final int slot, final Object results)
+	{
+		assert slot >= 0;
+		if (slot >= policyEvalResultsBySlot.length)
+		{
+			// slot assigned after this context was last acquired (policy loaded meanwhile)
+			policyEvalResultsBySlot = Arrays.copyOf(policyEvalResultsBySlot, Math.max(slot + 1, slots == null ? 0 : slots.getPolicySlotCount()));
+		}
+
+		policyEvalResultsBySlot[slot] = results;
+		if (slot >= usedPolicySlotCount)
+		{
+			usedPolicySlotCount = slot + 1;
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -305,12 +647,17 @@ public final class IndividualDecisionRequestContext implements EvaluationContext
 	@Override
 	public <L extends Listener> L putListener(final Class<L> listenerType, final L listener)
 	{
+		if (this.listeners == null)
+		{
+			this.listeners = MutableClassToInstanceMap.create();
+		}
+
 		return this.listeners.putInstance(listenerType, listener);
 	}
 
 	@Override
 	public <L extends Listener> L getListener(final Class<L> listenerType)
 	{
-		return this.listeners.getInstance(listenerType);
+		return this.listeners == null ? null : this.listeners.getInstance(listenerType);
 	}
 }
\ No newline at end of file
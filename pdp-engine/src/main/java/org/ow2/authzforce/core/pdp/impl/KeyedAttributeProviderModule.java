@@ -0,0 +1,301 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.AttributeProvider;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.NamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactory;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+
+/**
+ * Attribute provider module declaring its dependencies (required attributes), therefore whose results are assumed to depend only on the values of these attributes (the key attributes, e.g.
+ * subject-id). Such results may be shared beyond the evaluation context (request) where they were obtained, with any other evaluation context where the key attributes have the same values: with the
+ * other Individual Decision Requests of the same multiple decision request (see {@link BatchAttributeValues}), and with all requests if the module and attribute are cached in the
+ * {@link AttributeValueCache}.
+ * <p>
+ * A module declaring no dependency (empty set), as opposed to not declaring its dependencies (null), would have the same key for all requests. Since such a declaration often means only that the
+ * module does not need other modules, not that its results are the same for all requests, its results are shared only if the module is explicitly declared to the {@link AttributeValueCache}.
+ */
+final class KeyedAttributeProviderModule
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(KeyedAttributeProviderModule.class);
+
+	/**
+	 * Key of a result of the module: the module, the requested attribute and the values of the key attributes
+	 */
+	static final class Key
+	{
+		private final KeyedAttributeProviderModule module;
+		private final AttributeFqn attributeFqn;
+		private final Datatype<?> datatype;
+		private final List<AttributeBag<?>> keyAttributeValues;
+		private final int hashCode;
+
+		private Key(final KeyedAttributeProviderModule module, final AttributeFqn attributeFqn, final Datatype<?> datatype, final List<AttributeBag<?>> keyAttributeValues)
+		{
+			this.module = module;
+			this.attributeFqn = attributeFqn;
+			this.datatype = datatype;
+			this.keyAttributeValues = keyAttributeValues;
+			this.hashCode = 31 * (31 * (31 * System.identityHashCode(module) + attributeFqn.hashCode()) + datatype.hashCode()) + keyAttributeValues.hashCode();
+		}
+
+		AttributeFqn getAttributeFqn()
+		{
+			return attributeFqn;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+
+			final Key other = (Key) obj;
+			return this.hashCode == other.hashCode && this.module == other.module && this.attributeFqn.equals(other.attributeFqn) && this.datatype.equals(other.datatype)
+					&& this.keyAttributeValues.equals(other.keyAttributeValues);
+		}
+	}
+
+	private static final class KeyAttribute<AV extends AttributeValue>
+	{
+		private final AttributeFqn attributeFqn;
+		private final Datatype<AV> datatype;
+
+		private KeyAttribute(final AttributeFqn attributeFqn, final Datatype<AV> datatype)
+		{
+			this.attributeFqn = attributeFqn;
+			this.datatype = datatype;
+		}
+
+		private AttributeBag<AV> resolve(final AttributeProvider keyAttributeProvider, final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			return keyAttributeProvider.get(attributeFqn, datatype, context);
+		}
+	}
+
+	private static <AV extends AttributeValue> KeyAttribute<AV> newKeyAttribute(final AttributeFqn attributeFqn, final AttributeValueFactory<AV> attributeValueFactory)
+	{
+		return new KeyAttribute<>(attributeFqn, attributeValueFactory.getDatatype());
+	}
+
+	private final NamedAttributeProvider module;
+	private final AttributeProvider keyAttributeProvider;
+	private final List<KeyAttribute<?>> keyAttributes;
+	/*
+	 * Null if no attribute value cache
+	 */
+	private final AttributeValueCache attributeValueCache;
+
+	private KeyedAttributeProviderModule(final NamedAttributeProvider module, final AttributeProvider keyAttributeProvider, final List<KeyAttribute<?>> keyAttributes,
+			final AttributeValueCache attributeValueCache)
+	{
+		this.module = module;
+		this.keyAttributeProvider = keyAttributeProvider;
+		this.keyAttributes = keyAttributes;
+		this.attributeValueCache = attributeValueCache;
+	}
+
+	/**
+	 * Creates instance
+	 *
+	 * @param module
+	 *            attribute provider module
+	 * @param keyAttributes
+	 *            attributes required by {@code module} (dependencies), i.e. the key attributes of its results; null if undeclared
+	 * @param keyAttributeProvider
+	 *            provider of the key attributes, i.e. dependency attribute provider of {@code module}
+	 * @param attributeFactory
+	 *            attribute value factory, used to get the datatypes of the key attributes
+	 * @param attributeValueCache
+	 *            attribute value cache shared by all requests, if {@code module} is declared to be cached in it; else null
+	 * @return keyed module; or null if {@code keyAttributes} is null (undeclared dependencies), or empty and {@code attributeValueCache} is null, or the datatype of a key attribute is not supported,
+	 *         in which case the results of {@code module} cannot be shared beyond the current evaluation context
+	 */
+	static KeyedAttributeProviderModule newInstance(final NamedAttributeProvider module, final Set<AttributeDesignatorType> keyAttributes, final AttributeProvider keyAttributeProvider,
+			final AttributeValueFactoryRegistry attributeFactory, final AttributeValueCache attributeValueCache)
+	{
+		if (keyAttributes == null)
+		{
+			LOGGER.debug("Attribute Provider module {} does not declare its dependencies (required attributes) -> its results are not shared across evaluation contexts", module);
+			return null;
+		}
+
+		if (keyAttributes.isEmpty())
+		{
+			if (attributeValueCache == null)
+			{
+				LOGGER.debug("Attribute Provider module {} declares no dependency (required attribute) and is not declared in the attribute value cache -> its results are not shared across evaluation contexts",
+						module);
+				return null;
+			}
+
+			LOGGER.info("Attribute Provider module {} declares no dependency (required attribute) -> its results of cached attributes are cached regardless of the request", module);
+		}
+
+		final ImmutableList.Builder<KeyAttribute<?>> keyAttributeListBuilder = ImmutableList.builder();
+		for (final AttributeDesignatorType keyAttribute : keyAttributes)
+		{
+			final AttributeValueFactory<?> keyAttributeValueFactory = attributeFactory.getExtension(keyAttribute.getDataType());
+			if (keyAttributeValueFactory == null)
+			{
+				LOGGER.warn("Unsupported datatype ({}) of attribute {} required by Attribute Provider module {} -> its results are not shared across evaluation contexts",
+						keyAttribute.getDataType(), keyAttribute.getAttributeId(), module);
+				return null;
+			}
+
+			keyAttributeListBuilder.add(newKeyAttribute(AttributeFqns.newInstance(keyAttribute), keyAttributeValueFactory));
+		}
+
+		return new KeyedAttributeProviderModule(module, keyAttributeProvider, keyAttributeListBuilder.build(), attributeValueCache);
+	}
+
+	/*
+	 * Null if a key attribute cannot be resolved (error)
+	 */
+	private Key newKey(final AttributeFqn attributeFqn, final Datatype<?> datatype, final EvaluationContext context) throws IndeterminateEvaluationException
+	{
+		final List<AttributeBag<?>> keyAttributeValues = new ArrayList<>(keyAttributes.size());
+		for (final KeyAttribute<?> keyAttribute : keyAttributes)
+		{
+			final AttributeBag<?> keyAttributeValue = keyAttribute.resolve(keyAttributeProvider, context);
+			if (keyAttributeValue == null || keyAttributeValue.getReasonWhyEmpty() != null)
+			{
+				return null;
+			}
+
+			keyAttributeValues.add(keyAttributeValue);
+		}
+
+		return new Key(this, attributeFqn, datatype, keyAttributeValues);
+	}
+
+	/**
+	 * Gets the values of an attribute from the values shared with other evaluation contexts if there, i.e. from the values of the other Individual Decision Requests of the same multiple decision
+	 * request (if any), then from the attribute value cache (if the attribute is cached), else from the module, and shares the result the same way
+	 *
+	 * @param attributeFqn
+	 *            attribute name
+	 * @param datatype
+	 *            attribute datatype
+	 * @param context
+	 *            evaluation context
+	 * @return attribute values
+	 * @throws IndeterminateEvaluationException
+	 *             error getting the values from the module
+	 */
+	<AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context) throws IndeterminateEvaluationException
+	{
+		final BatchAttributeValues batchAttributeValues = BatchAttributeValues.get(context);
+		final boolean cached = attributeValueCache != null && attributeValueCache.isCached(attributeFqn);
+		if (batchAttributeValues == null && !cached)
+		{
+			return module.get(attributeFqn, datatype, context);
+		}
+
+		final Key key = newKey(attributeFqn, datatype, context);
+		if (key == null)
+		{
+			/*
+			 * Key attribute not resolved (error) -> the result cannot be shared; let the module handle the error
+			 */
+			return module.get(attributeFqn, datatype, context);
+		}
+
+		if (batchAttributeValues != null)
+		{
+			final AttributeBag<?> sharedBag = batchAttributeValues.get(key);
+			if (sharedBag != null)
+			{
+				LOGGER.debug("Values of attribute {}, type={} from attribute Provider module {} found in values shared by Individual Decision Requests: {}", attributeFqn, datatype, module,
+						sharedBag);
+				/*
+				 * The datatype is part of the key
+				 */
+				@SuppressWarnings("unchecked")
+				final AttributeBag<AV> result = (AttributeBag<AV>) sharedBag;
+				return result;
+			}
+		}
+
+		final AttributeBag<AV> result;
+		if (cached)
+		{
+			final AttributeBag<?> cachedBag = attributeValueCache.get(key);
+			if (cachedBag == null)
+			{
+				result = module.get(attributeFqn, datatype, context);
+				attributeValueCache.put(key, result);
+			}
+			else
+			{
+				LOGGER.debug("Values of attribute {}, type={} from attribute Provider module {} found in attribute value cache: {}", attributeFqn, datatype, module, cachedBag);
+				@SuppressWarnings("unchecked")
+				final AttributeBag<AV> castCachedBag = (AttributeBag<AV>) cachedBag;
+				result = castCachedBag;
+			}
+		}
+		else
+		{
+			result = module.get(attributeFqn, datatype, context);
+		}
+
+		if (batchAttributeValues != null)
+		{
+			batchAttributeValues.put(key, result);
+		}
+
+		return result;
+	}
+
+	@Override
+	public String toString()
+	{
+		return module.toString();
+	}
+}
@@ -18,7 +18,10 @@
 package org.ow2.authzforce.core.pdp.impl;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import net.sf.saxon.s9api.XPathCompiler;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
@@ -31,14 +34,25 @@ import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
 import org.ow2.authzforce.core.pdp.api.expression.Expression;
 import org.ow2.authzforce.core.pdp.api.expression.ExpressionFactory;
 import org.ow2.authzforce.core.pdp.api.expression.FunctionExpression;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
 import org.ow2.authzforce.core.pdp.api.func.Function;
 import org.ow2.authzforce.core.pdp.api.func.FunctionCall;
+import org.ow2.authzforce.core.pdp.api.value.AnyUriValue;
 import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
 import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
 import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * XACML Match evaluator. This is the part of the Target that actually evaluates whether the specified attribute values in the Target match the corresponding attribute values in the request context.
+ * <p>
+ * A Match is equivalent to a call to the standard 'any-of' function, which is the way it is evaluated in general. However, the most common Matches - equality, string/anyURI starts-with and
+ * regexp-match functions with a constant AttributeValue - are evaluated by a specific loop over the bag of attribute values instead, without going through the generic higher-order function call.
  *
  * @version $Id: $
  */
@@ -49,11 +63,204 @@ public final class MatchEvaluator
 	private static final IllegalArgumentException NULL_XACML_EXPRESSION_FACTORY_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined input XACML Expression parser");
 
 	/**
-	 * Any-of function call equivalent to this Match:
+	 * IDs of standard equality functions for which the function result is true iff the two arguments are equal according to {@link AttributeValue#equals(Object)} (consistent with
+	 * {@link AttributeValue#hashCode()}), i.e. suitable for hash-based indexing. Other equality functions (date/time, double, etc.) are excluded on purpose because of timezone/precision subtleties.
+	 */
+	private static final Set<String> INDEXABLE_EQUALITY_FUNCTION_IDS = ImmutableSet.of(StandardFunction.STRING_EQUAL.getId(), StandardFunction.BOOLEAN_EQUAL.getId(),
+	        StandardFunction.INTEGER_EQUAL.getId(), StandardFunction.ANYURI_EQUAL.getId());
+
+	/**
+	 * IDs of standard regexp-match functions, i.e. taking a string regular expression as first argument
+	 */
+	private static final Set<String> REGEXP_MATCH_FUNCTION_IDS = ImmutableSet.of(StandardFunction.STRING_REGEXP_MATCH.getId(), StandardFunction.ANYURI_REGEXP_MATCH.getId(),
+	        StandardFunction.IPADDRESS_REGEXP_MATCH.getId(), StandardFunction.DNSNAME_REGEXP_MATCH.getId(), StandardFunction.RFC822NAME_REGEXP_MATCH.getId(),
+	        StandardFunction.X500NAME_REGEXP_MATCH.getId());
+
+	private static final String MATCH_EVAL_ERROR_MESSAGE = "Error evaluating Match (with equivalent 'any-of' function)";
+
+	/**
+	 * Match evaluation strategy
+	 */
+	private interface MatchCall
+	{
+		boolean match(EvaluationContext context) throws IndeterminateEvaluationException;
+	}
+
+	/**
+	 * Generic Match evaluation with the equivalent any-of function call
+	 */
+	private static final class AnyOfMatchCall implements MatchCall
+	{
+		private final FunctionCall<BooleanValue> anyOfFuncCall;
+
+		private AnyOfMatchCall(final FunctionCall<BooleanValue> anyOfFuncCall)
+		{
+			this.anyOfFuncCall = anyOfFuncCall;
+		}
+
+		@Override
+		public boolean match(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			final BooleanValue anyOfFuncCallResult;
+			try
+			{
+				anyOfFuncCallResult = anyOfFuncCall.evaluate(context);
+			}
+			catch (final IndeterminateEvaluationException e)
+			{
+				throw new IndeterminateEvaluationException(MATCH_EVAL_ERROR_MESSAGE, e.getStatusCode(), e);
+			}
+
+			return anyOfFuncCallResult.getUnderlyingValue().booleanValue();
+		}
+	}
+
+	/**
+	 * Match evaluated by looping directly over the bag of attribute values (from AttributeDesignator/AttributeSelector), until one of them matches the constant AttributeValue
+	 */
+	private static abstract class BagLoopMatchCall implements MatchCall
+	{
+		private final Expression<?> bagExpression;
+
+		private BagLoopMatchCall(final Expression<?> bagExpression)
+		{
+			this.bagExpression = bagExpression;
+		}
+
+		/**
+		 * Matches one of the values in the bag against the Match's constant AttributeValue
+		 */
+		protected abstract boolean match(AttributeValue bagElement, EvaluationContext context) throws IndeterminateEvaluationException;
+
+		@Override
+		public final boolean match(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			final Bag<?> bag;
+			try
+			{
+				bag = (Bag<?>) bagExpression.evaluate(context);
+				for (final AttributeValue bagElement : bag)
+				{
+					if (match(bagElement, context))
+					{
+						return true;
+					}
+				}
+			}
+			catch (final IndeterminateEvaluationException e)
+			{
+				throw new IndeterminateEvaluationException(MATCH_EVAL_ERROR_MESSAGE, e.getStatusCode(), e);
+			}
+
+			return false;
+		}
+	}
+
+	private static final class EqualMatchCall extends BagLoopMatchCall
+	{
+		private final AttributeValue constantValue;
+
+		private EqualMatchCall(final AttributeValue constantValue, final Expression<?> bagExpression)
+		{
+			super(bagExpression);
+			this.constantValue = constantValue;
+		}
+
+		@Override
+		protected boolean match(final AttributeValue bagElement, final EvaluationContext context)
+		{
+			return constantValue.equals(bagElement);
+		}
+	}
+
+	/**
+	 * string-starts-with / anyURI-starts-with Match (the constant AttributeValue is the prefix)
+	 */
+	private static final class StartsWithMatchCall extends BagLoopMatchCall
+	{
+		private final String prefix;
+		private final boolean anyUriBag;
+
+		private StartsWithMatchCall(final StringValue prefix, final Expression<?> bagExpression, final boolean anyUriBag)
+		{
+			super(bagExpression);
+			this.prefix = prefix.getUnderlyingValue();
+			this.anyUriBag = anyUriBag;
+		}
+
+		@Override
+		protected boolean match(final AttributeValue bagElement, final EvaluationContext context)
+		{
+			final String value = anyUriBag ? ((AnyUriValue) bagElement).getUnderlyingValue() : ((StringValue) bagElement).getUnderlyingValue();
+			return value.startsWith(prefix);
+		}
+	}
+
+	/**
+	 * regexp-match Match, with the regular expression (constant AttributeValue) compiled once and for all in the regexp-match function call
+	 */
+	private static final class RegexpMatchCall extends BagLoopMatchCall
+	{
+		private final FirstOrderFunctionCall<BooleanValue> compiledRegexMatchCall;
+
+		private RegexpMatchCall(final FirstOrderFunctionCall<BooleanValue> compiledRegexMatchCall, final Expression<?> bagExpression)
+		{
+			super(bagExpression);
+			this.compiledRegexMatchCall = compiledRegexMatchCall;
+		}
+
+		@Override
+		protected boolean match(final AttributeValue bagElement, final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			return compiledRegexMatchCall.evaluate(context, bagElement).getUnderlyingValue().booleanValue();
+		}
+	}
+
+	private static MatchCall newMatchCall(final String matchId, final FunctionExpression matchFunction, final Expression<? extends AttributeValue> attrValueExpr, final Expression<?> bagExpression,
+	        final FunctionCall<BooleanValue> anyOfFuncCall)
+	{
+		final Optional<? extends AttributeValue> constantAttrValue = attrValueExpr.getValue();
+		if (!constantAttrValue.isPresent())
+		{
+			return new AnyOfMatchCall(anyOfFuncCall);
+		}
+
+		if (INDEXABLE_EQUALITY_FUNCTION_IDS.contains(matchId))
+		{
+			return new EqualMatchCall(constantAttrValue.get(), bagExpression);
+		}
+
+		if (matchId.equals(StandardFunction.STRING_STARTS_WITH.getId()) || matchId.equals(StandardFunction.ANYURI_STARTS_WITH.getId()))
+		{
+			return new StartsWithMatchCall((StringValue) constantAttrValue.get(), bagExpression, matchId.equals(StandardFunction.ANYURI_STARTS_WITH.getId()));
+		}
+
+		if (REGEXP_MATCH_FUNCTION_IDS.contains(matchId))
+		{
+			final Function<?> regexpMatchFunction = matchFunction.getValue().get();
+			final Optional<? extends Datatype<?>> bagElementType = bagExpression.getReturnType().getTypeParameter();
+			if (regexpMatchFunction instanceof FirstOrderFunction && bagElementType.isPresent())
+			{
+				@SuppressWarnings("unchecked")
+				final FirstOrderFunction<BooleanValue> firstOrderRegexpMatchFunction = (FirstOrderFunction<BooleanValue>) regexpMatchFunction;
+				return new RegexpMatchCall(firstOrderRegexpMatchFunction.newCall(Collections.<Expression<?>> singletonList(attrValueExpr), bagElementType.get()), bagExpression);
+			}
+		}
+
+		return new AnyOfMatchCall(anyOfFuncCall);
+	}
+
+	/**
+	 * Evaluation strategy of this Match, equivalent to the any-of function call:
 	 * <p>
 	 * Match(matchFunction, attributeValue, bagExpression) = anyOf(matchFunction, attributeValue, bagExpression)
 	 */
-	private final transient FunctionCall<BooleanValue> anyOfFuncCall;
+	private final transient MatchCall matchCall;
+
+	/**
+	 * Defined iff this Match is an equality Match comparing a constant AttributeValue to an AttributeDesignator, with one of the {@link #INDEXABLE_EQUALITY_FUNCTION_IDS}
+	 */
+	private final transient Optional<TargetIndex.EqualityMatch> equalityMatch;
 
 	/**
 	 * Instantiates Match evaluator from XACML-Schema-derived JAXB Match
@@ -116,14 +323,40 @@ public final class MatchEvaluator
 
 		final Function<BooleanValue> anyOfFunc = funcExp.getValue().get();
 		final List<Expression<?>> anyOfFuncInputs = Arrays.<Expression<?>> asList(matchFunction, attrValueExpr, bagExpression);
+		final FunctionCall<BooleanValue> anyOfFuncCall;
 		try
 		{
-			this.anyOfFuncCall = anyOfFunc.newCall(anyOfFuncInputs);
+			anyOfFuncCall = anyOfFunc.newCall(anyOfFuncInputs);
 		}
 		catch (final IllegalArgumentException e)
 		{
 			throw new IllegalArgumentException("Invalid inputs (Expressions) to the Match (validated using the equivalent standard 'any-of' function definition): " + anyOfFuncInputs, e);
 		}
+
+		/*
+		 * The inputs have been validated by the any-of function, i.e. the datatypes are consistent with the match function
+		 */
+		this.matchCall = newMatchCall(matchId, matchFunction, attrValueExpr, bagExpression, anyOfFuncCall);
+
+		final Optional<? extends AttributeValue> constantAttrValue = attrValueExpr.getValue();
+		if (attributeDesignator != null && constantAttrValue.isPresent() && INDEXABLE_EQUALITY_FUNCTION_IDS.contains(matchId))
+		{
+			this.equalityMatch = Optional.of(new TargetIndex.EqualityMatch(attributeDesignator, bagExpression, constantAttrValue.get()));
+		}
+		else
+		{
+			this.equalityMatch = Optional.empty();
+		}
+	}
+
+	/**
+	 * Get the equality constraint expressed by this Match, if it is an equality Match (e.g. string-equal) between a constant AttributeValue and an AttributeDesignator
+	 * 
+	 * @return the equality constraint, empty if this Match is not such an equality Match
+	 */
+	Optional<TargetIndex.EqualityMatch> getEqualityMatch()
+	{
+		return equalityMatch;
 	}
 
 	/**
@@ -137,17 +370,7 @@ public final class MatchEvaluator
 	 */
 	public boolean match(final EvaluationContext context) throws IndeterminateEvaluationException
 	{
-		final BooleanValue anyOfFuncCallResult;
-		try
-		{
-			anyOfFuncCallResult = anyOfFuncCall.evaluate(context);
-		}
-		catch (final IndeterminateEvaluationException e)
-		{
-			throw new IndeterminateEvaluationException("Error evaluating Match (with equivalent 'any-of' function)", e.getStatusCode(), e);
-		}
-
-		return anyOfFuncCallResult.getUnderlyingValue().booleanValue();
+		return matchCall.match(context);
 	}
 
 }
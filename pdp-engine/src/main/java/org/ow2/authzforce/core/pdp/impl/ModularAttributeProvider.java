@@ -1,5 +1,5 @@
 /**
- * Copyright 2012-2019 THALES.
+ * Copyright 2012-2026 THALES.
  *
  * This file is part of AuthzForce CE.
  *
@@ -17,19 +17,32 @@
  */
 package org.ow2.authzforce.core.pdp.impl;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ow2.authzforce.core.pdp.api.AttributeFqn;
 import org.ow2.authzforce.core.pdp.api.AttributeFqns;
 import org.ow2.authzforce.core.pdp.api.AttributeProvider;
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
 import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
 import org.ow2.authzforce.core.pdp.api.NamedAttributeProvider;
 import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
 import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
 import org.ow2.authzforce.core.pdp.api.value.Bags;
 import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.impl.metrics.AttributeProviderMetrics;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
+import org.ow2.authzforce.core.pdp.impl.policy.PolicyAttributeDependencies;
 import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +50,10 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Sets;
 
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
 
@@ -59,6 +75,26 @@ public class ModularAttributeProvider implements AttributeProvider
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ModularAttributeProvider.class);
 
+	/*
+	 * Key of the flag in the evaluation context (see EvaluationContext#getOther(String)) indicating that bulk attribute fetching has already been done for this context
+	 */
+	private static final String BULK_FETCH_DONE_CONTEXT_KEY = ModularAttributeProvider.class.getName() + ".bulkFetchDone";
+
+	/*
+	 * Key of the AsyncPrefetchState in the evaluation context (see EvaluationContext#getOther(String)), i.e. the groups of attributes already prefetched asynchronously for this context
+	 */
+	private static final String ASYNC_PREFETCH_STATE_CONTEXT_KEY = ModularAttributeProvider.class.getName() + ".asyncPrefetchState";
+
+	/*
+	 * Key of the attribute dependencies of the root policy resolved for a given evaluation context (see EvaluationContext#getOther(String)), set only if the root policy is resolved at evaluation time
+	 */
+	private static final String ROOT_POLICY_ATTRIBUTE_DEPENDENCIES_CONTEXT_KEY = ModularAttributeProvider.class.getName() + ".rootPolicyAttributeDependencies";
+
+	/*
+	 * Key of the flag in the evaluation context (see EvaluationContext#getOther(String)) indicating that attribute provider modules have been requested for this context
+	 */
+	private static final String PROVIDER_MODULE_REQUESTED_CONTEXT_KEY = ModularAttributeProvider.class.getName() + ".providerModuleRequested";
+
 	private static final IssuedToNonIssuedAttributeCopyMode ISSUED_TO_NON_ISSUED_ATTRIBUTE_COPY_ENABLED_MODE = (attributeFqn, result, context) -> {
 		if (!attributeFqn.getIssuer().isPresent())
 		{
@@ -89,10 +125,268 @@ public class ModularAttributeProvider implements AttributeProvider
 
 	private final IssuedToNonIssuedAttributeCopyMode issuedToNonIssuedAttributeCopyMode;
 
+	/*
+	 * Attribute used in policies and provided by a single asynchronous attribute provider module, therefore fetched along with the others of the same kind at the first call to a provider module in a
+	 * given evaluation context
+	 */
+	private static final class PrefetchedAttribute<AV extends AttributeValue>
+	{
+		private final AttributeFqn attributeFqn;
+		private final Datatype<AV> datatype;
+		private final AsyncNamedAttributeProvider provider;
+
+		private PrefetchedAttribute(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final AsyncNamedAttributeProvider provider)
+		{
+			this.attributeFqn = attributeFqn;
+			this.datatype = datatype;
+			this.provider = provider;
+		}
+
+		/*
+		 * Starts fetching the attribute, unless already in context. Returns null if nothing to fetch or the provider failed to start fetching (in which case the attribute is left to the
+		 * synchronous get(), which reports the error).
+		 */
+		private PendingAttributeFetch<AV> fetchAsync(final EvaluationContext context)
+		{
+			try
+			{
+				if (context.getNamedAttributeValue(attributeFqn, datatype) != null)
+				{
+					return null;
+				}
+			} catch (final IndeterminateEvaluationException e)
+			{
+				// value in context with a different datatype: left to get()
+				return null;
+			}
+
+			final CompletableFuture<AttributeBag<AV>> future;
+			try
+			{
+				future = provider.getAsync(attributeFqn, datatype, context);
+			} catch (final RuntimeException e)
+			{
+				LOGGER.debug("Failed to prefetch attribute {}, type={} from {}", attributeFqn, datatype, provider, e);
+				return null;
+			}
+
+			return future == null ? null : new PendingAttributeFetch<>(this, future);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * attributeFqn.hashCode() + datatype.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof PrefetchedAttribute))
+			{
+				return false;
+			}
+
+			final PrefetchedAttribute<?> other = (PrefetchedAttribute<?>) obj;
+			return this.attributeFqn.equals(other.attributeFqn) && this.datatype.equals(other.datatype);
+		}
+	}
+
+	private static final class PendingAttributeFetch<AV extends AttributeValue>
+	{
+		private final PrefetchedAttribute<AV> attribute;
+		private final CompletableFuture<AttributeBag<AV>> future;
+
+		private PendingAttributeFetch(final PrefetchedAttribute<AV> attribute, final CompletableFuture<AttributeBag<AV>> future)
+		{
+			this.attribute = attribute;
+			this.future = future;
+		}
+
+		/*
+		 * Waits for the result and caches it in context, like get() does with the result of a single provider module
+		 */
+		private void complete(final EvaluationContext context, final IssuedToNonIssuedAttributeCopyMode issuedToNonIssuedAttributeCopyMode)
+		{
+			AttributeBag<AV> result;
+			try
+			{
+				result = AsyncNamedAttributeProvider.join(future);
+			} catch (final IndeterminateEvaluationException e)
+			{
+				LOGGER.debug("Error prefetching attribute {}, type={}", attribute.attributeFqn, attribute.datatype, e);
+				context.putNamedAttributeValueIfAbsent(attribute.attributeFqn, Bags.emptyAttributeBag(attribute.datatype, e));
+				return;
+			}
+
+			if (result == null)
+			{
+				result = Bags.emptyAttributeBag(attribute.datatype, INDETERMINATE_EXCEPTION_NO_VALUE_FROM_ATTRIBUTE_PROVIDERS);
+			}
+
+			context.putNamedAttributeValueIfAbsent(attribute.attributeFqn, result);
+			LOGGER.debug("Values of attribute {}, type={} prefetched from attribute Provider module {} (cached in context): {}", attribute.attributeFqn, attribute.datatype, attribute.provider,
+			        result);
+			issuedToNonIssuedAttributeCopyMode.process(attribute.attributeFqn, result, context);
+		}
+	}
+
+	private static <AV extends AttributeValue> PrefetchedAttribute<AV> newPrefetchedAttribute(final AttributeFqn attributeFqn, final Datatype<AV> datatype,
+	        final AsyncNamedAttributeProvider provider)
+	{
+		return new PrefetchedAttribute<>(attributeFqn, datatype, provider);
+	}
+
+	/*
+	 * Groups of attributes prefetched asynchronously, made from the static analysis of the root policy: first the policy-wide attributes of the root policy (Target, etc.), then the other attributes
+	 * of each top-level branch (Rule, child Policy(Set)). A group is prefetched - concurrently - the first time an attribute of the group (prefetched or not) is requested from a provider module in
+	 * a given evaluation context, i.e. when the evaluation reaches the part of the root policy that uses it.
+	 */
+	private static final class AsyncPrefetchPlan
+	{
+		private final ImmutableList<ImmutableSet<PrefetchedAttribute<?>>> prefetchedAttributeGroups;
+		private final ImmutableListMultimap<AttributeFqn, Integer> groupIndexesByAttribute;
+
+		private AsyncPrefetchPlan(final ImmutableList<ImmutableSet<PrefetchedAttribute<?>>> prefetchedAttributeGroups,
+		        final ImmutableListMultimap<AttributeFqn, Integer> groupIndexesByAttribute)
+		{
+			this.prefetchedAttributeGroups = prefetchedAttributeGroups;
+			this.groupIndexesByAttribute = groupIndexesByAttribute;
+		}
+
+		/*
+		 * Returns null if no group has any attribute to prefetch
+		 */
+		private static AsyncPrefetchPlan newInstance(final List<Set<AttributeFqn>> attributeGroups, final Map<AttributeFqn, Set<PrefetchedAttribute<?>>> prefetchCandidates)
+		{
+			final ImmutableList.Builder<ImmutableSet<PrefetchedAttribute<?>>> prefetchedAttributeGroupsBuilder = ImmutableList.builder();
+			final ImmutableListMultimap.Builder<AttributeFqn, Integer> groupIndexesByAttributeBuilder = ImmutableListMultimap.builder();
+			int groupCount = 0;
+			for (final Set<AttributeFqn> attributeGroup : attributeGroups)
+			{
+				final ImmutableSet.Builder<PrefetchedAttribute<?>> prefetchedAttributesBuilder = ImmutableSet.builder();
+				for (final AttributeFqn attributeFqn : attributeGroup)
+				{
+					final Set<PrefetchedAttribute<?>> attributeCandidates = prefetchCandidates.get(attributeFqn);
+					if (attributeCandidates != null)
+					{
+						prefetchedAttributesBuilder.addAll(attributeCandidates);
+					}
+				}
+
+				final ImmutableSet<PrefetchedAttribute<?>> prefetchedAttributes = prefetchedAttributesBuilder.build();
+				if (prefetchedAttributes.isEmpty())
+				{
+					continue;
+				}
+
+				prefetchedAttributeGroupsBuilder.add(prefetchedAttributes);
+				for (final AttributeFqn attributeFqn : attributeGroup)
+				{
+					groupIndexesByAttributeBuilder.put(attributeFqn, groupCount);
+				}
+
+				groupCount++;
+			}
+
+			return groupCount == 0 ? null : new AsyncPrefetchPlan(prefetchedAttributeGroupsBuilder.build(), groupIndexesByAttributeBuilder.build());
+		}
+	}
+
+	/*
+	 * Groups of the AsyncPrefetchPlan already prefetched in a given evaluation context
+	 */
+	private static final class AsyncPrefetchState
+	{
+		private final AsyncPrefetchPlan plan;
+		private final BitSet prefetchedGroups = new BitSet();
+
+		private AsyncPrefetchState(final AsyncPrefetchPlan plan)
+		{
+			this.plan = plan;
+		}
+	}
+
+	/*
+	 * Attributes used in AttributeDesignators and provided by a single asynchronous attribute provider module, i.e. that may be prefetched, by attribute name (one per datatype used with this name);
+	 * null iff asynchronous attribute prefetching is disabled. Concurrent map since filled while policies are loaded, possibly concurrently; the attributes no longer used by the root policy are
+	 * removed by setPrefetchedAttributes().
+	 */
+	private final ConcurrentMap<AttributeFqn, Set<PrefetchedAttribute<?>>> prefetchCandidates;
+
+	/*
+	 * Attributes actually prefetched; null iff asynchronous attribute prefetching is disabled, or the root policy dependencies are unknown, or none of them may be prefetched. Immutable, replaced as a
+	 * whole by setPrefetchedAttributes().
+	 */
+	private volatile AsyncPrefetchPlan asyncPrefetchPlan = null;
+
+	/*
+	 * Attributes to be fetched in bulk at the first call to a provider module in a given evaluation context, by provider module. Immutable, replaced as a whole by setBulkFetchedAttributes() or setPrefetchedAttributes().
+	 */
+	private volatile Map<BulkNamedAttributeProvider, Set<AttributeFqn>> bulkFetchedAttributesByProvider = Collections.emptyMap();
+
+	/*
+	 * Datatypes of the AttributeDesignators of the attributes provided by a single bulk attribute provider module, by attribute name: values of other datatypes returned by the module are ignored.
+	 * Concurrent map since filled while policies are loaded, possibly concurrently; the attributes no longer used by the root policy are removed by setPrefetchedAttributes().
+	 */
+	private final ConcurrentMap<AttributeFqn, Set<Datatype<?>>> bulkFetchedAttributeDatatypes = new ConcurrentHashMap<>();
+
+	/*
+	 * Attributes fetched in bulk and prefetched asynchronously for a given root policy
+	 */
+	private static final class RootPolicyPrefetchedAttributes
+	{
+		private final PolicyAttributeDependencies rootPolicyAttributeDependencies;
+		private final Map<BulkNamedAttributeProvider, Set<AttributeFqn>> bulkFetchedAttributesByProvider;
+		private final AsyncPrefetchPlan asyncPrefetchPlan;
+
+		private RootPolicyPrefetchedAttributes(final PolicyAttributeDependencies rootPolicyAttributeDependencies,
+		        final Map<BulkNamedAttributeProvider, Set<AttributeFqn>> bulkFetchedAttributesByProvider, final AsyncPrefetchPlan asyncPrefetchPlan)
+		{
+			this.rootPolicyAttributeDependencies = rootPolicyAttributeDependencies;
+			this.bulkFetchedAttributesByProvider = bulkFetchedAttributesByProvider;
+			this.asyncPrefetchPlan = asyncPrefetchPlan;
+		}
+	}
+
+	/*
+	 * Attributes fetched in bulk and prefetched asynchronously for the last root policy resolved at evaluation time (dynamic root policy provider), if any; consecutive requests are likely to resolve
+	 * the same root policy.
+	 */
+	private volatile RootPolicyPrefetchedAttributes lastDynamicRootPolicyPrefetchedAttributes = null;
+
+	/*
+	 * Provider modules declaring their dependencies, whose results may be shared with other evaluation contexts (other Individual Decision Requests of the same batch, attribute value cache)
+	 */
+	private final Map<NamedAttributeProvider, KeyedAttributeProviderModule> keyedModules;
+
+	/*
+	 * Registry of attribute/provider metrics; null iff metrics disabled
+	 */
+	private final EvaluationMetricsRegistry evaluationMetricsRegistry;
+
+	/*
+	 * Metrics by provider module, and by attribute (created on first lookup); empty/null iff metrics disabled
+	 */
+	private final Map<NamedAttributeProvider, AttributeProviderMetrics> providerMetrics;
+	private final Map<AttributeFqn, AttributeProviderMetrics> attributeMetrics;
+
 	protected ModularAttributeProvider(final ImmutableListMultimap<AttributeFqn, NamedAttributeProvider> attributeProviderModulesByAttributeId,
 	        final Set<AttributeDesignatorType> selectedAttributeSupport, final boolean strictAttributeIssuerMatch)
 	{
-		assert attributeProviderModulesByAttributeId != null;
+		this(attributeProviderModulesByAttributeId, selectedAttributeSupport, strictAttributeIssuerMatch, false, ImmutableMap.of(), null);
+	}
+
+	protected ModularAttributeProvider(final ImmutableListMultimap<AttributeFqn, NamedAttributeProvider> attributeProviderModulesByAttributeId,
+	        final Set<AttributeDesignatorType> selectedAttributeSupport, final boolean strictAttributeIssuerMatch, final boolean asyncAttributePrefetch,
+	        final ImmutableMap<NamedAttributeProvider, KeyedAttributeProviderModule> keyedModules, final EvaluationMetricsRegistry evaluationMetricsRegistry)
+	{
+		assert attributeProviderModulesByAttributeId != null && keyedModules != null;
 
 		if (selectedAttributeSupport == null)
 		{
@@ -122,6 +416,21 @@ public class ModularAttributeProvider implements AttributeProvider
 		}
 
 		this.issuedToNonIssuedAttributeCopyMode = strictAttributeIssuerMatch ? ISSUED_TO_NON_ISSUED_ATTRIBUTE_COPY_DISABLED_MODE : ISSUED_TO_NON_ISSUED_ATTRIBUTE_COPY_ENABLED_MODE;
+		this.prefetchCandidates = asyncAttributePrefetch ? new ConcurrentHashMap<>() : null;
+		this.keyedModules = keyedModules;
+
+		this.evaluationMetricsRegistry = evaluationMetricsRegistry;
+		if (evaluationMetricsRegistry == null)
+		{
+			this.providerMetrics = Collections.emptyMap();
+			this.attributeMetrics = null;
+		} else
+		{
+			final Map<NamedAttributeProvider, AttributeProviderMetrics> mutableProviderMetrics = HashCollections.newUpdatableMap();
+			designatorModsByAttrId.values().forEach(provider -> mutableProviderMetrics.computeIfAbsent(provider, p -> evaluationMetricsRegistry.getAttributeProviderMetrics(p.toString())));
+			this.providerMetrics = ImmutableMap.copyOf(mutableProviderMetrics);
+			this.attributeMetrics = new ConcurrentHashMap<>();
+		}
 	}
 
 	/**
@@ -151,6 +460,381 @@ public class ModularAttributeProvider implements AttributeProvider
 		return new ModularAttributeProvider(attributeProviderModulesByAttributeId, selectedAttributeSupport, strictAttributeIssuerMatch);
 	}
 
+	/**
+	 * Returns true iff a given attribute is supported by at least one attribute provider module, i.e. may be provided by such module if missing from the request context
+	 *
+	 * @param attributeFqn
+	 *            attribute name
+	 * @return true iff {@code attributeFqn} is provided by a module
+	 */
+	public final boolean isProvidedByModule(final AttributeFqn attributeFqn)
+	{
+		return designatorModsByAttrId.containsKey(attributeFqn);
+	}
+
+	/**
+	 * Declares an attribute that may be needed to evaluate policies, e.g. used in an AttributeDesignator, to be prefetched asynchronously if asynchronous attribute prefetching is enabled and the
+	 * attribute is provided by a single attribute provider module, implementing {@link AsyncNamedAttributeProvider}. Else (prefetching disabled, or attribute provided otherwise) this method has no
+	 * effect. The attribute is actually prefetched only if used by the root policy, as set by {@link #setPrefetchedAttributes(Optional)}. This also declares the datatype expected for the
+	 * attribute if fetched in bulk (see {@link #setBulkFetchedAttributes(Set)}).
+	 *
+	 * @param attributeFqn
+	 *            attribute name
+	 * @param datatype
+	 *            attribute datatype
+	 */
+	public final void addPrefetchCandidate(final AttributeFqn attributeFqn, final Datatype<? extends AttributeValue> datatype)
+	{
+		final ImmutableList<NamedAttributeProvider> attrProviders = designatorModsByAttrId.get(attributeFqn);
+		/*
+		 * Attributes with fall-back provider modules are not prefetched, since fall-back modules must be called only if the first one does not find any value, and only when the attribute is actually
+		 * needed.
+		 */
+		if (attrProviders.size() != 1)
+		{
+			return;
+		}
+
+		if (attrProviders.get(0) instanceof BulkNamedAttributeProvider)
+		{
+			bulkFetchedAttributeDatatypes.computeIfAbsent(attributeFqn, k -> ConcurrentHashMap.newKeySet()).add(datatype);
+		}
+
+		if (prefetchCandidates != null && attrProviders.get(0) instanceof AsyncNamedAttributeProvider)
+		{
+			addAsyncPrefetchCandidate(attributeFqn, datatype, (AsyncNamedAttributeProvider) attrProviders.get(0));
+		}
+	}
+
+	/*
+	 * Captures the datatype's value type for newPrefetchedAttribute(...)
+	 */
+	private <AV extends AttributeValue> void addAsyncPrefetchCandidate(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final AsyncNamedAttributeProvider provider)
+	{
+		prefetchCandidates.computeIfAbsent(attributeFqn, k -> ConcurrentHashMap.newKeySet()).add(newPrefetchedAttribute(attributeFqn, datatype, provider));
+	}
+
+	/**
+	 * Sets the attributes to be fetched in bulk (see {@link #setBulkFetchedAttributes(Set)}) and prefetched asynchronously, from the attributes that may be needed by the root policy (typically the
+	 * result of a static analysis of the root policy).
+	 * <p>
+	 * If asynchronous attribute prefetching is enabled, only the attributes declared with {@link #addPrefetchCandidate(AttributeFqn, Datatype)} are prefetched. They are prefetched by group -
+	 * concurrently within a group, for the attributes not already in the evaluation context - the first time the value of an attribute of the group missing from the evaluation context is requested
+	 * from this provider during the evaluation of a given request: one group for the policy-wide attributes of the root policy (see {@link PolicyAttributeDependencies#getPolicyWideAttributes()}),
+	 * then one group for the other attributes of each top-level branch of the root policy (see {@link PolicyAttributeDependencies#getAttributesByTopLevelBranch()}). Therefore, the attributes of a
+	 * top-level branch are prefetched only if the evaluation reaches this branch and needs one of its attributes from a provider module.
+	 * <p>
+	 * Note that prefetched attributes are put in the evaluation context like any other attribute found by this provider, whether they are eventually used by the evaluation or not.
+	 *
+	 * @param rootPolicyAttributeDependencies
+	 *            attributes that may be needed by the root policy; replace the ones set previously, if any, and the attributes declared with {@link #addPrefetchCandidate(AttributeFqn, Datatype)}
+	 *            that are not part of them are forgotten (e.g. used only by policies replaced since). Empty if unknown, e.g. root policy resolved at evaluation time, in which case no attribute is
+	 *            fetched in bulk or prefetched, unless the dependencies are set per request with {@link #setRootPolicyAttributeDependencies(EvaluationContext, PolicyAttributeDependencies)}.
+	 */
+	public final void setPrefetchedAttributes(final Optional<PolicyAttributeDependencies> rootPolicyAttributeDependencies)
+	{
+		if (!rootPolicyAttributeDependencies.isPresent())
+		{
+			this.bulkFetchedAttributesByProvider = Collections.emptyMap();
+			this.asyncPrefetchPlan = null;
+			return;
+		}
+
+		final PolicyAttributeDependencies dependencies = rootPolicyAttributeDependencies.get();
+		bulkFetchedAttributeDatatypes.keySet().retainAll(dependencies.getAttributes());
+		this.bulkFetchedAttributesByProvider = newBulkFetchedAttributesByProvider(dependencies.getAttributes());
+		if (prefetchCandidates != null)
+		{
+			prefetchCandidates.keySet().retainAll(dependencies.getAttributes());
+			this.asyncPrefetchPlan = newAsyncPrefetchPlan(dependencies);
+		}
+	}
+
+	/*
+	 * Returns null if asynchronous prefetching is disabled or none of the attributes may be prefetched
+	 */
+	private AsyncPrefetchPlan newAsyncPrefetchPlan(final PolicyAttributeDependencies dependencies)
+	{
+		if (prefetchCandidates == null)
+		{
+			return null;
+		}
+
+		final Set<AttributeFqn> policyWideAttributes = dependencies.getPolicyWideAttributes();
+		final List<Set<AttributeFqn>> attributeGroups = new ArrayList<>(dependencies.getAttributesByTopLevelBranch().size() + 1);
+		attributeGroups.add(policyWideAttributes);
+		for (final Set<AttributeFqn> branchAttributes : dependencies.getAttributesByTopLevelBranch().values())
+		{
+			attributeGroups.add(Sets.difference(branchAttributes, policyWideAttributes));
+		}
+
+		return AsyncPrefetchPlan.newInstance(attributeGroups, prefetchCandidates);
+	}
+
+	/**
+	 * Sets the attributes that may be needed to evaluate policies (typically the result of a static analysis of the root policy), to be fetched in bulk from the attribute provider modules implementing
+	 * {@link BulkNamedAttributeProvider} - one call per module - the first time the value of an attribute missing from the evaluation context is requested from this provider during the evaluation of a
+	 * given request. Only the attributes provided by a single module implementing {@link BulkNamedAttributeProvider} (no fall-back module) are fetched this way; the others are ignored. Only the
+	 * values of the datatype(s) declared for the attribute with {@link #addPrefetchCandidate(AttributeFqn, Datatype)} (AttributeDesignator datatypes) are kept from the module's results.
+	 * <p>
+	 * If the root policy is resolved at evaluation time (dynamic root policy provider), the attributes fetched in bulk are the ones of the root policy resolved for the request, if set with
+	 * {@link #setRootPolicyAttributeDependencies(EvaluationContext, PolicyAttributeDependencies)}, instead.
+	 *
+	 * @param attributeFqns
+	 *            attributes that may be needed for evaluation; replace the ones set previously, if any
+	 */
+	public final void setBulkFetchedAttributes(final Set<AttributeFqn> attributeFqns)
+	{
+		this.bulkFetchedAttributesByProvider = newBulkFetchedAttributesByProvider(attributeFqns);
+	}
+
+	private Map<BulkNamedAttributeProvider, Set<AttributeFqn>> newBulkFetchedAttributesByProvider(final Set<AttributeFqn> attributeFqns)
+	{
+		final Map<BulkNamedAttributeProvider, Set<AttributeFqn>> mutableAttributesByProvider = HashCollections.newUpdatableMap();
+		for (final AttributeFqn attributeFqn : attributeFqns)
+		{
+			final ImmutableList<NamedAttributeProvider> attrProviders = designatorModsByAttrId.get(attributeFqn);
+			if (attrProviders.size() == 1 && attrProviders.get(0) instanceof BulkNamedAttributeProvider)
+			{
+				mutableAttributesByProvider.computeIfAbsent((BulkNamedAttributeProvider) attrProviders.get(0), k -> HashCollections.newUpdatableSet()).add(attributeFqn);
+			}
+		}
+
+		final ImmutableMap.Builder<BulkNamedAttributeProvider, Set<AttributeFqn>> attributesByProviderBuilder = ImmutableMap.builder();
+		mutableAttributesByProvider.forEach((provider, attributes) -> attributesByProviderBuilder.put(provider, ImmutableSet.copyOf(attributes)));
+		return attributesByProviderBuilder.build();
+	}
+
+	/**
+	 * Sets the attribute dependencies of the root policy resolved at evaluation time for a given evaluation context (dynamic root policy provider), to be used instead of the ones set for all
+	 * requests (see {@link #setPrefetchedAttributes(Optional)}) to determine the attributes fetched in bulk or prefetched asynchronously for this
+	 * context
+	 *
+	 * @param context
+	 *            evaluation context
+	 * @param rootPolicyAttributeDependencies
+	 *            attribute dependencies of the root policy resolved for {@code context}
+	 */
+	public static void setRootPolicyAttributeDependencies(final EvaluationContext context, final PolicyAttributeDependencies rootPolicyAttributeDependencies)
+	{
+		context.putOther(ROOT_POLICY_ATTRIBUTE_DEPENDENCIES_CONTEXT_KEY, rootPolicyAttributeDependencies);
+	}
+
+	/*
+	 * Gets the attributes fetched in bulk / prefetched for a root policy resolved at evaluation time, computed again only if not the same root policy as the last time
+	 */
+	private RootPolicyPrefetchedAttributes getDynamicRootPolicyPrefetchedAttributes(final PolicyAttributeDependencies rootPolicyAttributeDependencies)
+	{
+		final RootPolicyPrefetchedAttributes lastPrefetchedAttributes = this.lastDynamicRootPolicyPrefetchedAttributes;
+		if (lastPrefetchedAttributes != null && lastPrefetchedAttributes.rootPolicyAttributeDependencies == rootPolicyAttributeDependencies)
+		{
+			return lastPrefetchedAttributes;
+		}
+
+		final RootPolicyPrefetchedAttributes newPrefetchedAttributes = new RootPolicyPrefetchedAttributes(rootPolicyAttributeDependencies,
+		        newBulkFetchedAttributesByProvider(rootPolicyAttributeDependencies.getAttributes()), newAsyncPrefetchPlan(rootPolicyAttributeDependencies));
+		this.lastDynamicRootPolicyPrefetchedAttributes = newPrefetchedAttributes;
+		return newPrefetchedAttributes;
+	}
+
+	/*
+	 * Fetches the attributes to be fetched in bulk, one call per module, unless already done for this context. Returns true iff some attributes were fetched.
+	 */
+	private boolean fetchInBulk(final Map<BulkNamedAttributeProvider, Set<AttributeFqn>> bulkFetchedAttributesByProvider, final EvaluationContext context)
+	{
+		if (bulkFetchedAttributesByProvider.isEmpty() || context.getOther(BULK_FETCH_DONE_CONTEXT_KEY) != null)
+		{
+			return false;
+		}
+
+		context.putOther(BULK_FETCH_DONE_CONTEXT_KEY, Boolean.TRUE);
+		for (final Entry<BulkNamedAttributeProvider, Set<AttributeFqn>> providerToAttributes : bulkFetchedAttributesByProvider.entrySet())
+		{
+			final BulkNamedAttributeProvider provider = providerToAttributes.getKey();
+			final Set<AttributeFqn> requestedAttributes = providerToAttributes.getValue();
+			final AttributeProviderMetrics metrics = providerMetrics.get(provider);
+			final long startNanos = metrics == null ? 0 : System.nanoTime();
+			final Map<AttributeFqn, AttributeBag<?>> results;
+			try
+			{
+				results = provider.getAll(requestedAttributes, context);
+			} catch (final IndeterminateEvaluationException e)
+			{
+				if (metrics != null)
+				{
+					metrics.providerFailed(System.nanoTime() - startNanos);
+				}
+
+				// the attributes will be requested one by one, if needed
+				LOGGER.debug("Error fetching attributes {} in bulk from attribute Provider module {}", requestedAttributes, provider, e);
+				continue;
+			}
+
+			if (metrics != null)
+			{
+				metrics.providerReturned(System.nanoTime() - startNanos, results == null || results.isEmpty());
+			}
+
+			if (results == null)
+			{
+				continue;
+			}
+
+			for (final Entry<AttributeFqn, AttributeBag<?>> result : results.entrySet())
+			{
+				final AttributeFqn attributeFqn = result.getKey();
+				final AttributeBag<?> attributeValues = result.getValue();
+				if (attributeValues == null || !requestedAttributes.contains(attributeFqn))
+				{
+					continue;
+				}
+
+				final Set<Datatype<?>> expectedDatatypes = bulkFetchedAttributeDatatypes.get(attributeFqn);
+				if (expectedDatatypes == null || !expectedDatatypes.contains(attributeValues.getElementDatatype()))
+				{
+					// the attribute will be requested with the expected datatype, if needed
+					LOGGER.warn("Ignoring values of attribute {} fetched in bulk from attribute Provider module {}: datatype {} is not the one of any AttributeDesignator for this attribute ({})",
+					        attributeFqn, provider, attributeValues.getElementDatatype(), expectedDatatypes);
+					continue;
+				}
+
+				context.putNamedAttributeValueIfAbsent(attributeFqn, attributeValues);
+				issuedToNonIssuedAttributeCopyMode.process(attributeFqn, attributeValues, context);
+			}
+
+			LOGGER.debug("Values of attributes {} fetched in bulk from attribute Provider module {} (cached in context): {}", requestedAttributes, provider, results);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Prefetches concurrently the attributes of the groups (see AsyncPrefetchPlan) using a given attribute, except the groups already prefetched for this context and the attributes already in context,
+	 * and waits for the results. Returns true iff some attributes were prefetched.
+	 */
+	private boolean prefetchAsync(final AsyncPrefetchPlan plan, final AttributeFqn attributeFqn, final EvaluationContext context)
+	{
+		if (plan == null)
+		{
+			return false;
+		}
+
+		final ImmutableList<Integer> groupIndexes = plan.groupIndexesByAttribute.get(attributeFqn);
+		if (groupIndexes.isEmpty())
+		{
+			return false;
+		}
+
+		final Object contextState = context.getOther(ASYNC_PREFETCH_STATE_CONTEXT_KEY);
+		final AsyncPrefetchState state;
+		/*
+		 * The plan may have changed since the previous call in the same context (root policy reloaded meanwhile)
+		 */
+		if (contextState instanceof AsyncPrefetchState && ((AsyncPrefetchState) contextState).plan == plan)
+		{
+			state = (AsyncPrefetchState) contextState;
+		} else
+		{
+			state = new AsyncPrefetchState(plan);
+			context.putOther(ASYNC_PREFETCH_STATE_CONTEXT_KEY, state);
+		}
+
+		/*
+		 * The same attribute may be in several groups
+		 */
+		final Set<PrefetchedAttribute<?>> requestedAttributes = HashCollections.newUpdatableSet();
+		final List<PendingAttributeFetch<?>> pendingFetches = new ArrayList<>();
+		for (final int groupIndex : groupIndexes)
+		{
+			if (state.prefetchedGroups.get(groupIndex))
+			{
+				continue;
+			}
+
+			state.prefetchedGroups.set(groupIndex);
+			for (final PrefetchedAttribute<?> attribute : plan.prefetchedAttributeGroups.get(groupIndex))
+			{
+				if (!requestedAttributes.add(attribute))
+				{
+					continue;
+				}
+
+				final PendingAttributeFetch<?> pendingFetch = attribute.fetchAsync(context);
+				if (pendingFetch != null)
+				{
+					pendingFetches.add(pendingFetch);
+				}
+			}
+		}
+
+		for (final PendingAttributeFetch<?> pendingFetch : pendingFetches)
+		{
+			pendingFetch.complete(context, issuedToNonIssuedAttributeCopyMode);
+		}
+
+		return !pendingFetches.isEmpty();
+	}
+
+	private AttributeProviderMetrics getAttributeMetrics(final AttributeFqn attributeFqn)
+	{
+		return attributeMetrics.computeIfAbsent(attributeFqn, evaluationMetricsRegistry::getAttributeMetrics);
+	}
+
+	/*
+	 * Gets the attribute from a provider module (via the keyed module if any, to share results across evaluation contexts), recording the call in the metrics if enabled
+	 */
+	private <AV extends AttributeValue> AttributeBag<AV> getFromModule(final NamedAttributeProvider attrProvider, final AttributeFqn attributeFqn, final Datatype<AV> datatype,
+	        final EvaluationContext context) throws IndeterminateEvaluationException
+	{
+		final KeyedAttributeProviderModule keyedModule = keyedModules.get(attrProvider);
+		if (evaluationMetricsRegistry == null)
+		{
+			return keyedModule == null ? attrProvider.get(attributeFqn, datatype, context) : keyedModule.get(attributeFqn, datatype, context);
+		}
+
+		final AttributeProviderMetrics moduleMetrics = providerMetrics.get(attrProvider);
+		final AttributeProviderMetrics attrMetrics = getAttributeMetrics(attributeFqn);
+		final long startNanos = System.nanoTime();
+		final AttributeBag<AV> result;
+		try
+		{
+			result = keyedModule == null ? attrProvider.get(attributeFqn, datatype, context) : keyedModule.get(attributeFqn, datatype, context);
+		} catch (final IndeterminateEvaluationException | RuntimeException e)
+		{
+			final long elapsedNanos = System.nanoTime() - startNanos;
+			moduleMetrics.providerFailed(elapsedNanos);
+			attrMetrics.providerFailed(elapsedNanos);
+			throw e;
+		}
+
+		final long elapsedNanos = System.nanoTime() - startNanos;
+		if (result != null && result.getReasonWhyEmpty() != null)
+		{
+			moduleMetrics.providerFailed(elapsedNanos);
+			attrMetrics.providerFailed(elapsedNanos);
+		} else
+		{
+			final boolean empty = result == null || result.isEmpty();
+			moduleMetrics.providerReturned(elapsedNanos, empty);
+			attrMetrics.providerReturned(elapsedNanos, empty);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Tells whether attribute provider modules have been requested for attribute values in a given evaluation context, i.e. whether the evaluation in this context depends on attribute values that
+	 * are not (only) from the request
+	 *
+	 * @param context
+	 *            evaluation context
+	 * @return true iff attribute provider module(s) requested in {@code context} so far
+	 */
+	static boolean isProviderModuleRequested(final EvaluationContext context)
+	{
+		return context.getOther(PROVIDER_MODULE_REQUESTED_CONTEXT_KEY) != null;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public final <AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context) throws IndeterminateEvaluationException
@@ -160,6 +844,11 @@ public class ModularAttributeProvider implements AttributeProvider
 			final AttributeBag<AV> contextBag = context.getNamedAttributeValue(attributeFqn, datatype);
 			if (contextBag != null)
 			{
+				if (evaluationMetricsRegistry != null)
+				{
+					getAttributeMetrics(attributeFqn).contextHit();
+				}
+
 				LOGGER.debug("Values of attribute {}, type={} found in evaluation context: {}", attributeFqn, datatype, contextBag);
 				return contextBag;
 			}
@@ -178,13 +867,40 @@ public class ModularAttributeProvider implements AttributeProvider
 				        XacmlStatusCode.MISSING_ATTRIBUTE.value());
 			}
 
+			context.putOther(PROVIDER_MODULE_REQUESTED_CONTEXT_KEY, Boolean.TRUE);
+			final Map<BulkNamedAttributeProvider, Set<AttributeFqn>> bulkFetchedAttributesByProvider;
+			final AsyncPrefetchPlan asyncPrefetchPlan;
+			final Object contextRootPolicyAttributeDependencies = context.getOther(ROOT_POLICY_ATTRIBUTE_DEPENDENCIES_CONTEXT_KEY);
+			if (contextRootPolicyAttributeDependencies instanceof PolicyAttributeDependencies)
+			{
+				final RootPolicyPrefetchedAttributes rootPolicyPrefetchedAttributes = getDynamicRootPolicyPrefetchedAttributes(
+				        (PolicyAttributeDependencies) contextRootPolicyAttributeDependencies);
+				bulkFetchedAttributesByProvider = rootPolicyPrefetchedAttributes.bulkFetchedAttributesByProvider;
+				asyncPrefetchPlan = rootPolicyPrefetchedAttributes.asyncPrefetchPlan;
+			} else
+			{
+				bulkFetchedAttributesByProvider = this.bulkFetchedAttributesByProvider;
+				asyncPrefetchPlan = this.asyncPrefetchPlan;
+			}
+
+			final boolean isBulkFetched = fetchInBulk(bulkFetchedAttributesByProvider, context);
+			final boolean isPrefetched = prefetchAsync(asyncPrefetchPlan, attributeFqn, context);
+			if (isBulkFetched || isPrefetched)
+			{
+				final AttributeBag<AV> prefetchedBag = context.getNamedAttributeValue(attributeFqn, datatype);
+				if (prefetchedBag != null)
+				{
+					return prefetchedBag;
+				}
+			}
+
 			AttributeBag<AV> result = null;
 			/*
 			 * Try all modules supporting this attribute until value found
 			 */
 			for (final NamedAttributeProvider attrProvider : attrProviders)
 			{
-				result = attrProvider.get(attributeFqn, datatype, context);
+				result = getFromModule(attrProvider, attributeFqn, datatype, context);
 				if (result != null && !result.isEmpty())
 				{
 					break;
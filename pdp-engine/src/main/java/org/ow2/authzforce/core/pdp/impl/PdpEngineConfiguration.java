@@ -39,6 +39,8 @@ import javax.xml.bind.JAXBException;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
 import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
 import org.ow2.authzforce.core.pdp.api.DecisionCache;
 import org.ow2.authzforce.core.pdp.api.DecisionRequestPreprocessor;
@@ -67,9 +69,13 @@ import org.ow2.authzforce.core.pdp.api.value.StringParseableValue;
 import org.ow2.authzforce.core.pdp.impl.combining.ImmutableCombiningAlgRegistry;
 import org.ow2.authzforce.core.pdp.impl.combining.StandardCombiningAlgorithm;
 import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.func.CompiledRegexCache;
 import org.ow2.authzforce.core.pdp.impl.func.FunctionRegistry;
 import org.ow2.authzforce.core.pdp.impl.func.ImmutableFunctionRegistry;
 import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
+import org.ow2.authzforce.core.xmlns.pdp.AttributeCache;
+import org.ow2.authzforce.core.xmlns.pdp.CachedAttribute;
 import org.ow2.authzforce.core.xmlns.pdp.InOutProcChain;
 import org.ow2.authzforce.core.xmlns.pdp.Pdp;
 import org.ow2.authzforce.core.xmlns.pdp.StandardEnvironmentAttributeSource;
@@ -154,6 +160,54 @@ public final class PdpEngineConfiguration
 		return decisionCacheFactory.getInstance(jaxbConf, attValFactories, envProps);
 	}
 
+	private static AttributeValueCache newAttributeValueCache(final AttributeCache jaxbConf, final Map<String, CloseableNamedAttributeProvider.DependencyAwareFactory> attProviderFactoriesById)
+	        throws IllegalArgumentException
+	{
+		final Set<CloseableNamedAttributeProvider.DependencyAwareFactory> mutableCachedAttProviderFactories = HashCollections.newUpdatableSet(jaxbConf.getCachedAttributeProviders().size());
+		for (final String cachedAttProviderId : jaxbConf.getCachedAttributeProviders())
+		{
+			final CloseableNamedAttributeProvider.DependencyAwareFactory cachedAttProviderFactory = attProviderFactoriesById.get(cachedAttProviderId);
+			if (cachedAttProviderFactory == null)
+			{
+				throw new IllegalArgumentException("Invalid cachedAttributeProvider in attributeCache: no attributeProvider with id '" + cachedAttProviderId + "'");
+			}
+
+			mutableCachedAttProviderFactories.add(cachedAttProviderFactory);
+		}
+
+		final Map<AttributeFqn, AttributeValueCache.TimeToLive> mutableTtlByAttribute = HashCollections.newUpdatableMap(jaxbConf.getCachedAttributes().size());
+		for (final CachedAttribute cachedAttribute : jaxbConf.getCachedAttributes())
+		{
+			final AttributeFqn attributeFqn = AttributeFqns.newInstance(cachedAttribute.getCategory(), Optional.ofNullable(cachedAttribute.getIssuer()), cachedAttribute.getId());
+			final AttributeValueCache.TimeToLive ttl;
+			try
+			{
+				ttl = new AttributeValueCache.TimeToLive(cachedAttribute.getTimeToLiveSeconds().longValueExact(), cachedAttribute.getEmptyBagTimeToLiveSeconds().longValueExact());
+			} catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid timeToLiveSeconds/emptyBagTimeToLiveSeconds of cached attribute " + attributeFqn, e);
+			}
+
+			if (mutableTtlByAttribute.putIfAbsent(attributeFqn, ttl) != null)
+			{
+				throw new IllegalArgumentException("Duplicate cachedAttribute in attributeCache: " + attributeFqn);
+			}
+		}
+
+		final int maxEntries;
+		final int concurrencyLevel;
+		try
+		{
+			maxEntries = jaxbConf.getMaxEntries().intValueExact();
+			concurrencyLevel = jaxbConf.getConcurrencyLevel().intValueExact();
+		} catch (final ArithmeticException e)
+		{
+			throw new IllegalArgumentException("Invalid maxEntries/concurrencyLevel of attributeCache", e);
+		}
+
+		return new AttributeValueCache(maxEntries, concurrencyLevel, mutableTtlByAttribute, mutableCachedAttProviderFactories);
+	}
+
 	private final boolean enableXPath;
 	private final AttributeValueFactoryRegistry attValFactoryRegistry;
 
@@ -167,10 +221,22 @@ public final class PdpEngineConfiguration
 
 	private final Optional<DecisionCache> decisionCache;
 
+	private final Optional<CompiledRegexCache> compiledRegexCache;
+
+	private final Optional<AttributeValueCache> attributeValueCache;
+
+	private final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry;
+
 	private final Map<Class<?>, Entry<DecisionRequestPreprocessor<?, ?>, DecisionResultPostprocessor<?, ?>>> ioProcChainsByInputType;
 
 	private final int clientReqErrVerbosityLevel;
 
+	private final int parallelBatchEvaluationThreshold;
+
+	private final int maxBatchEvaluationParallelism;
+
+	private final boolean batchAttributeValueSharing;
+
 	/**
 	 * Constructs configuration from PDP XML-schema-derived JAXB model (usually 'unmarshaled' from XML configuration file)
 	 *
@@ -241,10 +307,12 @@ public final class PdpEngineConfiguration
 		// Extra Attribute Providers
 		final List<AbstractAttributeProvider> attProviderJaxbConfs = pdpJaxbConf.getAttributeProviders();
 		final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attProviderFactories = new ArrayList<>(attProviderJaxbConfs.size());
+		final Map<String, CloseableNamedAttributeProvider.DependencyAwareFactory> mutableAttProviderFactoriesById = HashCollections.newUpdatableMap(attProviderJaxbConfs.size());
 		for (final AbstractAttributeProvider attProviderJaxbConf : attProviderJaxbConfs)
 		{
 			final CloseableNamedAttributeProvider.DependencyAwareFactory depAwareAttrProviderModFactory = newAttributeProviderProviderFactory(attProviderJaxbConf, envProps);
 			attProviderFactories.add(depAwareAttrProviderModFactory);
+			mutableAttProviderFactoriesById.put(attProviderJaxbConf.getId(), depAwareAttrProviderModFactory);
 		}
 
 		/*
@@ -288,7 +356,18 @@ public final class PdpEngineConfiguration
 			final AttributeValueFactory<?> intValFactory = attValFactoryRegistry.getExtension(StandardDatatypes.INTEGER.getId());
 			assert intValFactory != null && intValFactory.getDatatype() == StandardDatatypes.INTEGER && intValFactory instanceof StringParseableValue.Factory;
 
-			final FunctionRegistry stdRegistry = StandardFunction.getRegistry(enableXPath, (StringParseableValue.Factory<IntegerValue>) intValFactory);
+			final BigInteger regexCacheSizeBigInt = pdpJaxbConf.getRegexCacheSize();
+			final int regexCacheSize;
+			try
+			{
+				regexCacheSize = regexCacheSizeBigInt == null ? 0 : regexCacheSizeBigInt.intValueExact();
+			} catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid regexCacheSize: " + regexCacheSizeBigInt, e);
+			}
+
+			this.compiledRegexCache = regexCacheSize == 0 ? Optional.empty() : Optional.of(new CompiledRegexCache(regexCacheSize));
+			final FunctionRegistry stdRegistry = StandardFunction.getRegistry(enableXPath, (StringParseableValue.Factory<IntegerValue>) intValFactory, this.compiledRegexCache.orElse(null));
 			if (nonGenericFunctionExtensionIdentifiers.isEmpty())
 			{
 				functionRegistry = stdRegistry;
@@ -299,6 +378,7 @@ public final class PdpEngineConfiguration
 			}
 		} else
 		{
+			this.compiledRegexCache = Optional.empty();
 			functionRegistry = new ImmutableFunctionRegistry(nonGenericFunctionExtensions, null);
 		}
 
@@ -328,12 +408,14 @@ public final class PdpEngineConfiguration
 		final CombiningAlgRegistry combiningAlgRegistry;
 		if (pdpJaxbConf.isUseStandardCombiningAlgorithms())
 		{
+			final CombiningAlgRegistry standardCombiningAlgRegistry = pdpJaxbConf.isAdaptiveCombinedElementOrder() ? StandardCombiningAlgorithm.ADAPTIVE_EVALUATION_ORDER_REGISTRY
+			        : StandardCombiningAlgorithm.REGISTRY;
 			if (algExtensions.isEmpty())
 			{
-				combiningAlgRegistry = StandardCombiningAlgorithm.REGISTRY;
+				combiningAlgRegistry = standardCombiningAlgRegistry;
 			} else
 			{
-				combiningAlgRegistry = new ImmutableCombiningAlgRegistry(HashCollections.newImmutableSet(StandardCombiningAlgorithm.REGISTRY.getExtensions(), algExtensions));
+				combiningAlgRegistry = new ImmutableCombiningAlgRegistry(HashCollections.newImmutableSet(standardCombiningAlgRegistry.getExtensions(), algExtensions));
 			}
 		} else
 		{
@@ -353,10 +435,31 @@ public final class PdpEngineConfiguration
 			throw new IllegalArgumentException("Invalid maxPolicyRefDepth: " + bigMaxPolicyRefDepth, e);
 		}
 
+		/*
+		 * Cache of attribute values from attribute providers, shared by all requests
+		 */
+		final AttributeCache attributeCacheJaxbConf = pdpJaxbConf.getAttributeCache();
+		this.attributeValueCache = attributeCacheJaxbConf == null ? Optional.empty() : Optional.of(newAttributeValueCache(attributeCacheJaxbConf, mutableAttProviderFactoriesById));
+
+		/*
+		 * Registry of policy/rule evaluation metrics
+		 */
+		final String evaluationMetricsRegistryId = pdpJaxbConf.getEvaluationMetricsRegistry();
+		this.evaluationMetricsRegistry = evaluationMetricsRegistryId == null ? Optional.empty()
+		        : Optional.of(PdpExtensions.getExtension(EvaluationMetricsRegistry.Factory.class, evaluationMetricsRegistryId).getInstance());
+
 		/*
 		 * XACML Expression factory/parser
 		 */
-		xacmlExpressionFactory = new DepthLimitingExpressionFactory(attValFactoryRegistry, functionRegistry, attProviderFactories, maxVarRefDepth, enableXPath, strictAttributeIssuerMatch);
+		final DepthLimitingExpressionFactory depthLimitingExpressionFactory = new DepthLimitingExpressionFactory(attValFactoryRegistry, functionRegistry, attProviderFactories,
+		        maxVarRefDepth, enableXPath, strictAttributeIssuerMatch, pdpJaxbConf.isAsyncAttributePrefetch(), this.attributeValueCache, this.evaluationMetricsRegistry,
+		        pdpJaxbConf.isCostBasedLogicalArgumentOrder(), pdpJaxbConf.isSharedApplyExpressions());
+		xacmlExpressionFactory = depthLimitingExpressionFactory;
+		/*
+		 * Scope of the shared Apply expressions (if enabled) of the policies loaded by the policy providers, distinct from the one of xacmlExpressionFactory (see
+		 * DepthLimitingExpressionFactory#newPolicyTreeScope())
+		 */
+		final ExpressionFactory policyTreeExpressionFactory = depthLimitingExpressionFactory.newPolicyTreeScope();
 
 		/*
 		 * Policy Reference processing - Policy-by-reference Provider
@@ -368,13 +471,13 @@ public final class PdpEngineConfiguration
 			refPolicyProvider = Optional.empty();
 		} else
 		{
-			refPolicyProvider = Optional.of(newRefPolicyProvider(refPolicyProviderJaxbConf, xacmlParserFactory, maxPolicySetRefDepth, xacmlExpressionFactory, combiningAlgRegistry, envProps));
+			refPolicyProvider = Optional.of(newRefPolicyProvider(refPolicyProviderJaxbConf, xacmlParserFactory, maxPolicySetRefDepth, policyTreeExpressionFactory, combiningAlgRegistry, envProps));
 		}
 
 		/*
 		 * Root Policy Provider
 		 */
-		rootPolicyProvider = newRootPolicyProvider(rootPolicyProviderJaxbConf, xacmlParserFactory, xacmlExpressionFactory, combiningAlgRegistry, refPolicyProvider, envProps);
+		rootPolicyProvider = newRootPolicyProvider(rootPolicyProviderJaxbConf, xacmlParserFactory, policyTreeExpressionFactory, combiningAlgRegistry, refPolicyProvider, envProps);
 
 		// Decision cache
 		final AbstractDecisionCache decisionCacheJaxbConf = pdpJaxbConf.getDecisionCache();
@@ -396,6 +499,28 @@ public final class PdpEngineConfiguration
 			throw new IllegalArgumentException("Invalid clientRequestErrorVerbosityLevel: " + clientReqErrVerbosityBigInt, e);
 		}
 
+		// Concurrent evaluation of multiple decision requests
+		final BigInteger parallelBatchEvalThresholdBigInt = pdpJaxbConf.getParallelBatchEvaluationThreshold();
+		try
+		{
+			this.parallelBatchEvaluationThreshold = parallelBatchEvalThresholdBigInt == null ? 0 : parallelBatchEvalThresholdBigInt.intValueExact();
+		} catch (final ArithmeticException e)
+		{
+			throw new IllegalArgumentException("Invalid parallelBatchEvaluationThreshold: " + parallelBatchEvalThresholdBigInt, e);
+		}
+
+		final BigInteger maxBatchEvalParallelismBigInt = pdpJaxbConf.getMaxBatchEvaluationParallelism();
+		try
+		{
+			this.maxBatchEvaluationParallelism = maxBatchEvalParallelismBigInt == null || maxBatchEvalParallelismBigInt.signum() == 0 ? Runtime.getRuntime().availableProcessors()
+			        : maxBatchEvalParallelismBigInt.intValueExact();
+		} catch (final ArithmeticException e)
+		{
+			throw new IllegalArgumentException("Invalid maxBatchEvaluationParallelism: " + maxBatchEvalParallelismBigInt, e);
+		}
+
+		this.batchAttributeValueSharing = pdpJaxbConf.isBatchAttributeValueSharing();
+
 		final List<InOutProcChain> inoutProcChains = pdpJaxbConf.getIoProcChains();
 
 		if (inoutProcChains.isEmpty())
@@ -782,6 +907,39 @@ public final class PdpEngineConfiguration
 		return this.clientReqErrVerbosityLevel;
 	}
 
+	/**
+	 * Returns the minimum number of Individual Decision Requests in a multiple decision request (batch) for these Individual Decision Requests to be evaluated concurrently. 0 means batches are always
+	 * evaluated sequentially.
+	 * 
+	 * @return parallel batch evaluation threshold
+	 */
+	public int getParallelBatchEvaluationThreshold()
+	{
+		return this.parallelBatchEvaluationThreshold;
+	}
+
+	/**
+	 * Returns the maximum number of threads evaluating Individual Decision Requests concurrently, used only if {@link #getParallelBatchEvaluationThreshold()} &gt; 0. If not defined in original PDP
+	 * configuration (or 0), the number of processors available to the JVM is returned.
+	 * 
+	 * @return maximum batch evaluation parallelism
+	 */
+	public int getMaxBatchEvaluationParallelism()
+	{
+		return this.maxBatchEvaluationParallelism;
+	}
+
+	/**
+	 * Returns true iff the values returned by attribute providers declaring their dependencies are shared by the Individual Decision Requests of a multiple decision request (batch) where these
+	 * dependencies have the same values
+	 * 
+	 * @return true iff batch attribute value sharing enabled
+	 */
+	public boolean isBatchAttributeValueSharingEnabled()
+	{
+		return this.batchAttributeValueSharing;
+	}
+
 	/**
 	 * Returns the Decision Result cache that, for a given request, provides the XACML policy evaluation result from a cache, if there is a cached Result for the given request.
 	 * 
@@ -792,6 +950,38 @@ public final class PdpEngineConfiguration
 		return decisionCache;
 	}
 
+	/**
+	 * Returns the cache of compiled regular expressions shared by the standard *-regexp-match functions, for monitoring (hit/miss counts, etc.). Empty if regexCacheSize is 0 in original PDP
+	 * configuration, or standard functions are disabled.
+	 * 
+	 * @return the compiled regular expression cache
+	 */
+	public Optional<CompiledRegexCache> getCompiledRegexCache()
+	{
+		return compiledRegexCache;
+	}
+
+	/**
+	 * Returns the cache of attribute values returned by attribute providers, shared by all requests, for monitoring (hit/miss counts, etc.). Empty if no attributeCache in original PDP
+	 * configuration.
+	 * 
+	 * @return the attribute value cache
+	 */
+	public Optional<AttributeValueCache> getAttributeValueCache()
+	{
+		return attributeValueCache;
+	}
+
+	/**
+	 * Returns the registry of evaluation metrics (counters, timings) of policies and rules. Empty if no evaluationMetricsRegistry in original PDP configuration.
+	 * 
+	 * @return the evaluation metrics registry
+	 */
+	public Optional<EvaluationMetricsRegistry> getEvaluationMetricsRegistry()
+	{
+		return evaluationMetricsRegistry;
+	}
+
 	/**
 	 * Returns the processor chains that can be applied to PDP engine input/output, by input type
 	 * 
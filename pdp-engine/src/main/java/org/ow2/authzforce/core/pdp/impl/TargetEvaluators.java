@@ -18,6 +18,7 @@
 package org.ow2.authzforce.core.pdp.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
@@ -211,6 +212,23 @@ public final class TargetEvaluators
 		return new NonEmptyTargetEvaluator(anyOfs, xPathCompiler, expressionFactory);
 	}
 
+	/**
+	 * Get the AnyOf evaluators of a Target evaluator created by {@link #getInstance(Target, XPathCompiler, ExpressionFactory)}
+	 * 
+	 * @param targetEvaluator
+	 *            Target evaluator
+	 * @return AnyOf evaluators in order of declaration; empty if {@code targetEvaluator} is {@link #MATCH_ALL_TARGET_EVALUATOR} or not created by this class
+	 */
+	static List<AnyOfEvaluator> getAnyOfEvaluators(final BooleanEvaluator targetEvaluator)
+	{
+		if (targetEvaluator instanceof NonEmptyTargetEvaluator)
+		{
+			return ((NonEmptyTargetEvaluator) targetEvaluator).anyOfEvaluatorList;
+		}
+
+		return Collections.emptyList();
+	}
+
 	private TargetEvaluators()
 	{
 		// prevent instantiation
@@ -0,0 +1,406 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+
+/**
+ * Inverted index of elements (e.g. the child Policies of a PolicySet) by the equality Matches in their respective Targets, i.e. Matches such as string-equal comparing a constant AttributeValue to an
+ * AttributeDesignator. Built once at initialization time, this index allows to select - for a given request context - the only candidate elements whose Target may match, i.e. skip the elements
+ * whose Target evaluates to False (No-match) for sure, therefore NotApplicable. The order of candidates is the same as the original order of elements, so that combining algorithms relying on the
+ * order of evaluation (e.g. first-applicable) keep the same semantics.
+ * <p>
+ * An element is excluded from the candidates if and only if one of its Target's AnyOf elements is made of AllOf elements that all contain an equality Match on the same AttributeDesignator, and
+ * none of the constant values of these Matches is in the bag resulting from the evaluation of this AttributeDesignator in the request context; in which case this AnyOf - therefore the Target - is
+ * a No-match for sure. If the evaluation of the AttributeDesignator is Indeterminate (e.g. missing attribute with MustBePresent=true), no element is excluded based on this AttributeDesignator, so
+ * that the Indeterminate result is handled by the Target evaluation as usual.
+ * <p>
+ * Note that the indexed AttributeDesignators are evaluated before any candidate element, therefore possibly earlier than they would be without the index (e.g. by Attribute Providers).
+ *
+ * @param <T>
+ *            type of indexed element
+ */
+public final class TargetIndex<T>
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(TargetIndex.class);
+
+	/**
+	 * Minimum number of elements for indexing to be worth it
+	 */
+	private static final int MIN_ELEMENT_COUNT = 8;
+
+	/**
+	 * AttributeDesignator identifier, including all properties that affect the designator evaluation
+	 */
+	static final class DesignatorKey
+	{
+		private final AttributeFqn attributeFqn;
+		private final String datatypeId;
+		private final boolean mustBePresent;
+		private transient final int hashCode;
+
+		private DesignatorKey(final AttributeDesignatorType designator)
+		{
+			this.attributeFqn = AttributeFqns.newInstance(designator);
+			this.datatypeId = designator.getDataType();
+			this.mustBePresent = designator.isMustBePresent();
+			this.hashCode = Objects.hash(attributeFqn, datatypeId, mustBePresent);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof DesignatorKey))
+			{
+				return false;
+			}
+
+			final DesignatorKey other = (DesignatorKey) obj;
+			return this.mustBePresent == other.mustBePresent && this.attributeFqn.equals(other.attributeFqn) && this.datatypeId.equals(other.datatypeId);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "AttributeDesignator[" + attributeFqn + ", DataType=" + datatypeId + ", MustBePresent=" + mustBePresent + "]";
+		}
+	}
+
+	/**
+	 * Equality Match between a constant AttributeValue and an AttributeDesignator
+	 */
+	static final class EqualityMatch
+	{
+		private final DesignatorKey designatorKey;
+		private final Expression<?> designatorExpression;
+		private final AttributeValue value;
+
+		EqualityMatch(final AttributeDesignatorType designator, final Expression<?> designatorExpression, final AttributeValue value)
+		{
+			assert designator != null && designatorExpression != null && value != null;
+			this.designatorKey = new DesignatorKey(designator);
+			this.designatorExpression = designatorExpression;
+			this.value = value;
+		}
+
+		DesignatorKey getDesignatorKey()
+		{
+			return designatorKey;
+		}
+
+		Expression<?> getDesignatorExpression()
+		{
+			return designatorExpression;
+		}
+
+		AttributeValue getValue()
+		{
+			return value;
+		}
+	}
+
+	/**
+	 * Index of elements by the values of a given AttributeDesignator
+	 */
+	private static final class DesignatorIndex
+	{
+		private final DesignatorKey designatorKey;
+		// evaluator of the AttributeDesignator
+		private final Expression<?> designatorExpression;
+		// elements (positions) that are not constrained by this AttributeDesignator
+		private final BitSet unconstrainedElements;
+		// elements (positions) by value of the AttributeDesignator that may make them match
+		private final Map<AttributeValue, BitSet> elementsByValue;
+
+		private DesignatorIndex(final DesignatorKey designatorKey, final Expression<?> designatorExpression, final BitSet unconstrainedElements,
+		        final Map<AttributeValue, BitSet> elementsByValue)
+		{
+			this.designatorKey = designatorKey;
+			this.designatorExpression = designatorExpression;
+			this.unconstrainedElements = unconstrainedElements;
+			this.elementsByValue = elementsByValue;
+		}
+
+		/**
+		 * Get the positions of the elements whose Target may match in the given context (as far as this AttributeDesignator is concerned)
+		 *
+		 * @return candidate positions, or null if the AttributeDesignator evaluation is Indeterminate (no element may be excluded)
+		 */
+		private BitSet getCandidates(final EvaluationContext context)
+		{
+			final Object designatorResult;
+			try
+			{
+				designatorResult = designatorExpression.evaluate(context);
+			}
+			catch (final IndeterminateEvaluationException e)
+			{
+				LOGGER.debug("{} -> Indeterminate: no element excluded by index on this attribute", designatorKey, e);
+				return null;
+			}
+
+			final BitSet candidates = (BitSet) unconstrainedElements.clone();
+			for (final AttributeValue attVal : (Bag<?>) designatorResult)
+			{
+				final BitSet elementsMatchingValue = elementsByValue.get(attVal);
+				if (elementsMatchingValue != null)
+				{
+					candidates.or(elementsMatchingValue);
+				}
+			}
+
+			return candidates;
+		}
+	}
+
+	/**
+	 * Get the equality constraints that are necessary conditions for a Target to match, by AttributeDesignator
+	 *
+	 * @param targetEvaluator
+	 *            Target evaluator
+	 * @return for each constraining AttributeDesignator, the designator evaluator and the set of values - one of which at least must be in the designator result for the Target to match
+	 */
+	private static Map<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> getEqualityConstraints(final BooleanEvaluator targetEvaluator)
+	{
+		final Map<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> constraints = HashCollections.newUpdatableMap();
+		for (final AnyOfEvaluator anyOf : TargetEvaluators.getAnyOfEvaluators(targetEvaluator))
+		{
+			/*
+			 * The AnyOf may match only if one of its AllOfs may match. An AllOf may match on a given AttributeDesignator only if one of the values of its equality Matches on this designator is in
+			 * the designator result. Therefore, a designator constrains the AnyOf iff all AllOfs have at least one equality Match on it, and the constraining values are the union of all these
+			 * Matches' values.
+			 */
+			Map<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> anyOfConstraints = null;
+			for (final AllOfEvaluator allOf : anyOf.getAllOfEvaluators())
+			{
+				final Map<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> allOfConstraints = HashCollections.newUpdatableMap();
+				for (final MatchEvaluator match : allOf.getMatchEvaluators())
+				{
+					final Optional<EqualityMatch> optEqualityMatch = match.getEqualityMatch();
+					if (optEqualityMatch.isPresent())
+					{
+						final EqualityMatch equalityMatch = optEqualityMatch.get();
+						allOfConstraints.computeIfAbsent(equalityMatch.designatorKey,
+						        k -> new AbstractMap.SimpleImmutableEntry<>(equalityMatch.designatorExpression, HashCollections.newUpdatableSet())).getValue().add(equalityMatch.value);
+					}
+				}
+
+				if (anyOfConstraints == null)
+				{
+					anyOfConstraints = allOfConstraints;
+				}
+				else
+				{
+					anyOfConstraints.keySet().retainAll(allOfConstraints.keySet());
+					for (final Entry<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> anyOfConstraint : anyOfConstraints.entrySet())
+					{
+						anyOfConstraint.getValue().getValue().addAll(allOfConstraints.get(anyOfConstraint.getKey()).getValue());
+					}
+				}
+
+				if (anyOfConstraints.isEmpty())
+				{
+					break;
+				}
+			}
+
+			/*
+			 * All AnyOfs must match for the Target to match, so any AnyOf's constraint is a constraint on the Target. If multiple AnyOfs constrain the same designator, keeping one of them is enough
+			 * (less selective but still correct).
+			 */
+			if (anyOfConstraints != null)
+			{
+				anyOfConstraints.forEach(constraints::putIfAbsent);
+			}
+		}
+
+		return constraints;
+	}
+
+	/**
+	 * Creates an index of elements by their Targets' equality Matches
+	 *
+	 * @param elements
+	 *            indexed elements, in order of evaluation
+	 * @param targetEvaluators
+	 *            Target evaluators of {@code elements} (same order), null item if the Target of the corresponding element is unknown (the element is then always a candidate)
+	 * @return the index, or empty if indexing is not relevant, e.g. too few elements or no equality Match to index
+	 */
+	public static <T> Optional<TargetIndex<T>> getInstance(final List<T> elements, final List<BooleanEvaluator> targetEvaluators)
+	{
+		assert elements != null && targetEvaluators != null && elements.size() == targetEvaluators.size();
+
+		final int elementCount = elements.size();
+		if (elementCount < MIN_ELEMENT_COUNT)
+		{
+			return Optional.empty();
+		}
+
+		final Map<DesignatorKey, Expression<?>> designatorExpressions = HashCollections.newUpdatableMap();
+		final Map<DesignatorKey, Map<AttributeValue, BitSet>> elementsByValueByDesignator = HashCollections.newUpdatableMap();
+		final Map<DesignatorKey, BitSet> constrainedElementsByDesignator = HashCollections.newUpdatableMap();
+		int elementIndex = 0;
+		for (final BooleanEvaluator targetEvaluator : targetEvaluators)
+		{
+			if (targetEvaluator != null)
+			{
+				for (final Entry<DesignatorKey, Entry<Expression<?>, Set<AttributeValue>>> constraint : getEqualityConstraints(targetEvaluator).entrySet())
+				{
+					final DesignatorKey designatorKey = constraint.getKey();
+					designatorExpressions.putIfAbsent(designatorKey, constraint.getValue().getKey());
+					constrainedElementsByDesignator.computeIfAbsent(designatorKey, k -> new BitSet(elementCount)).set(elementIndex);
+					final Map<AttributeValue, BitSet> elementsByValue = elementsByValueByDesignator.computeIfAbsent(designatorKey, k -> HashCollections.newUpdatableMap());
+					for (final AttributeValue value : constraint.getValue().getValue())
+					{
+						elementsByValue.computeIfAbsent(value, k -> new BitSet(elementCount)).set(elementIndex);
+					}
+				}
+			}
+
+			elementIndex++;
+		}
+
+		/*
+		 * Keep only the designators constraining enough elements, since each indexed designator is evaluated for each request
+		 */
+		final int minConstrainedElementCount = Math.max(2, elementCount / 4);
+		final List<DesignatorIndex> designatorIndexes = new ArrayList<>(constrainedElementsByDesignator.size());
+		for (final Entry<DesignatorKey, BitSet> constrainedElements : constrainedElementsByDesignator.entrySet())
+		{
+			final BitSet constrainedElementSet = constrainedElements.getValue();
+			if (constrainedElementSet.cardinality() < minConstrainedElementCount)
+			{
+				continue;
+			}
+
+			final DesignatorKey designatorKey = constrainedElements.getKey();
+			final BitSet unconstrainedElements = new BitSet(elementCount);
+			unconstrainedElements.set(0, elementCount);
+			unconstrainedElements.andNot(constrainedElementSet);
+			designatorIndexes.add(new DesignatorIndex(designatorKey, designatorExpressions.get(designatorKey), unconstrainedElements,
+			        HashCollections.newImmutableMap(elementsByValueByDesignator.get(designatorKey))));
+		}
+
+		if (designatorIndexes.isEmpty())
+		{
+			return Optional.empty();
+		}
+
+		return Optional.of(new TargetIndex<>(elements, designatorIndexes));
+	}
+
+	private final ImmutableList<T> elements;
+	private final List<DesignatorIndex> designatorIndexes;
+
+	private TargetIndex(final List<T> elements, final List<DesignatorIndex> designatorIndexes)
+	{
+		this.elements = ImmutableList.copyOf(elements);
+		this.designatorIndexes = designatorIndexes;
+		if (LOGGER.isDebugEnabled())
+		{
+			LOGGER.debug("Target index on {} elements created with indexed AttributeDesignators: {}", elements.size(), designatorIndexes.stream().map(i -> i.designatorKey).toArray());
+		}
+	}
+
+	/**
+	 * Get the indexes of the elements whose Target may match in the given context, i.e. all elements except the ones whose Target is a No-match for sure
+	 *
+	 * @param context
+	 *            evaluation context
+	 * @return indexes of candidate elements in the original list of elements, or null if no element is excluded
+	 */
+	public BitSet getCandidateIndexes(final EvaluationContext context)
+	{
+		BitSet candidates = null;
+		for (final DesignatorIndex designatorIndex : designatorIndexes)
+		{
+			final BitSet designatorCandidates = designatorIndex.getCandidates(context);
+			if (designatorCandidates == null)
+			{
+				continue;
+			}
+
+			if (candidates == null)
+			{
+				candidates = designatorCandidates;
+			}
+			else
+			{
+				candidates.and(designatorCandidates);
+			}
+		}
+
+		if (candidates == null)
+		{
+			return null;
+		}
+
+		final int candidateCount = candidates.cardinality();
+		if (candidateCount == elements.size())
+		{
+			return null;
+		}
+
+		LOGGER.debug("Target index -> {} candidate(s) out of {} elements", candidateCount, elements.size());
+		return candidates;
+	}
+
+	/**
+	 * Get the total number of indexed elements
+	 *
+	 * @return number of indexed elements
+	 */
+	public int size()
+	{
+		return elements.size();
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.combining;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.ow2.authzforce.core.pdp.api.Decidable;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Evaluation order of the elements combined by a combining algorithm that stops at the first element returning a given (short-circuiting) decision, and where the order of evaluation does not
+ * matter according to the XACML spec ('children may be processed in any order'), e.g. Deny for deny-overrides. The order is adapted at runtime: the cost (evaluation time) of each element and the
+ * rate at which it returns the short-circuiting decision are recorded, and the elements are periodically re-sorted by increasing expected cost per short-circuiting decision (mean evaluation time
+ * divided by the short-circuiting decision rate), so that the cheapest elements most likely to end the evaluation are evaluated first. Statistics are exponentially decayed at each re-sorting, so that
+ * the order follows changes in the request traffic.
+ * <p>
+ * The final decision is the same whatever the order, but not necessarily the rest of the result: since the evaluation stops at the first element returning the short-circuiting decision, which
+ * one(s) of several elements returning this decision contribute their PEP actions (obligations/advice) and applicable policies to the result depends on the order, as well as the order of PEP
+ * actions and applicable policies, and which one of several Indeterminate results is returned. Therefore the PEP actions returned for the same request may change as the order adapts.
+ * <p>
+ * This class is thread-safe.
+ */
+final class AdaptiveEvaluationOrder
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveEvaluationOrder.class);
+
+	/*
+	 * Number of evaluations between two re-sortings (power of two)
+	 */
+	static final int REORDERING_PERIOD = 1 << 10;
+	private static final int REORDERING_PERIOD_MASK = REORDERING_PERIOD - 1;
+
+	/*
+	 * Weight of the statistics of previous periods at each re-sorting
+	 */
+	private static final double DECAY_FACTOR = 0.5;
+
+	/**
+	 * Combined element with evaluation statistics
+	 */
+	private static final class Child implements Decidable
+	{
+		private final Decidable element;
+		private final DecisionType shortCircuitDecision;
+		private final LongAdder evaluationCount = new LongAdder();
+		private final LongAdder shortCircuitCount = new LongAdder();
+		private final LongAdder evaluationNanos = new LongAdder();
+
+		/*
+		 * Following fields are accessed only by AdaptiveEvaluationOrder#reorder() (synchronized)
+		 */
+		private long lastEvaluationCount = 0;
+		private long lastShortCircuitCount = 0;
+		private long lastEvaluationNanos = 0;
+		private double decayedEvaluationCount = 0;
+		private double decayedShortCircuitCount = 0;
+		private double decayedEvaluationNanos = 0;
+		private double expectedCost = 0;
+
+		private Child(final Decidable element, final DecisionType shortCircuitDecision)
+		{
+			this.element = element;
+			this.shortCircuitDecision = shortCircuitDecision;
+		}
+
+		@Override
+		public DecisionResult evaluate(final EvaluationContext context)
+		{
+			final long startNanos = System.nanoTime();
+			final DecisionResult result = element.evaluate(context);
+			evaluationNanos.add(System.nanoTime() - startNanos);
+			evaluationCount.increment();
+			if (result.getDecision() == shortCircuitDecision)
+			{
+				shortCircuitCount.increment();
+			}
+
+			return result;
+		}
+
+		/*
+		 * Updates the decayed statistics with the ones of the last period, and the expected cost accordingly
+		 */
+		private void updateExpectedCost()
+		{
+			final long newEvaluationCount = evaluationCount.sum();
+			final long newShortCircuitCount = shortCircuitCount.sum();
+			final long newEvaluationNanos = evaluationNanos.sum();
+			decayedEvaluationCount = decayedEvaluationCount * DECAY_FACTOR + (newEvaluationCount - lastEvaluationCount);
+			decayedShortCircuitCount = decayedShortCircuitCount * DECAY_FACTOR + (newShortCircuitCount - lastShortCircuitCount);
+			decayedEvaluationNanos = decayedEvaluationNanos * DECAY_FACTOR + (newEvaluationNanos - lastEvaluationNanos);
+			lastEvaluationCount = newEvaluationCount;
+			lastShortCircuitCount = newShortCircuitCount;
+			lastEvaluationNanos = newEvaluationNanos;
+
+			/*
+			 * Elements not evaluated (recently) get a null cost, so that they are evaluated first in the next period, and their statistics updated. Laplace smoothing of the short-circuiting
+			 * decision rate, never null.
+			 */
+			final double meanNanos = decayedEvaluationCount == 0 ? 0 : decayedEvaluationNanos / decayedEvaluationCount;
+			final double shortCircuitRate = (decayedShortCircuitCount + 1) / (decayedEvaluationCount + 2);
+			expectedCost = meanNanos / shortCircuitRate;
+		}
+
+		@Override
+		public String toString()
+		{
+			return element.toString();
+		}
+	}
+
+	private static final Comparator<Child> EXPECTED_COST_COMPARATOR = Comparator.comparingDouble(child -> child.expectedCost);
+
+	private final AtomicLong evaluationCounter = new AtomicLong();
+	private volatile ImmutableList<Child> children;
+
+	/**
+	 * Creates instance
+	 * 
+	 * @param combinedElements
+	 *            combined elements, initially evaluated in the same order
+	 * @param shortCircuitDecision
+	 *            decision ending the evaluation of the combining algorithm, e.g. Deny for deny-overrides
+	 */
+	AdaptiveEvaluationOrder(final Iterable<? extends Decidable> combinedElements, final DecisionType shortCircuitDecision)
+	{
+		final ImmutableList.Builder<Child> childListBuilder = ImmutableList.builder();
+		for (final Decidable combinedElement : combinedElements)
+		{
+			childListBuilder.add(new Child(combinedElement, shortCircuitDecision));
+		}
+
+		this.children = childListBuilder.build();
+	}
+
+	private synchronized void reorder()
+	{
+		final List<Child> sortedChildren = new ArrayList<>(children);
+		for (final Child child : sortedChildren)
+		{
+			child.updateExpectedCost();
+		}
+
+		// stable sort: order of declaration kept for elements with same expected cost
+		sortedChildren.sort(EXPECTED_COST_COMPARATOR);
+		children = ImmutableList.copyOf(sortedChildren);
+		LOGGER.debug("New evaluation order of combined elements: {}", children);
+	}
+
+	/**
+	 * Gets the combined elements in the order of evaluation for a new evaluation of the combining algorithm, after re-sorting them if the end of the current period is reached. The returned elements
+	 * record their evaluation statistics when evaluated.
+	 * 
+	 * @return combined elements in the order they should be evaluated
+	 */
+	List<? extends Decidable> next()
+	{
+		if ((evaluationCounter.incrementAndGet() & REORDERING_PERIOD_MASK) == 0)
+		{
+			reorder();
+		}
+
+		return children;
+	}
+}
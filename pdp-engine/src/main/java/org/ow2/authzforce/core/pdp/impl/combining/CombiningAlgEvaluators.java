@@ -22,6 +22,7 @@ package org.ow2.authzforce.core.pdp.impl.combining;
 
 import java.util.Collection;
 
+import org.ow2.authzforce.core.pdp.api.Decidable;
 import org.ow2.authzforce.core.pdp.api.DecisionResult;
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
 import org.ow2.authzforce.core.pdp.api.ExtendedDecision;
@@ -97,7 +98,8 @@ final class CombiningAlgEvaluators
 
 	/*
 	 * Rule combining algorithm evaluator where all rules must have the same Effect, and that returns NotApplicable if no rule applies, else Indeterminate if all rules result in Indeterminate or
-	 * NotApplicable, else the Permit/Deny decision (corresponding to the common Effect) of the first rule that applies and successfully evaluates.
+	 * NotApplicable, else the Permit/Deny decision (corresponding to the common Effect) of the first rule that applies and successfully evaluates. The rules are evaluated in order of declaration,
+	 * unless the adaptive evaluation order is enabled (see AdaptiveEvaluationOrder).
 	 */
 	static class RulesWithSameEffectEvaluator implements CombiningAlg.Evaluator
 	{
@@ -116,8 +118,17 @@ final class CombiningAlgEvaluators
 
 		private final ImmutableList<RuleEvaluator> rulesWithSameEffect;
 		private final DecisionType commonDecision;
+		/*
+		 * Null if rules evaluated in order of declaration
+		 */
+		private final AdaptiveEvaluationOrder adaptiveEvaluationOrder;
 
 		RulesWithSameEffectEvaluator(final Collection<? extends RuleEvaluator> rulesWithSameEffect)
+		{
+			this(rulesWithSameEffect, false);
+		}
+
+		RulesWithSameEffectEvaluator(final Collection<? extends RuleEvaluator> rulesWithSameEffect, final boolean adaptiveEvaluationOrder)
 		{
 			assert rulesWithSameEffect != null && !rulesWithSameEffect.isEmpty();
 			// first rule's effect assumed the same for all
@@ -125,6 +136,7 @@ final class CombiningAlgEvaluators
 			assert haveSameEffect(commonEffect, rulesWithSameEffect);
 			this.commonDecision = commonEffect == EffectType.DENY ? DecisionType.DENY : DecisionType.PERMIT;
 			this.rulesWithSameEffect = ImmutableList.copyOf(rulesWithSameEffect);
+			this.adaptiveEvaluationOrder = adaptiveEvaluationOrder && this.rulesWithSameEffect.size() > 1 ? new AdaptiveEvaluationOrder(this.rulesWithSameEffect, commonDecision) : null;
 		}
 
 		@Override
@@ -132,7 +144,7 @@ final class CombiningAlgEvaluators
 		        final UpdatableList<PrimaryPolicyMetadata> updatableApplicablePolicyIdList)
 		{
 			ExtendedDecision firstIndeterminate = null;
-			for (final RuleEvaluator rule : rulesWithSameEffect)
+			for (final Decidable rule : adaptiveEvaluationOrder == null ? rulesWithSameEffect : adaptiveEvaluationOrder.next())
 			{
 				final DecisionResult evalResult = rule.evaluate(context);
 				final DecisionType decision = evalResult.getDecision();
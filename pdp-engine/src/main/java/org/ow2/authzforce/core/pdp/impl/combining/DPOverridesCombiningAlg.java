@@ -59,7 +59,7 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 	 * "Ordered" Deny/Permit-overrides combining algorithm evaluator; "ordered" means combined elements are evaluated in the same order as in the input collection (constructor parameter
 	 * 'combinedElements'), i.e. no re-ordering.
 	 */
-	private static final class OrderPreservingCombiningAlgEvaluator extends BaseCombiningAlg.Evaluator<Decidable>
+	private static class OrderPreservingCombiningAlgEvaluator extends BaseCombiningAlg.Evaluator<Decidable>
 	{
 		/**
 		 * Helper to combine (not-overriding) decision results until a decision overrides or there is no more element to combine
@@ -286,13 +286,23 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 			resultHandlersByDecisionType.put(DecisionType.INDETERMINATE, new IndeterminateSubDecisionHandler(indeterminateResultHandlersByExtendedIndeterminateType));
 		}
 
+		/**
+		 * Get the combined elements in the order they must be evaluated
+		 * 
+		 * @return combined elements in order of evaluation
+		 */
+		protected Iterable<? extends Decidable> getCombinedElementsInEvaluationOrder()
+		{
+			return getCombinedElements();
+		}
+
 		@Override
 		public ExtendedDecision evaluate(final EvaluationContext context, final UpdatableList<PepAction> outPepActions, final UpdatableList<PrimaryPolicyMetadata> outApplicablePolicyIdList)
 		{
 			assert outPepActions != null;
 			final DecisionResultCollector resultCollector = new DecisionResultCollector(outApplicablePolicyIdList != null);
 
-			for (final Decidable combinedElement : getCombinedElements())
+			for (final Decidable combinedElement : getCombinedElementsInEvaluationOrder())
 			{
 				// evaluate the policy
 				final DecisionResult result = combinedElement.evaluate(context);
@@ -388,8 +398,29 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 	}
 
 	/**
-	 * Combining algorithm evaluator that evaluates rules in a specific order: 1) rules with overriding Effect (in same order as in the constructor argument 'rulesWithOverridingEffect'), 2) other
-	 * rules (with overridden effect)
+	 * Deny/Permit-overrides combining algorithm evaluator that adapts the order of evaluation of the combined elements at runtime, evaluating first the cheapest ones most likely to return the
+	 * overriding decision (see {@link AdaptiveEvaluationOrder}).
+	 */
+	private static final class AdaptiveOrderCombiningAlgEvaluator extends OrderPreservingCombiningAlgEvaluator
+	{
+		private final AdaptiveEvaluationOrder evaluationOrder;
+
+		AdaptiveOrderCombiningAlgEvaluator(final Iterable<? extends Decidable> combinedElements, final EffectType overridingEffect)
+		{
+			super(combinedElements, overridingEffect);
+			this.evaluationOrder = new AdaptiveEvaluationOrder(combinedElements, overridingEffect == EffectType.DENY ? DecisionType.DENY : DecisionType.PERMIT);
+		}
+
+		@Override
+		protected Iterable<? extends Decidable> getCombinedElementsInEvaluationOrder()
+		{
+			return evaluationOrder.next();
+		}
+	}
+
+	/**
+	 * Combining algorithm evaluator that evaluates rules in a specific order: 1) rules with overriding Effect (in same order as in the constructor argument 'rulesWithOverridingEffect', unless the
+	 * adaptive evaluation order is enabled), 2) other rules (with overridden effect)
 	 */
 	private static final class OverridingEffectFirstRuleCombiningAlgEvaluator extends RulesWithSameEffectEvaluator
 	{
@@ -404,10 +435,13 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 		 *            combined Rules with overriding Effect. Must be non-null and non-empty.
 		 * @param otherRules
 		 *            combined Rules with opposite/overridden Effect. Must be non-null and non-empty.
+		 * @param adaptiveEvaluationOrder
+		 *            true iff the order of evaluation of the rules with overriding Effect is adapted at runtime (see {@link AdaptiveEvaluationOrder})
 		 */
-		OverridingEffectFirstRuleCombiningAlgEvaluator(final Collection<RuleEvaluator> rulesWithOverridingEffect, final Collection<RuleEvaluator> otherRules)
+		OverridingEffectFirstRuleCombiningAlgEvaluator(final Collection<RuleEvaluator> rulesWithOverridingEffect, final Collection<RuleEvaluator> otherRules,
+		        final boolean adaptiveEvaluationOrder)
 		{
-			super(rulesWithOverridingEffect);
+			super(rulesWithOverridingEffect, adaptiveEvaluationOrder);
 
 			assert otherRules != null && !otherRules.isEmpty();
 
@@ -700,6 +734,8 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 	 */
 	private static class OverridingEffectFirstRuleCollector implements RuleCollector
 	{
+		private final boolean adaptiveEvaluationOrder;
+
 		/*
 		 * We will reorder rules with overriding Effect (e.g. Deny for deny-overrides algorithm) before rules with overridden Effect (e.g. Permit for deny-overrides algorithm) since order does not
 		 * matter and overriding Effect overrides/prevails.
@@ -708,6 +744,11 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 		final Deque<RuleEvaluator> rulesWithOverriddenEffectButNoPepAction = new ArrayDeque<>();
 		final Deque<RuleEvaluator> rulesWithOverriddenEffectAndPepActions = new ArrayDeque<>();
 
+		private OverridingEffectFirstRuleCollector(final boolean adaptiveEvaluationOrder)
+		{
+			this.adaptiveEvaluationOrder = adaptiveEvaluationOrder;
+		}
+
 		@Override
 		public void addNonEmptyRuleWithOverridingEffect(final RuleEvaluator rule)
 		{
@@ -766,7 +807,7 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 		public CombiningAlg.Evaluator getRuleCombiningAlgEvaluatorAssumingAllWithOverridingEffect()
 		{
 			assert rulesWithOverriddenEffectButNoPepAction.isEmpty() && rulesWithOverriddenEffectAndPepActions.isEmpty();
-			return new CombiningAlgEvaluators.RulesWithSameEffectEvaluator(nonEmptyRulesWithOverridingEffect);
+			return new CombiningAlgEvaluators.RulesWithSameEffectEvaluator(nonEmptyRulesWithOverridingEffect, adaptiveEvaluationOrder);
 		}
 
 		private Deque<RuleEvaluator> getRulesWithOverriddenEffect()
@@ -791,13 +832,13 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 		public CombiningAlg.Evaluator getRuleCombiningAlgEvaluatorAssumingAllWithOverriddenEffect()
 		{
 			assert nonEmptyRulesWithOverridingEffect.isEmpty();
-			return new CombiningAlgEvaluators.RulesWithSameEffectEvaluator(getRulesWithOverriddenEffect());
+			return new CombiningAlgEvaluators.RulesWithSameEffectEvaluator(getRulesWithOverriddenEffect(), adaptiveEvaluationOrder);
 		}
 
 		@Override
 		public CombiningAlg.Evaluator getDPOverridesRuleCombiningAlgEvaluator(final EffectType overridingEffect)
 		{
-			return new OverridingEffectFirstRuleCombiningAlgEvaluator(nonEmptyRulesWithOverridingEffect, getRulesWithOverriddenEffect());
+			return new OverridingEffectFirstRuleCombiningAlgEvaluator(nonEmptyRulesWithOverridingEffect, getRulesWithOverriddenEffect(), adaptiveEvaluationOrder);
 		}
 	}
 
@@ -806,13 +847,20 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 	private static final RuleCollectorFactory OVERRIDING_EFFECT_FIRST_RULE_COLLECTOR_FACTORY = () -> {
 		LOGGER.debug(
 		        "Rule combining algorithm is permit/deny-overrides: 'children may be processed in any order' (XACML). This implementation will process Rules with overriding Effect first, then the others without PEP action, and finally the others with PEP action(s)");
-		return new OverridingEffectFirstRuleCollector();
+		return new OverridingEffectFirstRuleCollector(false);
+	};
+
+	private static final RuleCollectorFactory ADAPTIVE_ORDER_RULE_COLLECTOR_FACTORY = () -> {
+		LOGGER.debug(
+		        "Rule combining algorithm is permit/deny-overrides: 'children may be processed in any order' (XACML). This implementation will process Rules with overriding Effect first - in an order adapted at runtime to evaluate first the cheapest ones most likely to return the overriding Effect - then the others without PEP action, and finally the others with PEP action(s)");
+		return new OverridingEffectFirstRuleCollector(true);
 	};
 
 	private static final RuleCollectorFactory ORDER_PRESERVING_RULE_COLLECTOR_FACTORY = () -> new OrderPreservingRuleCollector();
 
 	private final EffectType overridingEffect;
 	private final EffectType overriddenEffect;
+	private final boolean adaptiveEvaluationOrder;
 	private final RuleCollectorFactory ruleCollectorFactory;
 	private final CombiningAlg.Evaluator constantOverridingEffectDecisionEvaluator;
 	private final CombiningAlg.Evaluator constantOverriddenEffectDecisionEvaluator;
@@ -829,6 +877,25 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 	 *            order is changed, in particular optimized by evaluating rules with overriding Effect first.
 	 */
 	DPOverridesCombiningAlg(final String algId, final Class<T> combinedType, final EffectType overridingEffect, final boolean isOrdered)
+	{
+		this(algId, combinedType, overridingEffect, isOrdered, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param algId
+	 *            combining algorithm ID
+	 * @param overridingEffect
+	 *            overriding effect (e.g. Deny for deny-overrides algorithm)
+	 * @param isOrdered
+	 *            true iff combined elements must be evaluated in order of declaration, i.e. in same order as in 'combinedElements' argument of {@link #getInstance(Iterable, Iterable)}. If false, the
+	 *            order is changed, in particular optimized by evaluating rules with overriding Effect first.
+	 * @param adaptiveEvaluationOrder
+	 *            true iff the order of evaluation of the combined elements (rules with overriding Effect if combined elements are Rules) is adapted at runtime to evaluate first the cheapest ones
+	 *            most likely to return the overriding Effect (see {@link AdaptiveEvaluationOrder}). Ignored if {@code isOrdered}.
+	 */
+	DPOverridesCombiningAlg(final String algId, final Class<T> combinedType, final EffectType overridingEffect, final boolean isOrdered, final boolean adaptiveEvaluationOrder)
 	{
 		super(algId, combinedType);
 		this.overridingEffect = overridingEffect;
@@ -845,7 +912,9 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 			constantOverriddenEffectDecisionEvaluator = CombiningAlgEvaluators.DENY_CONSTANT_EVALUATOR;
 		}
 
-		this.ruleCollectorFactory = isOrdered ? ORDER_PRESERVING_RULE_COLLECTOR_FACTORY : OVERRIDING_EFFECT_FIRST_RULE_COLLECTOR_FACTORY;
+		this.adaptiveEvaluationOrder = !isOrdered && adaptiveEvaluationOrder;
+		this.ruleCollectorFactory = isOrdered ? ORDER_PRESERVING_RULE_COLLECTOR_FACTORY
+		        : this.adaptiveEvaluationOrder ? ADAPTIVE_ORDER_RULE_COLLECTOR_FACTORY : OVERRIDING_EFFECT_FIRST_RULE_COLLECTOR_FACTORY;
 	}
 
 	/** {@inheritDoc} */
@@ -873,7 +942,8 @@ final class DPOverridesCombiningAlg<T extends Decidable> extends BaseCombiningAl
 		 */
 		if (!RuleEvaluator.class.isAssignableFrom(getCombinedElementType()))
 		{
-			return new OrderPreservingCombiningAlgEvaluator(combinedElements, this.overridingEffect);
+			return this.adaptiveEvaluationOrder ? new AdaptiveOrderCombiningAlgEvaluator(combinedElements, this.overridingEffect)
+			        : new OrderPreservingCombiningAlgEvaluator(combinedElements, this.overridingEffect);
 		}
 
 		// combined elements are Rules, we can optimize
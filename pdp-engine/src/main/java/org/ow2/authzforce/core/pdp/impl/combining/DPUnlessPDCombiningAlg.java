@@ -57,8 +57,12 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 		private final ExtendedDecision overridingEffectAsExtDecision;
 		private final DecisionType overriddenEffectAsDecision;
 		private final ExtendedDecision overriddenEffectAsExtDecision;
+		/*
+		 * Null if combined elements evaluated in order of declaration
+		 */
+		private final AdaptiveEvaluationOrder adaptiveEvaluationOrder;
 
-		private Evaluator(final Iterable<? extends Decidable> combinedElements, final EffectType overridingEffect)
+		private Evaluator(final Iterable<? extends Decidable> combinedElements, final EffectType overridingEffect, final boolean adaptiveEvaluationOrder)
 		{
 			super(combinedElements);
 			if (overridingEffect == EffectType.DENY)
@@ -76,6 +80,8 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 				this.overriddenEffectAsDecision = DecisionType.DENY;
 				this.overriddenEffectAsExtDecision = ExtendedDecisions.SIMPLE_DENY;
 			}
+
+			this.adaptiveEvaluationOrder = adaptiveEvaluationOrder ? new AdaptiveEvaluationOrder(combinedElements, this.overridingEffectAsDecision) : null;
 		}
 
 		@Override
@@ -87,7 +93,7 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 			 */
 
 			UpdatableList<PepAction> pepActionsInOverriddenEffect = null;
-			for (final Decidable combinedElement : getCombinedElements())
+			for (final Decidable combinedElement : adaptiveEvaluationOrder == null ? getCombinedElements() : adaptiveEvaluationOrder.next())
 			{
 				final DecisionResult result = combinedElement.evaluate(context);
 				final DecisionType decision = result.getDecision();
@@ -136,8 +142,8 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 	}
 
 	/**
-	 * Combining algorithm evaluator that evaluates rules in a specific order: 1) rules with overriding Effect (in same order as in the constructor argument 'rulesWithOverridingEffect'), 2) other
-	 * rules (with overridden effect)
+	 * Combining algorithm evaluator that evaluates rules in a specific order: 1) rules with overriding Effect (in same order as in the constructor argument 'rulesWithOverridingEffect', unless the
+	 * adaptive evaluation order is enabled), 2) other rules (with overridden effect)
 	 */
 	private static final class OverridingEffectFirstRuleCombiningAlgEvaluator implements CombiningAlg.Evaluator
 	{
@@ -159,6 +165,10 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 		private final ImmutableList<RuleEvaluator> otherRulesWithPepActions;
 		private final DecisionType overriddenEffectAsDecision;
 		private final ExtendedDecision overriddenEffectAsExtDecision;
+		/*
+		 * Null if rules with overriding Effect evaluated in order of declaration
+		 */
+		private final AdaptiveEvaluationOrder adaptiveEvaluationOrder;
 
 		/**
 		 * Constructor
@@ -167,8 +177,11 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 		 *            combined Rules with overriding Effect. Must be non-null and non-empty.
 		 * @param otherRulesWithPepActions
 		 *            combined Rules with opposite/overridden Effect and PEP actions. Must be non-null and non-empty.
+		 * @param adaptiveEvaluationOrder
+		 *            true iff the order of evaluation of the rules with overriding Effect is adapted at runtime (see {@link AdaptiveEvaluationOrder})
 		 */
-		OverridingEffectFirstRuleCombiningAlgEvaluator(final Collection<RuleEvaluator> rulesWithOverridingEffect, final Collection<RuleEvaluator> otherRulesWithPepActions)
+		OverridingEffectFirstRuleCombiningAlgEvaluator(final Collection<RuleEvaluator> rulesWithOverridingEffect, final Collection<RuleEvaluator> otherRulesWithPepActions,
+		        final boolean adaptiveEvaluationOrder)
 		{
 			assert rulesWithOverridingEffect != null && !rulesWithOverridingEffect.isEmpty() && otherRulesWithPepActions != null;
 
@@ -196,13 +209,16 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 
 			this.rulesWithOverridingEffect = ImmutableList.copyOf(rulesWithOverridingEffect);
 			this.otherRulesWithPepActions = ImmutableList.copyOf(otherRulesWithPepActions);
+			this.adaptiveEvaluationOrder = adaptiveEvaluationOrder && this.rulesWithOverridingEffect.size() > 1
+			        ? new AdaptiveEvaluationOrder(this.rulesWithOverridingEffect, this.overridingEffectAsDecision)
+			        : null;
 		}
 
 		@Override
 		public ExtendedDecision evaluate(final EvaluationContext context, final UpdatableList<PepAction> updatablePepActions,
 		        final UpdatableList<PrimaryPolicyMetadata> updatableApplicablePolicyIdList)
 		{
-			for (final RuleEvaluator rule : rulesWithOverridingEffect)
+			for (final Decidable rule : adaptiveEvaluationOrder == null ? rulesWithOverridingEffect : adaptiveEvaluationOrder.next())
 			{
 				final DecisionResult evalResult = rule.evaluate(context);
 				final DecisionType decision = evalResult.getDecision();
@@ -240,6 +256,7 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 	private final EffectType overriddenEffect;
 	private final CombiningAlg.Evaluator constantOverridingEffectDecisionEvaluator;
 	private final CombiningAlg.Evaluator constantOverriddenEffectDecisionEvaluator;
+	private final boolean adaptiveEvaluationOrder;
 
 	/**
 	 * Constructor
@@ -250,9 +267,26 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 	 *            overriding Effect, e.g. Permit if algId is "deny-unless-permit"
 	 */
 	DPUnlessPDCombiningAlg(final String algId, final Class<T> combinedType, final EffectType overridingEffect)
+	{
+		this(algId, combinedType, overridingEffect, false);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param algId
+	 *            combining algorithm ID
+	 * @param overridingEffect
+	 *            overriding Effect, e.g. Permit if algId is "deny-unless-permit"
+	 * @param adaptiveEvaluationOrder
+	 *            true iff the order of evaluation of the combined elements (rules with overriding Effect if combined elements are Rules) is adapted at runtime to evaluate first the cheapest ones
+	 *            most likely to return the overriding Effect (see {@link AdaptiveEvaluationOrder})
+	 */
+	DPUnlessPDCombiningAlg(final String algId, final Class<T> combinedType, final EffectType overridingEffect, final boolean adaptiveEvaluationOrder)
 	{
 		super(algId, combinedType);
 		this.overridingEffect = overridingEffect;
+		this.adaptiveEvaluationOrder = adaptiveEvaluationOrder;
 		if (overridingEffect == EffectType.DENY)
 		{
 			overriddenEffect = EffectType.PERMIT;
@@ -292,7 +326,7 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 		 */
 		if (!RuleEvaluator.class.isAssignableFrom(getCombinedElementType()))
 		{
-			return new Evaluator(combinedElements, this.overridingEffect);
+			return new Evaluator(combinedElements, this.overridingEffect, this.adaptiveEvaluationOrder);
 		}
 
 		// combined elements are Rules, we can optimize
@@ -372,7 +406,7 @@ final class DPUnlessPDCombiningAlg<T extends Decidable> extends BaseCombiningAlg
 		LOGGER.debug(
 		        "{}: 'children may be processed in any order' (XACML). This implementation will process Rules with overriding Effect first, then the others (with PEP actions only, others without are ignored)",
 		        this);
-		return new OverridingEffectFirstRuleCombiningAlgEvaluator(nonEmptyRulesWithOverridingEffect, rulesWithOverriddenEffectAndPepActions);
+		return new OverridingEffectFirstRuleCombiningAlgEvaluator(nonEmptyRulesWithOverridingEffect, rulesWithOverriddenEffectAndPepActions, this.adaptiveEvaluationOrder);
 	}
 
 }
@@ -17,9 +17,9 @@
  */
 package org.ow2.authzforce.core.pdp.impl.combining;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.ow2.authzforce.core.pdp.api.Decidable;
 import org.ow2.authzforce.core.pdp.api.DecisionResult;
@@ -32,6 +32,8 @@ import org.ow2.authzforce.core.pdp.api.combining.BaseCombiningAlg;
 import org.ow2.authzforce.core.pdp.api.combining.CombiningAlg;
 import org.ow2.authzforce.core.pdp.api.combining.CombiningAlgParameter;
 import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.impl.BooleanEvaluator;
+import org.ow2.authzforce.core.pdp.impl.DecisionTable;
 import org.ow2.authzforce.core.pdp.impl.rule.RuleEvaluator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -138,11 +140,17 @@ final class FirstApplicableCombiningAlg<T extends Decidable> extends BaseCombini
 		/*
 		 * If we found any empty rule
 		 */
-		final Deque<RuleEvaluator> finalRules = new ArrayDeque<>();
+		final List<RuleEvaluator> finalRules = new ArrayList<>();
+		/*
+		 * Target evaluators of the rules that apply iff their Target matches (no Condition), null item for the others, and for the rules with evaluation metrics (not to be skipped by a decision
+		 * table)
+		 */
+		final List<BooleanEvaluator> finalRuleTargetEvaluators = new ArrayList<>();
 		while (combinedEltIterator.hasNext())
 		{
 			final RuleEvaluator rule = (RuleEvaluator) combinedEltIterator.next();
 			finalRules.add(rule);
+			finalRuleTargetEvaluators.add(rule.hasCondition() || rule.isEvaluationMetricsEnabled() ? null : rule.getTargetEvaluator());
 			if (rule.isAlwaysApplicable())
 			{
 				/*
@@ -153,9 +161,15 @@ final class FirstApplicableCombiningAlg<T extends Decidable> extends BaseCombini
 		}
 
 		/*
-		 * if(combinedEltIterator.hasNext()), combinedElements has more elements than finalRules, so finalRules is a subset of combinedElements; else they have the same elements
+		 * Compile runs of rules with simple equality Matches in their Target (e.g. generated access control lists) into decision tables, if any
 		 */
-		return new Evaluator(combinedEltIterator.hasNext() ? finalRules : combinedElements);
+		final List<Decidable> compiledRules = DecisionTable.compile(finalRules, finalRuleTargetEvaluators);
+		if (compiledRules.size() < finalRules.size())
+		{
+			LOGGER.debug("{}: {} rules compiled into {} elements (rules or decision tables): {}", this, finalRules.size(), compiledRules.size(), compiledRules);
+		}
+
+		return new Evaluator(compiledRules);
 	}
 
 	FirstApplicableCombiningAlg(final String algId, final Class<T> combinedType)
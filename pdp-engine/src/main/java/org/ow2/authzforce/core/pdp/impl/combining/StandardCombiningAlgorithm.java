@@ -182,36 +182,39 @@ public enum StandardCombiningAlgorithm
 
 	private static final PdpExtensionComparator<CombiningAlg<?>> COMPARATOR = new PdpExtensionComparator<>();
 
-	/**
-	 * Singleton immutable instance of combining algorithm registry for standard algorithms
-	 */
-	public static final CombiningAlgRegistry REGISTRY;
-
-	static
+	private static CombiningAlgRegistry newRegistry(final boolean adaptiveEvaluationOrder)
 	{
 		final Set<CombiningAlg<? extends Decidable>> standardAlgorithms = HashCollections.newUpdatableSet(StandardCombiningAlgorithm.values().length);
 		// XACML 3.0 algorithms
 		// deny-overrides and ordered-deny-overrides
-		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_DENY_OVERRIDES.id, PolicyEvaluator.class, EffectType.DENY, false));
-		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_DENY_OVERRIDES.id, RuleEvaluator.class, EffectType.DENY, false));
+		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_DENY_OVERRIDES.id, PolicyEvaluator.class, EffectType.DENY, false,
+				adaptiveEvaluationOrder));
+		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_DENY_OVERRIDES.id, RuleEvaluator.class, EffectType.DENY, false,
+				adaptiveEvaluationOrder));
 
 		standardAlgorithms.add(new DPOverridesCombiningAlg<>(XACML_3_0_POLICY_COMBINING_ORDERED_DENY_OVERRIDES.id, PolicyEvaluator.class, EffectType.DENY, true));
 		standardAlgorithms.add(new DPOverridesCombiningAlg<>(XACML_3_0_RULE_COMBINING_ORDERED_DENY_OVERRIDES.id, RuleEvaluator.class, EffectType.DENY, true));
 
 		// permit-overrides and ordered-permit-overrides
-		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_PERMIT_OVERRIDES.id, PolicyEvaluator.class, EffectType.PERMIT, false));
-		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_PERMIT_OVERRIDES.id, RuleEvaluator.class, EffectType.PERMIT, false));
+		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_PERMIT_OVERRIDES.id, PolicyEvaluator.class, EffectType.PERMIT, false,
+				adaptiveEvaluationOrder));
+		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_PERMIT_OVERRIDES.id, RuleEvaluator.class, EffectType.PERMIT, false,
+				adaptiveEvaluationOrder));
 
 		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_ORDERED_PERMIT_OVERRIDES.id, PolicyEvaluator.class, EffectType.PERMIT, true));
 		standardAlgorithms.add(new DPOverridesCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_ORDERED_PERMIT_OVERRIDES.id, RuleEvaluator.class, EffectType.PERMIT, true));
 
 		// deny-unless-permit
-		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_DENY_UNLESS_PERMIT.id, PolicyEvaluator.class, EffectType.PERMIT));
-		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_DENY_UNLESS_PERMIT.id, RuleEvaluator.class, EffectType.PERMIT));
+		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_DENY_UNLESS_PERMIT.id, PolicyEvaluator.class, EffectType.PERMIT,
+				adaptiveEvaluationOrder));
+		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_DENY_UNLESS_PERMIT.id, RuleEvaluator.class, EffectType.PERMIT,
+				adaptiveEvaluationOrder));
 
 		// permit-unless-deny
-		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_PERMIT_UNLESS_DENY.id, PolicyEvaluator.class, EffectType.DENY));
-		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_PERMIT_UNLESS_DENY.id, RuleEvaluator.class, EffectType.DENY));
+		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_POLICY_COMBINING_PERMIT_UNLESS_DENY.id, PolicyEvaluator.class, EffectType.DENY,
+				adaptiveEvaluationOrder));
+		standardAlgorithms.add(new DPUnlessPDCombiningAlg<>(StandardCombiningAlgorithm.XACML_3_0_RULE_COMBINING_PERMIT_UNLESS_DENY.id, RuleEvaluator.class, EffectType.DENY,
+				adaptiveEvaluationOrder));
 
 		// first-applicable
 		standardAlgorithms.add(new FirstApplicableCombiningAlg<>(StandardCombiningAlgorithm.XACML_1_0_POLICY_COMBINING_FIRST_APPLICABLE.id, PolicyEvaluator.class));
@@ -236,15 +239,28 @@ public enum StandardCombiningAlgorithm
 			standardAlgorithms.add(new LegacyPermitOverridesCombiningAlg(alg.id));
 		}
 
-		REGISTRY = new ImmutableCombiningAlgRegistry(standardAlgorithms);
 		if (LOGGER.isDebugEnabled())
 		{
 			final TreeSet<CombiningAlg<?>> sortedAlgorithms = new TreeSet<>(COMPARATOR);
 			sortedAlgorithms.addAll(standardAlgorithms);
-			LOGGER.debug("Loaded XACML standard combining algorithms: {}", sortedAlgorithms);
+			LOGGER.debug("Loaded XACML standard combining algorithms (adaptive evaluation order: {}): {}", adaptiveEvaluationOrder, sortedAlgorithms);
 		}
+
+		return new ImmutableCombiningAlgRegistry(standardAlgorithms);
 	}
 
+	/**
+	 * Singleton immutable instance of combining algorithm registry for standard algorithms
+	 */
+	public static final CombiningAlgRegistry REGISTRY = newRegistry(false);
+
+	/**
+	 * Singleton immutable instance of combining algorithm registry for standard algorithms, where the (not ordered) deny-overrides, permit-overrides, deny-unless-permit and permit-unless-deny
+	 * algorithms adapt the order of evaluation of the combined elements at runtime, based on their observed evaluation time and rate of overriding decisions, in order to evaluate first the cheapest
+	 * elements most likely to return the overriding decision. The ordered-* algorithms always evaluate the combined elements in order of declaration.
+	 */
+	public static final CombiningAlgRegistry ADAPTIVE_EVALUATION_ORDER_REGISTRY = newRegistry(true);
+
 	private static final Map<String, StandardCombiningAlgorithm> ID_TO_STD_ALG_MAP = Maps.uniqueIndex(Arrays.asList(StandardCombiningAlgorithm.values()),
 			new com.google.common.base.Function<StandardCombiningAlgorithm, String>()
 			{
@@ -139,6 +139,19 @@ public final class ApplyExpressions
 	 */
 	public static Expression<?> newInstance(final ApplyType xacmlApply, final XPathCompiler xPathCompiler, final ExpressionFactory expFactory, final Deque<String> longestVarRefChain)
 	        throws IllegalArgumentException
+	{
+		return newInstance(xacmlApply, xPathCompiler, expFactory, longestVarRefChain, null);
+	}
+
+	/**
+	 * Same as {@link #newInstance(ApplyType, XPathCompiler, ExpressionFactory, Deque)}, except the arguments of the standard logical functions 'and', 'or' and 'n-of' are reordered according to their
+	 * estimated evaluation cost (see {@link ExpressionCostModel#reorderLogicalFunctionArguments(String, List, List)})
+	 *
+	 * @param argumentCostModel
+	 *            cost model used to reorder the arguments of the logical functions; null if the arguments are not to be reordered
+	 */
+	static Expression<?> newInstance(final ApplyType xacmlApply, final XPathCompiler xPathCompiler, final ExpressionFactory expFactory, final Deque<String> longestVarRefChain,
+	        final ExpressionCostModel argumentCostModel) throws IllegalArgumentException
 	{
 		if (xacmlApply == null)
 		{
@@ -215,11 +228,24 @@ public final class ApplyExpressions
 
 		final Function<?> function = functionExp.getValue().get();
 
+		final List<Expression<?>> orderedFuncInputs;
+		if (argumentCostModel == null)
+		{
+			orderedFuncInputs = funcInputs;
+		} else
+		{
+			orderedFuncInputs = argumentCostModel.reorderLogicalFunctionArguments(functionId, applyArgExpressions, funcInputs);
+			if (orderedFuncInputs != funcInputs)
+			{
+				LOGGER.debug("Apply[Description = {}]: arguments of function '{}' reordered by estimated evaluation cost", applyDesc, functionId);
+			}
+		}
+
 		// check that the given inputs work for the function and get the optimized functionCall
 		final FunctionCall<?> funcCall;
 		try
 		{
-			funcCall = function.newCall(Collections.unmodifiableList(funcInputs));
+			funcCall = function.newCall(Collections.unmodifiableList(orderedFuncInputs));
 		} catch (final IllegalArgumentException e)
 		{
 			throw new IllegalArgumentException("Invalid Apply[Description = " + applyDesc + "]: Invalid args for function " + function, e);
@@ -18,12 +18,18 @@
 package org.ow2.authzforce.core.pdp.impl.expression;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
 import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
 import org.ow2.authzforce.core.pdp.api.HashCollections;
@@ -39,9 +45,14 @@ import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
 import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactory;
 import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
 import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
 import org.ow2.authzforce.core.pdp.api.value.Value;
+import org.ow2.authzforce.core.pdp.impl.AttributeValueCache;
 import org.ow2.authzforce.core.pdp.impl.CloseableAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.EvaluationContextSlots;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContext;
 import org.ow2.authzforce.core.pdp.impl.func.FunctionRegistry;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
 import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,6 +127,13 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		{
 			return longestVariableReferenceChain;
 		}
+
+		/**
+		 * Get the estimated cost of evaluating the variable's expression (see {@link ExpressionCostModel})
+		 *
+		 * @return evaluation cost
+		 */
+		abstract long getEvaluationCost();
 	}
 
 	private static final class ConstantVariableReference<V extends Value> extends BaseVariableReference<V>
@@ -181,12 +199,27 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		{
 			return this.alwaysPresentVarValue.get();
 		}
+
+		@Override
+		long getEvaluationCost()
+		{
+			return ExpressionCostModel.CONSTANT_COST;
+		}
 	}
 
 	private static final class DynamicVariableReference<V extends Value> extends BaseVariableReference<V>
 	{
 		private final transient Expression<V> expression;
 		private final transient IndeterminateEvaluationException nullContextException;
+		/*
+		 * Allocator of variableSlot
+		 */
+		private final transient EvaluationContextSlots slots;
+		/*
+		 * Slot of the variable value in IndividualDecisionRequestContext
+		 */
+		private final transient int variableSlot;
+		private final transient long evaluationCost;
 
 		/**
 		 * Constructor that takes a variable identifier
@@ -198,12 +231,19 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		 * @param longestVarRefChain
 		 *            longest chain of VariableReference Reference in <code>expr</code> (V1 -> V2 -> ... -> Vn, where "V1 -> V2" means VariableReference V1's expression contains one or more
 		 *            VariableReferences to V2)
+		 * @param evaluationCost
+		 *            estimated cost of evaluating {@code varExpr}
+		 * @param slots
+		 *            allocator of the slot of the variable value in evaluation contexts
 		 */
-		private DynamicVariableReference(final String varId, final Expression<V> varExpr, final Deque<String> longestVarRefChain)
+		private DynamicVariableReference(final String varId, final Expression<V> varExpr, final Deque<String> longestVarRefChain, final long evaluationCost, final EvaluationContextSlots slots)
 		{
 			super(varId, longestVarRefChain);
-			assert varExpr != null;
+			assert varExpr != null && slots != null;
 			this.expression = varExpr;
+			this.evaluationCost = evaluationCost;
+			this.slots = slots;
+			this.variableSlot = slots.assignVariableSlot(varId);
 			this.nullContextException = new IndeterminateEvaluationException(
 			        "VariableReference[VariableId='" + this.variableId + "']: evaluate(context = null) not allowed because the variable requires context for evaluation (not constant)",
 			        XacmlStatusCode.PROCESSING_ERROR.value());
@@ -249,6 +289,20 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 				throw nullContextException;
 			}
 
+			if (context instanceof IndividualDecisionRequestContext && ((IndividualDecisionRequestContext) context).isSlottedBy(this.slots))
+			{
+				final IndividualDecisionRequestContext slottedContext = (IndividualDecisionRequestContext) context;
+				final V ctxVal = slottedContext.getVariableValue(this.variableSlot, this.variableId, expression.getReturnType());
+				if (ctxVal != null)
+				{
+					return ctxVal;
+				}
+
+				final V result = expression.evaluate(context);
+				slottedContext.putVariableIfAbsent(this.variableSlot, this.variableId, result);
+				return result;
+			}
+
 			final V ctxVal = context.getVariableValue(this.variableId, expression.getReturnType());
 			if (ctxVal != null)
 			{
@@ -260,10 +314,99 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 			context.putVariableIfAbsent(this.variableId, result);
 			return result;
 		}
+
+		@Override
+		long getEvaluationCost()
+		{
+			return evaluationCost;
+		}
+	}
+
+	/**
+	 * Apply expression shared by all the structurally identical Apply elements of a policy tree (same function and arguments, recursively), whose value is computed once per evaluation context, the
+	 * same way as VariableReferences (see {@link DynamicVariableReference}).
+	 *
+	 * @param <V>
+	 *            evaluation's return type
+	 */
+	private static final class SharedApplyExpression<V extends Value> implements Expression<V>
+	{
+		/*
+		 * Key of the value in the evaluation context, used like a VariableId
+		 */
+		private final String contextKey;
+		private final Expression<V> expression;
+		/*
+		 * Allocator of contextSlot
+		 */
+		private final EvaluationContextSlots slots;
+		/*
+		 * Slot of the value in IndividualDecisionRequestContext
+		 */
+		private final int contextSlot;
+
+		private SharedApplyExpression(final String contextKey, final Expression<V> applyExpression, final EvaluationContextSlots slots)
+		{
+			assert contextKey != null && applyExpression != null && slots != null;
+			this.contextKey = contextKey;
+			this.expression = applyExpression;
+			this.slots = slots;
+			this.contextSlot = slots.assignVariableSlot(contextKey);
+		}
+
+		@Override
+		public Datatype<V> getReturnType()
+		{
+			return expression.getReturnType();
+		}
+
+		@Override
+		public Optional<V> getValue()
+		{
+			return Optional.empty();
+		}
+
+		@Override
+		public V evaluate(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			if (context == null)
+			{
+				return expression.evaluate(null);
+			}
+
+			if (context instanceof IndividualDecisionRequestContext && ((IndividualDecisionRequestContext) context).isSlottedBy(this.slots))
+			{
+				final IndividualDecisionRequestContext slottedContext = (IndividualDecisionRequestContext) context;
+				final V ctxVal = slottedContext.getVariableValue(this.contextSlot, this.contextKey, expression.getReturnType());
+				if (ctxVal != null)
+				{
+					return ctxVal;
+				}
+
+				final V result = expression.evaluate(context);
+				slottedContext.putVariableIfAbsent(this.contextSlot, this.contextKey, result);
+				return result;
+			}
+
+			final V ctxVal = context.getVariableValue(this.contextKey, expression.getReturnType());
+			if (ctxVal != null)
+			{
+				return ctxVal;
+			}
+
+			final V result = expression.evaluate(context);
+			context.putVariableIfAbsent(this.contextKey, result);
+			return result;
+		}
 	}
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DepthLimitingExpressionFactory.class);
 
+	/*
+	 * Prefix of the evaluation context keys of shared Apply expressions, to prevent collision with VariableIds
+	 */
+	private static final String SHARED_APPLY_CONTEXT_KEY_PREFIX = DepthLimitingExpressionFactory.class.getName() + ".sharedApply#";
+
 	private static final IllegalArgumentException MISSING_ATTRIBUTE_DESIGNATOR_ISSUER_EXCEPTION = new IllegalArgumentException(
 	        "Missing Issuer that is required on AttributeDesignators by PDP configuration");
 
@@ -282,12 +425,62 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 	private final FunctionRegistry functionRegistry;
 	private final CloseableAttributeProvider attributeProvider;
 	private final int maxVariableReferenceDepth;
-	// the map from identifiers to internal data
+	/*
+	 * The map from identifiers to internal data, i.e. VariableDefinitions in scope of the Policy being parsed. Not thread-safe: policies parsed concurrently (see CoreRefPolicyProvider's
+	 * loadingParallelism) each use their own scope (see #newVariableScope()).
+	 */
 	private final Map<String, BaseVariableReference<?>> idToVariableMap = HashCollections.newMutableMap();
 	private final boolean allowAttributeSelectors;
 
 	private final boolean issuerRequiredOnAttributeDesignators;
 
+	private final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry;
+
+	/*
+	 * Null iff the arguments of logical functions are not reordered by cost
+	 */
+	private final ExpressionCostModel argumentCostModel;
+
+	/*
+	 * Apply expressions of the current policy tree (see #newPolicyTreeScope()) by structural key (see #getStructuralKey(ApplyType)); null iff Apply expressions are not shared. Concurrent map since
+	 * multiple policies may be parsed concurrently.
+	 */
+	private final Map<String, Expression<?>> sharedApplyExpressions;
+
+	/*
+	 * Allocator of the evaluation context slots of the variables, shared Apply expressions and policies created with this factory
+	 */
+	private final EvaluationContextSlots evaluationContextSlots;
+
+	/**
+	 * Same as {@link #DepthLimitingExpressionFactory(AttributeValueFactoryRegistry, FunctionRegistry, List, int, boolean, boolean, boolean, Optional, Optional, boolean, boolean)} with asynchronous attribute
+	 * prefetching, attribute value cache, evaluation metrics, cost-based reordering of logical function arguments and sharing of Apply expressions disabled
+	 *
+	 * @param attributeFactory
+	 *            attribute value factory (not null)
+	 * @param functionRegistry
+	 *            function registry (not null)
+	 * @param attributeProviderFactories
+	 *            Attribute Provider factories (Attribute Providers resolve values of attributes absent from the request context). Empty if none.
+	 * @param maxVariableRefDepth
+	 *            max depth of VariableReference chaining: VariableDefinition -> VariableDefinition ->... ('->' represents a VariableReference); strictly negative value means unlimited
+	 * @param allowAttributeSelectors
+	 *            allow use of AttributeSelectors (experimental, not for production, use with caution)
+	 * @param strictAttributeIssuerMatch
+	 *            true iff we want strict Attribute Issuer matching and we require that all AttributeDesignators set the Issuer field.
+	 * @throws java.lang.IllegalArgumentException
+	 *             If {@code attributeFactory == null || functionRegistry == null} OR any Attribute Provider created from {@code attributeProviderFactories} does not provide any attribute.
+	 * @throws java.io.IOException
+	 *             error closing the Attribute Providers created from {@code attributeProviderFactories}, when a {@link IllegalArgumentException} is raised
+	 */
+	public DepthLimitingExpressionFactory(final AttributeValueFactoryRegistry attributeFactory, final FunctionRegistry functionRegistry,
+	        final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories, final int maxVariableRefDepth, final boolean allowAttributeSelectors,
+	        final boolean strictAttributeIssuerMatch) throws IllegalArgumentException, IOException
+	{
+		this(attributeFactory, functionRegistry, attributeProviderFactories, maxVariableRefDepth, allowAttributeSelectors, strictAttributeIssuerMatch, false, Optional.empty(), Optional.empty(),
+		        false, false);
+	}
+
 	/**
 	 * Maximum VariableReference depth allowed for VariableDefinitions to be managed. Examples:
 	 * <ul>
@@ -316,6 +509,21 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 	 *            Issuer, if the requests are using matching Attributes but with none, one or more different Issuers, this PDP engine has to gather all the values from all the attributes with matching
 	 *            Category/AttributeId but with any Issuer or no Issuer. Therefore, in order to stay compliant with §5.29 and still enforce best practice, when {@code strictAttributeIssuerMatch} is
 	 *            true, we also require that all AttributeDesignators set the Issuer field.
+	 * @param asyncAttributePrefetch
+	 *            true iff the attributes used in AttributeDesignators and provided by {@link org.ow2.authzforce.core.pdp.impl.AsyncNamedAttributeProvider} modules are to be fetched concurrently
+	 *            by group of attributes needed together by the root policy (see {@link CloseableAttributeProvider#addPrefetchCandidate(org.ow2.authzforce.core.pdp.api.AttributeFqn, Datatype)})
+	 * @param attributeValueCache
+	 *            (optional) cache of attribute values returned by attribute provider modules, shared by all requests (see {@link AttributeValueCache})
+	 * @param evaluationMetricsRegistry
+	 *            (optional) registry of evaluation metrics of the policies and rules created with this factory (see {@link #getEvaluationMetricsRegistry()}), and of the attributes and attribute
+	 *            provider modules used by the attribute provider; closed by {@link #close()}
+	 * @param costBasedLogicalArgumentOrder
+	 *            true iff the arguments of the standard logical functions 'and', 'or' and 'n-of' in Apply expressions are to be reordered by estimated evaluation cost (see
+	 *            {@link ExpressionCostModel}), so that the cheapest ones are evaluated first
+	 * @param sharedApplyExpressions
+	 *            true iff structurally identical Apply elements (same function and arguments, recursively, without VariableReference, AttributeSelector or XPath expression) with at least one
+	 *            nested Apply are to be parsed into a single shared Apply expression, whose value is computed at most once per evaluation context (request), like a VariableDefinition shared by all
+	 *            policies of the same policy tree (see {@link #newPolicyTreeScope()})
 	 * @throws java.lang.IllegalArgumentException
 	 *             If {@code attributeFactory == null || functionRegistry == null} OR any Attribute Provider created from {@code attributeProviderFactories} does not provide any attribute.
 	 * @throws java.io.IOException
@@ -323,7 +531,9 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 	 */
 	public DepthLimitingExpressionFactory(final AttributeValueFactoryRegistry attributeFactory, final FunctionRegistry functionRegistry,
 	        final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories, final int maxVariableRefDepth, final boolean allowAttributeSelectors,
-	        final boolean strictAttributeIssuerMatch) throws IllegalArgumentException, IOException
+	        final boolean strictAttributeIssuerMatch, final boolean asyncAttributePrefetch, final Optional<AttributeValueCache> attributeValueCache,
+	        final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry, final boolean costBasedLogicalArgumentOrder, final boolean sharedApplyExpressions)
+	        throws IllegalArgumentException, IOException
 	{
 		if (attributeFactory == null)
 		{
@@ -341,12 +551,65 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		/*
 		 * finally create the global attribute Provider used to resolve AttributeDesignators
 		 */
-		this.attributeProvider = CloseableAttributeProvider.getInstance(attributeProviderFactories, attributeFactory, strictAttributeIssuerMatch);
+		this.attributeProvider = CloseableAttributeProvider.getInstance(attributeProviderFactories, attributeFactory, strictAttributeIssuerMatch, asyncAttributePrefetch, attributeValueCache,
+		        evaluationMetricsRegistry);
 		this.allowAttributeSelectors = allowAttributeSelectors;
 		this.issuerRequiredOnAttributeDesignators = strictAttributeIssuerMatch;
+		this.evaluationMetricsRegistry = evaluationMetricsRegistry;
+		this.argumentCostModel = costBasedLogicalArgumentOrder ? new ExpressionCostModel(this.attributeProvider, this::getVariableEvaluationCost) : null;
+		this.sharedApplyExpressions = sharedApplyExpressions ? new ConcurrentHashMap<>() : null;
+		this.evaluationContextSlots = new EvaluationContextSlots();
 	}
 
-	private static <V extends Value> BaseVariableReference<?> newVariableReference(final String variableId, final Expression<V> variableExpression, final Deque<String> longestVarRefChainInExpression)
+	/*
+	 * Creates a factory sharing everything with parentFactory but the scope of VariableDefinitions (initially empty), and the shared Apply expressions iff newPolicyTreeScope (initially none)
+	 */
+	private DepthLimitingExpressionFactory(final DepthLimitingExpressionFactory parentFactory, final boolean newPolicyTreeScope)
+	{
+		assert parentFactory != null;
+		this.datatypeFactoryRegistry = parentFactory.datatypeFactoryRegistry;
+		this.functionRegistry = parentFactory.functionRegistry;
+		this.maxVariableReferenceDepth = parentFactory.maxVariableReferenceDepth;
+		this.attributeProvider = parentFactory.attributeProvider;
+		this.allowAttributeSelectors = parentFactory.allowAttributeSelectors;
+		this.issuerRequiredOnAttributeDesignators = parentFactory.issuerRequiredOnAttributeDesignators;
+		this.evaluationMetricsRegistry = parentFactory.evaluationMetricsRegistry;
+		// the cost of VariableReferences depends on the variables in scope
+		this.argumentCostModel = parentFactory.argumentCostModel == null ? null : new ExpressionCostModel(this.attributeProvider, this::getVariableEvaluationCost);
+		this.sharedApplyExpressions = newPolicyTreeScope && parentFactory.sharedApplyExpressions != null ? new ConcurrentHashMap<>() : parentFactory.sharedApplyExpressions;
+		this.evaluationContextSlots = parentFactory.evaluationContextSlots;
+	}
+
+	/**
+	 * Creates an expression factory for parsing a single Policy: it shares the configuration, attribute provider, evaluation context slots, etc. with this factory, but has its own (initially empty)
+	 * scope of VariableDefinitions ({@link #addVariable(VariableDefinition, XPathCompiler, Deque)}, {@link #getVariableExpression(String)}, {@link #removeVariable(String)}). Therefore multiple
+	 * Policies may be parsed concurrently, each one with its own scope, and no VariableDefinition is left over in this factory if the parsing of a Policy fails.
+	 * <p>
+	 * The returned factory is not thread-safe as far as VariableDefinitions are concerned, and must not be closed (only this factory is).
+	 *
+	 * @return new expression factory with empty VariableDefinition scope
+	 */
+	public DepthLimitingExpressionFactory newVariableScope()
+	{
+		return new DepthLimitingExpressionFactory(this, false);
+	}
+
+	/**
+	 * Creates an expression factory for parsing a whole policy tree, i.e. the root policy and all the policies it references (directly or indirectly): same as {@link #newVariableScope()}, except the
+	 * shared Apply expressions (if enabled) are not shared with this factory but only between the policies parsed with the returned factory (and its variable scopes). Policy providers should use a
+	 * new policy tree scope every time they (re)load policies, so that the shared Apply expressions of policies no longer in use may be garbage-collected.
+	 * <p>
+	 * The returned factory must not be closed (only this factory is).
+	 *
+	 * @return new expression factory with empty VariableDefinition scope and no shared Apply expression
+	 */
+	public DepthLimitingExpressionFactory newPolicyTreeScope()
+	{
+		return new DepthLimitingExpressionFactory(this, true);
+	}
+
+	private <V extends Value> BaseVariableReference<?> newVariableReference(final String variableId, final Expression<V> variableExpression, final Deque<String> longestVarRefChainInExpression,
+	        final long evaluationCost)
 	{
 		assert variableId != null && variableExpression != null;
 
@@ -364,7 +627,7 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 			return new ConstantVariableReference<>(variableId, constant.get(), variableExpression.getReturnType(), longestVarRefChainInExpression);
 		}
 
-		return new DynamicVariableReference<>(variableId, variableExpression, longestVarRefChainInExpression);
+		return new DynamicVariableReference<>(variableId, variableExpression, longestVarRefChainInExpression, evaluationCost, evaluationContextSlots);
 	}
 
 	/** {@inheritDoc} */
@@ -417,10 +680,20 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 
 		}
 
-		final BaseVariableReference<?> var = newVariableReference(varId, varExpr, longestVarRefChainInCurrentVarExpression);
+		final long varEvaluationCost = argumentCostModel == null ? ExpressionCostModel.CONSTANT_COST : argumentCostModel.getCost(varDef.getExpression().getValue());
+		final BaseVariableReference<?> var = newVariableReference(varId, varExpr, longestVarRefChainInCurrentVarExpression, varEvaluationCost);
 		return idToVariableMap.putIfAbsent(varId, var);
 	}
 
+	/*
+	 * Evaluation cost of a variable in the current scope (see ExpressionCostModel)
+	 */
+	private long getVariableEvaluationCost(final String varId)
+	{
+		final BaseVariableReference<?> var = idToVariableMap.get(varId);
+		return var == null ? ExpressionCostModel.REQUEST_ATTRIBUTE_COST : var.getEvaluationCost();
+	}
+
 	@Override
 	public VariableReference<?> getVariableExpression(final String varId)
 	{
@@ -534,6 +807,150 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		return new FunctionExpression(f);
 	}
 
+	/*
+	 * Appends a string token to a structural key, prefixed with its length to keep the key unambiguous
+	 */
+	private static void appendKeyToken(final StringBuilder keyBuilder, final String token)
+	{
+		if (token == null)
+		{
+			keyBuilder.append('-');
+			return;
+		}
+
+		keyBuilder.append(token.length()).append(':').append(token);
+	}
+
+	/*
+	 * Appends the structural key of an Apply argument to keyBuilder. Returns false iff the argument cannot be shared outside the Policy where it is defined (VariableReference, AttributeSelector, XPath
+	 * expression: depending on the Policy's VariableDefinitions or XPath namespace context), or not comparable (AttributeValue with non-text content).
+	 */
+	private static boolean appendStructuralKey(final StringBuilder keyBuilder, final ExpressionType expr)
+	{
+		if (expr instanceof ApplyType)
+		{
+			final ApplyType apply = (ApplyType) expr;
+			keyBuilder.append("Apply(");
+			appendKeyToken(keyBuilder, apply.getFunctionId());
+			for (final JAXBElement<? extends ExpressionType> arg : apply.getExpressions())
+			{
+				keyBuilder.append(',');
+				if (!appendStructuralKey(keyBuilder, arg.getValue()))
+				{
+					return false;
+				}
+			}
+
+			keyBuilder.append(')');
+			return true;
+		}
+
+		if (expr instanceof AttributeDesignatorType)
+		{
+			final AttributeDesignatorType designator = (AttributeDesignatorType) expr;
+			keyBuilder.append("AttributeDesignator(");
+			appendKeyToken(keyBuilder, designator.getCategory());
+			appendKeyToken(keyBuilder, designator.getAttributeId());
+			appendKeyToken(keyBuilder, designator.getDataType());
+			appendKeyToken(keyBuilder, designator.getIssuer());
+			keyBuilder.append(designator.isMustBePresent()).append(')');
+			return true;
+		}
+
+		if (expr instanceof AttributeValueType)
+		{
+			final AttributeValueType attrVal = (AttributeValueType) expr;
+			// otherAttributes is null if the AttributeValue was created programmatically without any
+			final Map<QName, String> otherAttributes = attrVal.getOtherAttributes();
+			if (otherAttributes != null && !otherAttributes.isEmpty() || StandardDatatypes.XPATH.getId().equals(attrVal.getDataType()))
+			{
+				return false;
+			}
+
+			keyBuilder.append("AttributeValue(");
+			appendKeyToken(keyBuilder, attrVal.getDataType());
+			for (final Serializable content : attrVal.getContent())
+			{
+				if (!(content instanceof String))
+				{
+					return false;
+				}
+
+				appendKeyToken(keyBuilder, (String) content);
+			}
+
+			keyBuilder.append(')');
+			return true;
+		}
+
+		if (expr instanceof FunctionType)
+		{
+			keyBuilder.append("Function(");
+			appendKeyToken(keyBuilder, ((FunctionType) expr).getFunctionId());
+			keyBuilder.append(')');
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the structural key of an Apply element, i.e. a string representation of its function and arguments (recursively), equal for structurally identical Apply elements
+	 * 
+	 * @return the key, or null if the Apply may not be shared across Policies (see {@link #appendStructuralKey(StringBuilder, ExpressionType)})
+	 */
+	private static String getStructuralKey(final ApplyType apply)
+	{
+		final StringBuilder keyBuilder = new StringBuilder(SHARED_APPLY_CONTEXT_KEY_PREFIX);
+		return appendStructuralKey(keyBuilder, apply) ? keyBuilder.toString() : null;
+	}
+
+	/*
+	 * An Apply is worth sharing iff evaluating it requires evaluating another Apply, i.e. at least one argument is an Apply. Else the cost of looking up and storing its value in the evaluation context
+	 * is comparable to the cost of evaluating it again.
+	 */
+	private static boolean hasApplyArgument(final ApplyType apply)
+	{
+		for (final JAXBElement<? extends ExpressionType> arg : apply.getExpressions())
+		{
+			if (arg.getValue() instanceof ApplyType)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private <V extends Value> Expression<V> newSharedApplyExpression(final String structuralKey, final Expression<V> applyExpression)
+	{
+		return new SharedApplyExpression<>(structuralKey, applyExpression, evaluationContextSlots);
+	}
+
+	private Expression<?> getApplyExpression(final ApplyType jaxbApply, final XPathCompiler xPathCompiler, final Deque<String> longestVarRefChain) throws IllegalArgumentException
+	{
+		final String structuralKey = sharedApplyExpressions == null || !hasApplyArgument(jaxbApply) ? null : getStructuralKey(jaxbApply);
+		if (structuralKey == null)
+		{
+			return ApplyExpressions.newInstance(jaxbApply, xPathCompiler, this, longestVarRefChain, argumentCostModel);
+		}
+
+		final Expression<?> sharedExpression = sharedApplyExpressions.get(structuralKey);
+		if (sharedExpression != null)
+		{
+			LOGGER.debug("Apply[Description = {}]: reusing shared Apply expression {}", jaxbApply.getDescription(), structuralKey);
+			return sharedExpression;
+		}
+
+		final Expression<?> applyExpression = ApplyExpressions.newInstance(jaxbApply, xPathCompiler, this, longestVarRefChain, argumentCostModel);
+		/*
+		 * Constant expressions are shared as is (no evaluation at all)
+		 */
+		final Expression<?> newSharedExpression = applyExpression.getValue().isPresent() ? applyExpression : newSharedApplyExpression(structuralKey, applyExpression);
+		final Expression<?> previousSharedExpression = sharedApplyExpressions.putIfAbsent(structuralKey, newSharedExpression);
+		return previousSharedExpression == null ? newSharedExpression : previousSharedExpression;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public Expression<?> getInstance(final ExpressionType expr, final XPathCompiler xPathCompiler, final Deque<String> longestVarRefChain) throws IllegalArgumentException
@@ -544,7 +961,7 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		 */
 		if (expr instanceof ApplyType)
 		{
-			expression = ApplyExpressions.newInstance((ApplyType) expr, xPathCompiler, this, longestVarRefChain);
+			expression = getApplyExpression((ApplyType) expr, xPathCompiler, longestVarRefChain);
 		}
 		else if (expr instanceof AttributeDesignatorType)
 		{
@@ -565,6 +982,7 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 				throw new IllegalArgumentException("Unsupported Datatype used in AttributeDesignator: " + jaxbAttrDes.getDataType());
 			}
 
+			attributeProvider.addPrefetchCandidate(AttributeFqns.newInstance(jaxbAttrDes), attrFactory.getDatatype());
 			expression = new GenericAttributeProviderBasedAttributeDesignatorExpression<>(jaxbAttrDes, attrFactory.getDatatype().getBagDatatype(), attributeProvider);
 		}
 		else if (expr instanceof AttributeSelectorType)
@@ -634,6 +1052,37 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		return this.datatypeFactoryRegistry.newExpression(jaxbAttrVal.getDataType(), jaxbAttrVal.getContent(), jaxbAttrVal.getOtherAttributes(), xPathCompiler);
 	}
 
+	/**
+	 * Get the attribute provider used to resolve AttributeDesignators (and AttributeSelectors' ContextSelectorIds)
+	 *
+	 * @return attribute provider
+	 */
+	public CloseableAttributeProvider getAttributeProvider()
+	{
+		return attributeProvider;
+	}
+
+	/**
+	 * Get the allocator of the evaluation context slots used by the variables and shared Apply expressions created with this factory, and by the policies parsed with it. Evaluation contexts of the
+	 * PDP engine using this factory must be created with this allocator for these slots to be used.
+	 *
+	 * @return evaluation context slot allocator
+	 */
+	public EvaluationContextSlots getEvaluationContextSlots()
+	{
+		return evaluationContextSlots;
+	}
+
+	/**
+	 * Get the registry of evaluation metrics of the policies and rules created with this factory
+	 *
+	 * @return evaluation metrics registry; empty if evaluation metrics are disabled
+	 */
+	public Optional<EvaluationMetricsRegistry> getEvaluationMetricsRegistry()
+	{
+		return evaluationMetricsRegistry;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void close() throws IOException
@@ -642,6 +1091,11 @@ public final class DepthLimitingExpressionFactory implements ExpressionFactory
 		{
 			attributeProvider.close();
 		}
+
+		if (evaluationMetricsRegistry.isPresent())
+		{
+			evaluationMetricsRegistry.get().close();
+		}
 	}
 
 }
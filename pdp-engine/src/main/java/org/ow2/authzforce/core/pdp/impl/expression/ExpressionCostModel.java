@@ -0,0 +1,216 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.expression;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+import javax.xml.bind.JAXBElement;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.impl.ModularAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+
+import com.google.common.collect.ImmutableSet;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeSelectorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.VariableReferenceType;
+
+/**
+ * Load-time cost model of XACML Expressions, used to reorder the arguments of the standard logical functions 'and', 'or' and 'n-of' (except the first argument of 'n-of') so that the cheapest ones
+ * are evaluated first. These functions evaluate all the arguments until the result is known for sure, whatever the errors (Indeterminate arguments), therefore the result does not depend on the order
+ * of the arguments; only the Indeterminate argument reported in the status (and its index) may differ.
+ * <p>
+ * The cost of an Expression is a rough estimate, in arbitrary units, of its evaluation time:
+ * <ul>
+ * <li>Constant (AttributeValue, Function, constant VariableReference or Apply): {@value #CONSTANT_COST}</li>
+ * <li>AttributeDesignator of an attribute that is not provided by any attribute provider module, therefore in the request: {@value #REQUEST_ATTRIBUTE_COST}</li>
+ * <li>AttributeDesignator of an attribute provided by an attribute provider module (possibly remote): {@value #PROVIDED_ATTRIBUTE_COST}</li>
+ * <li>AttributeSelector (XPath evaluation): {@value #ATTRIBUTE_SELECTOR_COST}</li>
+ * <li>Apply: {@value #FUNCTION_CALL_COST} + the cost of the arguments, plus {@value #ATTRIBUTE_SELECTOR_COST} for XPath-based functions, multiplied by {@value #HIGHER_ORDER_BAG_FUNCTION_FACTOR} for
+ * higher-order bag functions (the sub-function is called for each value in the bag(s))</li>
+ * <li>VariableReference: the cost of the variable's Expression</li>
+ * </ul>
+ */
+final class ExpressionCostModel
+{
+	static final long CONSTANT_COST = 0;
+	static final long REQUEST_ATTRIBUTE_COST = 1;
+	static final long FUNCTION_CALL_COST = 1;
+	static final long ATTRIBUTE_SELECTOR_COST = 100;
+	static final long PROVIDED_ATTRIBUTE_COST = 1000;
+	static final long HIGHER_ORDER_BAG_FUNCTION_FACTOR = 10;
+
+	private static final Set<String> HIGHER_ORDER_BAG_FUNCTION_IDS = ImmutableSet.of(StandardFunction.ANY_OF.getId(), StandardFunction.ALL_OF.getId(), StandardFunction.ANY_OF_ANY.getId(),
+	        StandardFunction.ALL_OF_ANY.getId(), StandardFunction.ANY_OF_ALL.getId(), StandardFunction.ALL_OF_ALL.getId(), StandardFunction.MAP.getId());
+
+	private static final Set<String> XPATH_FUNCTION_IDS = ImmutableSet.of(StandardFunction.XPATH_NODE_COUNT.getId());
+
+	private final ModularAttributeProvider attributeProvider;
+	private final ToLongFunction<String> variableCostProvider;
+
+	/**
+	 * Creates instance
+	 * 
+	 * @param attributeProvider
+	 *            attribute provider resolving the AttributeDesignators, used to know whether an attribute is provided by an attribute provider module
+	 * @param variableCostProvider
+	 *            provider of the cost of a given variable (by VariableId), i.e. of its VariableDefinition's Expression
+	 */
+	ExpressionCostModel(final ModularAttributeProvider attributeProvider, final ToLongFunction<String> variableCostProvider)
+	{
+		assert attributeProvider != null && variableCostProvider != null;
+		this.attributeProvider = attributeProvider;
+		this.variableCostProvider = variableCostProvider;
+	}
+
+	/**
+	 * Gets the estimated evaluation cost of an Expression
+	 * 
+	 * @param expression
+	 *            XACML Expression
+	 * @return estimated cost
+	 */
+	long getCost(final ExpressionType expression)
+	{
+		if (expression instanceof AttributeDesignatorType)
+		{
+			return attributeProvider.isProvidedByModule(AttributeFqns.newInstance((AttributeDesignatorType) expression)) ? PROVIDED_ATTRIBUTE_COST : REQUEST_ATTRIBUTE_COST;
+		}
+
+		if (expression instanceof AttributeSelectorType)
+		{
+			return ATTRIBUTE_SELECTOR_COST;
+		}
+
+		if (expression instanceof VariableReferenceType)
+		{
+			return variableCostProvider.applyAsLong(((VariableReferenceType) expression).getVariableId());
+		}
+
+		if (expression instanceof ApplyType)
+		{
+			final ApplyType apply = (ApplyType) expression;
+			long argsCost = CONSTANT_COST;
+			for (final JAXBElement<? extends ExpressionType> arg : apply.getExpressions())
+			{
+				argsCost += getCost(arg.getValue());
+			}
+
+			final String functionId = apply.getFunctionId();
+			if (XPATH_FUNCTION_IDS.contains(functionId))
+			{
+				argsCost += ATTRIBUTE_SELECTOR_COST;
+			}
+			else if (argsCost == CONSTANT_COST)
+			{
+				/*
+				 * Constant arguments: the Apply is pre-evaluated at initialization
+				 */
+				return CONSTANT_COST;
+			}
+
+			final long cost = FUNCTION_CALL_COST + argsCost;
+			return HIGHER_ORDER_BAG_FUNCTION_IDS.contains(functionId) ? cost * HIGHER_ORDER_BAG_FUNCTION_FACTOR : cost;
+		}
+
+		/*
+		 * AttributeValue, Function
+		 */
+		return CONSTANT_COST;
+	}
+
+	/**
+	 * Reorders the arguments of a call to the standard 'and', 'or' or 'n-of' function by increasing estimated cost (stable order for arguments of the same cost)
+	 * 
+	 * @param functionId
+	 *            function ID
+	 * @param xacmlArgs
+	 *            XACML arguments (Expressions) of the function call
+	 * @param args
+	 *            arguments of the function call, i.e. {@code xacmlArgs} parsed, in the same order
+	 * @return {@code args} reordered if {@code functionId} is one of the logical functions above and the arguments are not already ordered by cost; else {@code args}
+	 */
+	List<Expression<?>> reorderLogicalFunctionArguments(final String functionId, final List<JAXBElement<? extends ExpressionType>> xacmlArgs, final List<Expression<?>> args)
+	{
+		assert xacmlArgs.size() == args.size();
+
+		final int firstReorderableArgIndex;
+		if (functionId.equals(StandardFunction.AND.getId()) || functionId.equals(StandardFunction.OR.getId()))
+		{
+			firstReorderableArgIndex = 0;
+		}
+		else if (functionId.equals(StandardFunction.N_OF.getId()))
+		{
+			/*
+			 * The first argument of n-of is the number of required Trues
+			 */
+			firstReorderableArgIndex = 1;
+		}
+		else
+		{
+			return args;
+		}
+
+		final int argCount = args.size();
+		if (argCount - firstReorderableArgIndex < 2)
+		{
+			return args;
+		}
+
+		final long[] costs = new long[argCount];
+		boolean alreadyOrdered = true;
+		for (int i = firstReorderableArgIndex; i < argCount; i++)
+		{
+			costs[i] = args.get(i).getValue().isPresent() ? CONSTANT_COST : getCost(xacmlArgs.get(i).getValue());
+			if (i > firstReorderableArgIndex && costs[i] < costs[i - 1])
+			{
+				alreadyOrdered = false;
+			}
+		}
+
+		if (alreadyOrdered)
+		{
+			return args;
+		}
+
+		final List<Integer> reorderedArgIndexes = new ArrayList<>(argCount - firstReorderableArgIndex);
+		for (int i = firstReorderableArgIndex; i < argCount; i++)
+		{
+			reorderedArgIndexes.add(i);
+		}
+
+		// List.sort() is stable
+		reorderedArgIndexes.sort(Comparator.comparingLong(i -> costs[i]));
+
+		final List<Expression<?>> reorderedArgs = new ArrayList<>(args.subList(0, firstReorderableArgIndex));
+		for (final int argIndex : reorderedArgIndexes)
+		{
+			reorderedArgs.add(args.get(argIndex));
+		}
+
+		return reorderedArgs;
+	}
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.func;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.ConstantPrimitiveAttributeValueExpression;
+import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
+import org.ow2.authzforce.core.pdp.api.func.NonEqualTypeMatchFunction;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+
+/**
+ * Cache of compiled regular expressions for the *-regexp-match functions, used when the regular expression (first argument) is not a constant, e.g. comes from an AttributeDesignator or
+ * VariableReference, in which case the regular expression would be compiled again on every call. Bounded in size (least recently used entries evicted first), with entries spread over independently
+ * locked segments to limit contention between concurrent evaluations. Hit, miss and eviction counters are available for monitoring.
+ * <p>
+ * A compiled regular expression is actually a call to the original (non-caching) regexp-match function with the regular expression as constant first argument, therefore precompiled by the function
+ * itself.
+ * <p>
+ * This class is thread-safe. One instance is meant to be shared by all regexp-match functions of a given PDP (see {@link StandardFunction#getRegistry(boolean, org.ow2.authzforce.core.pdp.api.value.StringParseableValue.Factory, CompiledRegexCache)}).
+ */
+public final class CompiledRegexCache
+{
+	private static final IllegalArgumentException ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid maxEntries for compiled regex cache: must be > 0");
+
+	private static final int MAX_SEGMENT_COUNT = 16;
+
+	private static final class CacheKey
+	{
+		private final String functionId;
+		private final String regex;
+		private final int hashCode;
+
+		private CacheKey(final String functionId, final String regex)
+		{
+			this.functionId = functionId;
+			this.regex = regex;
+			this.hashCode = 31 * functionId.hashCode() + regex.hashCode();
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+
+			if (!(obj instanceof CacheKey))
+			{
+				return false;
+			}
+
+			final CacheKey other = (CacheKey) obj;
+			return this.hashCode == other.hashCode && this.regex.equals(other.regex) && this.functionId.equals(other.functionId);
+		}
+	}
+
+	/**
+	 * Cache segment: access-ordered map evicting the least recently used entry when full. Must be accessed only while holding the lock on the segment itself.
+	 */
+	private static final class Segment extends LinkedHashMap<CacheKey, FirstOrderFunctionCall<BooleanValue>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int maxEntries;
+		private final transient LongAdder evictionCounter;
+
+		private Segment(final int maxEntries, final LongAdder evictionCounter)
+		{
+			super(16, 0.75f, true);
+			this.maxEntries = maxEntries;
+			this.evictionCounter = evictionCounter;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Entry<CacheKey, FirstOrderFunctionCall<BooleanValue>> eldest)
+		{
+			if (size() > maxEntries)
+			{
+				evictionCounter.increment();
+				return true;
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Matcher for a regexp-match function taking two parameters of possibly different types, using the cache
+	 */
+	private final class CachingNonEqualTypeRegexpMatcher<AV extends AttributeValue> implements NonEqualTypeMatchFunction.Matcher<StringValue, AV>
+	{
+		private final FirstOrderFunction<BooleanValue> uncachedRegexpMatchFunction;
+		private final Datatype<AV> matchedValueType;
+
+		private CachingNonEqualTypeRegexpMatcher(final FirstOrderFunction<BooleanValue> uncachedRegexpMatchFunction, final Datatype<AV> matchedValueType)
+		{
+			this.uncachedRegexpMatchFunction = uncachedRegexpMatchFunction;
+			this.matchedValueType = matchedValueType;
+		}
+
+		@Override
+		public boolean match(final StringValue regex, final AV arg1) throws IllegalArgumentException
+		{
+			return CompiledRegexCache.this.match(uncachedRegexpMatchFunction, regex, matchedValueType, arg1);
+		}
+	}
+
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private final LongAdder hitCounter = new LongAdder();
+	private final LongAdder missCounter = new LongAdder();
+	private final LongAdder evictionCounter = new LongAdder();
+
+	/**
+	 * Creates cache instance
+	 *
+	 * @param maxEntries
+	 *            maximum number of compiled regular expressions in the cache (strictly positive)
+	 * @throws IllegalArgumentException
+	 *             if {@code maxEntries <= 0}
+	 */
+	public CompiledRegexCache(final int maxEntries) throws IllegalArgumentException
+	{
+		if (maxEntries <= 0)
+		{
+			throw ILLEGAL_MAX_ENTRIES_ARGUMENT_EXCEPTION;
+		}
+
+		/*
+		 * Power of two, not greater than maxEntries so that every segment may hold at least one entry
+		 */
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENT_COUNT && segmentCount * 2 <= maxEntries && segmentCount < Runtime.getRuntime().availableProcessors())
+		{
+			segmentCount <<= 1;
+		}
+
+		this.segments = new Segment[segmentCount];
+		this.segmentMask = segmentCount - 1;
+		/*
+		 * Spread maxEntries over the segments so that the total is exactly maxEntries
+		 */
+		final int minEntriesPerSegment = maxEntries / segmentCount;
+		final int remainder = maxEntries % segmentCount;
+		for (int i = 0; i < segmentCount; i++)
+		{
+			segments[i] = new Segment(i < remainder ? minEntriesPerSegment + 1 : minEntriesPerSegment, evictionCounter);
+		}
+	}
+
+	private Segment getSegment(final CacheKey key)
+	{
+		final int h = key.hashCode;
+		return segments[(h ^ h >>> 16) & segmentMask];
+	}
+
+	/**
+	 * Matches a value against a regular expression, using the compiled regular expression from the cache, or compiling and caching it if missing
+	 *
+	 * @param uncachedRegexpMatchFunction
+	 *            original regexp-match function (not using this cache), used to compile the regular expression
+	 * @param regex
+	 *            regular expression
+	 * @param matchedValueType
+	 *            datatype of {@code value}, i.e. of the second parameter of {@code uncachedRegexpMatchFunction}
+	 * @param value
+	 *            value to be matched
+	 * @return true iff {@code value} matches {@code regex}
+	 * @throws IllegalArgumentException
+	 *             invalid regular expression, or matching error
+	 */
+	boolean match(final FirstOrderFunction<BooleanValue> uncachedRegexpMatchFunction, final StringValue regex, final Datatype<?> matchedValueType, final AttributeValue value)
+			throws IllegalArgumentException
+	{
+		final CacheKey key = new CacheKey(uncachedRegexpMatchFunction.getId(), regex.getUnderlyingValue());
+		final Segment segment = getSegment(key);
+		FirstOrderFunctionCall<BooleanValue> compiledRegexMatchCall;
+		synchronized (segment)
+		{
+			compiledRegexMatchCall = segment.get(key);
+		}
+
+		if (compiledRegexMatchCall == null)
+		{
+			missCounter.increment();
+			/*
+			 * Compiled outside the lock. Concurrent misses on the same regex may compile it more than once, which is harmless.
+			 */
+			compiledRegexMatchCall = uncachedRegexpMatchFunction.newCall(Collections.singletonList(new ConstantPrimitiveAttributeValueExpression<>(StandardDatatypes.STRING, regex)),
+					matchedValueType);
+			synchronized (segment)
+			{
+				segment.put(key, compiledRegexMatchCall);
+			}
+		}
+		else
+		{
+			hitCounter.increment();
+		}
+
+		try
+		{
+			return compiledRegexMatchCall.evaluate(null, value).getUnderlyingValue();
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			throw new IllegalArgumentException("Error matching value against regular expression '" + regex + "'", e);
+		}
+	}
+
+	/**
+	 * Creates matcher for string-regexp-match using this cache
+	 *
+	 * @param uncachedRegexpMatchFunction
+	 *            original string-regexp-match function (not using this cache), used to compile the regular expressions
+	 * @return matcher
+	 */
+	EqualTypeMatchFunction.Matcher<StringValue> newStringRegexpMatcher(final FirstOrderFunction<BooleanValue> uncachedRegexpMatchFunction)
+	{
+		return new EqualTypeMatchFunction.Matcher<StringValue>()
+		{
+			@Override
+			public boolean match(final StringValue regex, final StringValue arg1) throws IllegalArgumentException
+			{
+				return CompiledRegexCache.this.match(uncachedRegexpMatchFunction, regex, StandardDatatypes.STRING, arg1);
+			}
+		};
+	}
+
+	/**
+	 * Creates matcher for a regexp-match function taking a string (regular expression) and a value of another datatype, e.g. anyURI-regexp-match, using this cache
+	 *
+	 * @param uncachedRegexpMatchFunction
+	 *            original regexp-match function (not using this cache), used to compile the regular expressions
+	 * @param matchedValueType
+	 *            datatype of the second parameter
+	 * @return matcher
+	 */
+	<AV extends AttributeValue> NonEqualTypeMatchFunction.Matcher<StringValue, AV> newRegexpMatcher(final FirstOrderFunction<BooleanValue> uncachedRegexpMatchFunction,
+			final Datatype<AV> matchedValueType)
+	{
+		return new CachingNonEqualTypeRegexpMatcher<>(uncachedRegexpMatchFunction, matchedValueType);
+	}
+
+	/**
+	 * Get number of cache hits since creation
+	 *
+	 * @return hit count
+	 */
+	public long getHitCount()
+	{
+		return hitCounter.sum();
+	}
+
+	/**
+	 * Get number of cache misses (regular expression compilations) since creation
+	 *
+	 * @return miss count
+	 */
+	public long getMissCount()
+	{
+		return missCounter.sum();
+	}
+
+	/**
+	 * Get number of entries evicted since creation because of the size limit
+	 *
+	 * @return eviction count
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCounter.sum();
+	}
+
+	/**
+	 * Get current number of entries in cache
+	 *
+	 * @return cache size
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (final Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+
+		return size;
+	}
+}
@@ -0,0 +1,366 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.func;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.expression.Expressions;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderBagFunctions;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
+import org.ow2.authzforce.core.pdp.api.func.Function;
+import org.ow2.authzforce.core.pdp.api.func.MultiParameterTypedFirstOrderFunction;
+import org.ow2.authzforce.core.pdp.api.value.AttributeDatatype;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.ow2.authzforce.core.pdp.api.value.BagDatatype;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.Value;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Standard set functions *-is-in, *-at-least-one-member-of, *-subset and *-set-equals (A.3.10, A.3.11) evaluated with hash-indexed bags, i.e. with a hash set of the bag values to look up values in
+ * constant time, instead of scanning the bag for each value, for datatypes whose {@link AttributeValue#hashCode()} is known to be consistent with {@link AttributeValue#equals(Object)}. The hash index
+ * of a bag is built the first time the bag is used as (the looked-up) operand of one of these functions, then cached in the {@link EvaluationContext} for the rest of the evaluation of the current
+ * request, so that the same bag (e.g. the result of an AttributeDesignator) used in several set function calls is indexed only once. The index of a constant bag is built once and for all when the
+ * function call is created. Small bags are not indexed.
+ * <p>
+ * The other first-order bag functions, and the ones for other datatypes, are the ones from {@link FirstOrderBagFunctions}.
+ */
+final class HashIndexedSetFunctions
+{
+	/*
+	 * Datatypes of which AttributeValue#hashCode() is known to be consistent with equals() (same as the ones used for Target indexing in MatchEvaluator)
+	 */
+	private static final Set<AttributeDatatype<?>> INDEXABLE_DATATYPES = ImmutableSet.of(StandardDatatypes.STRING, StandardDatatypes.BOOLEAN, StandardDatatypes.INTEGER, StandardDatatypes.ANYURI);
+
+	/*
+	 * Bags smaller than this are scanned instead of indexed
+	 */
+	private static final int MIN_INDEXED_BAG_SIZE = 8;
+
+	/*
+	 * Key of the request-scoped cache of bag indexes in the EvaluationContext (see EvaluationContext#getOther(String))
+	 */
+	private static final String REQUEST_SCOPED_BAG_INDEX_CACHE_KEY = HashIndexedSetFunctions.class.getName() + ".bagIndexes";
+
+	private enum SetOperation
+	{
+		IS_IN("-is-in", false),
+
+		AT_LEAST_ONE_MEMBER_OF("-at-least-one-member-of", true),
+
+		SUBSET("-subset", true),
+
+		SET_EQUALS("-set-equals", true);
+
+		private final String functionIdSuffix;
+		private final boolean isFirstParameterBag;
+
+		private SetOperation(final String functionIdSuffix, final boolean isFirstParameterBag)
+		{
+			this.functionIdSuffix = functionIdSuffix;
+			this.isFirstParameterBag = isFirstParameterBag;
+		}
+
+		private static SetOperation getInstance(final String functionId)
+		{
+			for (final SetOperation op : values())
+			{
+				if (functionId.endsWith(op.functionIdSuffix))
+				{
+					return op;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static Set<AttributeValue> newIndex(final Bag<?> bag)
+	{
+		final Set<AttributeValue> index = HashCollections.newUpdatableSet(bag.size());
+		for (final AttributeValue val : bag)
+		{
+			index.add(val);
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the hash index of a bag
+	 *
+	 * @param bag
+	 *            bag
+	 * @param context
+	 *            evaluation context where the index is cached; null if no context, in which case the index is not cached
+	 * @return the index of {@code bag}, or null if {@code bag} is too small to be indexed
+	 */
+	private static Set<AttributeValue> getIndex(final Bag<?> bag, final EvaluationContext context)
+	{
+		if (bag.size() < MIN_INDEXED_BAG_SIZE)
+		{
+			return null;
+		}
+
+		if (context == null)
+		{
+			return newIndex(bag);
+		}
+
+		final Object cachedIndexes = context.getOther(REQUEST_SCOPED_BAG_INDEX_CACHE_KEY);
+		final Map<Bag<?>, Set<AttributeValue>> bagIndexes;
+		if (cachedIndexes instanceof IdentityHashMap)
+		{
+			bagIndexes = (Map<Bag<?>, Set<AttributeValue>>) cachedIndexes;
+		} else
+		{
+			/*
+			 * Bags are immutable and the same Bag instance is returned for the same attribute during the request evaluation, therefore identity is enough (and faster than equals())
+			 */
+			bagIndexes = new IdentityHashMap<>();
+			context.putOther(REQUEST_SCOPED_BAG_INDEX_CACHE_KEY, bagIndexes);
+		}
+
+		return bagIndexes.computeIfAbsent(bag, HashIndexedSetFunctions::newIndex);
+	}
+
+	/*
+	 * bagIndex: index of bag or null if not indexed
+	 */
+	private static boolean contains(final Bag<?> bag, final Set<AttributeValue> bagIndex, final AttributeValue value)
+	{
+		if (bagIndex != null)
+		{
+			return bagIndex.contains(value);
+		}
+
+		for (final AttributeValue bagValue : bag)
+		{
+			if (bagValue.equals(value))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/*
+	 * True iff all values of bag0 are in bag1
+	 */
+	private static boolean containsAll(final Bag<?> bag1, final Set<AttributeValue> bag1Index, final Bag<?> bag0)
+	{
+		for (final AttributeValue val : bag0)
+		{
+			if (!contains(bag1, bag1Index, val))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static final class Call implements FirstOrderFunctionCall<BooleanValue>
+	{
+		private final SetOperation op;
+		private final Expression<?> arg0Expr;
+		private final Datatype<?> arg0Type;
+		private final Expression<?> arg1Expr;
+		private final BagDatatype<?> arg1Type;
+		private final String errorEvalArg0Message;
+		private final String errorEvalArg1Message;
+
+		/*
+		 * Indexes of arg0 (if set-equals) and arg1 if constant and big enough to be indexed
+		 */
+		private final Set<AttributeValue> constantArg0Index;
+		private final Set<AttributeValue> constantArg1Index;
+
+		private Call(final String functionId, final SetOperation op, final Expression<?> arg0Expr, final Datatype<?> arg0Type, final Expression<?> arg1Expr, final BagDatatype<?> arg1Type)
+		{
+			this.op = op;
+			this.arg0Expr = arg0Expr;
+			this.arg0Type = arg0Type;
+			this.arg1Expr = arg1Expr;
+			this.arg1Type = arg1Type;
+			this.errorEvalArg0Message = "Function '" + functionId + "': Error evaluating arg #0";
+			this.errorEvalArg1Message = "Function '" + functionId + "': Error evaluating arg #1";
+
+			final Optional<? extends Value> constantArg0 = arg0Expr.getValue();
+			this.constantArg0Index = op == SetOperation.SET_EQUALS && constantArg0.isPresent() ? getIndex((Bag<?>) constantArg0.get(), null) : null;
+			final Optional<? extends Value> constantArg1 = arg1Expr.getValue();
+			this.constantArg1Index = constantArg1.isPresent() ? getIndex((Bag<?>) constantArg1.get(), null) : null;
+		}
+
+		@Override
+		public BooleanValue evaluate(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			final Value arg0;
+			try
+			{
+				arg0 = Expressions.eval(arg0Expr, context, arg0Type);
+			} catch (final IndeterminateEvaluationException e)
+			{
+				throw new IndeterminateEvaluationException(errorEvalArg0Message, e.getStatusCode(), e);
+			}
+
+			final Bag<?> bag1;
+			try
+			{
+				bag1 = Expressions.eval(arg1Expr, context, arg1Type);
+			} catch (final IndeterminateEvaluationException e)
+			{
+				throw new IndeterminateEvaluationException(errorEvalArg1Message, e.getStatusCode(), e);
+			}
+
+			if (op == SetOperation.IS_IN)
+			{
+				/*
+				 * Building the index costs about as much as scanning the bag once, and the index is reused by the next calls on the same bag in the same request
+				 */
+				return BooleanValue.valueOf(contains(bag1, constantArg1Index != null ? constantArg1Index : getIndex(bag1, context), (AttributeValue) arg0));
+			}
+
+			final Bag<?> bag0 = (Bag<?>) arg0;
+			final Set<AttributeValue> bag1Index = constantArg1Index != null ? constantArg1Index : getIndex(bag1, context);
+			switch (op)
+			{
+				case AT_LEAST_ONE_MEMBER_OF:
+					for (final AttributeValue val : bag0)
+					{
+						if (contains(bag1, bag1Index, val))
+						{
+							return BooleanValue.TRUE;
+						}
+					}
+
+					return BooleanValue.FALSE;
+
+				case SUBSET:
+					return BooleanValue.valueOf(containsAll(bag1, bag1Index, bag0));
+
+				default:
+					// SET_EQUALS
+					final Set<AttributeValue> bag0Index = constantArg0Index != null ? constantArg0Index : getIndex(bag0, context);
+					return BooleanValue.valueOf(containsAll(bag1, bag1Index, bag0) && containsAll(bag0, bag0Index, bag1));
+			}
+		}
+
+		@Override
+		public BooleanValue evaluate(final EvaluationContext context, final AttributeValue... remainingArgs) throws IndeterminateEvaluationException
+		{
+			/*
+			 * All args are given as expressions (no remaining args) as a call of this type is created only in this case (see newCall())
+			 */
+			assert remainingArgs.length == 0;
+			return evaluate(context);
+		}
+
+		@Override
+		public BooleanValue evaluate(final EvaluationContext context, final boolean checkRemainingArgTypes, final AttributeValue... remainingArgs) throws IndeterminateEvaluationException
+		{
+			return evaluate(context, remainingArgs);
+		}
+
+		@Override
+		public Datatype<BooleanValue> getReturnType()
+		{
+			return StandardDatatypes.BOOLEAN;
+		}
+	}
+
+	private static final class HashIndexedSetFunction<AV extends AttributeValue> extends MultiParameterTypedFirstOrderFunction<BooleanValue>
+	{
+		private final FirstOrderFunction<BooleanValue> nonIndexedFunction;
+		private final SetOperation op;
+		private final Datatype<?> param0Type;
+		private final BagDatatype<AV> param1Type;
+
+		private HashIndexedSetFunction(final FirstOrderFunction<BooleanValue> nonIndexedFunction, final SetOperation op, final AttributeDatatype<AV> datatype)
+		{
+			super(nonIndexedFunction.getId(), StandardDatatypes.BOOLEAN, false,
+			        Arrays.asList(op.isFirstParameterBag ? datatype.getBagDatatype() : datatype, datatype.getBagDatatype()));
+			this.nonIndexedFunction = nonIndexedFunction;
+			this.op = op;
+			this.param0Type = op.isFirstParameterBag ? datatype.getBagDatatype() : datatype;
+			this.param1Type = datatype.getBagDatatype();
+		}
+
+		@Override
+		public FirstOrderFunctionCall<BooleanValue> newCall(final List<Expression<?>> argExpressions, final Datatype<?>... remainingArgTypes) throws IllegalArgumentException
+		{
+			/*
+			 * Validates the arguments as usual
+			 */
+			final FirstOrderFunctionCall<BooleanValue> nonIndexedCall = nonIndexedFunction.newCall(argExpressions, remainingArgTypes);
+			if (remainingArgTypes.length != 0)
+			{
+				return nonIndexedCall;
+			}
+
+			return new Call(this.getId(), op, argExpressions.get(0), param0Type, argExpressions.get(1), param1Type);
+		}
+	}
+
+	private HashIndexedSetFunctions()
+	{
+		// empty private constructor to prevent instantiation
+	}
+
+	/**
+	 * Get the first-order bag functions (A.3.10, A.3.11) for a given datatype, as in {@link FirstOrderBagFunctions#getFunctions(AttributeDatatype)}, except the set functions are replaced with ones
+	 * using hash-indexed bags if the datatype supports it.
+	 *
+	 * @param datatype
+	 *            bag element datatype
+	 * @return first-order bag functions
+	 */
+	static <AV extends AttributeValue> Set<Function<?>> getFunctions(final AttributeDatatype<AV> datatype)
+	{
+		final boolean isIndexable = INDEXABLE_DATATYPES.contains(datatype);
+		final Set<Function<?>> functions = HashCollections.newUpdatableSet();
+		for (final Function<?> function : FirstOrderBagFunctions.getFunctions(datatype))
+		{
+			final SetOperation op = isIndexable ? SetOperation.getInstance(function.getId()) : null;
+			if (op == null || !(function instanceof FirstOrderFunction))
+			{
+				functions.add(function);
+				continue;
+			}
+
+			functions.add(new HashIndexedSetFunction<>((FirstOrderFunction<BooleanValue>) function, op, datatype));
+		}
+
+		return functions;
+	}
+}
@@ -23,6 +23,7 @@ import org.ow2.authzforce.core.pdp.api.expression.Expression;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction.CallFactory;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction.CallFactoryBuilder;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction.Matcher;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
 import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
 import org.ow2.authzforce.core.pdp.api.func.RegexpMatchFunctionHelper;
 import org.ow2.authzforce.core.pdp.api.func.SingleParameterTypedFirstOrderFunctionSignature;
@@ -117,9 +118,12 @@ final class StandardEqualTypeMatchers
 
 		private final RegexpMatchFunctionHelper regexFuncHelper;
 
-		private StringRegexpMatchCallFactory(final SingleParameterTypedFirstOrderFunctionSignature<BooleanValue, StringValue> functionSignature)
+		/*
+		 * dynamicRegexMatcher: matcher used when the regex is not constant, therefore cannot be pre-compiled
+		 */
+		private StringRegexpMatchCallFactory(final SingleParameterTypedFirstOrderFunctionSignature<BooleanValue, StringValue> functionSignature, final Matcher<StringValue> dynamicRegexMatcher)
 		{
-			super(functionSignature, STRING_REGEXP_MATCHER);
+			super(functionSignature, dynamicRegexMatcher);
 			regexFuncHelper = new RegexpMatchFunctionHelper(functionSignature, StandardDatatypes.STRING);
 		}
 
@@ -142,11 +146,35 @@ final class StandardEqualTypeMatchers
 		@Override
 		public CallFactory<StringValue> build(final SingleParameterTypedFirstOrderFunctionSignature<BooleanValue, StringValue> functionSignature)
 		{
-			return new StringRegexpMatchCallFactory(functionSignature);
+			return new StringRegexpMatchCallFactory(functionSignature, StringRegexpMatchCallFactory.STRING_REGEXP_MATCHER);
 		}
 
 	};
 
+	/**
+	 * Creates string-regexp-match call factory builder using a given cache of compiled regular expressions when the regular expression is not constant (constant ones are pre-compiled as usual)
+	 * 
+	 * @param regexCache
+	 *            cache of compiled regular expressions
+	 * @param uncachedFunction
+	 *            string-regexp-match function not using {@code regexCache}, used to compile the regular expressions
+	 * @return call factory builder
+	 */
+	static CallFactoryBuilder<StringValue> newStringRegexpMatchCallFactoryBuilder(final CompiledRegexCache regexCache, final FirstOrderFunction<BooleanValue> uncachedFunction)
+	{
+		final Matcher<StringValue> cachingMatcher = regexCache.newStringRegexpMatcher(uncachedFunction);
+		return new CallFactoryBuilder<StringValue>()
+		{
+
+			@Override
+			public CallFactory<StringValue> build(final SingleParameterTypedFirstOrderFunctionSignature<BooleanValue, StringValue> functionSignature)
+			{
+				return new StringRegexpMatchCallFactory(functionSignature, cachingMatcher);
+			}
+
+		};
+	}
+
 	private StandardEqualTypeMatchers()
 	{
 		// empty private constructor to prevent instantiation
@@ -1,5 +1,5 @@
 /**
- * Copyright 2012-2019 THALES.
+ * Copyright 2012-2026 THALES.
  *
  * This file is part of AuthzForce CE.
  *
@@ -50,7 +50,6 @@ import org.ow2.authzforce.core.pdp.api.func.DatatypeConversionFunction;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction.EqualIgnoreCaseMatcher;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction.EqualMatcher;
-import org.ow2.authzforce.core.pdp.api.func.FirstOrderBagFunctions;
 import org.ow2.authzforce.core.pdp.api.func.Function;
 import org.ow2.authzforce.core.pdp.api.func.GenericHigherOrderFunctionFactory;
 import org.ow2.authzforce.core.pdp.api.func.NonEqualTypeMatchFunction;
@@ -59,6 +58,7 @@ import org.ow2.authzforce.core.pdp.api.value.AnyUriValue;
 import org.ow2.authzforce.core.pdp.api.value.AttributeDatatype;
 import org.ow2.authzforce.core.pdp.api.value.Base64BinaryValue;
 import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
 import org.ow2.authzforce.core.pdp.api.value.DateTimeValue;
 import org.ow2.authzforce.core.pdp.api.value.DateValue;
 import org.ow2.authzforce.core.pdp.api.value.DayTimeDurationValue;
@@ -68,6 +68,7 @@ import org.ow2.authzforce.core.pdp.api.value.HexBinaryValue;
 import org.ow2.authzforce.core.pdp.api.value.IntegerValue;
 import org.ow2.authzforce.core.pdp.api.value.IpAddressValue;
 import org.ow2.authzforce.core.pdp.api.value.Rfc822NameValue;
+import org.ow2.authzforce.core.pdp.api.value.SimpleValue;
 import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
 import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
 import org.ow2.authzforce.core.pdp.api.value.StringParseableValue;
@@ -669,6 +670,31 @@ public enum StandardFunction
 	 * @return standard function registry
 	 */
 	public static FunctionRegistry getRegistry(final boolean enableXPath, final StringParseableValue.Factory<IntegerValue> stdIntValueFactory)
+	{
+		return getRegistry(enableXPath, stdIntValueFactory, null);
+	}
+
+	private static <AV extends SimpleValue<String>> NonEqualTypeMatchFunction<StringValue, AV> newRegexpMatchFunction(final String functionId, final Datatype<AV> matchedValueType,
+	        final CompiledRegexCache regexCache)
+	{
+		final NonEqualTypeMatchFunction<StringValue, AV> uncachedFunction = new NonEqualTypeMatchFunction<>(functionId, StandardDatatypes.STRING, matchedValueType,
+		        new RegexpMatchCallFactoryBuilder<AV>());
+		return regexCache == null ? uncachedFunction : StandardNonEqualTypeMatchers.newCachingRegexpMatchFunction(uncachedFunction, matchedValueType, regexCache);
+	}
+
+	/**
+	 * Get standard function registry, with *-regexp-match functions using a cache of compiled regular expressions when the regular expression is not constant
+	 *
+	 * @param enableXPath
+	 *            true iff XPath-based function(s) support enabled
+	 * @param stdIntValueFactory
+	 *            attribute value factory for standard integer datatype
+	 * @param regexCache
+	 *            cache of compiled regular expressions shared by the *-regexp-match functions of the registry; null iff no cache (regular expressions other than constants are compiled on every
+	 *            evaluation)
+	 * @return standard function registry
+	 */
+	public static FunctionRegistry getRegistry(final boolean enableXPath, final StringParseableValue.Factory<IntegerValue> stdIntValueFactory, final CompiledRegexCache regexCache)
 	{
 		if (stdIntValueFactory == null)
 		{
@@ -714,7 +740,11 @@ public enum StandardFunction
 		nonGenericFunctions.add(new EqualTypeMatchFunction<>(StandardFunction.STRING_STARTS_WITH.id, StandardDatatypes.STRING, StandardEqualTypeMatchers.STRING_STARTS_WITH_MATCHER));
 		nonGenericFunctions.add(new EqualTypeMatchFunction<>(StandardFunction.STRING_ENDS_WITH.id, StandardDatatypes.STRING, StandardEqualTypeMatchers.STRING_ENDS_WITH_MATCHER));
 		nonGenericFunctions.add(new EqualTypeMatchFunction<>(StandardFunction.STRING_CONTAINS.id, StandardDatatypes.STRING, StandardEqualTypeMatchers.STRING_CONTAINS_MATCHER));
-		nonGenericFunctions.add(new EqualTypeMatchFunction<>(StandardFunction.STRING_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardEqualTypeMatchers.STRING_REGEXP_MATCH_CALL_FACTORY_BUILDER));
+		final EqualTypeMatchFunction<StringValue> uncachedStringRegexpMatchFunction = new EqualTypeMatchFunction<>(StandardFunction.STRING_REGEXP_MATCH.id, StandardDatatypes.STRING,
+		        StandardEqualTypeMatchers.STRING_REGEXP_MATCH_CALL_FACTORY_BUILDER);
+		nonGenericFunctions.add(regexCache == null ? uncachedStringRegexpMatchFunction
+		        : new EqualTypeMatchFunction<>(StandardFunction.STRING_REGEXP_MATCH.id, StandardDatatypes.STRING,
+		                StandardEqualTypeMatchers.newStringRegexpMatchCallFactoryBuilder(regexCache, uncachedStringRegexpMatchFunction)));
 
 		/*
 		 * Numeric Arithmetic functions (A.3.2)
@@ -869,16 +899,11 @@ public enum StandardFunction
 		        .add(new NonEqualTypeMatchFunction<>(StandardFunction.ANYURI_ENDS_WITH.id, StandardDatatypes.STRING, StandardDatatypes.ANYURI, StandardNonEqualTypeMatchers.ANYURI_ENDS_WITH_MATCHER));
 		nonGenericFunctions
 		        .add(new NonEqualTypeMatchFunction<>(StandardFunction.ANYURI_CONTAINS.id, StandardDatatypes.STRING, StandardDatatypes.ANYURI, StandardNonEqualTypeMatchers.ANYURI_CONTAINS_MATCHER));
-		nonGenericFunctions
-		        .add(new NonEqualTypeMatchFunction<>(StandardFunction.ANYURI_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardDatatypes.ANYURI, new RegexpMatchCallFactoryBuilder<AnyUriValue>()));
-		nonGenericFunctions.add(new NonEqualTypeMatchFunction<>(StandardFunction.IPADDRESS_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardDatatypes.IPADDRESS,
-		        new RegexpMatchCallFactoryBuilder<IpAddressValue>()));
-		nonGenericFunctions.add(new NonEqualTypeMatchFunction<>(StandardFunction.DNSNAME_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardDatatypes.DNSNAME,
-		        new RegexpMatchCallFactoryBuilder<DnsNameWithPortRangeValue>()));
-		nonGenericFunctions.add(new NonEqualTypeMatchFunction<>(StandardFunction.RFC822NAME_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardDatatypes.RFC822NAME,
-		        new RegexpMatchCallFactoryBuilder<Rfc822NameValue>()));
-		nonGenericFunctions.add(
-		        new NonEqualTypeMatchFunction<>(StandardFunction.X500NAME_REGEXP_MATCH.id, StandardDatatypes.STRING, StandardDatatypes.X500NAME, new RegexpMatchCallFactoryBuilder<X500NameValue>()));
+		nonGenericFunctions.add(newRegexpMatchFunction(StandardFunction.ANYURI_REGEXP_MATCH.id, StandardDatatypes.ANYURI, regexCache));
+		nonGenericFunctions.add(newRegexpMatchFunction(StandardFunction.IPADDRESS_REGEXP_MATCH.id, StandardDatatypes.IPADDRESS, regexCache));
+		nonGenericFunctions.add(newRegexpMatchFunction(StandardFunction.DNSNAME_REGEXP_MATCH.id, StandardDatatypes.DNSNAME, regexCache));
+		nonGenericFunctions.add(newRegexpMatchFunction(StandardFunction.RFC822NAME_REGEXP_MATCH.id, StandardDatatypes.RFC822NAME, regexCache));
+		nonGenericFunctions.add(newRegexpMatchFunction(StandardFunction.X500NAME_REGEXP_MATCH.id, StandardDatatypes.X500NAME, regexCache));
 
 		/*
 		 * Substring functions (last part of A.3.9, other parts addressed above by DatatypeConversionFunction, StringConcatenateFunction, NonEqualTypeMatchFunction)
@@ -887,11 +912,11 @@ public enum StandardFunction
 		nonGenericFunctions.add(new SubstringFunction<>(StandardFunction.ANYURI_SUBSTRING.id, StandardDatatypes.ANYURI));
 
 		/*
-		 * First-order bag functions (A.3.10, A.3.11)
+		 * First-order bag functions (A.3.10, A.3.11), with hash-indexed bags for set functions when possible
 		 */
 		for (final AttributeDatatype<?> datatype : StandardDatatypes.MANDATORY_SET)
 		{
-			nonGenericFunctions.addAll(FirstOrderBagFunctions.getFunctions(datatype));
+			nonGenericFunctions.addAll(HashIndexedSetFunctions.getFunctions(datatype));
 		}
 
 		/*
@@ -26,11 +26,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Optional;
+import java.util.Set;
 
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
 import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
 import org.ow2.authzforce.core.pdp.api.expression.Expression;
 import org.ow2.authzforce.core.pdp.api.expression.Expressions;
+import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction;
 import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
 import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
 import org.ow2.authzforce.core.pdp.api.func.FunctionCall;
@@ -43,6 +46,8 @@ import org.ow2.authzforce.core.pdp.api.value.Datatype;
 import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
 import org.ow2.authzforce.core.pdp.api.value.Value;
 
+import com.google.common.collect.ImmutableSet;
+
 /**
  * Set of higher-order bag functions
  *
@@ -51,6 +56,111 @@ import org.ow2.authzforce.core.pdp.api.value.Value;
  */
 final class StandardHigherOrderBagFunctions
 {
+	/*
+	 * IDs of standard equality functions (A.3.1) that are equivalent to AttributeValue#equals(Object) and for which the datatype's AttributeValue#hashCode() is known to be consistent with it (same as
+	 * the ones used for Target indexing in MatchEvaluator)
+	 */
+	private static final Set<String> VALUE_EQUALITY_FUNCTION_IDS = ImmutableSet.of(StandardFunction.STRING_EQUAL.getId(), StandardFunction.BOOLEAN_EQUAL.getId(),
+			StandardFunction.INTEGER_EQUAL.getId(), StandardFunction.ANYURI_EQUAL.getId());
+
+	/**
+	 * Returns true iff the function is one of the standard *-equal functions that match two values iff they are equal in the sense of {@link AttributeValue#equals(Object)}, in which case a
+	 * higher-order function evaluating it on every pair of values from two bags may use hash sets instead (hash join)
+	 */
+	private static boolean isValueEqualityFunction(final FirstOrderFunction<?> function)
+	{
+		return function instanceof EqualTypeMatchFunction && VALUE_EQUALITY_FUNCTION_IDS.contains(function.getId());
+	}
+
+	private static Set<AttributeValue> newHashSet(final Bag<?> bag)
+	{
+		final Set<AttributeValue> set = HashCollections.newUpdatableSet(bag.size());
+		for (final AttributeValue val : bag)
+		{
+			set.add(val);
+		}
+
+		return set;
+	}
+
+	/**
+	 * Same as any-of-any(equalFunction, bag0, bag1) where equalFunction is a value equality function (see {@link #isValueEqualityFunction(FirstOrderFunction)}), i.e. true iff the bags have at least
+	 * one value in common. The hash set is built from the smaller bag.
+	 */
+	private static boolean haveCommonValue(final Bag<?> bag0, final Bag<?> bag1)
+	{
+		final Bag<?> smallerBag;
+		final Bag<?> largerBag;
+		if (bag0.size() <= bag1.size())
+		{
+			smallerBag = bag0;
+			largerBag = bag1;
+		} else
+		{
+			smallerBag = bag1;
+			largerBag = bag0;
+		}
+
+		if (smallerBag.size() == 1)
+		{
+			final AttributeValue smallerBagValue = smallerBag.getSingleElement();
+			for (final AttributeValue val : largerBag)
+			{
+				if (smallerBagValue.equals(val))
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		final Set<AttributeValue> smallerBagValues = newHashSet(smallerBag);
+		for (final AttributeValue val : largerBag)
+		{
+			if (smallerBagValues.contains(val))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Same as all-of-any(equalFunction, bagForAll, bagForAny) - or any-of-all(equalFunction, bagForAny, bagForAll) - where equalFunction is a value equality function (see
+	 * {@link #isValueEqualityFunction(FirstOrderFunction)}), i.e. true iff every value in bagForAll is also in bagForAny. The hash set is built from the smaller bag.
+	 */
+	private static boolean isContainedIn(final Bag<?> bagForAll, final Bag<?> bagForAny)
+	{
+		if (bagForAll.size() <= bagForAny.size())
+		{
+			/*
+			 * Remove the values found in bagForAny from the set of values in bagForAll, until none left
+			 */
+			final Set<AttributeValue> remainingValues = newHashSet(bagForAll);
+			for (final AttributeValue val : bagForAny)
+			{
+				if (remainingValues.remove(val) && remainingValues.isEmpty())
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		final Set<AttributeValue> bagForAnyValues = newHashSet(bagForAny);
+		for (final AttributeValue val : bagForAll)
+		{
+			if (!bagForAnyValues.contains(val))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
 
 	private static abstract class BooleanHigherOrderBagFunction extends HigherOrderBagFunction<BooleanValue, BooleanValue>
 	{
@@ -155,6 +265,29 @@ final class StandardHigherOrderBagFunctions
 
 		protected abstract BooleanValue evaluate(FirstOrderFunctionCall<BooleanValue> subFunctionCall, Bag<?> bag0, Bag<?> bag1, EvaluationContext context) throws IndeterminateEvaluationException;
 
+		/**
+		 * Creates the function call once the inputs have been validated. This implementation calls {@link #evaluate(FirstOrderFunctionCall, Bag, Bag, EvaluationContext)}, i.e. the sub-function on
+		 * every pair of values.
+		 * 
+		 * @param subFunc
+		 *            sub-function
+		 * @param input0
+		 *            first bag argument
+		 * @param input1
+		 *            second bag argument
+		 * @return function call
+		 */
+		protected FunctionCall<BooleanValue> newTwoBagCall(final FirstOrderFunction<BooleanValue> subFunc, final Expression<? extends Bag<?>> input0, final Expression<? extends Bag<?>> input1) {
+			return new BooleanHigherOrderTwoBagFunction.Call(this.getId(), subFunc, input0, input1)
+			{
+
+				@Override
+				protected BooleanValue evaluate(final Bag<?> bag0, final Bag<?> bag1, final EvaluationContext context) throws IndeterminateEvaluationException {
+					return BooleanHigherOrderTwoBagFunction.this.evaluate(subFuncCall, bag0, bag1, context);
+				}
+			};
+		}
+
 		@Override
 		protected final FunctionCall<BooleanValue> createFunctionCallFromSubFunction(final FirstOrderFunction<BooleanValue> subFunc, final List<Expression<?>> inputsAfterSubFunc) {
 
@@ -168,14 +301,46 @@ final class StandardHigherOrderBagFunctions
 				}
 			}
 
-			final Expression<? extends Bag<?>> input0 = (Expression<? extends Bag<?>>) inputsAfterSubFunc.get(0);
-			final Expression<? extends Bag<?>> input1 = (Expression<? extends Bag<?>>) inputsAfterSubFunc.get(1);
+			return newTwoBagCall(subFunc, (Expression<? extends Bag<?>>) inputsAfterSubFunc.get(0), (Expression<? extends Bag<?>>) inputsAfterSubFunc.get(1));
+		}
+	}
+
+	/**
+	 * Higher-order boolean function taking a sub-function and two bags, evaluated as a hash join when the sub-function is a value equality function (see
+	 * {@link StandardHigherOrderBagFunctions#isValueEqualityFunction(FirstOrderFunction)}), i.e. using hash sets instead of calling the sub-function on every pair of values
+	 */
+	private static abstract class EqualityHashJoinTwoBagFunction extends BooleanHigherOrderTwoBagFunction
+	{
+		private EqualityHashJoinTwoBagFunction(final String functionId)
+		{
+			super(functionId);
+		}
+
+		/**
+		 * Evaluates the function with a value equality function as sub-function
+		 * 
+		 * @param bag0
+		 *            first bag (non-empty)
+		 * @param bag1
+		 *            second bag (non-empty)
+		 * @return evaluation result
+		 */
+		protected abstract BooleanValue evaluateWithEqualitySubFunction(Bag<?> bag0, Bag<?> bag1);
+
+		@Override
+		protected final FunctionCall<BooleanValue> newTwoBagCall(final FirstOrderFunction<BooleanValue> subFunc, final Expression<? extends Bag<?>> input0,
+				final Expression<? extends Bag<?>> input1) {
+			if (!isValueEqualityFunction(subFunc))
+			{
+				return super.newTwoBagCall(subFunc, input0, input1);
+			}
+
 			return new BooleanHigherOrderTwoBagFunction.Call(this.getId(), subFunc, input0, input1)
 			{
 
 				@Override
-				protected BooleanValue evaluate(final Bag<?> bag0, final Bag<?> bag1, final EvaluationContext context) throws IndeterminateEvaluationException {
-					return BooleanHigherOrderTwoBagFunction.this.evaluate(subFuncCall, bag0, bag1, context);
+				protected BooleanValue evaluate(final Bag<?> bag0, final Bag<?> bag1, final EvaluationContext context) {
+					return EqualityHashJoinTwoBagFunction.this.evaluateWithEqualitySubFunction(bag0, bag1);
 				}
 			};
 		}
@@ -537,9 +702,64 @@ final class StandardHigherOrderBagFunctions
 
 		@Override
 		protected FunctionCall<BooleanValue> createFunctionCallFromSubFunction(final FirstOrderFunction<BooleanValue> subFunc, final List<Expression<?>> inputsAfterSubFunc) {
+			if (inputsAfterSubFunc.size() == 2 && isValueEqualityFunction(subFunc))
+			{
+				final Expression<?> input0 = inputsAfterSubFunc.get(0);
+				final Expression<?> input1 = inputsAfterSubFunc.get(1);
+				if (input0.getReturnType().getTypeParameter().isPresent() && input1.getReturnType().getTypeParameter().isPresent())
+				{
+					return new TwoBagEqualityAnyOfAnyFunctionCall((Expression<? extends Bag<?>>) input0, (Expression<? extends Bag<?>>) input1);
+				}
+			}
+
 			return new AnyOfAnyFunctionCall(subFunc, inputsAfterSubFunc);
 		}
 
+		/**
+		 * any-of-any call with a value equality function as sub-function and two bags as other arguments, evaluated with a hash join of the two bags
+		 */
+		private final class TwoBagEqualityAnyOfAnyFunctionCall implements FunctionCall<BooleanValue>
+		{
+			private final Expression<? extends Bag<?>> bagArgExpr0;
+			private final Expression<? extends Bag<?>> bagArgExpr1;
+
+			private TwoBagEqualityAnyOfAnyFunctionCall(final Expression<? extends Bag<?>> bagArgExpr0, final Expression<? extends Bag<?>> bagArgExpr1)
+			{
+				this.bagArgExpr0 = bagArgExpr0;
+				this.bagArgExpr1 = bagArgExpr1;
+			}
+
+			@Override
+			public BooleanValue evaluate(final EvaluationContext context) throws IndeterminateEvaluationException {
+				final Bag<?> bag0;
+				final Bag<?> bag1;
+				try
+				{
+					bag0 = bagArgExpr0.evaluate(context);
+					/*
+					 * If bag empty, returns False as there will be no possibility for a predicate to be "True" (the second arg is not evaluated, like in the generic case)
+					 */
+					if (bag0.isEmpty())
+					{
+						return BooleanValue.FALSE;
+					}
+
+					bag1 = bagArgExpr1.evaluate(context);
+				} catch (final IndeterminateEvaluationException e)
+				{
+					throw new IndeterminateEvaluationException(subFuncArgEvalErrMsg, e.getStatusCode(), e);
+				}
+
+				return BooleanValue.valueOf(!bag1.isEmpty() && haveCommonValue(bag0, bag1));
+			}
+
+			@Override
+			public Datatype<BooleanValue> getReturnType() {
+				return StandardDatatypes.BOOLEAN;
+			}
+
+		}
+
 		private final class AnyOfAnyFunctionCall implements FunctionCall<BooleanValue>
 		{
 			private final FirstOrderFunctionCall<BooleanValue> subFuncCall;
@@ -707,7 +927,7 @@ final class StandardHigherOrderBagFunctions
 	/**
 	 * Class for common behavior between all-of-any and any-of-all
 	 */
-	private static abstract class BooleanHigherOrderTwoBagAnyFunction extends BooleanHigherOrderTwoBagFunction
+	private static abstract class BooleanHigherOrderTwoBagAnyFunction extends EqualityHashJoinTwoBagFunction
 	{
 		private interface ArgSelector
 		{
@@ -819,6 +1039,11 @@ final class StandardHigherOrderBagFunctions
 
 			return BooleanValue.TRUE;
 		}
+
+		@Override
+		protected BooleanValue evaluateWithEqualitySubFunction(final Bag<?> bag0, final Bag<?> bag1) {
+			return BooleanValue.valueOf(isContainedIn(argSelector.getBagForAll(bag0, bag1), argSelector.getBagForAny(bag0, bag1)));
+		}
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /**
- * Copyright 2012-2019 THALES.
+ * Copyright 2012-2026 THALES.
  *
  * This file is part of AuthzForce CE.
  *
@@ -17,10 +17,19 @@
  */
 package org.ow2.authzforce.core.pdp.impl.func;
 
+import java.util.List;
+
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
 import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunctionCall;
+import org.ow2.authzforce.core.pdp.api.func.NonEqualTypeMatchFunction;
 import org.ow2.authzforce.core.pdp.api.func.NonEqualTypeMatchFunction.Matcher;
 import org.ow2.authzforce.core.pdp.api.value.AnyUriValue;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
 import org.ow2.authzforce.core.pdp.api.value.Rfc822NameValue;
+import org.ow2.authzforce.core.pdp.api.value.SimpleValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
 import org.ow2.authzforce.core.pdp.api.value.StringValue;
 
 /**
@@ -106,6 +115,49 @@ final class StandardNonEqualTypeMatchers
 		}
 	};
 
+	/**
+	 * *-regexp-match function (other than string-regexp-match) using a cache of compiled regular expressions when the regular expression is not constant. Calls with a constant regular
+	 * expression are created by the function not using the cache, which pre-compiles the regular expression once and for all.
+	 */
+	private static final class CachingRegexpMatchFunction<AV extends SimpleValue<String>> extends NonEqualTypeMatchFunction<StringValue, AV>
+	{
+		private final NonEqualTypeMatchFunction<StringValue, AV> uncachedFunction;
+
+		private CachingRegexpMatchFunction(final NonEqualTypeMatchFunction<StringValue, AV> uncachedFunction, final Datatype<AV> matchedValueType, final CompiledRegexCache regexCache)
+		{
+			super(uncachedFunction.getId(), StandardDatatypes.STRING, matchedValueType, regexCache.newRegexpMatcher(uncachedFunction, matchedValueType));
+			this.uncachedFunction = uncachedFunction;
+		}
+
+		@Override
+		public FirstOrderFunctionCall<BooleanValue> newCall(final List<Expression<?>> argExpressions, final Datatype<?>... remainingArgTypes) throws IllegalArgumentException
+		{
+			/*
+			 * Constant regex (first argument): pre-compiled by the uncached function; else compiled regex looked up in the cache for each evaluation
+			 */
+			return !argExpressions.isEmpty() && argExpressions.get(0).getValue().isPresent() ? uncachedFunction.newCall(argExpressions, remainingArgTypes)
+			        : super.newCall(argExpressions, remainingArgTypes);
+		}
+	}
+
+	/**
+	 * Creates *-regexp-match (other than string-regexp-match) function using a given cache of compiled regular expressions when the regular expression is not constant (constant ones are
+	 * pre-compiled as usual)
+	 * 
+	 * @param uncachedFunction
+	 *            regexp-match function not using {@code regexCache}, used to compile the regular expressions and to create the calls with a constant regular expression
+	 * @param matchedValueType
+	 *            datatype of the second parameter
+	 * @param regexCache
+	 *            cache of compiled regular expressions
+	 * @return regexp-match function
+	 */
+	static <AV extends SimpleValue<String>> NonEqualTypeMatchFunction<StringValue, AV> newCachingRegexpMatchFunction(final NonEqualTypeMatchFunction<StringValue, AV> uncachedFunction,
+	        final Datatype<AV> matchedValueType, final CompiledRegexCache regexCache)
+	{
+		return new CachingRegexpMatchFunction<>(uncachedFunction, matchedValueType, regexCache);
+	}
+
 	private StandardNonEqualTypeMatchers()
 	{
 		// empty private constructor to prevent instantiation
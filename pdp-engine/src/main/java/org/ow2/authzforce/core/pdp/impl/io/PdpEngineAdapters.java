@@ -210,9 +210,13 @@ public final class PdpEngineAdapters
 			final DecisionResultPostprocessor<ADAPTEE_INPUT_DECISION_REQUEST, ADAPTER_OUTPUT> defaultResultPostproc) throws IllegalArgumentException, IOException
 	{
 		// use intermediate Java-friendly PdpEngineConfiguration (higher-level than JAXB) that has #getAttributeValueFactory()
-		try (final BasePdpEngine adaptedPdpEngine = new BasePdpEngine(configuration))
+		/*
+		 * The returned adapter closes the PDP engine when closed itself, so the engine must be closed here only if the adapter cannot be created. In particular, the batch evaluation thread pool
+		 * must not be shut down before the first request.
+		 */
+		final BasePdpEngine adaptedPdpEngine = new BasePdpEngine(configuration);
+		try
 		{
-
 			final Entry<DecisionRequestPreprocessor<?, ?>, DecisionResultPostprocessor<?, ?>> ioProcChain = configuration.getInOutProcChains().get(adapterInputClass);
 			final DecisionResultPostprocessor<?, ?> rawResultPostProc;
 			final DecisionRequestPreprocessor<?, ?> rawReqPreproc;
@@ -230,6 +234,11 @@ public final class PdpEngineAdapters
 			return newInoutAdapter(adapterInputClass, adapterOutputClass, adaptedPdpEngine, rawReqPreproc == null ? defaultReqPreproc : rawReqPreproc,
 					rawResultPostProc == null ? defaultResultPostproc : rawResultPostProc);
 		}
+		catch (final IllegalArgumentException e)
+		{
+			adaptedPdpEngine.close();
+			throw e;
+		}
 	}
 
 	/**
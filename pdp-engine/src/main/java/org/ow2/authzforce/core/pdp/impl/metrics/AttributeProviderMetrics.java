@@ -0,0 +1,52 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+/**
+ * Recorder of metrics of attribute resolution by the PDP's attribute provider, either for a given attribute (all attribute provider modules) or for a given attribute provider module (all attributes):
+ * attribute values found in the evaluation context, and calls to attribute provider modules with their outcomes and latencies. Called on every attribute lookup, possibly by multiple threads
+ * concurrently, therefore implementations must be thread-safe and as cheap as possible (e.g. striped counters).
+ * <p>
+ * Instances are provided by an {@link EvaluationMetricsRegistry}.
+ */
+public interface AttributeProviderMetrics
+{
+	/**
+	 * Records attribute values found in the evaluation context (request attributes, or already resolved in the same context), i.e. without calling any attribute provider module (attribute metrics
+	 * only)
+	 */
+	void contextHit();
+
+	/**
+	 * Records a call to an attribute provider module that returned normally
+	 * 
+	 * @param elapsedNanos
+	 *            call duration (nanoseconds)
+	 * @param empty
+	 *            true iff the module returned no value (null or empty bag)
+	 */
+	void providerReturned(long elapsedNanos, boolean empty);
+
+	/**
+	 * Records a call to an attribute provider module that failed, i.e. raised an error or returned an empty bag because of an error
+	 * 
+	 * @param elapsedNanos
+	 *            call duration (nanoseconds)
+	 */
+	void providerFailed(long elapsedNanos);
+}
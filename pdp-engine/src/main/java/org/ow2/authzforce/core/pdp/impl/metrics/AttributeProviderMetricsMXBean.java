@@ -0,0 +1,117 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+/**
+ * Read-only view of the attribute resolution metrics of an attribute or attribute provider module, exposed as MXBean by {@link JmxEvaluationMetricsRegistry}. All counts and times are cumulated since
+ * the creation of the metrics.
+ */
+public interface AttributeProviderMetricsMXBean
+{
+	/**
+	 * Get number of lookups resolved from the evaluation context without calling any attribute provider module (always 0 for attribute provider modules)
+	 * 
+	 * @return context hit count
+	 */
+	long getContextHitCount();
+
+	/**
+	 * Get number of calls to attribute provider modules (including failed calls)
+	 * 
+	 * @return provider call count
+	 */
+	long getProviderCallCount();
+
+	/**
+	 * Get number of failed calls to attribute provider modules
+	 * 
+	 * @return provider error count
+	 */
+	long getProviderErrorCount();
+
+	/**
+	 * Get number of calls to attribute provider modules that returned no value
+	 * 
+	 * @return provider empty result count
+	 */
+	long getProviderEmptyResultCount();
+
+	/**
+	 * Get ratio of context hits to all lookups (context hits and provider calls)
+	 * 
+	 * @return context hit ratio; 0 if no lookup
+	 */
+	double getContextHitRatio();
+
+	/**
+	 * Get ratio of failed calls to all calls to attribute provider modules
+	 * 
+	 * @return provider error ratio; 0 if no call
+	 */
+	double getProviderErrorRatio();
+
+	/**
+	 * Get ratio of calls that returned no value to all calls to attribute provider modules
+	 * 
+	 * @return provider empty result ratio; 0 if no call
+	 */
+	double getProviderEmptyResultRatio();
+
+	/**
+	 * Get cumulated duration of calls to attribute provider modules (nanoseconds)
+	 * 
+	 * @return total provider time
+	 */
+	long getTotalProviderTimeNanos();
+
+	/**
+	 * Get longest duration of a call to an attribute provider module (nanoseconds)
+	 * 
+	 * @return max provider time
+	 */
+	long getMaxProviderTimeNanos();
+
+	/**
+	 * Get mean duration of calls to attribute provider modules (nanoseconds)
+	 * 
+	 * @return mean provider time; 0 if no call
+	 */
+	double getMeanProviderTimeNanos();
+
+	/**
+	 * Get the histogram of durations of calls to attribute provider modules, with buckets of exponentially increasing size: the element at index i is the number of calls that took between 2^i
+	 * (inclusive) and 2^(i+1) (exclusive) nanoseconds, except the first element that also counts calls under 1 nanosecond, and the last element that counts all calls over its lower bound.
+	 * 
+	 * @return call counts by time bucket
+	 */
+	long[] getProviderTimeHistogram();
+
+	/**
+	 * Get the approximate median duration of calls to attribute provider modules, i.e. the upper bound of the histogram bucket containing the median
+	 * 
+	 * @return median provider time (nanoseconds, rounded up to the next power of two); 0 if no call
+	 */
+	long getProviderTimeMedianNanos();
+
+	/**
+	 * Get the approximate 99th percentile of durations of calls to attribute provider modules, i.e. the upper bound of the histogram bucket containing this percentile
+	 * 
+	 * @return 99th percentile of provider times (nanoseconds, rounded up to the next power of two); 0 if no call
+	 */
+	long getProviderTime99thPercentileNanos();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Recorder of evaluation metrics of a given policy element (Policy, PolicySet or Rule): Target and Condition outcomes, decisions and evaluation times. Called on every evaluation of the element,
+ * possibly by multiple threads concurrently, therefore implementations must be thread-safe and as cheap as possible (e.g. striped counters), since they add to the evaluation latency.
+ * <p>
+ * Instances are provided by an {@link EvaluationMetricsRegistry}.
+ */
+public interface EvaluationMetrics
+{
+	/**
+	 * Records a Target match
+	 */
+	void targetMatched();
+
+	/**
+	 * Records a Target no-match
+	 */
+	void targetNotMatched();
+
+	/**
+	 * Records an Indeterminate Target
+	 */
+	void targetIndeterminate();
+
+	/**
+	 * Records a Condition evaluated to True (Rules only)
+	 */
+	void conditionTrue();
+
+	/**
+	 * Records a Condition evaluated to False (Rules only)
+	 */
+	void conditionFalse();
+
+	/**
+	 * Records an Indeterminate Condition (Rules only)
+	 */
+	void conditionIndeterminate();
+
+	/**
+	 * Records the end of an evaluation of the element
+	 * 
+	 * @param decision
+	 *            evaluation result's decision
+	 * @param elapsedNanos
+	 *            evaluation time (nanoseconds), including the evaluation of the child elements (if any)
+	 */
+	void evaluated(DecisionType decision, long elapsedNanos);
+}
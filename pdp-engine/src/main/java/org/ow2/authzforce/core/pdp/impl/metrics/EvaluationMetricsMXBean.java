@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+/**
+ * Read-only view of the evaluation metrics of a policy element (Policy, PolicySet or Rule), exposed as MXBean by {@link JmxEvaluationMetricsRegistry}. All counts and times are cumulated since the
+ * creation of the metrics.
+ */
+public interface EvaluationMetricsMXBean
+{
+	/**
+	 * Get number of evaluations
+	 * 
+	 * @return evaluation count
+	 */
+	long getEvaluationCount();
+
+	/**
+	 * Get number of evaluations resulting in Permit
+	 * 
+	 * @return Permit count
+	 */
+	long getPermitCount();
+
+	/**
+	 * Get number of evaluations resulting in Deny
+	 * 
+	 * @return Deny count
+	 */
+	long getDenyCount();
+
+	/**
+	 * Get number of evaluations resulting in NotApplicable
+	 * 
+	 * @return NotApplicable count
+	 */
+	long getNotApplicableCount();
+
+	/**
+	 * Get number of evaluations resulting in Indeterminate
+	 * 
+	 * @return Indeterminate count
+	 */
+	long getIndeterminateCount();
+
+	/**
+	 * Get number of Target matches
+	 * 
+	 * @return Target match count
+	 */
+	long getTargetMatchCount();
+
+	/**
+	 * Get number of Target no-matches
+	 * 
+	 * @return Target no-match count
+	 */
+	long getTargetNoMatchCount();
+
+	/**
+	 * Get number of Indeterminate Targets
+	 * 
+	 * @return Target Indeterminate count
+	 */
+	long getTargetIndeterminateCount();
+
+	/**
+	 * Get number of Conditions evaluated to True (always 0 for Policies and PolicySets)
+	 * 
+	 * @return Condition True count
+	 */
+	long getConditionTrueCount();
+
+	/**
+	 * Get number of Conditions evaluated to False (always 0 for Policies and PolicySets)
+	 * 
+	 * @return Condition False count
+	 */
+	long getConditionFalseCount();
+
+	/**
+	 * Get number of Indeterminate Conditions (always 0 for Policies and PolicySets)
+	 * 
+	 * @return Condition Indeterminate count
+	 */
+	long getConditionIndeterminateCount();
+
+	/**
+	 * Get cumulated evaluation time (nanoseconds)
+	 * 
+	 * @return total evaluation time
+	 */
+	long getTotalEvaluationTimeNanos();
+
+	/**
+	 * Get longest evaluation time (nanoseconds)
+	 * 
+	 * @return max evaluation time
+	 */
+	long getMaxEvaluationTimeNanos();
+
+	/**
+	 * Get mean evaluation time (nanoseconds)
+	 * 
+	 * @return mean evaluation time; 0 if no evaluation
+	 */
+	double getMeanEvaluationTimeNanos();
+
+	/**
+	 * Get the histogram of evaluation times, with buckets of exponentially increasing size: the element at index i is the number of evaluations that took between 2^i (inclusive) and 2^(i+1)
+	 * (exclusive) nanoseconds, except the first element that also counts evaluations under 1 nanosecond, and the last element that counts all evaluations over its lower bound.
+	 * 
+	 * @return evaluation counts by time bucket
+	 */
+	long[] getEvaluationTimeHistogram();
+
+	/**
+	 * Get the approximate median evaluation time, i.e. the upper bound of the histogram bucket containing the median
+	 * 
+	 * @return median evaluation time (nanoseconds, rounded up to the next power of two); 0 if no evaluation
+	 */
+	long getEvaluationTimeMedianNanos();
+
+	/**
+	 * Get the approximate 99th percentile of evaluation times, i.e. the upper bound of the histogram bucket containing this percentile
+	 * 
+	 * @return 99th percentile of evaluation times (nanoseconds, rounded up to the next power of two); 0 if no evaluation
+	 */
+	long getEvaluationTime99thPercentileNanos();
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import java.io.Closeable;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.PdpExtension;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+
+/**
+ * Registry of evaluation metrics of policy elements (Policies, PolicySets and Rules), and of attribute resolution metrics of attributes and attribute provider modules, in charge of exposing these
+ * metrics to monitoring tools (e.g. JMX). This is the SPI for plugging a specific metrics backend into the PDP: the PDP gets one {@link EvaluationMetrics} per policy element, and one
+ * {@link AttributeProviderMetrics} per attribute provider module and per attribute, from the registry and records the evaluations/lookups with it.
+ * <p>
+ * The same policy element may be initialized multiple times in the lifetime of a PDP, e.g. when policies are reloaded, or when a Policy(Set) is referenced multiple times. Therefore, implementations
+ * should return the same {@link EvaluationMetrics} for the same element (same type, ID and version), so that metrics are cumulated over reloads; and drop the metrics of the elements removed by a
+ * reload when {@link #retainPolicyMetrics(Set)} is called. Closing the registry releases the resources used to expose the metrics.
+ */
+public interface EvaluationMetricsRegistry extends Closeable
+{
+	/**
+	 * Gets (or creates if it does not exist) the metrics recorder of a given Policy or PolicySet
+	 * 
+	 * @param policyMetadata
+	 *            Policy(Set) type, ID and version
+	 * @return metrics recorder
+	 */
+	EvaluationMetrics getPolicyMetrics(PrimaryPolicyMetadata policyMetadata);
+
+	/**
+	 * Gets (or creates if it does not exist) the metrics recorder of a given Rule
+	 * 
+	 * @param enclosingPolicyMetadata
+	 *            type, ID and version of the Policy enclosing the Rule
+	 * @param ruleId
+	 *            RuleId
+	 * @return metrics recorder
+	 */
+	EvaluationMetrics getRuleMetrics(PrimaryPolicyMetadata enclosingPolicyMetadata, String ruleId);
+
+	/**
+	 * Gets (or creates if it does not exist) the metrics recorder of the lookups of a given attribute (from the evaluation context or any attribute provider module)
+	 * 
+	 * @param attributeFqn
+	 *            attribute category, ID and issuer
+	 * @return metrics recorder
+	 */
+	AttributeProviderMetrics getAttributeMetrics(AttributeFqn attributeFqn);
+
+	/**
+	 * Gets (or creates if it does not exist) the metrics recorder of the calls to a given attribute provider module (for any attribute)
+	 * 
+	 * @param providerName
+	 *            attribute provider module name, e.g. its instance ID
+	 * @return metrics recorder
+	 */
+	AttributeProviderMetrics getAttributeProviderMetrics(String providerName);
+
+	/**
+	 * Removes the metrics of the Policies and PolicySets other than the given ones, and of the Rules they enclose, e.g. after the policies have been reloaded, to drop the metrics of the policies that
+	 * do not exist anymore. Does nothing by default.
+	 * 
+	 * @param policies
+	 *            type, ID and version of the Policies and PolicySets whose metrics - and the metrics of their Rules - are kept
+	 */
+	default void retainPolicyMetrics(final Set<PrimaryPolicyMetadata> policies)
+	{
+		// metrics kept by default
+	}
+
+	/**
+	 * Factory of evaluation metrics registries, identified in PDP configuration by its ID ({@link PdpExtension#getId()})
+	 */
+	interface Factory extends PdpExtension
+	{
+		/**
+		 * Creates a registry
+		 * 
+		 * @return new registry
+		 */
+		EvaluationMetricsRegistry getInstance();
+	}
+}
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluation metrics registry exposing the metrics of each policy element ({@link EvaluationMetricsMXBean}), attribute and attribute provider module ({@link AttributeProviderMetricsMXBean}) as an
+ * MXBean in the platform MBean server, with object names like:
+ * <ul>
+ * <li>{@code org.ow2.authzforce.core.pdp:registry=1,type=PolicySet,policyId="...",version="..."} for PolicySets (type=Policy for Policies);</li>
+ * <li>{@code org.ow2.authzforce.core.pdp:registry=1,type=Rule,policyId="...",version="...",ruleId="..."} for Rules, where policyId/version identify the enclosing Policy;</li>
+ * <li>{@code org.ow2.authzforce.core.pdp:registry=1,type=Attribute,category="...",attributeId="...",issuer="..."} for attributes (no issuer key if no Issuer);</li>
+ * <li>{@code org.ow2.authzforce.core.pdp:registry=1,type=AttributeProvider,provider="..."} for attribute provider modules.</li>
+ * </ul>
+ * The {@code registry} key identifies the registry instance, i.e. the PDP, in case there are multiple PDPs in the same JVM. Metrics are recorded with {@link StripedEvaluationMetrics} and
+ * {@link StripedAttributeProviderMetrics}. The MXBeans are unregistered when the registry is closed, and the MXBeans of the policy elements are unregistered when their Policy(Set) is not retained
+ * (see {@link #retainPolicyMetrics(Set)}).
+ * <p>
+ * This class is thread-safe.
+ */
+public final class JmxEvaluationMetricsRegistry implements EvaluationMetricsRegistry
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(JmxEvaluationMetricsRegistry.class);
+
+	/**
+	 * JMX domain of the MXBeans
+	 */
+	public static final String JMX_DOMAIN = "org.ow2.authzforce.core.pdp";
+
+	private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger(0);
+
+	/**
+	 * Factory of {@link JmxEvaluationMetricsRegistry}
+	 */
+	public static final class Factory implements EvaluationMetricsRegistry.Factory
+	{
+		/**
+		 * Registry factory ID, as returned by {@link #getId()}
+		 */
+		public static final String ID = "urn:ow2:authzforce:feature:pdp:metrics-registry:jmx";
+
+		@Override
+		public String getId()
+		{
+			return ID;
+		}
+
+		@Override
+		public EvaluationMetricsRegistry getInstance()
+		{
+			return new JmxEvaluationMetricsRegistry(ManagementFactory.getPlatformMBeanServer());
+		}
+	}
+
+	private final MBeanServer mbeanServer;
+	private final String objectNamePrefix;
+	private final Map<ObjectName, Object> metricsByObjectName = new ConcurrentHashMap<>();
+	/*
+	 * Key of the Policy(Set) of each policy element's metrics in metricsByObjectName (see getPolicyKey(...)), i.e. the enclosing Policy for Rules
+	 */
+	private final Map<ObjectName, String> policyKeysByObjectName = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates instance
+	 * 
+	 * @param mbeanServer
+	 *            MBean server where the metrics are registered
+	 */
+	public JmxEvaluationMetricsRegistry(final MBeanServer mbeanServer)
+	{
+		assert mbeanServer != null;
+		this.mbeanServer = mbeanServer;
+		this.objectNamePrefix = JMX_DOMAIN + ":registry=" + INSTANCE_COUNTER.incrementAndGet();
+	}
+
+	private static String getPolicyKeyProperties(final PrimaryPolicyMetadata policyMetadata)
+	{
+		return ",policyId=" + ObjectName.quote(policyMetadata.getId()) + ",version=" + ObjectName.quote(policyMetadata.getVersion().toString());
+	}
+
+	private static String getPolicyKey(final PrimaryPolicyMetadata policyMetadata)
+	{
+		return (policyMetadata.getType() == TopLevelPolicyElementType.POLICY ? "Policy" : "PolicySet") + getPolicyKeyProperties(policyMetadata);
+	}
+
+	private EvaluationMetrics getPolicyElementMetrics(final String objectName, final PrimaryPolicyMetadata policyMetadata)
+	{
+		final ObjectName jmxName = toObjectName(objectName);
+		final EvaluationMetrics metrics = getMetrics(jmxName, StripedEvaluationMetrics::new);
+		policyKeysByObjectName.putIfAbsent(jmxName, getPolicyKey(policyMetadata));
+		return metrics;
+	}
+
+	private static ObjectName toObjectName(final String objectName)
+	{
+		try
+		{
+			return new ObjectName(objectName);
+		}
+		catch (final MalformedObjectNameException e)
+		{
+			// should not happen since values are quoted
+			throw new IllegalArgumentException("Invalid JMX ObjectName for evaluation metrics: " + objectName, e);
+		}
+	}
+
+	private <M> M getMetrics(final ObjectName jmxName, final Supplier<M> metricsFactory)
+	{
+		final Object metrics = metricsByObjectName.computeIfAbsent(jmxName, name -> {
+			final M newMetrics = metricsFactory.get();
+			try
+			{
+				mbeanServer.registerMBean(newMetrics, name);
+			}
+			catch (final JMException e)
+			{
+				/*
+				 * Metrics are still recorded, just not exposed
+				 */
+				LOGGER.warn("Failed to register evaluation metrics MXBean '{}'", name, e);
+			}
+
+			return newMetrics;
+		});
+
+		/*
+		 * The type of metrics is part of the name (type key)
+		 */
+		@SuppressWarnings("unchecked")
+		final M result = (M) metrics;
+		return result;
+	}
+
+	@Override
+	public EvaluationMetrics getPolicyMetrics(final PrimaryPolicyMetadata policyMetadata)
+	{
+		return getPolicyElementMetrics(objectNamePrefix + ",type=" + getPolicyKey(policyMetadata), policyMetadata);
+	}
+
+	@Override
+	public EvaluationMetrics getRuleMetrics(final PrimaryPolicyMetadata enclosingPolicyMetadata, final String ruleId)
+	{
+		return getPolicyElementMetrics(objectNamePrefix + ",type=Rule" + getPolicyKeyProperties(enclosingPolicyMetadata) + ",ruleId=" + ObjectName.quote(ruleId), enclosingPolicyMetadata);
+	}
+
+	@Override
+	public AttributeProviderMetrics getAttributeMetrics(final AttributeFqn attributeFqn)
+	{
+		final String issuerKeyProperty = attributeFqn.getIssuer().isPresent() ? ",issuer=" + ObjectName.quote(attributeFqn.getIssuer().get()) : "";
+		return getMetrics(toObjectName(objectNamePrefix + ",type=Attribute,category=" + ObjectName.quote(attributeFqn.getCategory()) + ",attributeId=" + ObjectName.quote(attributeFqn.getId())
+		        + issuerKeyProperty), StripedAttributeProviderMetrics::new);
+	}
+
+	@Override
+	public AttributeProviderMetrics getAttributeProviderMetrics(final String providerName)
+	{
+		return getMetrics(toObjectName(objectNamePrefix + ",type=AttributeProvider,provider=" + ObjectName.quote(providerName)), StripedAttributeProviderMetrics::new);
+	}
+
+	private void unregister(final ObjectName name)
+	{
+		try
+		{
+			if (mbeanServer.isRegistered(name))
+			{
+				mbeanServer.unregisterMBean(name);
+			}
+		}
+		catch (final JMException e)
+		{
+			LOGGER.warn("Failed to unregister evaluation metrics MXBean '{}'", name, e);
+		}
+	}
+
+	@Override
+	public void retainPolicyMetrics(final Set<PrimaryPolicyMetadata> policies)
+	{
+		final Set<String> retainedPolicyKeys = HashCollections.newUpdatableSet(policies.size());
+		policies.forEach(policyMetadata -> retainedPolicyKeys.add(getPolicyKey(policyMetadata)));
+		final Iterator<Entry<ObjectName, String>> policyKeyIterator = policyKeysByObjectName.entrySet().iterator();
+		while (policyKeyIterator.hasNext())
+		{
+			final Entry<ObjectName, String> policyKeyEntry = policyKeyIterator.next();
+			if (!retainedPolicyKeys.contains(policyKeyEntry.getValue()))
+			{
+				LOGGER.debug("Removing evaluation metrics MXBean '{}' of policy element not retained", policyKeyEntry.getKey());
+				policyKeyIterator.remove();
+				metricsByObjectName.remove(policyKeyEntry.getKey());
+				unregister(policyKeyEntry.getKey());
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		for (final ObjectName name : metricsByObjectName.keySet())
+		{
+			unregister(name);
+		}
+
+		metricsByObjectName.clear();
+		policyKeysByObjectName.clear();
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with a fixed number of buckets of exponentially increasing size (powers of two), based on striped counters ({@link LongAdder}), i.e. no allocation and no lock on update.
+ * Also keeps track of the total and maximum durations.
+ * <p>
+ * This class is thread-safe.
+ */
+final class LatencyHistogram
+{
+	/*
+	 * Last bucket counts durations longer than 2^(BUCKET_COUNT - 1) ns, i.e. about 9 minutes
+	 */
+	private static final int BUCKET_COUNT = 40;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	LatencyHistogram()
+	{
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	private static int getBucket(final long nanos)
+	{
+		// floor(log2(nanos)), -1 if nanos <= 0
+		final int log2 = 63 - Long.numberOfLeadingZeros(nanos);
+		return log2 < 0 ? 0 : Math.min(log2, BUCKET_COUNT - 1);
+	}
+
+	void record(final long nanos)
+	{
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+		buckets[getBucket(nanos)].increment();
+	}
+
+	long getTotalNanos()
+	{
+		return totalNanos.sum();
+	}
+
+	long getMaxNanos()
+	{
+		return maxNanos.get();
+	}
+
+	/**
+	 * Gets the counts by bucket: the element at index i is the number of durations between 2^i (inclusive) and 2^(i+1) (exclusive) nanoseconds, except the first element that also counts durations
+	 * under 1 nanosecond, and the last element that counts all durations over its lower bound.
+	 */
+	long[] getCounts()
+	{
+		final long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++)
+		{
+			counts[i] = buckets[i].sum();
+		}
+
+		return counts;
+	}
+
+	/**
+	 * Gets the approximate percentile, i.e. the upper bound of the bucket containing the percentile (the max duration if last bucket); 0 if no duration recorded
+	 */
+	long getPercentileNanos(final double percentile)
+	{
+		final long[] counts = getCounts();
+		long total = 0;
+		for (final long count : counts)
+		{
+			total += count;
+		}
+
+		if (total == 0)
+		{
+			return 0;
+		}
+
+		final long rank = (long) Math.ceil(percentile * total);
+		long cumulatedCount = 0;
+		for (int i = 0; i < BUCKET_COUNT - 1; i++)
+		{
+			cumulatedCount += counts[i];
+			if (cumulatedCount >= rank)
+			{
+				return 1L << (i + 1);
+			}
+		}
+
+		// last bucket has no upper bound
+		return maxNanos.get();
+	}
+}
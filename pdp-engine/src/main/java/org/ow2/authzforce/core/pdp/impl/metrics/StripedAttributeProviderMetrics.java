@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Attribute resolution metrics based on striped counters ({@link LongAdder}), i.e. cheap to update from multiple threads concurrently, at the cost of slower reads, which are only done by monitoring
+ * tools. Call durations are recorded in a histogram with a fixed number of buckets of exponentially increasing size (powers of two).
+ * <p>
+ * This class is thread-safe.
+ */
+public final class StripedAttributeProviderMetrics implements AttributeProviderMetrics, AttributeProviderMetricsMXBean
+{
+	private final LongAdder contextHitCounter = new LongAdder();
+	private final LongAdder providerErrorCounter = new LongAdder();
+	private final LongAdder providerEmptyResultCounter = new LongAdder();
+	private final LongAdder providerCallCounter = new LongAdder();
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	private static double getRatio(final long count, final long total)
+	{
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	@Override
+	public void contextHit()
+	{
+		contextHitCounter.increment();
+	}
+
+	@Override
+	public void providerReturned(final long elapsedNanos, final boolean empty)
+	{
+		providerCallCounter.increment();
+		if (empty)
+		{
+			providerEmptyResultCounter.increment();
+		}
+
+		histogram.record(elapsedNanos);
+	}
+
+	@Override
+	public void providerFailed(final long elapsedNanos)
+	{
+		providerCallCounter.increment();
+		providerErrorCounter.increment();
+		histogram.record(elapsedNanos);
+	}
+
+	@Override
+	public long getContextHitCount()
+	{
+		return contextHitCounter.sum();
+	}
+
+	@Override
+	public long getProviderCallCount()
+	{
+		return providerCallCounter.sum();
+	}
+
+	@Override
+	public long getProviderErrorCount()
+	{
+		return providerErrorCounter.sum();
+	}
+
+	@Override
+	public long getProviderEmptyResultCount()
+	{
+		return providerEmptyResultCounter.sum();
+	}
+
+	@Override
+	public double getContextHitRatio()
+	{
+		final long contextHitCount = contextHitCounter.sum();
+		return getRatio(contextHitCount, contextHitCount + providerCallCounter.sum());
+	}
+
+	@Override
+	public double getProviderErrorRatio()
+	{
+		return getRatio(providerErrorCounter.sum(), providerCallCounter.sum());
+	}
+
+	@Override
+	public double getProviderEmptyResultRatio()
+	{
+		return getRatio(providerEmptyResultCounter.sum(), providerCallCounter.sum());
+	}
+
+	@Override
+	public long getTotalProviderTimeNanos()
+	{
+		return histogram.getTotalNanos();
+	}
+
+	@Override
+	public long getMaxProviderTimeNanos()
+	{
+		return histogram.getMaxNanos();
+	}
+
+	@Override
+	public double getMeanProviderTimeNanos()
+	{
+		return getRatio(histogram.getTotalNanos(), providerCallCounter.sum());
+	}
+
+	@Override
+	public long[] getProviderTimeHistogram()
+	{
+		return histogram.getCounts();
+	}
+
+	@Override
+	public long getProviderTimeMedianNanos()
+	{
+		return histogram.getPercentileNanos(0.5);
+	}
+
+	@Override
+	public long getProviderTime99thPercentileNanos()
+	{
+		return histogram.getPercentileNanos(0.99);
+	}
+}
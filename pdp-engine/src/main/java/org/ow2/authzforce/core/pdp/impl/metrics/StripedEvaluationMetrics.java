@@ -0,0 +1,204 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Evaluation metrics based on striped counters ({@link LongAdder}), i.e. cheap to update from multiple threads concurrently (no contention on a single memory location), at the cost of slower reads,
+ * which are only done by monitoring tools. Evaluation times are recorded in a histogram with a fixed number of buckets of exponentially increasing size (powers of two).
+ * <p>
+ * This class is thread-safe.
+ */
+public final class StripedEvaluationMetrics implements EvaluationMetrics, EvaluationMetricsMXBean
+{
+	private final LongAdder permitCounter = new LongAdder();
+	private final LongAdder denyCounter = new LongAdder();
+	private final LongAdder notApplicableCounter = new LongAdder();
+	private final LongAdder indeterminateCounter = new LongAdder();
+	private final LongAdder targetMatchCounter = new LongAdder();
+	private final LongAdder targetNoMatchCounter = new LongAdder();
+	private final LongAdder targetIndeterminateCounter = new LongAdder();
+	private final LongAdder conditionTrueCounter = new LongAdder();
+	private final LongAdder conditionFalseCounter = new LongAdder();
+	private final LongAdder conditionIndeterminateCounter = new LongAdder();
+	private final LatencyHistogram histogram = new LatencyHistogram();
+
+	@Override
+	public void targetMatched()
+	{
+		targetMatchCounter.increment();
+	}
+
+	@Override
+	public void targetNotMatched()
+	{
+		targetNoMatchCounter.increment();
+	}
+
+	@Override
+	public void targetIndeterminate()
+	{
+		targetIndeterminateCounter.increment();
+	}
+
+	@Override
+	public void conditionTrue()
+	{
+		conditionTrueCounter.increment();
+	}
+
+	@Override
+	public void conditionFalse()
+	{
+		conditionFalseCounter.increment();
+	}
+
+	@Override
+	public void conditionIndeterminate()
+	{
+		conditionIndeterminateCounter.increment();
+	}
+
+	@Override
+	public void evaluated(final DecisionType decision, final long elapsedNanos)
+	{
+		switch (decision)
+		{
+			case PERMIT:
+				permitCounter.increment();
+				break;
+			case DENY:
+				denyCounter.increment();
+				break;
+			case NOT_APPLICABLE:
+				notApplicableCounter.increment();
+				break;
+			default:
+				indeterminateCounter.increment();
+				break;
+		}
+
+		histogram.record(elapsedNanos);
+	}
+
+	@Override
+	public long getEvaluationCount()
+	{
+		return permitCounter.sum() + denyCounter.sum() + notApplicableCounter.sum() + indeterminateCounter.sum();
+	}
+
+	@Override
+	public long getPermitCount()
+	{
+		return permitCounter.sum();
+	}
+
+	@Override
+	public long getDenyCount()
+	{
+		return denyCounter.sum();
+	}
+
+	@Override
+	public long getNotApplicableCount()
+	{
+		return notApplicableCounter.sum();
+	}
+
+	@Override
+	public long getIndeterminateCount()
+	{
+		return indeterminateCounter.sum();
+	}
+
+	@Override
+	public long getTargetMatchCount()
+	{
+		return targetMatchCounter.sum();
+	}
+
+	@Override
+	public long getTargetNoMatchCount()
+	{
+		return targetNoMatchCounter.sum();
+	}
+
+	@Override
+	public long getTargetIndeterminateCount()
+	{
+		return targetIndeterminateCounter.sum();
+	}
+
+	@Override
+	public long getConditionTrueCount()
+	{
+		return conditionTrueCounter.sum();
+	}
+
+	@Override
+	public long getConditionFalseCount()
+	{
+		return conditionFalseCounter.sum();
+	}
+
+	@Override
+	public long getConditionIndeterminateCount()
+	{
+		return conditionIndeterminateCounter.sum();
+	}
+
+	@Override
+	public long getTotalEvaluationTimeNanos()
+	{
+		return histogram.getTotalNanos();
+	}
+
+	@Override
+	public long getMaxEvaluationTimeNanos()
+	{
+		return histogram.getMaxNanos();
+	}
+
+	@Override
+	public double getMeanEvaluationTimeNanos()
+	{
+		final long count = getEvaluationCount();
+		return count == 0 ? 0 : (double) histogram.getTotalNanos() / count;
+	}
+
+	@Override
+	public long[] getEvaluationTimeHistogram()
+	{
+		return histogram.getCounts();
+	}
+
+	@Override
+	public long getEvaluationTimeMedianNanos()
+	{
+		return histogram.getPercentileNanos(0.5);
+	}
+
+	@Override
+	public long getEvaluationTime99thPercentileNanos()
+	{
+		return histogram.getPercentileNanos(0.99);
+	}
+}
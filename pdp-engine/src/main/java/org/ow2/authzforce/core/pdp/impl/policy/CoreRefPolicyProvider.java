@@ -19,6 +19,8 @@ package org.ow2.authzforce.core.pdp.impl.policy;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
@@ -32,10 +34,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 
 import org.ow2.authzforce.core.pdp.api.EnvironmentProperties;
@@ -44,20 +56,27 @@ import org.ow2.authzforce.core.pdp.api.XmlUtils.XmlnsFilteringParser;
 import org.ow2.authzforce.core.pdp.api.XmlUtils.XmlnsFilteringParserFactory;
 import org.ow2.authzforce.core.pdp.api.combining.CombiningAlgRegistry;
 import org.ow2.authzforce.core.pdp.api.expression.ExpressionFactory;
+import org.ow2.authzforce.core.pdp.api.policy.BasePrimaryPolicyMetadata;
 import org.ow2.authzforce.core.pdp.api.policy.BaseStaticRefPolicyProvider;
 import org.ow2.authzforce.core.pdp.api.policy.CloseableRefPolicyProvider;
 import org.ow2.authzforce.core.pdp.api.policy.PolicyRefsMetadata;
 import org.ow2.authzforce.core.pdp.api.policy.PolicyVersion;
 import org.ow2.authzforce.core.pdp.api.policy.PolicyVersionPatterns;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
 import org.ow2.authzforce.core.pdp.api.policy.StaticRefPolicyProvider;
 import org.ow2.authzforce.core.pdp.api.policy.StaticTopLevelPolicyElementEvaluator;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ow2.authzforce.xacml.identifiers.XacmlNodeName;
 import org.springframework.util.ResourceUtils;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.google.common.collect.Table.Cell;
+import com.google.common.collect.Tables;
 
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.IdReferenceType;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.Policy;
 import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
 
@@ -115,7 +134,7 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 
 		private final P policy;
 
-		private PolicyWithNamespaces(final P policy, final Map<String, String> nsPrefixUriMap)
+		PolicyWithNamespaces(final P policy, final Map<String, String> nsPrefixUriMap)
 		{
 			this.policy = policy;
 			this.nsPrefixUriMap = nsPrefixUriMap;
@@ -137,24 +156,25 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 		 */
 		private static final Pattern WILDCARD_SEQ_PREFIX_PATTERN = Pattern.compile("^(\\*+)([^\\*]*)$");
 
-		@Override
-		public Class<org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider> getJaxbClass()
-		{
-			return org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider.class;
-		}
-
-		@Override
-		public CloseableRefPolicyProvider getInstance(final org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider conf, final XmlnsFilteringParserFactory xacmlParserFactory,
-		        final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final EnvironmentProperties environmentProperties)
+		/**
+		 * Expands policy locations to policy URLs
+		 * 
+		 * @param policyLocationPatterns
+		 *            policy locations, possibly with placeholders and/or file path patterns (see {@link org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider#getPolicyLocations()})
+		 * @param environmentProperties
+		 *            PDP configuration environment properties, used to replace placeholders in the locations
+		 * @param outDirectories
+		 *            if not null, base directories of the file path patterns found in the locations are added to it
+		 * @return policy URLs
+		 * @throws IllegalArgumentException
+		 *             if one of the locations is invalid
+		 */
+		static List<URL> expandPolicyLocations(final List<String> policyLocationPatterns, final EnvironmentProperties environmentProperties, final Collection<Path> outDirectories)
+		        throws IllegalArgumentException
 		{
-			if (conf == null)
-			{
-				throw NULL_CONF_ARGUMENT_EXCEPTION;
-			}
-
 			final List<URL> policyURLs = new ArrayList<>();
 			int policyLocationIndex = 0;
-			for (final String policyLocationPatternBeforePlaceholderReplacement : conf.getPolicyLocations())
+			for (final String policyLocationPatternBeforePlaceholderReplacement : policyLocationPatterns)
 			{
 				final String policyLocationPattern = environmentProperties.replacePlaceholders(policyLocationPatternBeforePlaceholderReplacement);
 				// Check whether the location is a file path pattern
@@ -174,6 +194,11 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 						 */
 						final String directoryLocation = policyLocationPattern.substring(ResourceUtils.FILE_URL_PREFIX.length(), index);
 						final String filePathPattern = policyLocationPattern.substring(index + 1);
+						if (outDirectories != null)
+						{
+							outDirectories.add(Paths.get(directoryLocation));
+						}
+
 						if (LOGGER.isDebugEnabled())
 						{
 							// Beware of autoboxing which causes call to
@@ -252,7 +277,40 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 				policyLocationIndex++;
 			}
 
-			return CoreRefPolicyProvider.getInstance(policyURLs, conf.isIgnoreOldVersions(), xacmlParserFactory, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry);
+			return policyURLs;
+		}
+
+		@Override
+		public Class<org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider> getJaxbClass()
+		{
+			return org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider.class;
+		}
+
+		@Override
+		public CloseableRefPolicyProvider getInstance(final org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider conf, final XmlnsFilteringParserFactory xacmlParserFactory,
+		        final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final EnvironmentProperties environmentProperties)
+		{
+			if (conf == null)
+			{
+				throw NULL_CONF_ARGUMENT_EXCEPTION;
+			}
+
+			final List<URL> policyURLs = expandPolicyLocations(conf.getPolicyLocations(), environmentProperties, null);
+			final BigInteger bigLoadingParallelism = conf.getLoadingParallelism();
+			final int loadingParallelism;
+			try
+			{
+				loadingParallelism = bigLoadingParallelism.intValueExact();
+			}
+			catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid loadingParallelism: " + bigLoadingParallelism, e);
+			}
+
+			final String snapshotLocation = conf.getSnapshotLocation();
+			final Path snapshotFile = snapshotLocation == null ? null : Paths.get(environmentProperties.replacePlaceholders(snapshotLocation));
+			return CoreRefPolicyProvider.getInstance(policyURLs, conf.isIgnoreOldVersions(), xacmlParserFactory, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry,
+			        loadingParallelism == 0 ? Runtime.getRuntime().availableProcessors() : loadingParallelism, snapshotFile);
 		}
 	}
 
@@ -302,8 +360,15 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 			}
 
 			final PolicyVersion jaxbPolicySetVersion = jaxbPolicySetEntry.getKey();
-			// Check whether already parsed
-			final StaticTopLevelPolicyElementEvaluator policySetEvaluator = policySetMapToUpdate.get(id, jaxbPolicySetVersion);
+			/*
+			 * Check whether already parsed. (Table access is synchronized since PolicySets may be instantiated concurrently, see CoreRefPolicyProvider#instantiatePolicySetsByRefDepth(...).)
+			 */
+			final StaticTopLevelPolicyElementEvaluator policySetEvaluator;
+			synchronized (policySetMapToUpdate)
+			{
+				policySetEvaluator = policySetMapToUpdate.get(id, jaxbPolicySetVersion);
+			}
+
 			final StaticTopLevelPolicyElementEvaluator resultPolicySetEvaluator;
 			if (policySetEvaluator == null)
 			{
@@ -321,7 +386,10 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 					throw new IllegalArgumentException("Invalid PolicySet with PolicySetId=" + id + ", Version=" + jaxbPolicySetVersion, e);
 				}
 
-				policySetMapToUpdate.put(id, jaxbPolicySetVersion, resultPolicySetEvaluator);
+				synchronized (policySetMapToUpdate)
+				{
+					policySetMapToUpdate.put(id, jaxbPolicySetVersion, resultPolicySetEvaluator);
+				}
 			}
 			else
 			{
@@ -359,20 +427,44 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 	private final PolicyMap<StaticTopLevelPolicyElementEvaluator> policyEvaluatorMap;
 	private final PolicyMap<StaticTopLevelPolicyElementEvaluator> policySetEvaluatorMap;
 
-	private CoreRefPolicyProvider(final PolicyMap<StaticTopLevelPolicyElementEvaluator> policyMap, final PolicyMap<PolicyWithNamespaces<PolicySet>> jaxbPolicySetMap, final int maxPolicySetRefDepth,
-	        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
+	/*
+	 * Kept for creating updated instances (see update(...))
+	 */
+	private transient final int maxPolicySetRefDepth;
+	private transient final CombiningAlgRegistry combiningAlgRegistry;
+
+	/*
+	 * reusablePolicySetEvaluators: (optional) PolicySet evaluators already instantiated for some of the PolicySets in jaxbPolicySetMap (same ID and Version)
+	 */
+	/*
+	 * loadingPool: (optional) thread pool for instantiating PolicySets concurrently, null if they must be instantiated sequentially by the current thread
+	 */
+	private CoreRefPolicyProvider(final PolicyMap<StaticTopLevelPolicyElementEvaluator> policyMap, final PolicyMap<PolicyWithNamespaces<PolicySet>> jaxbPolicySetMap,
+	        final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> reusablePolicySetEvaluators, final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory,
+	        final CombiningAlgRegistry combiningAlgRegistry, final ForkJoinPool loadingPool) throws IllegalArgumentException
 	{
 		super(maxPolicySetRefDepth);
 		assert policyMap != null && jaxbPolicySetMap != null && expressionFactory != null && combiningAlgRegistry != null;
 
+		this.maxPolicySetRefDepth = maxPolicySetRefDepth;
+		this.combiningAlgRegistry = combiningAlgRegistry;
 		this.policyEvaluatorMap = policyMap;
-		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> updatablePolicySetEvaluatorTable = HashBasedTable.create();
+		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> updatablePolicySetEvaluatorTable = reusablePolicySetEvaluators == null ? HashBasedTable.create()
+		        : HashBasedTable.create(reusablePolicySetEvaluators);
 		/*
 		 * Ref policy Provider module used only for initialization, more particularly for parsing the PolicySets when they are referred to by others (in PolicySetIdReferences)
 		 */
 		try (final InitOnlyRefPolicyProvider bootstrapRefPolicyProvider = new InitOnlyRefPolicyProvider(this.policyEvaluatorMap, jaxbPolicySetMap, updatablePolicySetEvaluatorTable,
 		        maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry))
 		{
+			if (loadingPool != null)
+			{
+				instantiatePolicySetsByRefDepth(jaxbPolicySetMap, updatablePolicySetEvaluatorTable, bootstrapRefPolicyProvider, expressionFactory, combiningAlgRegistry, loadingPool);
+			}
+
+			/*
+			 * Instantiate the PolicySets not instantiated yet (all of them if loadingPool == null)
+			 */
 			for (final Entry<String, PolicyVersions<PolicyWithNamespaces<PolicySet>>> jaxbPolicySetWithNsEntry : jaxbPolicySetMap.entrySet())
 			{
 				final String policySetId = jaxbPolicySetWithNsEntry.getKey();
@@ -509,7 +601,7 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 			jaxbPolicySetMap = new PolicyMap<>(updatablePolicySetTable.rowMap());
 		}
 
-		return new CoreRefPolicyProvider(policyMap, jaxbPolicySetMap, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry);
+		return new CoreRefPolicyProvider(policyMap, jaxbPolicySetMap, null, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, null);
 	}
 
 	/**
@@ -534,6 +626,69 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 	 */
 	public static CoreRefPolicyProvider getInstance(final Collection<URL> policyURLs, final boolean ignoreOldPolicyVersions, final XmlnsFilteringParserFactory xacmlParserFactory,
 	        final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
+	{
+		return getInstance(policyURLs, ignoreOldPolicyVersions, xacmlParserFactory, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, 1);
+	}
+
+	/**
+	 * Creates an instance from policy locations, possibly loading the policies with multiple threads: policy documents are parsed concurrently (one XACML parser per thread), then Policies are
+	 * instantiated concurrently, then PolicySets by order of PolicySetIdReference depth (PolicySets of the same depth concurrently).
+	 *
+	 * @param policyURLs
+	 *            location of Policy(Set) elements (JAXB) to be parsed for future reference by Policy(Set)IdReferences
+	 * @param ignoreOldPolicyVersions
+	 *            for any given policy ID, ignore all versions except the last one if there are multiple versions of the policy
+	 * @param xacmlParserFactory
+	 *            XACML parser factory for parsing any XACML Policy(Set)
+	 * @param maxPolicySetRefDepth
+	 *            maximum allowed depth of PolicySet reference chain (via PolicySetIdReference): PolicySet1 -> PolicySet2 -> ...; a strictly negative value means no limit
+	 * @param combiningAlgRegistry
+	 *            registry of policy/rule combining algorithms
+	 * @param expressionFactory
+	 *            Expression factory for parsing Expressions used in the policy(set)
+	 * @param loadingParallelism
+	 *            number of threads loading the policies; if less than 2, the policies are loaded sequentially by the current thread (no thread created)
+	 * @return instance of this class
+	 * @throws java.lang.IllegalArgumentException
+	 *             if {@code policyURLs == null || policyURLs.length == 0 || xacmlParserFactory == null || expressionFactory == null || combiningAlgRegistry == null}; or one of {@code policyURLs} is
+	 *             null or is not a valid XACML Policy(Set) or conflicts with another because it has same Policy(Set)Id and Version. Beware that the Policy(Set)Issuer is ignored from this check!
+	 */
+	public static CoreRefPolicyProvider getInstance(final Collection<URL> policyURLs, final boolean ignoreOldPolicyVersions, final XmlnsFilteringParserFactory xacmlParserFactory,
+	        final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final int loadingParallelism) throws IllegalArgumentException
+	{
+		return getInstance(policyURLs, ignoreOldPolicyVersions, xacmlParserFactory, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, loadingParallelism, null);
+	}
+
+	/**
+	 * Creates an instance from policy locations, possibly loading the policies with multiple threads (see {@link #getInstance(Collection, boolean, XmlnsFilteringParserFactory, int, ExpressionFactory,
+	 * CombiningAlgRegistry, int)}), and from a binary snapshot of the parsed policy documents if it is up-to-date, in which case the policy documents are not parsed. Else the snapshot is (re)written
+	 * after parsing the policy documents.
+	 *
+	 * @param policyURLs
+	 *            location of Policy(Set) elements (JAXB) to be parsed for future reference by Policy(Set)IdReferences
+	 * @param ignoreOldPolicyVersions
+	 *            for any given policy ID, ignore all versions except the last one if there are multiple versions of the policy
+	 * @param xacmlParserFactory
+	 *            XACML parser factory for parsing any XACML Policy(Set)
+	 * @param maxPolicySetRefDepth
+	 *            maximum allowed depth of PolicySet reference chain (via PolicySetIdReference): PolicySet1 -> PolicySet2 -> ...; a strictly negative value means no limit
+	 * @param combiningAlgRegistry
+	 *            registry of policy/rule combining algorithms
+	 * @param expressionFactory
+	 *            Expression factory for parsing Expressions used in the policy(set)
+	 * @param loadingParallelism
+	 *            number of threads loading the policies; if less than 2, the policies are loaded sequentially by the current thread (no thread created)
+	 * @param snapshotFile
+	 *            (optional) binary snapshot file of the parsed policy documents, used only if more recent than all the policy documents and made from the same {@code policyURLs}. Null if no
+	 *            snapshot is used.
+	 * @return instance of this class
+	 * @throws java.lang.IllegalArgumentException
+	 *             if {@code policyURLs == null || policyURLs.length == 0 || xacmlParserFactory == null || expressionFactory == null || combiningAlgRegistry == null}; or one of {@code policyURLs} is
+	 *             null or is not a valid XACML Policy(Set) or conflicts with another because it has same Policy(Set)Id and Version. Beware that the Policy(Set)Issuer is ignored from this check!
+	 */
+	public static CoreRefPolicyProvider getInstance(final Collection<URL> policyURLs, final boolean ignoreOldPolicyVersions, final XmlnsFilteringParserFactory xacmlParserFactory,
+	        final int maxPolicySetRefDepth, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final int loadingParallelism, final Path snapshotFile)
+	        throws IllegalArgumentException
 	{
 		if (policyURLs == null || policyURLs.isEmpty())
 		{
@@ -555,47 +710,398 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 			throw ILLEGAL_COMBINING_ALG_REGISTRY_ARGUMENT_EXCEPTION;
 		}
 
-		final XmlnsFilteringParser xacmlParser;
+		final List<URL> policyURLList = new ArrayList<>(policyURLs);
+		int policyUrlIndex = 0;
+		for (final URL policyURL : policyURLList)
+		{
+			if (policyURL == null)
+			{
+				throw new IllegalArgumentException("policyURL #" + policyUrlIndex + " undefined");
+			}
+
+			policyUrlIndex++;
+		}
+
+		final Supplier<Function<URL, PolicyWithNamespaces<?>>> policyDocumentParserFactory = () -> {
+			final XmlnsFilteringParser xacmlParser;
+			try
+			{
+				xacmlParser = xacmlParserFactory.getInstance();
+			}
+			catch (final JAXBException e)
+			{
+				throw new IllegalArgumentException("Failed to create JAXB unmarshaller for XML Policy(Set)", e);
+			}
+
+			return policyURL -> parsePolicyDocument(xacmlParser, policyURL);
+		};
+
+		final ForkJoinPool loadingPool = loadingParallelism < 2 ? null : new ForkJoinPool(loadingParallelism);
 		try
 		{
-			xacmlParser = xacmlParserFactory.getInstance();
+			final Optional<List<PolicyWithNamespaces<?>>> snapshotPolicyDocuments = snapshotFile == null ? Optional.empty() : PolicyRepositorySnapshot.read(snapshotFile, policyURLList);
+			final List<PolicyWithNamespaces<?>> policyDocuments;
+			if (snapshotPolicyDocuments.isPresent())
+			{
+				policyDocuments = snapshotPolicyDocuments.get();
+			}
+			else
+			{
+				final long parsingStartTime = System.currentTimeMillis();
+				if (loadingPool == null)
+				{
+					final Function<URL, PolicyWithNamespaces<?>> policyDocumentParser = policyDocumentParserFactory.get();
+					policyDocuments = new ArrayList<>(policyURLList.size());
+					for (final URL policyURL : policyURLList)
+					{
+						policyDocuments.add(policyDocumentParser.apply(policyURL));
+					}
+				}
+				else
+				{
+					policyDocuments = mapConcurrently(policyURLList, policyDocumentParserFactory, loadingPool);
+				}
+
+				if (snapshotFile != null)
+				{
+					try
+					{
+						PolicyRepositorySnapshot.write(snapshotFile, policyURLList, policyDocuments, parsingStartTime);
+					}
+					catch (final IOException e)
+					{
+						LOGGER.warn("Failed to write policy snapshot {}. Policy documents will be parsed again next time.", snapshotFile, e);
+					}
+				}
+			}
+
+			return newInstance(policyDocuments, ignoreOldPolicyVersions, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, null, Collections.<String>emptySet(), loadingPool);
+		}
+		finally
+		{
+			if (loadingPool != null)
+			{
+				loadingPool.shutdown();
+			}
 		}
-		catch (final JAXBException e)
+	}
+
+	/*
+	 * Applies a function to all items concurrently, the items being split in as many consecutive chunks as threads in the pool. Each chunk is processed by a single thread, with its own function
+	 * instance from functionFactory (e.g. with its own parser). The results are in the same order as the items.
+	 */
+	private static <T, R> List<R> mapConcurrently(final List<T> items, final Supplier<? extends Function<? super T, ? extends R>> functionFactory, final ForkJoinPool pool)
+	        throws IllegalArgumentException
+	{
+		assert items != null && functionFactory != null && pool != null;
+		final int chunkCount = Math.min(pool.getParallelism(), items.size());
+		if (chunkCount == 0)
 		{
-			throw new IllegalArgumentException("Failed to create JAXB unmarshaller for XML Policy(Set)", e);
+			return Collections.emptyList();
 		}
 
-		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> updatablePolicyTable = HashBasedTable.create();
-		final Table<String, PolicyVersion, PolicyWithNamespaces<PolicySet>> updatablePolicySetTable = HashBasedTable.create();
-		int policyUrlIndex = 0;
-		for (final URL policyURL : policyURLs)
+		final int chunkSize = (items.size() + chunkCount - 1) / chunkCount;
+		final List<Callable<List<R>>> chunkTasks = new ArrayList<>(chunkCount);
+		for (int chunkStart = 0; chunkStart < items.size(); chunkStart += chunkSize)
 		{
-			if (policyURL == null)
+			final List<T> chunk = items.subList(chunkStart, Math.min(chunkStart + chunkSize, items.size()));
+			chunkTasks.add(() -> {
+				final Function<? super T, ? extends R> function = functionFactory.get();
+				final List<R> chunkResults = new ArrayList<>(chunk.size());
+				for (final T item : chunk)
+				{
+					chunkResults.add(function.apply(item));
+				}
+
+				return chunkResults;
+			});
+		}
+
+		final List<R> results = new ArrayList<>(items.size());
+		for (final Future<List<R>> chunkResultsFuture : pool.invokeAll(chunkTasks))
+		{
+			try
 			{
-				throw new IllegalArgumentException("policyURL #" + policyUrlIndex + " undefined");
+				results.addAll(chunkResultsFuture.get());
+			}
+			catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while loading policies", e);
+			}
+			catch (final ExecutionException e)
+			{
+				final Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException)
+				{
+					throw (RuntimeException) cause;
+				}
+
+				if (cause instanceof Error)
+				{
+					throw (Error) cause;
+				}
+
+				throw new RuntimeException("Error loading policies", cause);
+			}
+		}
+
+		return results;
+	}
+
+	/*
+	 * Adds the PolicySetIdReferences in a PolicySet, including the ones in nested PolicySets, to refs
+	 */
+	private static void collectPolicySetIdReferences(final PolicySet policySet, final Collection<IdReferenceType> refs)
+	{
+		for (final Serializable policySetChild : policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences())
+		{
+			if (policySetChild instanceof PolicySet)
+			{
+				collectPolicySetIdReferences((PolicySet) policySetChild, refs);
+			}
+			else if (policySetChild instanceof JAXBElement)
+			{
+				final JAXBElement<?> jaxbElement = (JAXBElement<?>) policySetChild;
+				if (jaxbElement.getName().getLocalPart().equals(XacmlNodeName.POLICYSET_ID_REFERENCE.value()))
+				{
+					refs.add((IdReferenceType) jaxbElement.getValue());
+				}
 			}
+		}
+	}
+
+	/**
+	 * Adds the type, ID and version of a Policy or PolicySet, and of the Policies and PolicySets nested in it (not the referenced ones), to a given collection
+	 *
+	 * @param jaxbPolicy
+	 *            JAXB Policy or PolicySet
+	 * @param policyMetadata
+	 *            collection of Policy(Set) type/ID/version where the results are added
+	 */
+	static void collectPolicyMetadata(final Object jaxbPolicy, final Collection<PrimaryPolicyMetadata> policyMetadata)
+	{
+		if (jaxbPolicy instanceof Policy)
+		{
+			final Policy policy = (Policy) jaxbPolicy;
+			policyMetadata.add(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, policy.getPolicyId(), new PolicyVersion(policy.getVersion())));
+		}
+		else if (jaxbPolicy instanceof PolicySet)
+		{
+			final PolicySet policySet = (PolicySet) jaxbPolicy;
+			policyMetadata.add(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY_SET, policySet.getPolicySetId(), new PolicyVersion(policySet.getVersion())));
+			for (final Serializable policySetChild : policySet.getPolicySetsAndPoliciesAndPolicySetIdReferences())
+			{
+				collectPolicyMetadata(policySetChild, policyMetadata);
+			}
+		}
+	}
+
+	/*
+	 * Gets the PolicySetIdReference depth of a PolicySet, i.e. the length of the longest chain of PolicySetIdReferences starting from it (0 if it does not refer to any PolicySet), computing it
+	 * recursively (and the depths of the PolicySets it refers to) if not in refDepths already. The result is -1 if a circular reference is found; the actual error is reported when instantiating the
+	 * PolicySet. References that cannot be resolved are ignored here for the same reason.
+	 */
+	private static int getPolicySetRefDepth(final String policySetId, final PolicyVersion policySetVersion, final PolicySet jaxbPolicySet,
+	        final PolicyMap<PolicyWithNamespaces<PolicySet>> jaxbPolicySetMap, final Table<String, PolicyVersion, Integer> refDepths)
+	{
+		final Integer knownRefDepth = refDepths.get(policySetId, policySetVersion);
+		if (knownRefDepth != null)
+		{
+			/*
+			 * -1 for a PolicySet being visited means a circular reference
+			 */
+			return knownRefDepth;
+		}
 
-			final Object jaxbPolicyOrPolicySetObj;
+		// mark as being visited
+		refDepths.put(policySetId, policySetVersion, -1);
+		final List<IdReferenceType> policySetRefs = new ArrayList<>();
+		collectPolicySetIdReferences(jaxbPolicySet, policySetRefs);
+		int refDepth = 0;
+		for (final IdReferenceType policySetRef : policySetRefs)
+		{
+			final Entry<PolicyVersion, PolicyWithNamespaces<PolicySet>> refPolicySetEntry;
 			try
 			{
-				jaxbPolicyOrPolicySetObj = xacmlParser.parse(policyURL);
+				refPolicySetEntry = jaxbPolicySetMap.get(policySetRef.getValue(),
+				        Optional.of(new PolicyVersionPatterns(policySetRef.getVersion(), policySetRef.getEarliestVersion(), policySetRef.getLatestVersion())));
 			}
-			catch (final JAXBException e)
+			catch (final IllegalArgumentException e)
+			{
+				// invalid version pattern
+				continue;
+			}
+
+			if (refPolicySetEntry == null)
+			{
+				continue;
+			}
+
+			final int refPolicySetRefDepth = getPolicySetRefDepth(policySetRef.getValue(), refPolicySetEntry.getKey(), refPolicySetEntry.getValue().policy, jaxbPolicySetMap, refDepths);
+			if (refPolicySetRefDepth < 0)
+			{
+				// circular reference
+				return -1;
+			}
+
+			refDepth = Math.max(refDepth, refPolicySetRefDepth + 1);
+		}
+
+		refDepths.put(policySetId, policySetVersion, refDepth);
+		return refDepth;
+	}
+
+	/*
+	 * Instantiates the PolicySets by increasing order of PolicySetIdReference depth, the PolicySets of the same depth concurrently, so that the PolicySets referenced by the ones being instantiated are
+	 * always instantiated already. PolicySets involved in circular references are skipped (to be reported as invalid when instantiated sequentially).
+	 */
+	private static void instantiatePolicySetsByRefDepth(final PolicyMap<PolicyWithNamespaces<PolicySet>> jaxbPolicySetMap,
+	        final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> policySetEvaluatorTable, final StaticRefPolicyProvider refPolicyProvider, final ExpressionFactory expressionFactory,
+	        final CombiningAlgRegistry combiningAlgRegistry, final ForkJoinPool loadingPool) throws IllegalArgumentException
+	{
+		final Table<String, PolicyVersion, Integer> refDepths = HashBasedTable.create();
+		final SortedMap<Integer, List<Cell<String, PolicyVersion, PolicyWithNamespaces<PolicySet>>>> jaxbPolicySetsByRefDepth = new TreeMap<>();
+		for (final Entry<String, PolicyVersions<PolicyWithNamespaces<PolicySet>>> jaxbPolicySetVersions : jaxbPolicySetMap.entrySet())
+		{
+			final String policySetId = jaxbPolicySetVersions.getKey();
+			for (final Entry<PolicyVersion, PolicyWithNamespaces<PolicySet>> jaxbPolicySetEntry : jaxbPolicySetVersions.getValue())
+			{
+				final PolicyVersion policySetVersion = jaxbPolicySetEntry.getKey();
+				final int refDepth = getPolicySetRefDepth(policySetId, policySetVersion, jaxbPolicySetEntry.getValue().policy, jaxbPolicySetMap, refDepths);
+				if (refDepth >= 0 && !policySetEvaluatorTable.contains(policySetId, policySetVersion))
+				{
+					jaxbPolicySetsByRefDepth.computeIfAbsent(refDepth, k -> new ArrayList<>()).add(Tables.immutableCell(policySetId, policySetVersion, jaxbPolicySetEntry.getValue()));
+				}
+			}
+		}
+
+		for (final List<Cell<String, PolicyVersion, PolicyWithNamespaces<PolicySet>>> jaxbPolicySets : jaxbPolicySetsByRefDepth.values())
+		{
+			final List<StaticTopLevelPolicyElementEvaluator> policySetEvaluators = mapConcurrently(jaxbPolicySets, () -> jaxbPolicySetCell -> {
+				final PolicyWithNamespaces<PolicySet> jaxbPolicySetWithNs = jaxbPolicySetCell.getValue();
+				try
+				{
+					return PolicyEvaluators.getInstanceStatic(jaxbPolicySetWithNs.policy, null, jaxbPolicySetWithNs.nsPrefixUriMap, expressionFactory, combiningAlgRegistry, refPolicyProvider, null);
+				}
+				catch (final IllegalArgumentException e)
+				{
+					throw new IllegalArgumentException("Invalid PolicySet with PolicySetId='" + jaxbPolicySetCell.getRowKey() + "', Version=" + jaxbPolicySetCell.getColumnKey(), e);
+				}
+			}, loadingPool);
+
+			synchronized (policySetEvaluatorTable)
+			{
+				for (int i = 0; i < jaxbPolicySets.size(); i++)
+				{
+					final Cell<String, PolicyVersion, PolicyWithNamespaces<PolicySet>> jaxbPolicySetCell = jaxbPolicySets.get(i);
+					policySetEvaluatorTable.put(jaxbPolicySetCell.getRowKey(), jaxbPolicySetCell.getColumnKey(), policySetEvaluators.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a XACML Policy(Set) document
+	 * 
+	 * @param xacmlParser
+	 *            XACML parser
+	 * @param policyURL
+	 *            location of the Policy(Set) document
+	 * @return the Policy or PolicySet with the namespace prefix-URI mappings of the document
+	 * @throws IllegalArgumentException
+	 *             if the document is not a valid XACML Policy(Set) document
+	 */
+	static PolicyWithNamespaces<?> parsePolicyDocument(final XmlnsFilteringParser xacmlParser, final URL policyURL) throws IllegalArgumentException
+	{
+		assert xacmlParser != null && policyURL != null;
+		final Object jaxbPolicyOrPolicySetObj;
+		try
+		{
+			jaxbPolicyOrPolicySetObj = xacmlParser.parse(policyURL);
+		}
+		catch (final JAXBException e)
+		{
+			throw new IllegalArgumentException("Failed to unmarshall Policy(Set) XML document from policy location: " + policyURL, e);
+		}
+
+		if (!(jaxbPolicyOrPolicySetObj instanceof Policy) && !(jaxbPolicyOrPolicySetObj instanceof PolicySet))
+		{
+			throw new IllegalArgumentException("Unexpected element found as root of the policy document: " + jaxbPolicyOrPolicySetObj.getClass().getSimpleName());
+		}
+
+		return new PolicyWithNamespaces<>(jaxbPolicyOrPolicySetObj, xacmlParser.getNamespacePrefixUriMap());
+	}
+
+	/**
+	 * Gets the PolicyId or PolicySetId of a policy document
+	 * 
+	 * @param policyDocument
+	 *            policy document parsed with {@link #parsePolicyDocument(XmlnsFilteringParser, URL)}
+	 * @return Policy(Set)Id
+	 */
+	static String getPolicyId(final PolicyWithNamespaces<?> policyDocument)
+	{
+		assert policyDocument != null;
+		return policyDocument.policy instanceof Policy ? ((Policy) policyDocument.policy).getPolicyId() : ((PolicySet) policyDocument.policy).getPolicySetId();
+	}
+
+	/*
+	 * Evaluators in evaluatorMap that are not affected by changes to policies with IDs in changedPolicyIds, i.e. the ID of the evaluated Policy(Set) is not in changedPolicyIds, and none of the
+	 * policies it refers to (directly or indirectly) either.
+	 */
+	private static Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> getUnchangedEvaluators(final PolicyMap<StaticTopLevelPolicyElementEvaluator> evaluatorMap,
+	        final Set<String> changedPolicyIds)
+	{
+		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> unchangedEvaluators = HashBasedTable.create();
+		for (final Entry<String, PolicyVersions<StaticTopLevelPolicyElementEvaluator>> evaluatorVersions : evaluatorMap.entrySet())
+		{
+			final String policyId = evaluatorVersions.getKey();
+			if (changedPolicyIds.contains(policyId))
 			{
-				throw new IllegalArgumentException("Failed to unmarshall Policy(Set) XML document from policy location: " + policyURL, e);
+				continue;
 			}
 
-			final Map<String, String> nsPrefixUriMap = xacmlParser.getNamespacePrefixUriMap();
-			if (jaxbPolicyOrPolicySetObj instanceof Policy)
+			for (final Entry<PolicyVersion, StaticTopLevelPolicyElementEvaluator> evaluatorEntry : evaluatorVersions.getValue())
 			{
-				final Policy jaxbPolicy = (Policy) jaxbPolicyOrPolicySetObj;
+				final StaticTopLevelPolicyElementEvaluator evaluator = evaluatorEntry.getValue();
+				final Optional<PolicyRefsMetadata> policyRefsMetadata = evaluator.getPolicyRefsMetadata();
+				if (policyRefsMetadata.isPresent() && policyRefsMetadata.get().getRefPolicies().stream().anyMatch(refPolicy -> changedPolicyIds.contains(refPolicy.getId())))
+				{
+					continue;
+				}
+
+				unchangedEvaluators.put(policyId, evaluatorEntry.getKey(), evaluator);
+			}
+		}
+
+		return unchangedEvaluators;
+	}
+
+	/*
+	 * previousInstance: (optional) instance from which Policy(Set) evaluators may be reused, for the policies not affected by changes to policies with IDs in changedPolicyIds
+	 * 
+	 * loadingPool: (optional) thread pool for instantiating Policy(Set)s concurrently, null if they must be instantiated sequentially by the current thread
+	 */
+	private static CoreRefPolicyProvider newInstance(final Iterable<PolicyWithNamespaces<?>> policyDocuments, final boolean ignoreOldPolicyVersions, final int maxPolicySetRefDepth,
+	        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final CoreRefPolicyProvider previousInstance, final Set<String> changedPolicyIds,
+	        final ForkJoinPool loadingPool) throws IllegalArgumentException
+	{
+		final Table<String, PolicyVersion, PolicyWithNamespaces<Policy>> updatableJaxbPolicyTable = HashBasedTable.create();
+		final Table<String, PolicyVersion, PolicyWithNamespaces<PolicySet>> updatablePolicySetTable = HashBasedTable.create();
+		for (final PolicyWithNamespaces<?> policyDocument : policyDocuments)
+		{
+			final Map<String, String> nsPrefixUriMap = policyDocument.nsPrefixUriMap;
+			if (policyDocument.policy instanceof Policy)
+			{
+				final Policy jaxbPolicy = (Policy) policyDocument.policy;
 				final String policyId = jaxbPolicy.getPolicyId();
 				final String policyVersionStr = jaxbPolicy.getVersion();
 				final PolicyVersion policyVersion = new PolicyVersion(policyVersionStr);
 
 				if (ignoreOldPolicyVersions)
 				{
-					final Map<PolicyVersion, StaticTopLevelPolicyElementEvaluator> policyVersions = updatablePolicyTable.row(policyId);
+					final Map<PolicyVersion, PolicyWithNamespaces<Policy>> policyVersions = updatableJaxbPolicyTable.row(policyId);
 					if (policyVersions != null)
 					{
 						final boolean isOld = policyVersions.keySet().parallelStream().anyMatch(v -> policyVersion.compareTo(v) <= 0);
@@ -612,26 +1118,16 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 					}
 				}
 
-				final StaticTopLevelPolicyElementEvaluator policyEvaluator;
-				try
-				{
-					policyEvaluator = PolicyEvaluators.getInstance(jaxbPolicy, null, nsPrefixUriMap, expressionFactory, combiningAlgRegistry);
-				}
-				catch (final IllegalArgumentException e)
-				{
-					throw new IllegalArgumentException("Invalid Policy with PolicyId=" + policyId + ", Version=" + policyVersionStr, e);
-				}
-
-				final StaticTopLevelPolicyElementEvaluator previousValue = updatablePolicyTable.put(policyId, policyVersion, policyEvaluator);
+				final PolicyWithNamespaces<Policy> previousValue = updatableJaxbPolicyTable.put(policyId, policyVersion, new PolicyWithNamespaces<>(jaxbPolicy, nsPrefixUriMap));
 				if (previousValue != null)
 				{
 					throw new IllegalArgumentException("Policy conflict: two policies with same PolicyId=" + policyId + ", Version=" + policyVersionStr);
 				}
 
 			}
-			else if (jaxbPolicyOrPolicySetObj instanceof PolicySet)
+			else
 			{
-				final PolicySet jaxbPolicySet = (PolicySet) jaxbPolicyOrPolicySetObj;
+				final PolicySet jaxbPolicySet = (PolicySet) policyDocument.policy;
 				final String policyId = jaxbPolicySet.getPolicySetId();
 				final String policyVersionStr = jaxbPolicySet.getVersion();
 				final PolicyVersion policyVersion = new PolicyVersion(policyVersionStr);
@@ -665,17 +1161,128 @@ public class CoreRefPolicyProvider extends BaseStaticRefPolicyProvider
 				 * PolicySets cannot be parsed before we have collected them all, because each PolicySet may refer to others via PolicySetIdReferences
 				 */
 			}
-			else
+		}
+
+		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> reusablePolicyEvaluators;
+		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> reusablePolicySetEvaluators;
+		if (previousInstance == null)
+		{
+			reusablePolicyEvaluators = null;
+			reusablePolicySetEvaluators = null;
+		}
+		else
+		{
+			reusablePolicyEvaluators = getUnchangedEvaluators(previousInstance.policyEvaluatorMap, changedPolicyIds);
+			reusablePolicySetEvaluators = getUnchangedEvaluators(previousInstance.policySetEvaluatorMap, changedPolicyIds);
+			reusablePolicySetEvaluators.cellSet().removeIf(cell -> !updatablePolicySetTable.contains(cell.getRowKey(), cell.getColumnKey()));
+		}
+
+		final Function<Cell<String, PolicyVersion, PolicyWithNamespaces<Policy>>, StaticTopLevelPolicyElementEvaluator> policyEvaluatorFactory = jaxbPolicyCell -> {
+			final String policyId = jaxbPolicyCell.getRowKey();
+			final PolicyVersion policyVersion = jaxbPolicyCell.getColumnKey();
+			final StaticTopLevelPolicyElementEvaluator reusablePolicyEvaluator = reusablePolicyEvaluators == null ? null : reusablePolicyEvaluators.get(policyId, policyVersion);
+			if (reusablePolicyEvaluator != null)
 			{
-				throw new IllegalArgumentException("Unexpected element found as root of the policy document: " + jaxbPolicyOrPolicySetObj.getClass().getSimpleName());
+				return reusablePolicyEvaluator;
 			}
 
-			policyUrlIndex++;
+			final PolicyWithNamespaces<Policy> jaxbPolicyWithNs = jaxbPolicyCell.getValue();
+			try
+			{
+				return PolicyEvaluators.getInstance(jaxbPolicyWithNs.policy, null, jaxbPolicyWithNs.nsPrefixUriMap, expressionFactory, combiningAlgRegistry);
+			}
+			catch (final IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Invalid Policy with PolicyId=" + policyId + ", Version=" + policyVersion, e);
+			}
+		};
+
+		final List<Cell<String, PolicyVersion, PolicyWithNamespaces<Policy>>> jaxbPolicyCells = new ArrayList<>(updatableJaxbPolicyTable.cellSet());
+		final List<StaticTopLevelPolicyElementEvaluator> policyEvaluators;
+		if (loadingPool == null)
+		{
+			policyEvaluators = new ArrayList<>(jaxbPolicyCells.size());
+			for (final Cell<String, PolicyVersion, PolicyWithNamespaces<Policy>> jaxbPolicyCell : jaxbPolicyCells)
+			{
+				policyEvaluators.add(policyEvaluatorFactory.apply(jaxbPolicyCell));
+			}
+		}
+		else
+		{
+			policyEvaluators = mapConcurrently(jaxbPolicyCells, () -> policyEvaluatorFactory, loadingPool);
+		}
+
+		final Table<String, PolicyVersion, StaticTopLevelPolicyElementEvaluator> updatablePolicyTable = HashBasedTable.create();
+		for (int i = 0; i < jaxbPolicyCells.size(); i++)
+		{
+			final Cell<String, PolicyVersion, PolicyWithNamespaces<Policy>> jaxbPolicyCell = jaxbPolicyCells.get(i);
+			updatablePolicyTable.put(jaxbPolicyCell.getRowKey(), jaxbPolicyCell.getColumnKey(), policyEvaluators.get(i));
 		}
 
 		final PolicyMap<StaticTopLevelPolicyElementEvaluator> policyMap = new PolicyMap<>(updatablePolicyTable.rowMap());
 		final PolicyMap<PolicyWithNamespaces<PolicySet>> policySetMap = new PolicyMap<>(updatablePolicySetTable.rowMap());
-		return new CoreRefPolicyProvider(policyMap, policySetMap, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry);
+		return new CoreRefPolicyProvider(policyMap, policySetMap, reusablePolicySetEvaluators, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, loadingPool);
+	}
+
+	/**
+	 * Creates an instance from policy documents already parsed
+	 * 
+	 * @param policyDocuments
+	 *            policy documents parsed with {@link #parsePolicyDocument(XmlnsFilteringParser, URL)}
+	 * @param ignoreOldPolicyVersions
+	 *            for any given policy ID, ignore all versions except the last one if there are multiple versions of the policy
+	 * @param maxPolicySetRefDepth
+	 *            maximum allowed depth of PolicySet reference chain (via PolicySetIdReference): PolicySet1 -> PolicySet2 -> ...; a strictly negative value means no limit
+	 * @param expressionFactory
+	 *            Expression factory for parsing Expressions used in the policy(set)
+	 * @param combiningAlgRegistry
+	 *            Combining algorithm registry for getting implementations of algorithms used in the policy(set)
+	 * @return instance of this class
+	 * @throws IllegalArgumentException
+	 *             if one of the policy documents is not valid or conflicts with another because it has same Policy(Set)Id and Version
+	 */
+	static CoreRefPolicyProvider getInstance(final Iterable<PolicyWithNamespaces<?>> policyDocuments, final boolean ignoreOldPolicyVersions, final int maxPolicySetRefDepth,
+	        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
+	{
+		if (policyDocuments == null)
+		{
+			throw NO_POLICY_ARG_EXCEPTION;
+		}
+
+		if (expressionFactory == null)
+		{
+			throw ILLEGAL_EXPRESSION_FACTORY_ARGUMENT_EXCEPTION;
+		}
+
+		if (combiningAlgRegistry == null)
+		{
+			throw ILLEGAL_COMBINING_ALG_REGISTRY_ARGUMENT_EXCEPTION;
+		}
+
+		return newInstance(policyDocuments, ignoreOldPolicyVersions, maxPolicySetRefDepth, expressionFactory, combiningAlgRegistry, null, Collections.<String>emptySet(), null);
+	}
+
+	/**
+	 * Creates a new instance from the current (possibly modified) policy documents, reusing the Policy(Set) evaluators of this instance for the policies that are not affected by the changes, i.e.
+	 * with ID not in {@code changedPolicyIds}, and not referring to any policy with ID in {@code changedPolicyIds}. Only the other Policy(Set)s are re-instantiated.
+	 * 
+	 * @param policyDocuments
+	 *            all current policy documents (parsed with {@link #parsePolicyDocument(XmlnsFilteringParser, URL)}), changed or not
+	 * @param ignoreOldPolicyVersions
+	 *            for any given policy ID, ignore all versions except the last one if there are multiple versions of the policy
+	 * @param changedPolicyIds
+	 *            IDs of the Policy(Set)s added, modified or removed since this instance was created
+	 * @param expressionFactory
+	 *            Expression factory for parsing the re-instantiated Policy(Set)s, used by the new instance instead of this instance's
+	 * @return new instance
+	 * @throws IllegalArgumentException
+	 *             if one of the policy documents is not valid or conflicts with another because it has same Policy(Set)Id and Version
+	 */
+	CoreRefPolicyProvider update(final Iterable<PolicyWithNamespaces<?>> policyDocuments, final boolean ignoreOldPolicyVersions, final Set<String> changedPolicyIds,
+	        final ExpressionFactory expressionFactory) throws IllegalArgumentException
+	{
+		assert policyDocuments != null && changedPolicyIds != null && expressionFactory != null;
+		return newInstance(policyDocuments, ignoreOldPolicyVersions, this.maxPolicySetRefDepth, expressionFactory, this.combiningAlgRegistry, this, changedPolicyIds, null);
 	}
 
 	@Override
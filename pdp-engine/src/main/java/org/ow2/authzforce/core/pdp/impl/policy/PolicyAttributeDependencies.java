@@ -0,0 +1,307 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.policy;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpressions;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AllOf;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AnyOf;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeAssignmentExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Condition;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Match;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObligationExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObligationExpressions;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Policy;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Rule;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Target;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.VariableDefinition;
+
+/**
+ * Attributes that may be needed to evaluate a given Policy(Set), as determined by static analysis of the policy when it is loaded: attributes used in AttributeDesignators in Targets, Conditions,
+ * VariableDefinitions and Obligation/Advice expressions, including the ones of the enclosed and statically referenced policies.
+ * <p>
+ * Besides the whole set of attributes, this gives the attributes that may be needed for each top-level branch of the policy, i.e. each child Rule of a Policy, or each child Policy, PolicySet or
+ * Policy(Set)IdReference of a PolicySet: the attributes used by the child element (and its descendants) plus the ones used by the policy itself (Target, VariableDefinitions, Obligation/Advice
+ * expressions), i.e. the attributes that may be needed if the evaluation goes through this branch. Attribute providers may use them to fetch all these attributes in one go before they are needed (see
+ * {@link org.ow2.authzforce.core.pdp.impl.BulkNamedAttributeProvider}), and PEPs to send them proactively in the requests.
+ * <p>
+ * AttributeSelectors are ignored, since they select content (XML) instead of named attributes. Policy(Set)IdReferences resolved dynamically (at evaluation time) cannot be analysed; in this case,
+ * {@link #isComplete()} returns false.
+ */
+public final class PolicyAttributeDependencies
+{
+	private static void addAttribute(final AttributeDesignatorType attributeDesignator, final Set<AttributeFqn> attributes)
+	{
+		if (attributeDesignator != null)
+		{
+			attributes.add(AttributeFqns.newInstance(attributeDesignator));
+		}
+	}
+
+	private static void addAttributes(final ExpressionType expression, final Set<AttributeFqn> attributes)
+	{
+		if (expression instanceof AttributeDesignatorType)
+		{
+			addAttribute((AttributeDesignatorType) expression, attributes);
+		}
+		else if (expression instanceof ApplyType)
+		{
+			for (final JAXBElement<? extends ExpressionType> argExpression : ((ApplyType) expression).getExpressions())
+			{
+				addAttributes(argExpression.getValue(), attributes);
+			}
+		}
+		/*
+		 * Other expressions do not use any named attribute directly: AttributeValue, Function, AttributeSelector, VariableReference (VariableDefinitions analysed separately)
+		 */
+	}
+
+	private static void addAttributes(final Target target, final Set<AttributeFqn> attributes)
+	{
+		if (target == null)
+		{
+			return;
+		}
+
+		for (final AnyOf anyOf : target.getAnyOves())
+		{
+			for (final AllOf allOf : anyOf.getAllOves())
+			{
+				for (final Match match : allOf.getMatches())
+				{
+					addAttribute(match.getAttributeDesignator(), attributes);
+				}
+			}
+		}
+	}
+
+	private static void addAttributes(final List<AttributeAssignmentExpression> attributeAssignmentExpressions, final Set<AttributeFqn> attributes)
+	{
+		for (final AttributeAssignmentExpression attributeAssignmentExpression : attributeAssignmentExpressions)
+		{
+			final JAXBElement<? extends ExpressionType> expression = attributeAssignmentExpression.getExpression();
+			if (expression != null)
+			{
+				addAttributes(expression.getValue(), attributes);
+			}
+		}
+	}
+
+	/**
+	 * Adds the attributes used in Target and Obligation/Advice expressions of a policy element (Policy(Set) or Rule)
+	 */
+	static void addAttributes(final Target target, final List<ObligationExpression> obligationExps, final List<AdviceExpression> adviceExps, final Set<AttributeFqn> attributes)
+	{
+		addAttributes(target, attributes);
+		if (obligationExps != null)
+		{
+			for (final ObligationExpression obligationExp : obligationExps)
+			{
+				addAttributes(obligationExp.getAttributeAssignmentExpressions(), attributes);
+			}
+		}
+
+		if (adviceExps != null)
+		{
+			for (final AdviceExpression adviceExp : adviceExps)
+			{
+				addAttributes(adviceExp.getAttributeAssignmentExpressions(), attributes);
+			}
+		}
+	}
+
+	private static List<ObligationExpression> getObligationExpressions(final ObligationExpressions obligationExps)
+	{
+		return obligationExps == null ? null : obligationExps.getObligationExpressions();
+	}
+
+	private static List<AdviceExpression> getAdviceExpressions(final AdviceExpressions adviceExps)
+	{
+		return adviceExps == null ? null : adviceExps.getAdviceExpressions();
+	}
+
+	/**
+	 * Analyses a XACML Policy
+	 * 
+	 * @param policyElement
+	 *            XACML Policy
+	 * @return attributes that may be needed to evaluate {@code policyElement}, with one top-level branch per Rule (identified by RuleId)
+	 */
+	static PolicyAttributeDependencies getInstance(final Policy policyElement)
+	{
+		assert policyElement != null;
+
+		/*
+		 * All VariableDefinitions of the Policy are evaluated whenever the Policy is (see BaseTopLevelPolicyElementEvaluator), therefore policy-wide like the Target
+		 */
+		final Set<AttributeFqn> policyWideAttributes = HashCollections.newUpdatableSet();
+		addAttributes(policyElement.getTarget(), getObligationExpressions(policyElement.getObligationExpressions()), getAdviceExpressions(policyElement.getAdviceExpressions()),
+		        policyWideAttributes);
+		final Map<String, Set<AttributeFqn>> ruleAttributesByRuleId = new LinkedHashMap<>();
+		for (final Serializable policyChildElt : policyElement.getCombinerParametersAndRuleCombinerParametersAndVariableDefinitions())
+		{
+			if (policyChildElt instanceof VariableDefinition)
+			{
+				final JAXBElement<? extends ExpressionType> varExpression = ((VariableDefinition) policyChildElt).getExpression();
+				if (varExpression != null)
+				{
+					addAttributes(varExpression.getValue(), policyWideAttributes);
+				}
+			}
+			else if (policyChildElt instanceof Rule)
+			{
+				final Rule rule = (Rule) policyChildElt;
+				final Set<AttributeFqn> ruleAttributes = HashCollections.newUpdatableSet();
+				addAttributes(rule.getTarget(), getObligationExpressions(rule.getObligationExpressions()), getAdviceExpressions(rule.getAdviceExpressions()), ruleAttributes);
+				final Condition condition = rule.getCondition();
+				if (condition != null && condition.getExpression() != null)
+				{
+					addAttributes(condition.getExpression().getValue(), ruleAttributes);
+				}
+
+				ruleAttributesByRuleId.put(rule.getRuleId(), ruleAttributes);
+			}
+		}
+
+		return new PolicyAttributeDependencies(policyWideAttributes, ruleAttributesByRuleId, true);
+	}
+
+	/**
+	 * Analyses a PolicySet from its already analysed children
+	 * 
+	 * @param policySetWideAttributes
+	 *            attributes used by the PolicySet itself (Target, Obligation/Advice expressions)
+	 * @param childDependenciesByChildId
+	 *            attribute dependencies of each child Policy(Set) or Policy(Set)IdReference, by child identifier (in order of declaration); a null value means unknown (e.g. dynamic
+	 *            Policy(Set)IdReference)
+	 * @return attributes that may be needed to evaluate the PolicySet
+	 */
+	static PolicyAttributeDependencies getInstance(final Set<AttributeFqn> policySetWideAttributes, final Map<String, PolicyAttributeDependencies> childDependenciesByChildId)
+	{
+		assert policySetWideAttributes != null && childDependenciesByChildId != null;
+
+		boolean isComplete = true;
+		final Map<String, Set<AttributeFqn>> childAttributesByChildId = new LinkedHashMap<>();
+		for (final Entry<String, PolicyAttributeDependencies> childDependencies : childDependenciesByChildId.entrySet())
+		{
+			final PolicyAttributeDependencies childDeps = childDependencies.getValue();
+			if (childDeps == null)
+			{
+				isComplete = false;
+				childAttributesByChildId.put(childDependencies.getKey(), Collections.emptySet());
+			}
+			else
+			{
+				isComplete = isComplete && childDeps.isComplete;
+				childAttributesByChildId.put(childDependencies.getKey(), childDeps.attributes);
+			}
+		}
+
+		return new PolicyAttributeDependencies(policySetWideAttributes, childAttributesByChildId, isComplete);
+	}
+
+	private final ImmutableSet<AttributeFqn> attributes;
+	private final ImmutableSet<AttributeFqn> policyWideAttributes;
+	private final ImmutableMap<String, ImmutableSet<AttributeFqn>> attributesByTopLevelBranch;
+	private final boolean isComplete;
+
+	private PolicyAttributeDependencies(final Set<AttributeFqn> policyWideAttributes, final Map<String, Set<AttributeFqn>> childAttributesByChildId, final boolean isComplete)
+	{
+		final ImmutableSet.Builder<AttributeFqn> allAttributesBuilder = ImmutableSet.<AttributeFqn>builder().addAll(policyWideAttributes);
+		final ImmutableMap.Builder<String, ImmutableSet<AttributeFqn>> attributesByBranchBuilder = ImmutableMap.builder();
+		for (final Entry<String, Set<AttributeFqn>> childAttributes : childAttributesByChildId.entrySet())
+		{
+			allAttributesBuilder.addAll(childAttributes.getValue());
+			attributesByBranchBuilder.put(childAttributes.getKey(), ImmutableSet.<AttributeFqn>builder().addAll(policyWideAttributes).addAll(childAttributes.getValue()).build());
+		}
+
+		this.attributes = allAttributesBuilder.build();
+		this.policyWideAttributes = ImmutableSet.copyOf(policyWideAttributes);
+		this.attributesByTopLevelBranch = attributesByBranchBuilder.build();
+		this.isComplete = isComplete;
+	}
+
+	/**
+	 * Get all the attributes that may be needed to evaluate the policy
+	 * 
+	 * @return attributes (immutable)
+	 */
+	public Set<AttributeFqn> getAttributes()
+	{
+		return attributes;
+	}
+
+	/**
+	 * Get the attributes used by the policy itself, i.e. needed whatever the top-level branch(es) evaluated: the attributes of the policy's Target, VariableDefinitions (Policy) and Obligation/Advice
+	 * expressions
+	 * 
+	 * @return policy-wide attributes (immutable), included in each set of {@link #getAttributesByTopLevelBranch()}
+	 */
+	public Set<AttributeFqn> getPolicyWideAttributes()
+	{
+		return policyWideAttributes;
+	}
+
+	/**
+	 * Get the attributes that may be needed for each top-level branch of the policy, i.e. each child Rule (identified by RuleId) of a Policy, or each child Policy/PolicySet/Policy(Set)IdReference
+	 * (identified like in logs, e.g. {@code Policy[ID#vVERSION]}) of a PolicySet, in order of declaration.
+	 * 
+	 * @return attributes by top-level branch (immutable)
+	 */
+	public Map<String, Set<AttributeFqn>> getAttributesByTopLevelBranch()
+	{
+		return Collections.unmodifiableMap(attributesByTopLevelBranch);
+	}
+
+	/**
+	 * Whether the analysis covers the whole policy tree
+	 * 
+	 * @return false iff the policy encloses (directly or indirectly) Policy(Set)IdReferences that are resolved dynamically (at evaluation time), in which case the attributes needed by the
+	 *         referenced policies are unknown
+	 */
+	public boolean isComplete()
+	{
+		return isComplete;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "{attributes=" + attributes + ", complete=" + isComplete + "}";
+	}
+}
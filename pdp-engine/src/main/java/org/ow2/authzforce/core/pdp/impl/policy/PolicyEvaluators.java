@@ -21,6 +21,7 @@ import java.io.Serializable;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedHashMap;
@@ -35,6 +36,7 @@ import java.util.stream.StreamSupport;
 
 import javax.xml.bind.JAXBElement;
 
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
 import org.ow2.authzforce.core.pdp.api.Decidable;
 import org.ow2.authzforce.core.pdp.api.DecisionResult;
 import org.ow2.authzforce.core.pdp.api.DecisionResults;
@@ -66,8 +68,14 @@ import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementEvaluator;
 import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
 import org.ow2.authzforce.core.pdp.api.value.Value;
 import org.ow2.authzforce.core.pdp.impl.BooleanEvaluator;
+import org.ow2.authzforce.core.pdp.impl.EvaluationContextSlots;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContext;
 import org.ow2.authzforce.core.pdp.impl.PepActionExpression;
 import org.ow2.authzforce.core.pdp.impl.TargetEvaluators;
+import org.ow2.authzforce.core.pdp.impl.TargetIndex;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetrics;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
 import org.ow2.authzforce.core.pdp.impl.rule.RuleEvaluator;
 import org.ow2.authzforce.xacml.identifiers.XacmlNodeName;
 import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
@@ -76,6 +84,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
 import net.sf.saxon.s9api.XPathCompiler;
@@ -314,6 +323,269 @@ public final class PolicyEvaluators
 
 	}
 
+	/**
+	 * Get the registry of policy/rule evaluation metrics, if enabled
+	 * 
+	 * @param expressionFactory
+	 *            Expression factory/parser used to create the policy elements
+	 * @return evaluation metrics registry, or null if evaluation metrics are disabled (or {@code expressionFactory} does not support them)
+	 */
+	private static EvaluationContextSlots getEvaluationContextSlots(final ExpressionFactory expressionFactory)
+	{
+		return expressionFactory instanceof DepthLimitingExpressionFactory ? ((DepthLimitingExpressionFactory) expressionFactory).getEvaluationContextSlots() : null;
+	}
+
+	private static EvaluationMetricsRegistry getEvaluationMetricsRegistry(final ExpressionFactory expressionFactory)
+	{
+		return expressionFactory instanceof DepthLimitingExpressionFactory ? ((DepthLimitingExpressionFactory) expressionFactory).getEvaluationMetricsRegistry().orElse(null) : null;
+	}
+
+	/**
+	 * Get the Target evaluator of a policy element, if known
+	 * 
+	 * @param policyElement
+	 *            policy element (Policy, PolicySet or reference to a statically defined one)
+	 * @return Target evaluator, or null if unknown (e.g. dynamic policy reference)
+	 */
+	private static BooleanEvaluator getTargetEvaluator(final Object policyElement)
+	{
+		if (policyElement instanceof BaseTopLevelPolicyElementEvaluator)
+		{
+			return ((BaseTopLevelPolicyElementEvaluator<?>) policyElement).targetEvaluator;
+		}
+
+		if (policyElement instanceof StaticPolicyRefEvaluator)
+		{
+			return getTargetEvaluator(((StaticPolicyRefEvaluator) policyElement).referredPolicy);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the attributes that may be needed to evaluate a given policy, as determined by static analysis when the policy was loaded
+	 * 
+	 * @param policyEvaluator
+	 *            policy evaluator
+	 * @return attribute dependencies of {@code policyEvaluator}; empty if unknown, i.e. {@code policyEvaluator} was not created by this class, or is a Policy(Set)IdReference resolved dynamically
+	 */
+	public static Optional<PolicyAttributeDependencies> getAttributeDependencies(final PolicyEvaluator policyEvaluator)
+	{
+		if (policyEvaluator instanceof BaseTopLevelPolicyElementEvaluator)
+		{
+			return Optional.of(((BaseTopLevelPolicyElementEvaluator<?>) policyEvaluator).attributeDependencies);
+		}
+
+		if (policyEvaluator instanceof StaticPolicyRefEvaluator)
+		{
+			return getAttributeDependencies(((StaticPolicyRefEvaluator) policyEvaluator).referredPolicy);
+		}
+
+		return Optional.empty();
+	}
+
+	private static PolicyAttributeDependencies newPolicySetAttributeDependencies(final Target policyTarget, final List<ObligationExpression> obligationExps, final List<AdviceExpression> adviceExps,
+	        final Iterable<? extends PolicyEvaluator> combinedElements)
+	{
+		final Set<AttributeFqn> policySetWideAttributes = HashCollections.newUpdatableSet();
+		PolicyAttributeDependencies.addAttributes(policyTarget, obligationExps, adviceExps, policySetWideAttributes);
+		// LinkedHashMap to preserve order of declaration
+		final Map<String, PolicyAttributeDependencies> childDependenciesByChildId = new LinkedHashMap<>();
+		for (final PolicyEvaluator childElement : combinedElements)
+		{
+			childDependenciesByChildId.putIfAbsent(childElement.toString(), getAttributeDependencies(childElement).orElse(null));
+		}
+
+		return PolicyAttributeDependencies.getInstance(policySetWideAttributes, childDependenciesByChildId);
+	}
+
+	/**
+	 * Child policy element of a PolicySet whose children are indexed by Target (see {@link TargetIndexedCombiningAlgEvaluator}), NotApplicable without evaluation if it is not a candidate according
+	 * to the index in the current evaluation context
+	 */
+	private static class TargetIndexedChildPolicyEvaluator implements PolicyEvaluator
+	{
+		protected final PolicyEvaluator child;
+		private final int childIndex;
+		private final String candidatesContextKey;
+
+		private TargetIndexedChildPolicyEvaluator(final PolicyEvaluator child, final int childIndex, final String candidatesContextKey)
+		{
+			assert child != null && candidatesContextKey != null;
+			this.child = child;
+			this.childIndex = childIndex;
+			this.candidatesContextKey = candidatesContextKey;
+		}
+
+		private boolean isCandidate(final EvaluationContext context)
+		{
+			// null if all children are candidates
+			final BitSet candidates = (BitSet) context.getOther(candidatesContextKey);
+			return candidates == null || candidates.get(childIndex);
+		}
+
+		@Override
+		public final DecisionResult evaluate(final EvaluationContext context)
+		{
+			return isCandidate(context) ? child.evaluate(context) : DecisionResults.SIMPLE_NOT_APPLICABLE;
+		}
+
+		@Override
+		public final DecisionResult evaluate(final EvaluationContext context, final boolean skipTarget)
+		{
+			return isCandidate(context) ? child.evaluate(context, skipTarget) : DecisionResults.SIMPLE_NOT_APPLICABLE;
+		}
+
+		@Override
+		public final boolean isApplicableByTarget(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			return isCandidate(context) && child.isApplicableByTarget(context);
+		}
+
+		@Override
+		public final TopLevelPolicyElementType getPolicyElementType()
+		{
+			return child.getPolicyElementType();
+		}
+
+		@Override
+		public final String getPolicyId()
+		{
+			return child.getPolicyId();
+		}
+
+		@Override
+		public final PolicyVersion getPolicyVersion(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			return child.getPolicyVersion(context);
+		}
+
+		@Override
+		public final Set<PrimaryPolicyMetadata> getEnclosedPolicies()
+		{
+			return child.getEnclosedPolicies();
+		}
+
+		@Override
+		public Optional<PolicyRefsMetadata> getPolicyRefsMetadata(final EvaluationContext context) throws IndeterminateEvaluationException
+		{
+			return child.getPolicyRefsMetadata(context);
+		}
+
+		@Override
+		public final String toString()
+		{
+			return child.toString();
+		}
+	}
+
+	private static final class TargetIndexedChildStaticPolicyEvaluator extends TargetIndexedChildPolicyEvaluator implements StaticPolicyEvaluator
+	{
+		private TargetIndexedChildStaticPolicyEvaluator(final StaticPolicyEvaluator child, final int childIndex, final String candidatesContextKey)
+		{
+			super(child, childIndex, candidatesContextKey);
+		}
+
+		@Override
+		public PolicyVersion getPolicyVersion()
+		{
+			return ((StaticPolicyEvaluator) child).getPolicyVersion();
+		}
+
+		@Override
+		public Optional<PolicyRefsMetadata> getPolicyRefsMetadata()
+		{
+			return ((StaticPolicyEvaluator) child).getPolicyRefsMetadata();
+		}
+
+		@Override
+		public Optional<PolicyRefsMetadata> getPolicyRefsMetadata(final EvaluationContext context)
+		{
+			return getPolicyRefsMetadata();
+		}
+	}
+
+	/**
+	 * Combining algorithm evaluator that skips the child policy elements that are NotApplicable for sure (Target No-match) according to a {@link TargetIndex}. This preserves the combining algorithm
+	 * semantics since NotApplicable child elements do not affect the result of the combining algorithms, and the order of the child elements is preserved.
+	 * <p>
+	 * The combining algorithm evaluator is created once, on the child elements wrapped in {@link TargetIndexedChildPolicyEvaluator}s, which are skipped lazily during the evaluation if they are not
+	 * candidates for the current request. Therefore the combining algorithm keeps its state across requests, e.g. the adaptive evaluation order of deny-overrides: the candidates are evaluated in the
+	 * current adaptive order.
+	 */
+	private static final class TargetIndexedCombiningAlgEvaluator implements CombiningAlg.Evaluator
+	{
+		private final TargetIndex<?> childTargetIndex;
+		/*
+		 * Key of the candidate indexes (BitSet) in the evaluation context, for the time of the evaluation of indexedChildrenEvaluator
+		 */
+		private final String candidatesContextKey;
+		// evaluator of all child elements, wrapped in TargetIndexedChildPolicyEvaluators
+		private final CombiningAlg.Evaluator indexedChildrenEvaluator;
+		// evaluator when no child element is candidate
+		private final CombiningAlg.Evaluator noChildEvaluator;
+
+		/*
+		 * Returns null if the combined elements cannot be wrapped in TargetIndexedChildPolicyEvaluators, i.e. are more specific than StaticPolicyEvaluator
+		 */
+		private static <T extends Decidable> TargetIndexedCombiningAlgEvaluator getInstance(final CombiningAlg<T> combiningAlg, final Class<T> combinedElementClass, final List<T> childElements,
+		        final TargetIndex<T> childTargetIndex)
+		{
+			final boolean staticChildren = StaticPolicyEvaluator.class.isAssignableFrom(combinedElementClass);
+			if (!combinedElementClass.isAssignableFrom(staticChildren ? TargetIndexedChildStaticPolicyEvaluator.class : TargetIndexedChildPolicyEvaluator.class))
+			{
+				return null;
+			}
+
+			return new TargetIndexedCombiningAlgEvaluator(combiningAlg, combinedElementClass, staticChildren, childElements, childTargetIndex);
+		}
+
+		private <T extends Decidable> TargetIndexedCombiningAlgEvaluator(final CombiningAlg<T> combiningAlg, final Class<T> combinedElementClass, final boolean staticChildren,
+		        final List<T> childElements, final TargetIndex<T> childTargetIndex)
+		{
+			assert combiningAlg != null && combinedElementClass != null && childElements != null && childTargetIndex != null;
+			this.childTargetIndex = childTargetIndex;
+			this.candidatesContextKey = this.getClass().getName() + '@' + Integer.toHexString(hashCode());
+			final List<T> indexedChildElements = new ArrayList<>(childElements.size());
+			int childIndex = 0;
+			for (final T childElement : childElements)
+			{
+				indexedChildElements.add(combinedElementClass.cast(staticChildren ? new TargetIndexedChildStaticPolicyEvaluator((StaticPolicyEvaluator) childElement, childIndex, candidatesContextKey)
+				        : new TargetIndexedChildPolicyEvaluator((PolicyEvaluator) childElement, childIndex, candidatesContextKey)));
+				childIndex++;
+			}
+
+			this.indexedChildrenEvaluator = combiningAlg.getInstance(Collections.emptyList(), indexedChildElements);
+			this.noChildEvaluator = combiningAlg.getInstance(Collections.emptyList(), Collections.emptyList());
+		}
+
+		@Override
+		public ExtendedDecision evaluate(final EvaluationContext context, final UpdatableList<PepAction> updatablePepActions,
+		        final UpdatableList<PrimaryPolicyMetadata> updatableApplicablePolicyIdList)
+		{
+			final BitSet candidates = childTargetIndex.getCandidateIndexes(context);
+			if (candidates == null)
+			{
+				return indexedChildrenEvaluator.evaluate(context, updatablePepActions, updatableApplicablePolicyIdList);
+			}
+
+			if (candidates.isEmpty())
+			{
+				return noChildEvaluator.evaluate(context, updatablePepActions, updatableApplicablePolicyIdList);
+			}
+
+			context.putOther(candidatesContextKey, candidates);
+			try
+			{
+				return indexedChildrenEvaluator.evaluate(context, updatablePepActions, updatableApplicablePolicyIdList);
+			}
+			finally
+			{
+				context.remove(candidatesContextKey);
+			}
+		}
+	}
+
 	/**
 	 * Generic Policy(Set) evaluator. Evaluates to a Decision.
 	 * 
@@ -379,8 +651,29 @@ public final class PolicyEvaluators
 
 		private transient final Set<PrimaryPolicyMetadata> enclosedPolicies;
 
+		private transient final PolicyAttributeDependencies attributeDependencies;
+
+		// null if evaluation metrics disabled
+		private transient final EvaluationMetrics metrics;
+
+		/*
+		 * Allocator of localVariableSlots and requestScopedEvalResultsSlot (the one of the expression factory). Null iff slots are not supported by the expression factory, in which case the
+		 * String-keyed methods of the evaluation context are always used.
+		 */
+		private transient final EvaluationContextSlots evaluationContextSlots;
+
+		/*
+		 * Slots of local variables in IndividualDecisionRequestContext, in same order as localVariableAssignmentExpressions. Null iff evaluationContextSlots is null.
+		 */
+		private transient final int[] localVariableSlots;
+
 		private transient final String requestScopedEvalResultsCacheKey;
 
+		/*
+		 * Slot of evaluation results in IndividualDecisionRequestContext, used instead of requestScopedEvalResultsCacheKey for this type of context
+		 */
+		private transient final int requestScopedEvalResultsSlot;
+
 		/**
 		 * Instantiates an evaluator
 		 * 
@@ -408,13 +701,15 @@ public final class PolicyEvaluators
 		 *            Expression factory/parser
 		 * @param combiningAlgRegistry
 		 *            rule/policy combining algorithm registry
+		 * @param attributeDependencies
+		 *            attributes that may be needed to evaluate the policy(set)
 		 * @throws IllegalArgumentException
 		 *             if {@code policyMetadata == null || combiningAlgId  == null}
 		 */
 		protected BaseTopLevelPolicyElementEvaluator(final Class<T> combinedElementClass, final PrimaryPolicyMetadata policyMetadata, final Target policyTarget, final String combiningAlgId,
 		        final Iterable<T> combinedElements, final Iterable<CombiningAlgParameter<? extends T>> combinerParameters, final List<ObligationExpression> obligationExps,
 		        final List<AdviceExpression> adviceExps, final List<String> localVariableIds, final XPathCompiler defaultXPathCompiler, final ExpressionFactory expressionFactory,
-		        final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
+		        final CombiningAlgRegistry combiningAlgRegistry, final PolicyAttributeDependencies attributeDependencies) throws IllegalArgumentException
 		{
 			if (policyMetadata == null)
 			{
@@ -427,6 +722,8 @@ public final class PolicyEvaluators
 			}
 
 			this.policyMetadata = policyMetadata;
+			assert attributeDependencies != null;
+			this.attributeDependencies = attributeDependencies;
 
 			this.targetEvaluator = TargetEvaluators.getInstance(policyTarget, defaultXPathCompiler, expressionFactory);
 
@@ -441,7 +738,27 @@ public final class PolicyEvaluators
 				        this + ": Unknown/unsupported " + (RuleEvaluator.class.isAssignableFrom(combinedElementClass) ? "rule" : "policy") + "-combining algorithm ID = '" + combiningAlgId + "'", e);
 			}
 
-			this.combiningAlgEvaluator = combiningAlg.getInstance(combinerParameters, combinedElements);
+			final EvaluationMetricsRegistry evaluationMetricsRegistry = getEvaluationMetricsRegistry(expressionFactory);
+			final TargetIndexedCombiningAlgEvaluator indexedCombiningAlgEvaluator;
+			if (PolicyEvaluator.class.isAssignableFrom(combinedElementClass) && evaluationMetricsRegistry == null && Iterables.isEmpty(combinerParameters))
+			{
+				/*
+				 * Index child policies by Target to skip the ones that are not applicable for sure, if relevant. Not if evaluation metrics are enabled, since the Targets of the skipped child
+				 * policies would not be counted; nor if there are combiner parameters, since they refer to the original child policies.
+				 */
+				final List<T> childElements = ImmutableList.copyOf(combinedElements);
+				final List<BooleanEvaluator> childTargetEvaluators = childElements.stream().map(PolicyEvaluators::getTargetEvaluator).collect(Collectors.toList());
+				final Optional<TargetIndex<T>> childTargetIndex = TargetIndex.getInstance(childElements, childTargetEvaluators);
+				indexedCombiningAlgEvaluator = childTargetIndex.isPresent()
+				        ? TargetIndexedCombiningAlgEvaluator.getInstance(combiningAlg, combinedElementClass, childElements, childTargetIndex.get())
+				        : null;
+			}
+			else
+			{
+				indexedCombiningAlgEvaluator = null;
+			}
+
+			this.combiningAlgEvaluator = indexedCombiningAlgEvaluator == null ? combiningAlg.getInstance(combinerParameters, combinedElements) : indexedCombiningAlgEvaluator;
 
 			if ((obligationExps == null || obligationExps.isEmpty()) && (adviceExps == null || adviceExps.isEmpty()))
 			{
@@ -475,6 +792,9 @@ public final class PolicyEvaluators
 
 			this.localVariableAssignmentExpressions = localVariableIds == null ? Collections.<VariableReference<?>>emptyList()
 			        : localVariableIds.stream().map(id -> expressionFactory.getVariableExpression(id)).collect(Collectors.toList());
+			this.evaluationContextSlots = getEvaluationContextSlots(expressionFactory);
+			this.localVariableSlots = this.evaluationContextSlots == null ? null
+			        : this.localVariableAssignmentExpressions.stream().mapToInt(varRef -> this.evaluationContextSlots.assignVariableSlot(varRef.getVariableId())).toArray();
 
 			final Set<PrimaryPolicyMetadata> mutableEnclosedPolicies = HashCollections.newUpdatableSet();
 			mutableEnclosedPolicies.add(policyMetadata);
@@ -497,6 +817,9 @@ public final class PolicyEvaluators
 			 * Define keys for caching the result of #evaluate() in the request context (see Object#toString())
 			 */
 			this.requestScopedEvalResultsCacheKey = this.getClass().getName() + '@' + Integer.toHexString(hashCode());
+			this.requestScopedEvalResultsSlot = this.evaluationContextSlots == null ? EvaluationContextSlots.UNASSIGNED_SLOT : this.evaluationContextSlots.assignPolicySlot(policyMetadata);
+
+			this.metrics = evaluationMetricsRegistry == null ? null : evaluationMetricsRegistry.getPolicyMetrics(policyMetadata);
 		}
 
 		private IndeterminateEvaluationException enforceNoNullCauseForIndeterminate(final Optional<IndeterminateEvaluationException> causeForIndeterminate)
@@ -518,8 +841,30 @@ public final class PolicyEvaluators
 			return this.enclosedPolicies;
 		}
 
+		/*
+		 * True iff the slots of this evaluator may be used with this context
+		 */
+		private boolean isSlotted(final EvaluationContext context)
+		{
+			return context instanceof IndividualDecisionRequestContext && ((IndividualDecisionRequestContext) context).isSlottedBy(this.evaluationContextSlots);
+		}
+
 		private void assignVariables(final EvaluationContext context) throws IndeterminateEvaluationException
 		{
+			if (isSlotted(context))
+			{
+				final IndividualDecisionRequestContext slottedContext = (IndividualDecisionRequestContext) context;
+				int i = 0;
+				for (final VariableReference<?> varRef : this.localVariableAssignmentExpressions)
+				{
+					final Value varVal = varRef.evaluate(context);
+					slottedContext.putVariableIfAbsent(this.localVariableSlots[i], varRef.getVariableId(), varVal);
+					i++;
+				}
+
+				return;
+			}
+
 			for (final VariableReference<?> varRef : this.localVariableAssignmentExpressions)
 			{
 				final Value varVal = varRef.evaluate(context);
@@ -527,6 +872,43 @@ public final class PolicyEvaluators
 			}
 		}
 
+		private void removeVariables(final EvaluationContext context)
+		{
+			if (isSlotted(context))
+			{
+				final IndividualDecisionRequestContext slottedContext = (IndividualDecisionRequestContext) context;
+				for (final int varSlot : this.localVariableSlots)
+				{
+					slottedContext.removeVariable(varSlot);
+				}
+
+				return;
+			}
+
+			for (final VariableReference<?> varRef : this.localVariableAssignmentExpressions)
+			{
+				context.removeVariable(varRef.getVariableId());
+			}
+		}
+
+		private Object getCachedEvalResults(final EvaluationContext context)
+		{
+			return isSlotted(context) ? ((IndividualDecisionRequestContext) context).getPolicyEvaluationResults(this.requestScopedEvalResultsSlot)
+			        : context.getOther(this.requestScopedEvalResultsCacheKey);
+		}
+
+		private void putCachedEvalResults(final EvaluationContext context, final EvalResults results)
+		{
+			if (isSlotted(context))
+			{
+				((IndividualDecisionRequestContext) context).putPolicyEvaluationResults(this.requestScopedEvalResultsSlot, results);
+			}
+			else
+			{
+				context.putOther(this.requestScopedEvalResultsCacheKey, results);
+			}
+		}
+
 		/**
 		 * Policy(Set) evaluation with option to skip Target evaluation. The option is to be used by Only-one-applicable algorithm with value 'true', after calling
 		 * {@link TopLevelPolicyElementEvaluator#isApplicableByTarget(EvaluationContext)} in particular.
@@ -539,11 +921,24 @@ public final class PolicyEvaluators
 		 */
 		@Override
 		public final DecisionResult evaluate(final EvaluationContext context, final boolean skipTarget)
+		{
+			if (metrics == null)
+			{
+				return doEvaluate(context, skipTarget);
+			}
+
+			final long startNanos = System.nanoTime();
+			final DecisionResult result = doEvaluate(context, skipTarget);
+			metrics.evaluated(result.getDecision(), System.nanoTime() - startNanos);
+			return result;
+		}
+
+		private DecisionResult doEvaluate(final EvaluationContext context, final boolean skipTarget)
 		{
 			/*
 			 * check whether the result is already cached in the evaluation context
 			 */
-			final Object cachedValue = context.getOther(this.requestScopedEvalResultsCacheKey);
+			final Object cachedValue = getCachedEvalResults(context);
 			final EvalResults cachedResults;
 			if (cachedValue instanceof EvalResults)
 			{
@@ -613,6 +1008,11 @@ public final class PolicyEvaluators
 					{
 						if (!isApplicableByTarget(context))
 						{
+							if (metrics != null)
+							{
+								metrics.targetNotMatched();
+							}
+
 							LOGGER.debug("{}/Target -> No-match", this);
 							LOGGER.debug("{} -> NotApplicable", this);
 							newResult = DecisionResults.SIMPLE_NOT_APPLICABLE;
@@ -620,10 +1020,20 @@ public final class PolicyEvaluators
 						}
 
 						// Target Match
+						if (metrics != null)
+						{
+							metrics.targetMatched();
+						}
+
 						LOGGER.debug("{}/Target -> Match", this);
 					}
 					catch (final IndeterminateEvaluationException e)
 					{
+						if (metrics != null)
+						{
+							metrics.targetIndeterminate();
+						}
+
 						targetMatchIndeterminateException = e;
 						/*
 						 * Before we lose the exception information, log it at a higher level because it is an evaluation error (but no critical application error, therefore lower level than error)
@@ -735,10 +1145,7 @@ public final class PolicyEvaluators
 			finally
 			{
 				// remove local variables from context
-				for (final VariableReference<?> varRef : this.localVariableAssignmentExpressions)
-				{
-					context.removeVariable(varRef.getVariableId());
-				}
+				removeVariables(context);
 
 				// update cache with new result
 				if (newResult != null)
@@ -747,7 +1154,7 @@ public final class PolicyEvaluators
 					{
 						final EvalResults newCachedResults = new EvalResults(this.policyMetadata.getId());
 						newCachedResults.setResult(skipTarget, newResult);
-						context.putOther(this.requestScopedEvalResultsCacheKey, newCachedResults);
+						putCachedEvalResults(context, newCachedResults);
 					}
 					else
 					{
@@ -835,10 +1242,10 @@ public final class PolicyEvaluators
 		private StaticBaseTopLevelPolicyElementEvaluator(final Class<T> combinedElementClass, final PrimaryPolicyMetadata policyMetadata, final Optional<PolicyRefsMetadata> extraPolicyMetadata,
 		        final Target policyTarget, final String combiningAlgId, final Iterable<T> combinedElements, final Iterable<CombiningAlgParameter<? extends T>> combinerParameters,
 		        final List<ObligationExpression> obligationExps, final List<AdviceExpression> adviceExps, final List<String> localVariableIds, final XPathCompiler defaultXPathCompiler,
-		        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
+		        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final PolicyAttributeDependencies attributeDependencies) throws IllegalArgumentException
 		{
 			super(combinedElementClass, policyMetadata, policyTarget, combiningAlgId, combinedElements, combinerParameters, obligationExps, adviceExps, localVariableIds, defaultXPathCompiler,
-			        expressionFactory, combiningAlgRegistry);
+			        expressionFactory, combiningAlgRegistry, attributeDependencies);
 			this.extraPolicyMetadata = extraPolicyMetadata;
 		}
 
@@ -1131,7 +1538,7 @@ public final class PolicyEvaluators
 		        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry) throws IllegalArgumentException
 		{
 			super(PolicyEvaluator.class, policyMetadata, policyTarget, combiningAlgId, combinedElements, combinerParameters, obligationExps, adviceExps, localVariableIds, defaultXPathCompiler,
-			        expressionFactory, combiningAlgRegistry);
+			        expressionFactory, combiningAlgRegistry, newPolicySetAttributeDependencies(policyTarget, obligationExps, adviceExps, combinedElements));
 			this.extraPolicyMetadataProvider = extraPolicyMetadataProvider;
 		}
 
@@ -1464,9 +1871,17 @@ public final class PolicyEvaluators
 			throw NULL_XACML_COMBINING_ALG_ARG_EXCEPTION;
 		}
 
+		/*
+		 * VariableDefinitions of this Policy are parsed in their own scope, so that Policies may be parsed concurrently (each by a single thread), and nothing is left over in the expression factory
+		 * if this Policy is invalid
+		 */
+		final ExpressionFactory policyExpressionFactory = expressionFactory instanceof DepthLimitingExpressionFactory ? ((DepthLimitingExpressionFactory) expressionFactory).newVariableScope()
+		        : expressionFactory;
 		final String policyId = policyElement.getPolicyId();
 		final PolicyVersion policyVersion = new PolicyVersion(policyElement.getVersion());
 		final String policyFriendlyId = "Policy[" + policyId + "#v" + policyVersion + "]";
+		final PrimaryPolicyMetadata primaryPolicyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, policyId, policyVersion);
+		final EvaluationMetricsRegistry evaluationMetricsRegistry = getEvaluationMetricsRegistry(policyExpressionFactory);
 		final DefaultsType policyDefaults = policyElement.getPolicyDefaults();
 
 		/*
@@ -1529,7 +1944,7 @@ public final class PolicyEvaluators
 				final BaseCombiningAlgParameter<RuleEvaluator> combiningAlgParameter;
 				try
 				{
-					combiningAlgParameter = new BaseCombiningAlgParameter<>(ruleEvaluator, ((CombinerParametersType) policyChildElt).getCombinerParameters(), expressionFactory, defaultXPathCompiler);
+					combiningAlgParameter = new BaseCombiningAlgParameter<>(ruleEvaluator, ((CombinerParametersType) policyChildElt).getCombinerParameters(), policyExpressionFactory, defaultXPathCompiler);
 				}
 				catch (final IllegalArgumentException e)
 				{
@@ -1546,7 +1961,7 @@ public final class PolicyEvaluators
 				final BaseCombiningAlgParameter<RuleEvaluator> combiningAlgParameter;
 				try
 				{
-					combiningAlgParameter = new BaseCombiningAlgParameter<>(null, ((CombinerParametersType) policyChildElt).getCombinerParameters(), expressionFactory, defaultXPathCompiler);
+					combiningAlgParameter = new BaseCombiningAlgParameter<>(null, ((CombinerParametersType) policyChildElt).getCombinerParameters(), policyExpressionFactory, defaultXPathCompiler);
 				}
 				catch (final IllegalArgumentException e)
 				{
@@ -1562,7 +1977,7 @@ public final class PolicyEvaluators
 				final VariableReference<?> var;
 				try
 				{
-					var = expressionFactory.addVariable(varDef, defaultXPathCompiler, varDefLongestVarRefChain);
+					var = policyExpressionFactory.addVariable(varDef, defaultXPathCompiler, varDefLongestVarRefChain);
 				}
 				catch (final IllegalArgumentException e)
 				{
@@ -1592,7 +2007,9 @@ public final class PolicyEvaluators
 				final RuleEvaluator ruleEvaluator;
 				try
 				{
-					ruleEvaluator = new RuleEvaluator((Rule) policyChildElt, defaultXPathCompiler, expressionFactory);
+					final Rule rule = (Rule) policyChildElt;
+					ruleEvaluator = new RuleEvaluator(rule, defaultXPathCompiler, policyExpressionFactory,
+					        evaluationMetricsRegistry == null ? null : evaluationMetricsRegistry.getRuleMetrics(primaryPolicyMetadata, rule.getRuleId()));
 				}
 				catch (final IllegalArgumentException e)
 				{
@@ -1612,20 +2029,19 @@ public final class PolicyEvaluators
 			childIndex++;
 		}
 
-		final PrimaryPolicyMetadata primaryPolicyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, policyId, policyVersion);
 		final ObligationExpressions obligationExps = policyElement.getObligationExpressions();
 		final AdviceExpressions adviceExps = policyElement.getAdviceExpressions();
 		final StaticTopLevelPolicyElementEvaluator policyEvaluator = new StaticBaseTopLevelPolicyElementEvaluator<>(RuleEvaluator.class, primaryPolicyMetadata, Optional.empty(),
 		        policyElement.getTarget(), policyElement.getRuleCombiningAlgId(), ruleEvaluatorsByRuleIdInOrderOfDeclaration.values(), combiningAlgParameters,
 		        obligationExps == null ? null : obligationExps.getObligationExpressions(), adviceExps == null ? null : adviceExps.getAdviceExpressions(),
-		        Collections.<String>unmodifiableList(localVariableIds), defaultXPathCompiler, expressionFactory, combiningAlgRegistry);
+		        Collections.<String>unmodifiableList(localVariableIds), defaultXPathCompiler, policyExpressionFactory, combiningAlgRegistry, PolicyAttributeDependencies.getInstance(policyElement));
 
 		/*
 		 * We are done parsing expressions in this policy, including VariableReferences, it's time to remove variables scoped to this policy from the variable manager
 		 */
 		for (final String varId : localVariableIds)
 		{
-			expressionFactory.removeVariable(varId);
+			policyExpressionFactory.removeVariable(varId);
 		}
 
 		return policyEvaluator;
@@ -1927,7 +2343,8 @@ public final class PolicyEvaluators
 		        final List<ObligationExpression> obligationExpressions, final List<AdviceExpression> adviceExpressions, final List<String> localVariableIds)
 		{
 			return new StaticBaseTopLevelPolicyElementEvaluator<>(StaticPolicyEvaluator.class, primaryPolicyMetadata, extraMetadataProvider.getMetadata(), policyTarget, policyCombiningAlgId,
-			        combinedElements, policyCombinerParameters, obligationExpressions, adviceExpressions, localVariableIds, defaultXPathCompiler, expressionFactory, combiningAlgorithmRegistry);
+			        combinedElements, policyCombinerParameters, obligationExpressions, adviceExpressions, localVariableIds, defaultXPathCompiler, expressionFactory, combiningAlgorithmRegistry,
+			        newPolicySetAttributeDependencies(policyTarget, obligationExpressions, adviceExpressions, combinedElements));
 		}
 	}
 
@@ -0,0 +1,378 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.policy;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRefPolicyProvider.PolicyWithNamespaces;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableSet;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AdviceExpressions;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AllOf;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AnyOf;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Attribute;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeAssignmentExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeSelectorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.CombinerParameter;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.CombinerParametersType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Condition;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DefaultsType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.EffectType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.FunctionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.IdReferenceType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Match;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObligationExpression;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObligationExpressions;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Policy;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicyCombinerParameters;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicyIssuer;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySetCombinerParameters;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Rule;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.RuleCombinerParameters;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Target;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.VariableDefinition;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.VariableReferenceType;
+
+/**
+ * Binary snapshot of the policy documents loaded by {@link CoreRefPolicyProvider}, i.e. the XACML/JAXB Policy(Set)s with their namespace prefix-URI mappings, in the same order as the policy URLs they
+ * were parsed from. Loading the snapshot (memory-mapped file) skips the XML parsing and schema validation of the policy documents. The file format is a header (magic number and format version)
+ * followed by the Java serialization of the policy URLs and the policy documents. Only an allowlist of classes - the XACML/JAXB policy model and the few JDK classes it is made of - is accepted when
+ * reading the snapshot; any other class, as well as any dynamic proxy class, makes the snapshot invalid.
+ */
+final class PolicyRepositorySnapshot
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(PolicyRepositorySnapshot.class);
+
+	/*
+	 * "AZPS"
+	 */
+	private static final int MAGIC_NUMBER = 0x415a5053;
+
+	private static final int FORMAT_VERSION = 1;
+
+	/*
+	 * Names of the (only) classes that may be deserialized from a snapshot (array classes are checked on their component type): the XACML/JAXB policy model classes, and the JDK classes used in the
+	 * model (JAXB elements, collections, numbers, enums) and for the namespace prefix-URI mappings
+	 */
+	private static final Set<String> ALLOWED_CLASS_NAMES = ImmutableSet.of(
+			// XACML/JAXB policy model
+			PolicySet.class.getName(), Policy.class.getName(), PolicyIssuer.class.getName(), DefaultsType.class.getName(), Target.class.getName(), AnyOf.class.getName(), AllOf.class.getName(),
+			Match.class.getName(), Rule.class.getName(), EffectType.class.getName(), Condition.class.getName(), VariableDefinition.class.getName(), ExpressionType.class.getName(),
+			ApplyType.class.getName(), FunctionType.class.getName(), VariableReferenceType.class.getName(), AttributeValueType.class.getName(), AttributeDesignatorType.class.getName(),
+			AttributeSelectorType.class.getName(), Attribute.class.getName(), IdReferenceType.class.getName(), ObligationExpressions.class.getName(), ObligationExpression.class.getName(),
+			AdviceExpressions.class.getName(), AdviceExpression.class.getName(), AttributeAssignmentExpression.class.getName(), CombinerParametersType.class.getName(),
+			CombinerParameter.class.getName(), RuleCombinerParameters.class.getName(), PolicyCombinerParameters.class.getName(), PolicySetCombinerParameters.class.getName(),
+			// JAXB/XML
+			"javax.xml.bind.JAXBElement", "javax.xml.bind.JAXBElement$GlobalScope", "javax.xml.namespace.QName",
+			// JDK
+			"java.lang.String", "java.lang.Enum", "java.lang.Number", "java.lang.Boolean", "java.lang.Integer", "java.lang.Long", "java.math.BigInteger", "java.math.BigDecimal", "java.util.ArrayList",
+			"java.util.HashMap", "java.util.LinkedHashMap", "java.util.Collections$EmptyList", "java.util.Collections$EmptyMap", "java.util.Collections$SingletonList",
+			"java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList", "java.util.Collections$UnmodifiableRandomAccessList", "java.util.Collections$UnmodifiableMap");
+
+	private static final class FilteringObjectInputStream extends ObjectInputStream
+	{
+		private FilteringObjectInputStream(final InputStream in) throws IOException
+		{
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException
+		{
+			final String className = desc.getName();
+			int componentTypeIndex = 0;
+			while (componentTypeIndex < className.length() && className.charAt(componentTypeIndex) == '[')
+			{
+				componentTypeIndex++;
+			}
+
+			/*
+			 * Array of primitive types, e.g. "[B", are allowed; array of objects, e.g. "[Ljava.lang.Object;", are checked on the component type
+			 */
+			if (componentTypeIndex == 0 || className.charAt(componentTypeIndex) == 'L')
+			{
+				final String componentClassName = componentTypeIndex == 0 ? className : className.substring(componentTypeIndex + 1, className.length() - 1);
+				if (!ALLOWED_CLASS_NAMES.contains(componentClassName))
+				{
+					throw new InvalidClassException(className, "Class not allowed in policy snapshot");
+				}
+			}
+
+			return super.resolveClass(desc);
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException
+		{
+			throw new InvalidClassException("Dynamic proxy class not allowed in policy snapshot");
+		}
+	}
+
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(final ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length)
+		{
+			if (length == 0)
+			{
+				return 0;
+			}
+
+			if (!buffer.hasRemaining())
+			{
+				return -1;
+			}
+
+			final int readLength = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, readLength);
+			return readLength;
+		}
+
+		@Override
+		public int available()
+		{
+			return buffer.remaining();
+		}
+	}
+
+	private PolicyRepositorySnapshot()
+	{
+		// prevent instantiation
+	}
+
+	/*
+	 * Returns 0 if unknown
+	 */
+	private static long getLastModifiedTime(final URL url) throws IOException
+	{
+		if ("file".equals(url.getProtocol()))
+		{
+			try
+			{
+				return Files.getLastModifiedTime(Paths.get(url.toURI())).toMillis();
+			}
+			catch (final URISyntaxException | IllegalArgumentException e)
+			{
+				return 0;
+			}
+		}
+
+		final URLConnection urlConnection = url.openConnection();
+		urlConnection.setUseCaches(false);
+		return urlConnection.getLastModified();
+	}
+
+	/**
+	 * Reads the policy documents from a snapshot file, if it is up-to-date
+	 *
+	 * @param snapshotFile
+	 *            snapshot file
+	 * @param policyURLs
+	 *            locations of the policy documents (in the order they were parsed)
+	 * @return the policy documents, in the same order as {@code policyURLs}; or empty if the snapshot file does not exist, or is older than one of the policy documents (or the last modification
+	 *         time of one of them is unknown), or was not made from the same {@code policyURLs}, or is invalid
+	 */
+	static Optional<List<PolicyWithNamespaces<?>>> read(final Path snapshotFile, final List<URL> policyURLs)
+	{
+		assert snapshotFile != null && policyURLs != null;
+
+		if (!Files.isRegularFile(snapshotFile))
+		{
+			LOGGER.debug("No policy snapshot file at {}", snapshotFile);
+			return Optional.empty();
+		}
+
+		try
+		{
+			final long snapshotTime = Files.getLastModifiedTime(snapshotFile).toMillis();
+			for (final URL policyURL : policyURLs)
+			{
+				final long policyTime = getLastModifiedTime(policyURL);
+				if (policyTime == 0 || policyTime >= snapshotTime)
+				{
+					LOGGER.info("Policy snapshot {} is outdated (policy document {} modified since or last-modified time unknown). Policy documents will be parsed.", snapshotFile, policyURL);
+					return Optional.empty();
+				}
+			}
+
+			try (final FileChannel fileChannel = FileChannel.open(snapshotFile, StandardOpenOption.READ))
+			{
+				final ByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+				if (buffer.remaining() < 8 || buffer.getInt() != MAGIC_NUMBER || buffer.getInt() != FORMAT_VERSION)
+				{
+					LOGGER.warn("Invalid policy snapshot {} (not a snapshot file or unsupported format version). Policy documents will be parsed.", snapshotFile);
+					return Optional.empty();
+				}
+
+				try (final ObjectInputStream in = new FilteringObjectInputStream(new ByteBufferInputStream(buffer)))
+				{
+					final int policyCount = in.readInt();
+					if (policyCount != policyURLs.size())
+					{
+						LOGGER.info("Policy snapshot {} was made from different policy locations. Policy documents will be parsed.", snapshotFile);
+						return Optional.empty();
+					}
+
+					for (final URL policyURL : policyURLs)
+					{
+						if (!in.readUTF().equals(policyURL.toExternalForm()))
+						{
+							LOGGER.info("Policy snapshot {} was made from different policy locations. Policy documents will be parsed.", snapshotFile);
+							return Optional.empty();
+						}
+					}
+
+					final List<PolicyWithNamespaces<?>> policyDocuments = new ArrayList<>(policyCount);
+					for (int i = 0; i < policyCount; i++)
+					{
+						@SuppressWarnings("unchecked")
+						final Map<String, String> nsPrefixUriMap = (Map<String, String>) in.readObject();
+						final Object policy = in.readObject();
+						if (!(policy instanceof Policy) && !(policy instanceof PolicySet))
+						{
+							LOGGER.warn("Invalid policy snapshot {}: unexpected element #{} (not a Policy or PolicySet). Policy documents will be parsed.", snapshotFile, i);
+							return Optional.empty();
+						}
+
+						policyDocuments.add(new PolicyWithNamespaces<>(policy, nsPrefixUriMap));
+					}
+
+					LOGGER.debug("Loaded {} policy documents from snapshot {}", policyCount, snapshotFile);
+					return Optional.of(policyDocuments);
+				}
+			}
+		}
+		catch (final IOException | ClassNotFoundException | ClassCastException e)
+		{
+			LOGGER.warn("Failed to read policy snapshot {}. Policy documents will be parsed.", snapshotFile, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Writes the policy documents to a snapshot file (replaced atomically if the file system supports it)
+	 *
+	 * @param snapshotFile
+	 *            snapshot file
+	 * @param policyURLs
+	 *            locations of the policy documents (in the order they were parsed)
+	 * @param policyDocuments
+	 *            policy documents parsed from {@code policyURLs}, in the same order
+	 * @param parsingStartTime
+	 *            time (in milliseconds since the epoch) when parsing of the policy documents started, set as last modification time of the snapshot file, so that any policy document modified
+	 *            during the parsing makes the snapshot outdated
+	 * @throws IOException
+	 *             error writing the file, or a policy document is not serializable (e.g. with XML content in an AttributeValue)
+	 */
+	static void write(final Path snapshotFile, final List<URL> policyURLs, final List<PolicyWithNamespaces<?>> policyDocuments, final long parsingStartTime) throws IOException
+	{
+		assert snapshotFile != null && policyURLs != null && policyDocuments != null && policyURLs.size() == policyDocuments.size();
+
+		final Path absoluteSnapshotFile = snapshotFile.toAbsolutePath();
+		final Path tmpFile = Files.createTempFile(absoluteSnapshotFile.getParent(), absoluteSnapshotFile.getFileName().toString(), ".tmp");
+		try
+		{
+			try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile)))
+			{
+				final DataOutputStream headerOut = new DataOutputStream(out);
+				headerOut.writeInt(MAGIC_NUMBER);
+				headerOut.writeInt(FORMAT_VERSION);
+				headerOut.flush();
+
+				final ObjectOutputStream objectOut = new ObjectOutputStream(out);
+				objectOut.writeInt(policyURLs.size());
+				for (final URL policyURL : policyURLs)
+				{
+					objectOut.writeUTF(policyURL.toExternalForm());
+				}
+
+				for (final PolicyWithNamespaces<?> policyDocument : policyDocuments)
+				{
+					objectOut.writeObject(new HashMap<>(policyDocument.getNsPrefixUriMap()));
+					objectOut.writeObject(policyDocument.getPolicy());
+				}
+
+				objectOut.flush();
+			}
+
+			Files.setLastModifiedTime(tmpFile, FileTime.fromMillis(parsingStartTime));
+			try
+			{
+				Files.move(tmpFile, absoluteSnapshotFile, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (final AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmpFile, absoluteSnapshotFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(tmpFile);
+		}
+
+		LOGGER.info("Wrote snapshot of {} policy documents to {}", policyDocuments.size(), absoluteSnapshotFile);
+	}
+}
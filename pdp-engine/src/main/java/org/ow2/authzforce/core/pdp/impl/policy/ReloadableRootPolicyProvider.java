@@ -0,0 +1,648 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.policy;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.ow2.authzforce.core.pdp.api.EnvironmentProperties;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.XmlUtils.XmlnsFilteringParser;
+import org.ow2.authzforce.core.pdp.api.XmlUtils.XmlnsFilteringParserFactory;
+import org.ow2.authzforce.core.pdp.api.combining.CombiningAlgRegistry;
+import org.ow2.authzforce.core.pdp.api.expression.ExpressionFactory;
+import org.ow2.authzforce.core.pdp.api.policy.CloseableRefPolicyProvider;
+import org.ow2.authzforce.core.pdp.api.policy.PolicyVersionPatterns;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.RootPolicyProvider;
+import org.ow2.authzforce.core.pdp.api.policy.StaticTopLevelPolicyElementEvaluator;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRefPolicyProvider.PolicyWithNamespaces;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.IdReferenceType;
+
+/**
+ * Root policy provider that loads policies from policy locations like {@link CoreRefPolicyProvider} - the root policy being the PolicySet matching a given PolicySetIdReference among them - and
+ * reloads them whenever files are created, modified or deleted in the directories of the 'file:' policy locations, without restarting the PDP engine.
+ * <p>
+ * On reload, only the policy documents that changed are parsed again, and only the Policy(Set)s that changed and the PolicySets referring to them (directly or indirectly) are re-instantiated;
+ * the other Policy(Set) evaluators are reused as is (see {@link CoreRefPolicyProvider#update(Iterable, boolean, Set, ExpressionFactory)}). The new root policy replaces the previous one atomically:
+ * a request being evaluated during the reload is evaluated entirely with the previous root policy (the root policy is retrieved once per request), the next requests with the new one. If the reload
+ * fails, e.g. because of an invalid policy document, the error is logged and the previous policies remain in use.
+ * <p>
+ * As the root policy may change, this provider is not a {@link org.ow2.authzforce.core.pdp.api.policy.StaticRootPolicyProvider}; instead, the applicable policies and their attribute dependencies are
+ * published along with the root policy and swapped with it (see {@link #getApplicablePolicies()} and {@link #getAttributeDependencies()}), and listeners may be notified after each successful reload
+ * (see {@link #addReloadListener(Runnable)}), e.g. for the PDP engine to invalidate its decision cache.
+ */
+public final class ReloadableRootPolicyProvider implements RootPolicyProvider
+{
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReloadableRootPolicyProvider.class);
+
+	private static final String ILLEGAL_XML_CONF_ARG_MESSAGE = "Undefined XML/JAXB configuration";
+	private static final String ILLEGAL_XACML_POLICY_REF_ARG_MESSAGE = "Undefined XACML PolicySetIdReference";
+	private static final IllegalArgumentException NO_POLICY_LOCATION_ARG_EXCEPTION = new IllegalArgumentException("No policy location specified");
+	private static final IllegalArgumentException ILLEGAL_XACML_PARSER_FACTORY_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined XACML parser factory");
+	private static final IllegalArgumentException ILLEGAL_ENVIRONMENT_PROPERTIES_ARGUMENT_EXCEPTION = new IllegalArgumentException("Undefined PDP environment properties");
+
+	/*
+	 * Last-modified time of documents that are not files, i.e. considered never modified
+	 */
+	private static final long UNKNOWN_LAST_MODIFIED_TIME = -1;
+
+	/*
+	 * Algorithm of the digest of policy file contents, to tell whether a file whose last-modified time or size changed has actually been modified (e.g. not only touched or rewritten as is),
+	 * in which case only the file is parsed again
+	 */
+	private static final String CONTENT_DIGEST_ALGORITHM = "SHA-256";
+
+	/**
+	 * Provider factory
+	 *
+	 */
+	public static class Factory extends RootPolicyProvider.Factory<org.ow2.authzforce.core.xmlns.pdp.ReloadableRootPolicyProvider>
+	{
+		private static int intValueExact(final BigInteger value, final String attributeName) throws IllegalArgumentException
+		{
+			try
+			{
+				return value.intValueExact();
+			}
+			catch (final ArithmeticException e)
+			{
+				throw new IllegalArgumentException("Invalid " + attributeName + ": " + value, e);
+			}
+		}
+
+		@Override
+		public Class<org.ow2.authzforce.core.xmlns.pdp.ReloadableRootPolicyProvider> getJaxbClass()
+		{
+			return org.ow2.authzforce.core.xmlns.pdp.ReloadableRootPolicyProvider.class;
+		}
+
+		@Override
+		public RootPolicyProvider getInstance(final org.ow2.authzforce.core.xmlns.pdp.ReloadableRootPolicyProvider jaxbConf, final XmlnsFilteringParserFactory xacmlParserFactory,
+		        final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry, final Optional<CloseableRefPolicyProvider> optionalRefPolicyProvider,
+		        final EnvironmentProperties environmentProperties)
+		{
+			Preconditions.checkNotNull(jaxbConf, ILLEGAL_XML_CONF_ARG_MESSAGE);
+			if (optionalRefPolicyProvider.isPresent())
+			{
+				LOGGER.warn("refPolicyProvider '{}' is not used by root policy provider '{}': Policy(Set)IdReferences are resolved with the policies from the policyLocations only",
+				        optionalRefPolicyProvider.get(), ReloadableRootPolicyProvider.class);
+			}
+
+			final BigInteger maxPolicyRefDepth = jaxbConf.getMaxPolicyRefDepth();
+			return new ReloadableRootPolicyProvider(jaxbConf.getPolicyLocations(), jaxbConf.isIgnoreOldVersions(), jaxbConf.getPolicyRef(),
+			        maxPolicyRefDepth == null ? -1 : intValueExact(maxPolicyRefDepth, "maxPolicyRefDepth"), jaxbConf.getReloadDelayMillis().longValue(), xacmlParserFactory, expressionFactory,
+			        combiningAlgRegistry, environmentProperties);
+		}
+	}
+
+	/*
+	 * Parsed policy document and the last-modified time, size and content digest of the file when last checked
+	 */
+	private static final class PolicyDocument
+	{
+		private final long lastModifiedTime;
+		private final long size;
+		private final byte[] contentDigest;
+		private final PolicyWithNamespaces<?> policy;
+		private final String policyId;
+
+		private PolicyDocument(final long lastModifiedTime, final long size, final byte[] contentDigest, final PolicyWithNamespaces<?> policy)
+		{
+			this.lastModifiedTime = lastModifiedTime;
+			this.size = size;
+			this.contentDigest = contentDigest;
+			this.policy = policy;
+			this.policyId = CoreRefPolicyProvider.getPolicyId(policy);
+		}
+	}
+
+	/*
+	 * Policies in use, replaced as a whole on reload, with the applicable policies and attribute dependencies of the root policy
+	 */
+	private static final class PolicyTree
+	{
+		private final CoreRefPolicyProvider refPolicyProvider;
+		private final StaticTopLevelPolicyElementEvaluator rootPolicy;
+		private final FlattenedPolicyTree applicablePolicies;
+		private final Optional<PolicyAttributeDependencies> attributeDependencies;
+		private final Set<PrimaryPolicyMetadata> loadedPolicies;
+
+		private PolicyTree(final CoreRefPolicyProvider refPolicyProvider, final StaticTopLevelPolicyElementEvaluator rootPolicy, final Set<PrimaryPolicyMetadata> loadedPolicies)
+		{
+			this.refPolicyProvider = refPolicyProvider;
+			this.loadedPolicies = loadedPolicies;
+			this.rootPolicy = rootPolicy;
+			this.applicablePolicies = new FlattenedPolicyTree(rootPolicy.getPrimaryPolicyMetadata(), rootPolicy.getPolicyRefsMetadata());
+			this.attributeDependencies = PolicyEvaluators.getAttributeDependencies(rootPolicy);
+		}
+	}
+
+	private final List<String> policyLocations;
+	private final boolean ignoreOldPolicyVersions;
+	private final String rootPolicySetId;
+	private final PolicyVersionPatterns rootPolicyVersionPatterns;
+	private final int maxPolicySetRefDepth;
+	private final long reloadDelayMillis;
+	private final XmlnsFilteringParserFactory xacmlParserFactory;
+	private final ExpressionFactory expressionFactory;
+	private final CombiningAlgRegistry combiningAlgRegistry;
+	private final EnvironmentProperties environmentProperties;
+
+	private final WatchService watchService;
+	private final Set<Path> watchedDirectories = HashCollections.newUpdatableSet();
+	private final Thread watcherThread;
+	private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+
+	/*
+	 * Policy documents by URL (string form, URL#equals(Object) being a blocking operation), only accessed by reload()
+	 */
+	private Map<String, PolicyDocument> policyDocumentsByUrl = Collections.emptyMap();
+
+	private volatile PolicyTree policyTree = null;
+
+	/**
+	 * Creates instance loading the policies from the given locations, and starts watching the directories of the file locations for changes
+	 *
+	 * @param policyLocations
+	 *            policy locations, possibly with placeholders and/or file path patterns (see {@link org.ow2.authzforce.core.xmlns.pdp.StaticRefPolicyProvider#getPolicyLocations()})
+	 * @param ignoreOldPolicyVersions
+	 *            for any given policy ID, ignore all versions except the last one if there are multiple versions of the policy
+	 * @param policyRef
+	 *            reference to the root PolicySet, to be found among the policies loaded from {@code policyLocations}
+	 * @param maxPolicySetRefDepth
+	 *            maximum allowed depth of PolicySet reference chain (via PolicySetIdReference): PolicySet1 -> PolicySet2 -> ...; a strictly negative value means no limit
+	 * @param reloadDelayMillis
+	 *            time to wait after a change is detected before reloading, during which further changes are merged into the same reload
+	 * @param xacmlParserFactory
+	 *            XACML parser factory
+	 * @param expressionFactory
+	 *            Expression factory for parsing Expressions used in the policies
+	 * @param combiningAlgRegistry
+	 *            Combining algorithm registry for getting implementations of algorithms used in the policies
+	 * @param environmentProperties
+	 *            PDP configuration environment properties, used to replace placeholders in the policy locations
+	 * @throws IllegalArgumentException
+	 *             if one of the arguments is null/invalid, or the policies could not be loaded, or no PolicySet matching {@code policyRef} was found
+	 */
+	public ReloadableRootPolicyProvider(final List<String> policyLocations, final boolean ignoreOldPolicyVersions, final IdReferenceType policyRef, final int maxPolicySetRefDepth,
+	        final long reloadDelayMillis, final XmlnsFilteringParserFactory xacmlParserFactory, final ExpressionFactory expressionFactory, final CombiningAlgRegistry combiningAlgRegistry,
+	        final EnvironmentProperties environmentProperties) throws IllegalArgumentException
+	{
+		if (policyLocations == null || policyLocations.isEmpty())
+		{
+			throw NO_POLICY_LOCATION_ARG_EXCEPTION;
+		}
+
+		if (xacmlParserFactory == null)
+		{
+			throw ILLEGAL_XACML_PARSER_FACTORY_ARGUMENT_EXCEPTION;
+		}
+
+		if (environmentProperties == null)
+		{
+			throw ILLEGAL_ENVIRONMENT_PROPERTIES_ARGUMENT_EXCEPTION;
+		}
+
+		Preconditions.checkNotNull(policyRef, ILLEGAL_XACML_POLICY_REF_ARG_MESSAGE);
+		Preconditions.checkArgument(reloadDelayMillis >= 0, "Invalid reloadDelayMillis: %s", reloadDelayMillis);
+
+		this.policyLocations = new ArrayList<>(policyLocations);
+		this.ignoreOldPolicyVersions = ignoreOldPolicyVersions;
+		this.rootPolicySetId = policyRef.getValue();
+		this.rootPolicyVersionPatterns = new PolicyVersionPatterns(policyRef.getVersion(), policyRef.getEarliestVersion(), policyRef.getLatestVersion());
+		this.maxPolicySetRefDepth = maxPolicySetRefDepth;
+		this.reloadDelayMillis = reloadDelayMillis;
+		this.xacmlParserFactory = xacmlParserFactory;
+		this.expressionFactory = expressionFactory;
+		this.combiningAlgRegistry = combiningAlgRegistry;
+		this.environmentProperties = environmentProperties;
+
+		try
+		{
+			this.watchService = FileSystems.getDefault().newWatchService();
+		}
+		catch (final IOException e)
+		{
+			throw new RuntimeException("Failed to create the watch service for policy locations", e);
+		}
+
+		try
+		{
+			reload();
+		}
+		catch (final IllegalArgumentException e)
+		{
+			closeWatchService();
+			throw e;
+		}
+
+		if (watchedDirectories.isEmpty())
+		{
+			// no file location to watch
+			closeWatchService();
+			this.watcherThread = null;
+		}
+		else
+		{
+			this.watcherThread = new Thread(this::watchPolicyLocations, ReloadableRootPolicyProvider.class.getSimpleName() + "-watcher");
+			this.watcherThread.setDaemon(true);
+			this.watcherThread.start();
+		}
+	}
+
+	private void closeWatchService()
+	{
+		try
+		{
+			watchService.close();
+		}
+		catch (final IOException e)
+		{
+			LOGGER.warn("Failed to close the watch service for policy locations", e);
+		}
+	}
+
+	/*
+	 * Watch policy directories registered to the watch service, and reload on change
+	 */
+	private void watchPolicyLocations()
+	{
+		while (true)
+		{
+			try
+			{
+				final WatchKey watchKey = watchService.take();
+				watchKey.pollEvents();
+				watchKey.reset();
+				/*
+				 * Merge further changes occurring during the reload delay into the same reload
+				 */
+				Thread.sleep(reloadDelayMillis);
+				WatchKey nextWatchKey;
+				while ((nextWatchKey = watchService.poll()) != null)
+				{
+					nextWatchKey.pollEvents();
+					nextWatchKey.reset();
+				}
+			}
+			catch (final InterruptedException | ClosedWatchServiceException e)
+			{
+				LOGGER.debug("Stopped watching policy locations");
+				return;
+			}
+
+			try
+			{
+				reload();
+			}
+			catch (final RuntimeException e)
+			{
+				LOGGER.error("Failed to reload policies from locations {}. Keeping the previous policies.", policyLocations, e);
+			}
+		}
+	}
+
+	private void watch(final Path directory)
+	{
+		if (!Files.isDirectory(directory) || !watchedDirectories.add(directory))
+		{
+			return;
+		}
+
+		try
+		{
+			directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+			LOGGER.debug("Watching policy directory: {}", directory);
+		}
+		catch (final ClosedWatchServiceException e)
+		{
+			watchedDirectories.remove(directory);
+		}
+		catch (final IOException e)
+		{
+			watchedDirectories.remove(directory);
+			LOGGER.warn("Failed to watch policy directory '{}' for changes", directory, e);
+		}
+	}
+
+	/*
+	 * Returns null if not a file
+	 */
+	private static Path getFilePath(final URL url)
+	{
+		if (!"file".equals(url.getProtocol()))
+		{
+			return null;
+		}
+
+		try
+		{
+			return Paths.get(url.toURI());
+		}
+		catch (final URISyntaxException | IllegalArgumentException e)
+		{
+			LOGGER.warn("Policy location '{}' cannot be watched for changes: invalid file URI", url, e);
+			return null;
+		}
+	}
+
+	/*
+	 * Returns null if the file cannot be read
+	 */
+	private static byte[] getContentDigest(final Path filePath)
+	{
+		try
+		{
+			return MessageDigest.getInstance(CONTENT_DIGEST_ALGORITHM).digest(Files.readAllBytes(filePath));
+		}
+		catch (final IOException | NoSuchAlgorithmException e)
+		{
+			// the file is parsed again (and parsing fails if the file cannot be read)
+			LOGGER.debug("Failed to get the content digest of policy file '{}'", filePath, e);
+			return null;
+		}
+	}
+
+	private StaticTopLevelPolicyElementEvaluator getRootPolicy(final CoreRefPolicyProvider refPolicyProvider) throws IllegalArgumentException
+	{
+		final StaticTopLevelPolicyElementEvaluator rootPolicy;
+		try
+		{
+			rootPolicy = refPolicyProvider.get(TopLevelPolicyElementType.POLICY_SET, rootPolicySetId, Optional.of(rootPolicyVersionPatterns), null);
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			throw new IllegalArgumentException("Failed to find a root PolicySet with id = '" + rootPolicySetId + "', " + rootPolicyVersionPatterns, e);
+		}
+
+		if (rootPolicy == null)
+		{
+			throw new IllegalArgumentException("No policy found in the policy locations for the specified PolicySetIdReference: PolicySetId = '" + rootPolicySetId + "'; "
+			        + rootPolicyVersionPatterns);
+		}
+
+		return rootPolicy;
+	}
+
+	/**
+	 * Reloads the policies from the policy locations - parsing again only the policy documents that are new or modified - and replaces the root policy in use with the new one, unless no policy
+	 * document changed. The reload listeners are notified after the replacement.
+	 * <p>
+	 * A policy file is considered unchanged - and not read at all - if its last-modified time and size have not changed. Else its content digest is compared to the one of the previously parsed
+	 * content, and the file is parsed again only if it differs. Documents that are not files are never parsed again.
+	 * <p>
+	 * This is called automatically when changes are detected in the directories of the file locations, and may be called explicitly, e.g. to take changes into account immediately.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the new policies are invalid or no PolicySet matching the root PolicySetIdReference is found among them, in which case the previous policies remain in use
+	 */
+	public synchronized void reload() throws IllegalArgumentException
+	{
+		final Set<Path> patternDirectories = HashCollections.newUpdatableSet();
+		final List<URL> policyURLs = CoreRefPolicyProvider.Factory.expandPolicyLocations(policyLocations, environmentProperties, patternDirectories);
+		patternDirectories.forEach(this::watch);
+
+		final Map<String, PolicyDocument> newPolicyDocumentsByUrl = HashCollections.newUpdatableMap(policyURLs.size());
+		final List<PolicyWithNamespaces<?>> policies = new ArrayList<>(policyURLs.size());
+		final Set<String> changedPolicyIds = HashCollections.newUpdatableSet();
+		XmlnsFilteringParser xacmlParser = null;
+		for (final URL policyURL : policyURLs)
+		{
+			final Path filePath = getFilePath(policyURL);
+			long lastModifiedTime = UNKNOWN_LAST_MODIFIED_TIME;
+			long size = -1;
+			if (filePath != null)
+			{
+				watch(filePath.getParent());
+				try
+				{
+					final BasicFileAttributes fileAttributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+					// full resolution of the file system
+					lastModifiedTime = fileAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+					size = fileAttributes.size();
+				}
+				catch (final IOException e)
+				{
+					// the file is parsed again (and parsing fails if the file cannot be read)
+					LOGGER.debug("Failed to get last-modified time of policy file '{}'", filePath, e);
+				}
+			}
+
+			final String urlKey = policyURL.toExternalForm();
+			final PolicyDocument oldPolicyDocument = policyDocumentsByUrl.get(urlKey);
+			final PolicyDocument policyDocument;
+			if (oldPolicyDocument != null && oldPolicyDocument.lastModifiedTime == lastModifiedTime && oldPolicyDocument.size == size
+			        && (filePath == null || lastModifiedTime != UNKNOWN_LAST_MODIFIED_TIME))
+			{
+				// file metadata unchanged (or not a file)
+				policyDocument = oldPolicyDocument;
+			}
+			else
+			{
+				final byte[] contentDigest = filePath == null ? null : getContentDigest(filePath);
+				if (oldPolicyDocument != null && contentDigest != null && Arrays.equals(oldPolicyDocument.contentDigest, contentDigest))
+				{
+					LOGGER.debug("Policy document {} has new last-modified time or size but same content: not parsed again", policyURL);
+					policyDocument = new PolicyDocument(lastModifiedTime, size, contentDigest, oldPolicyDocument.policy);
+				}
+				else
+				{
+					if (xacmlParser == null)
+					{
+						try
+						{
+							xacmlParser = xacmlParserFactory.getInstance();
+						}
+						catch (final JAXBException e)
+						{
+							throw new IllegalArgumentException("Failed to create JAXB unmarshaller for XML Policy(Set)", e);
+						}
+					}
+
+					LOGGER.debug("Parsing new/modified policy document: {}", policyURL);
+					policyDocument = new PolicyDocument(lastModifiedTime, size, contentDigest, CoreRefPolicyProvider.parsePolicyDocument(xacmlParser, policyURL));
+					changedPolicyIds.add(policyDocument.policyId);
+					if (oldPolicyDocument != null)
+					{
+						changedPolicyIds.add(oldPolicyDocument.policyId);
+					}
+				}
+			}
+
+			if (newPolicyDocumentsByUrl.put(urlKey, policyDocument) == null)
+			{
+				policies.add(policyDocument.policy);
+			}
+		}
+
+		/*
+		 * Policy documents removed
+		 */
+		policyDocumentsByUrl.forEach((urlKey, oldPolicyDocument) -> {
+			if (!newPolicyDocumentsByUrl.containsKey(urlKey))
+			{
+				changedPolicyIds.add(oldPolicyDocument.policyId);
+			}
+		});
+
+		final PolicyTree oldPolicyTree = this.policyTree;
+		if (oldPolicyTree != null && changedPolicyIds.isEmpty())
+		{
+			LOGGER.debug("No policy change in locations {}", policyLocations);
+			return;
+		}
+
+		/*
+		 * New policy tree scope, so that the shared Apply expressions of the old policies are garbage-collected with them
+		 */
+		final ExpressionFactory policyTreeExpressionFactory = expressionFactory instanceof DepthLimitingExpressionFactory
+		        ? ((DepthLimitingExpressionFactory) expressionFactory).newPolicyTreeScope()
+		        : expressionFactory;
+		final CoreRefPolicyProvider newRefPolicyProvider = oldPolicyTree == null
+		        ? CoreRefPolicyProvider.getInstance(policies, ignoreOldPolicyVersions, maxPolicySetRefDepth, policyTreeExpressionFactory, combiningAlgRegistry)
+		        : oldPolicyTree.refPolicyProvider.update(policies, ignoreOldPolicyVersions, changedPolicyIds, policyTreeExpressionFactory);
+		final StaticTopLevelPolicyElementEvaluator newRootPolicy = getRootPolicy(newRefPolicyProvider);
+		this.policyDocumentsByUrl = newPolicyDocumentsByUrl;
+		final Set<PrimaryPolicyMetadata> loadedPolicies = HashCollections.newUpdatableSet();
+		policies.forEach(policy -> CoreRefPolicyProvider.collectPolicyMetadata(policy.getPolicy(), loadedPolicies));
+		this.policyTree = new PolicyTree(newRefPolicyProvider, newRootPolicy, Collections.unmodifiableSet(loadedPolicies));
+		if (oldPolicyTree != null)
+		{
+			LOGGER.info("Policies reloaded from locations {} (changed Policy(Set)Ids: {}). New root policy: {}", policyLocations, changedPolicyIds, newRootPolicy.getPrimaryPolicyMetadata());
+			for (final Runnable reloadListener : reloadListeners)
+			{
+				try
+				{
+					reloadListener.run();
+				}
+				catch (final RuntimeException e)
+				{
+					LOGGER.error("Policy reload listener {} failed", reloadListener, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers a listener to be notified after each successful reload, i.e. after the root policy in use has been replaced (not on initial loading). Listeners are called in the thread doing the
+	 * reload, before any further reload.
+	 *
+	 * @param listener
+	 *            reload listener
+	 */
+	public void addReloadListener(final Runnable listener)
+	{
+		Preconditions.checkNotNull(listener, "Undefined reload listener");
+		reloadListeners.add(listener);
+	}
+
+	/**
+	 * Get the applicable policies, i.e. the current root policy and the policies it refers to (directly or indirectly), replaced atomically with the root policy on reload
+	 *
+	 * @return the current root and referenced policies
+	 */
+	public FlattenedPolicyTree getApplicablePolicies()
+	{
+		return policyTree.applicablePolicies;
+	}
+
+	/**
+	 * Get the attributes that may be needed to evaluate the current root policy (see {@link PolicyAttributeDependencies}), replaced atomically with the root policy on reload
+	 *
+	 * @return attribute dependencies of the current root policy
+	 */
+	public Optional<PolicyAttributeDependencies> getAttributeDependencies()
+	{
+		return policyTree.attributeDependencies;
+	}
+
+	/**
+	 * Get the type, ID and version of all the Policies and PolicySets currently loaded from the policy locations, including the ones nested in other PolicySets, replaced atomically with the root
+	 * policy on reload. Used for instance to drop the evaluation metrics of the policies removed by a reload.
+	 *
+	 * @return the Policies and PolicySets currently loaded
+	 */
+	public Set<PrimaryPolicyMetadata> getLoadedPolicies()
+	{
+		return policyTree.loadedPolicies;
+	}
+
+	/*
+	 * Gets the latest version of a Policy(Set) among the policies currently in use (for tests)
+	 */
+	StaticTopLevelPolicyElementEvaluator getLoadedPolicy(final TopLevelPolicyElementType policyType, final String policyId) throws IndeterminateEvaluationException
+	{
+		return policyTree.refPolicyProvider.get(policyType, policyId, Optional.empty(), null);
+	}
+
+	@Override
+	public StaticTopLevelPolicyElementEvaluator getPolicy(final EvaluationContext context) throws IllegalArgumentException, IndeterminateEvaluationException
+	{
+		/*
+		 * Single volatile read, so that the whole request is evaluated with the same policy tree
+		 */
+		return policyTree.rootPolicy;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (watcherThread != null)
+		{
+			watchService.close();
+			watcherThread.interrupt();
+		}
+	}
+}
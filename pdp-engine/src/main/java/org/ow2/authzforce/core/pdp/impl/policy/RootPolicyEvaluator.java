@@ -18,6 +18,7 @@
 package org.ow2.authzforce.core.pdp.impl.policy;
 
 import java.io.Closeable;
+import java.util.Optional;
 
 import org.ow2.authzforce.core.pdp.api.DecisionResult;
 import org.ow2.authzforce.core.pdp.api.EvaluationContext;
@@ -46,10 +47,22 @@ public interface RootPolicyEvaluator extends Closeable
 	DecisionResult findAndEvaluate(EvaluationContext context);
 
 	/**
-	 * Get the statically applicable policies for this evaluator, i.e. the root policy and (directly/indirectly) referenced policies, only if statically resolved
+	 * Get the statically applicable policies for this evaluator, i.e. the root policy and (directly/indirectly) referenced policies, only if statically resolved, or resolved by a
+	 * {@link ReloadableRootPolicyProvider} (in which case these are the policies currently in use)
 	 *
-	 * @return the static root and referenced policies; null if any of these policies is not statically resolved (once and for all)
+	 * @return the static (or currently reloaded) root and referenced policies; null if any of these policies is not statically resolved (once and for all)
 	 */
 	FlattenedPolicyTree getStaticApplicablePolicies();
 
+	/**
+	 * Get the attributes that may be needed to evaluate the root policy, as determined by static analysis of the root policy (and referenced policies) at initialization time
+	 *
+	 * @return attribute dependencies of the root policy (the one currently in use if resolved by a {@link ReloadableRootPolicyProvider}); empty if the root policy is not statically resolved (once
+	 *         and for all), or the analysis is not supported by the implementation (default)
+	 */
+	default Optional<PolicyAttributeDependencies> getAttributeDependencies()
+	{
+		return Optional.empty();
+	}
+
 }
@@ -18,6 +18,7 @@
 package org.ow2.authzforce.core.pdp.impl.policy;
 
 import java.io.IOException;
+import java.util.Optional;
 
 import org.ow2.authzforce.core.pdp.api.DecisionResult;
 import org.ow2.authzforce.core.pdp.api.DecisionResults;
@@ -28,6 +29,7 @@ import org.ow2.authzforce.core.pdp.api.policy.PolicyEvaluator;
 import org.ow2.authzforce.core.pdp.api.policy.RootPolicyProvider;
 import org.ow2.authzforce.core.pdp.api.policy.StaticRootPolicyProvider;
 import org.ow2.authzforce.core.pdp.api.policy.StaticTopLevelPolicyElementEvaluator;
+import org.ow2.authzforce.core.pdp.impl.ModularAttributeProvider;
 import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +59,11 @@ public final class RootPolicyEvaluators
 
 		private transient final boolean isRootPolicyProviderStatic;
 
+		/*
+		 * Not null iff the root policy provider is reloadable, in which case the applicable policies and attribute dependencies are the current ones of the provider
+		 */
+		private transient final ReloadableRootPolicyProvider reloadableRootPolicyProvider;
+
 		private transient volatile StaticView staticView = null;
 
 		/**
@@ -89,6 +96,7 @@ public final class RootPolicyEvaluators
 
 			this.rootPolicyProvider = rootPolicyProvider;
 			this.isRootPolicyProviderStatic = rootPolicyProvider instanceof StaticRootPolicyProvider;
+			this.reloadableRootPolicyProvider = rootPolicyProvider instanceof ReloadableRootPolicyProvider ? (ReloadableRootPolicyProvider) rootPolicyProvider : null;
 		}
 
 		@Override
@@ -122,13 +130,42 @@ public final class RootPolicyEvaluators
 				return DecisionResults.SIMPLE_NOT_APPLICABLE;
 			}
 
+			/*
+			 * Root policy resolved for this request only (dynamic root policy provider): the attributes to be prefetched are the ones of this root policy (else they are set once and for all, or on
+			 * reload, by the PDP engine)
+			 */
+			if (!isRootPolicyProviderStatic && reloadableRootPolicyProvider == null)
+			{
+				final Optional<PolicyAttributeDependencies> attributeDependencies = PolicyEvaluators.getAttributeDependencies(policy);
+				if (attributeDependencies.isPresent())
+				{
+					ModularAttributeProvider.setRootPolicyAttributeDependencies(context, attributeDependencies.get());
+				}
+			}
+
 			return policy.evaluate(context, true);
 		}
 
 		@Override
 		public FlattenedPolicyTree getStaticApplicablePolicies()
 		{
-			return staticView == null ? null : staticView.getStaticApplicablePolicies();
+			if (staticView != null)
+			{
+				return staticView.getStaticApplicablePolicies();
+			}
+
+			return reloadableRootPolicyProvider == null ? null : reloadableRootPolicyProvider.getApplicablePolicies();
+		}
+
+		@Override
+		public Optional<PolicyAttributeDependencies> getAttributeDependencies()
+		{
+			if (staticView != null)
+			{
+				return staticView.getAttributeDependencies();
+			}
+
+			return reloadableRootPolicyProvider == null ? Optional.empty() : reloadableRootPolicyProvider.getAttributeDependencies();
 		}
 
 		/**
@@ -167,6 +204,7 @@ public final class RootPolicyEvaluators
 		private final StaticTopLevelPolicyElementEvaluator staticRootPolicyEvaluator;
 		private final ExpressionFactory expressionFactory;
 		private transient final FlattenedPolicyTree staticApplicablePolicies;
+		private transient final Optional<PolicyAttributeDependencies> attributeDependencies;
 
 		private StaticView(final StaticRootPolicyProvider staticProvider, final ExpressionFactory expressionFactoryForClosing) throws IOException
 		{
@@ -174,6 +212,7 @@ public final class RootPolicyEvaluators
 			this.expressionFactory = expressionFactoryForClosing;
 			this.staticRootPolicyEvaluator = staticProvider.getPolicy();
 			this.staticApplicablePolicies = new FlattenedPolicyTree(staticRootPolicyEvaluator.getPrimaryPolicyMetadata(), staticRootPolicyEvaluator.getPolicyRefsMetadata());
+			this.attributeDependencies = PolicyEvaluators.getAttributeDependencies(staticRootPolicyEvaluator);
 
 			staticProvider.close();
 		}
@@ -195,5 +234,11 @@ public final class RootPolicyEvaluators
 		{
 			return staticApplicablePolicies;
 		}
+
+		@Override
+		public Optional<PolicyAttributeDependencies> getAttributeDependencies()
+		{
+			return attributeDependencies;
+		}
 	}
 }
@@ -31,6 +31,7 @@ import org.ow2.authzforce.core.pdp.api.expression.ExpressionFactory;
 import org.ow2.authzforce.core.pdp.impl.BooleanEvaluator;
 import org.ow2.authzforce.core.pdp.impl.PepActionExpression;
 import org.ow2.authzforce.core.pdp.impl.TargetEvaluators;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -266,6 +267,9 @@ public final class RuleEvaluator implements Decidable
 
 	private final transient boolean isAlwaysApplicable;
 
+	// null if evaluation metrics disabled
+	private final transient EvaluationMetrics metrics;
+
 	private final transient String toString;
 
 	/**
@@ -281,6 +285,25 @@ public final class RuleEvaluator implements Decidable
 	 *             Invalid Target, Condition or Obligation/Advice expressions
 	 */
 	public RuleEvaluator(final Rule ruleElt, final XPathCompiler xPathCompiler, final ExpressionFactory expressionFactory) throws IllegalArgumentException
+	{
+		this(ruleElt, xPathCompiler, expressionFactory, null);
+	}
+
+	/**
+	 * Instantiates rule from XACML RuleType, with evaluation metrics
+	 *
+	 * @param ruleElt
+	 *            Rule element definition
+	 * @param xPathCompiler
+	 *            XPath compiler corresponding to enclosing policy(set) default XPath version
+	 * @param expressionFactory
+	 *            Expression parser/factory
+	 * @param metrics
+	 *            recorder of the rule's evaluation metrics; null if evaluation metrics are disabled
+	 * @throws java.lang.IllegalArgumentException
+	 *             Invalid Target, Condition or Obligation/Advice expressions
+	 */
+	public RuleEvaluator(final Rule ruleElt, final XPathCompiler xPathCompiler, final ExpressionFactory expressionFactory, final EvaluationMetrics metrics) throws IllegalArgumentException
 	{
 		if (ruleElt == null)
 		{
@@ -289,6 +312,7 @@ public final class RuleEvaluator implements Decidable
 
 		// JAXB fields initialization
 		this.ruleId = ruleElt.getRuleId();
+		this.metrics = metrics;
 
 		this.toString = "Rule['" + ruleId + "']";
 
@@ -406,6 +430,39 @@ public final class RuleEvaluator implements Decidable
 		return this.isAlwaysApplicable;
 	}
 
+	/**
+	 * Get the rule's Target evaluator
+	 * <p>
+	 * Knowing the rule's Target is useful for optimizing combining algorithm evaluators at initialization time, e.g. First-applicable algorithm (decision table).
+	 * 
+	 * @return Target evaluator
+	 */
+	public BooleanEvaluator getTargetEvaluator()
+	{
+		return this.targetEvaluator;
+	}
+
+	/**
+	 * Are the rule's evaluation metrics enabled? If so, the rule must be evaluated for its Target/Condition outcomes to be recorded, i.e. not skipped by optimizations of combining algorithm
+	 * evaluators such as decision tables.
+	 * 
+	 * @return true iff evaluation metrics are recorded for this rule
+	 */
+	public boolean isEvaluationMetricsEnabled()
+	{
+		return this.metrics != null;
+	}
+
+	/**
+	 * Does the rule have a Condition (other than undefined or always True)? If not, the rule applies if and only if its Target matches.
+	 * 
+	 * @return true iff the rule has a Condition that is not always True
+	 */
+	public boolean hasCondition()
+	{
+		return this.conditionEvaluator != TRUE_CONDITION && this.conditionEvaluator != ConditionEvaluators.TRUE_CONDITION;
+	}
+
 	/**
 	 * Does the rule has any PEP action (obligation/advice) ?
 	 * <p>
@@ -440,24 +497,54 @@ public final class RuleEvaluator implements Decidable
 	 * Note that rules are not required to have targets. If no target is specified, then the rule inherits its parent's target. In the event that this <code>RuleEvaluator</code> has no
 	 * <code>Target</code> then the match is assumed to be true, since evaluating a policy tree to this level required the parent's target to match. In debug level, this method logs the evaluation
 	 * result before return. Indeterminate results are logged in warn level only (which "includes" debug level).
+	 * <p>
+	 * If evaluation metrics are enabled, the Target/Condition outcomes, the decision and the evaluation time are recorded as well.
 	 */
 	@Override
 	public DecisionResult evaluate(final EvaluationContext context)
+	{
+		if (metrics == null)
+		{
+			return doEvaluate(context);
+		}
+
+		final long startNanos = System.nanoTime();
+		final DecisionResult result = doEvaluate(context);
+		metrics.evaluated(result.getDecision(), System.nanoTime() - startNanos);
+		return result;
+	}
+
+	private DecisionResult doEvaluate(final EvaluationContext context)
 	{
 		try
 		{
 			if (!targetEvaluator.evaluate(context))
 			{
+				if (metrics != null)
+				{
+					metrics.targetNotMatched();
+				}
+
 				LOGGER.debug("{}/Target -> No-match", this);
 				final DecisionResult result = DecisionResults.SIMPLE_NOT_APPLICABLE;
 				LOGGER.debug("{} -> {}", this, result);
 				return result;
 			}
 
+			if (metrics != null)
+			{
+				metrics.targetMatched();
+			}
+
 			LOGGER.debug("{}/Target -> Match", this);
 		} catch (final IndeterminateEvaluationException e)
 		{
 			// Target is Indeterminate
+			if (metrics != null)
+			{
+				metrics.targetIndeterminate();
+			}
+
 			/*
 			 * Before we lose the exception information, log it at a higher level because it is an evaluation error (but no critical application error, therefore lower level than error)
 			 */
@@ -483,6 +570,11 @@ public final class RuleEvaluator implements Decidable
 			/*
 			 * Condition is Indeterminate, determine Extended Indeterminate (section 7.11) which is the value of the Rule's Effect
 			 */
+			if (metrics != null)
+			{
+				metrics.conditionIndeterminate();
+			}
+
 			/*
 			 * Before we lose the exception information, log it at a higher level because it is an evaluation error (but not a critical application error, therefore lower level than Error level)
 			 */
@@ -494,12 +586,22 @@ public final class RuleEvaluator implements Decidable
 
 		if (!isConditionTrue)
 		{
+			if (metrics != null)
+			{
+				metrics.conditionFalse();
+			}
+
 			LOGGER.debug("{}/Condition -> False", this);
 			final DecisionResult result = DecisionResults.SIMPLE_NOT_APPLICABLE;
 			LOGGER.debug("{} -> {}", this, result);
 			return result;
 		}
 
+		if (metrics != null)
+		{
+			metrics.conditionTrue();
+		}
+
 		LOGGER.debug("{}/Condition -> True", this);
 
 		/*
@@ -0,0 +1,252 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.test.CountingAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the {@link AttributeValueCache} shared by all requests: keying on the dependencies of attribute providers, opt-in of attribute providers, time-to-live and eviction
+ */
+public class AttributeValueCacheTest
+{
+	private static final String SUBJECT_ID = "urn:oasis:names:tc:xacml:1.0:subject:subject-id";
+	private static final String ROLE = "urn:example:role";
+
+	private static final Set<AttributeDesignatorType> SUBJECT_ID_DEPENDENCY = Collections
+			.singleton(new AttributeDesignatorType(TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, TestPdpEngines.XSD_STRING, null, true));
+
+	/*
+	 * Permit iff role is 'admin'
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue("admin")
+			+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Apply></Condition></Rule></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private final AtomicLong nanoTime = new AtomicLong(0);
+
+	private AttributeValueCache newCache(final int maxEntries, final long timeToLiveSeconds, final long emptyBagTimeToLiveSeconds,
+			final Set<CloseableNamedAttributeProvider.DependencyAwareFactory> cachedModuleFactories)
+	{
+		return new AttributeValueCache(maxEntries, 1,
+				Collections.singletonMap(AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), ROLE),
+						new AttributeValueCache.TimeToLive(timeToLiveSeconds, emptyBagTimeToLiveSeconds)),
+				cachedModuleFactories, nanoTime::get);
+	}
+
+	private BasePdpEngine newPdpEngine(final CountingAttributeProvider provider, final AttributeValueCache cache) throws IOException
+	{
+		return TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), TestPdpEngines.newExpressionFactory(Collections.singletonList(provider), false, Optional.of(cache), Optional.empty()),
+				ROOT_POLICY, Optional.empty());
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final String subjectId)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, subjectId)).getDecision();
+	}
+
+	private void advanceSeconds(final long seconds)
+	{
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	@Test
+	public void resultsAreCachedByValuesOfDependencies() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		final AttributeValueCache cache = newCache(10, 60, 0, Collections.singleton(provider));
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(1, provider.getCallCount());
+
+			// different key
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "bob"));
+			assertEquals(2, provider.getCallCount());
+
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "bob"));
+			assertEquals(2, provider.getCallCount());
+			assertEquals(3, cache.getHitCount());
+			assertEquals(2, cache.getMissCount());
+			assertEquals(2, cache.size());
+		}
+	}
+
+	@Test
+	public void resultsOfProviderNotDeclaredToCacheAreNotCached() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		final AttributeValueCache cache = newCache(10, 60, 0, Collections.emptySet());
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(2, provider.getCallCount());
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void resultsOfProviderWithUndeclaredDependenciesAreNotCached() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		provider.setValues("admin");
+		final AttributeValueCache cache = newCache(10, 60, 0, Collections.singleton(provider));
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(2, provider.getCallCount());
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void resultsOfProviderWithNoDependencyAreCachedOnlyIfDeclaredToCache() throws IOException
+	{
+		final CountingAttributeProvider notDeclaredProvider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, Collections.emptySet());
+		notDeclaredProvider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(notDeclaredProvider, newCache(10, 60, 0, Collections.emptySet())))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "bob"));
+			assertEquals(2, notDeclaredProvider.getCallCount());
+		}
+
+		final CountingAttributeProvider declaredProvider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, Collections.emptySet());
+		declaredProvider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(declaredProvider, newCache(10, 60, 0, Collections.singleton(declaredProvider))))
+		{
+			// same result for all requests
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "bob"));
+			assertEquals(1, declaredProvider.getCallCount());
+		}
+	}
+
+	@Test
+	public void cachedValuesExpireAfterTimeToLive() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		final AttributeValueCache cache = newCache(10, 10, 0, Collections.singleton(provider));
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			advanceSeconds(9);
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "alice"));
+			assertEquals(1, provider.getCallCount());
+
+			provider.setValues("user");
+			advanceSeconds(1);
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(2, provider.getCallCount());
+			assertEquals(1, cache.getEvictionCount());
+		}
+	}
+
+	@Test
+	public void emptyBagsAreCachedOnlyWithEmptyBagTimeToLive() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		try (final BasePdpEngine pdp = newPdpEngine(provider, newCache(10, 60, 0, Collections.singleton(provider))))
+		{
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(2, provider.getCallCount());
+		}
+
+		final CountingAttributeProvider negativeCachingProvider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		try (final BasePdpEngine pdp = newPdpEngine(negativeCachingProvider, newCache(10, 60, 5, Collections.singleton(negativeCachingProvider))))
+		{
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(1, negativeCachingProvider.getCallCount());
+
+			advanceSeconds(5);
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, "alice"));
+			assertEquals(2, negativeCachingProvider.getCallCount());
+		}
+	}
+
+	@Test
+	public void errorsAreNotCached() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setFailing(true);
+		final AttributeValueCache cache = newCache(10, 60, 60, Collections.singleton(provider));
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			evaluate(pdp, "alice");
+			evaluate(pdp, "alice");
+			assertEquals(2, provider.getCallCount());
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvictedWhenFull() throws IOException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		final AttributeValueCache cache = newCache(2, 0, 0, Collections.singleton(provider));
+		try (final BasePdpEngine pdp = newPdpEngine(provider, cache))
+		{
+			evaluate(pdp, "alice");
+			evaluate(pdp, "bob");
+			// alice used more recently than bob
+			evaluate(pdp, "alice");
+			assertEquals(2, provider.getCallCount());
+
+			evaluate(pdp, "carol");
+			assertEquals(3, provider.getCallCount());
+			assertEquals(1, cache.getEvictionCount());
+			assertEquals(2, cache.size());
+
+			evaluate(pdp, "alice");
+			assertEquals(3, provider.getCallCount());
+			evaluate(pdp, "bob");
+			assertEquals(4, provider.getCallCount());
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.policy.BasePrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.PolicyVersion;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeId;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link EvaluationContextSlots} allocation per PDP engine, and of slot-based state in {@link IndividualDecisionRequestContext}
+ */
+public class EvaluationContextSlotsTest
+{
+	private static final String SUBJECT_ID = XacmlAttributeId.XACML_1_0_SUBJECT_ID.value();
+	private static final String RESOURCE_ID = XacmlAttributeId.XACML_1_0_RESOURCE_ID.value();
+
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	/*
+	 * Policy with VariableDefinitions 'otherVariableIds' (unused) then 'v' = the single value of (category, attributeId), permitting iff v = 'alice'
+	 */
+	private static String newPolicy(final String category, final String attributeId, final String... otherVariableIds)
+	{
+		final StringBuilder sb = new StringBuilder("<Policy xmlns=\"").append(TestPdpEngines.XACML_NS)
+				.append("\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-unless-permit\"><Target />");
+		for (final String varId : otherVariableIds)
+		{
+			sb.append("<VariableDefinition VariableId=\"").append(varId).append("\"><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-bag-size\">")
+					.append(TestPdpEngines.stringDesignator(category, attributeId, false)).append("</Apply></VariableDefinition>");
+		}
+
+		return sb.append("<VariableDefinition VariableId=\"v\"><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-one-and-only\">")
+				.append(TestPdpEngines.stringDesignator(category, attributeId, true)).append("</Apply></VariableDefinition>")
+				.append("<Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\"><VariableReference VariableId=\"v\" />")
+				.append(TestPdpEngines.stringValue("alice")).append("</Apply></Condition></Rule></Policy>").toString();
+	}
+
+	private static EvaluationContextSlots getSlots(final PdpEngineConfiguration conf)
+	{
+		return ((DepthLimitingExpressionFactory) conf.getXacmlExpressionFactory()).getEvaluationContextSlots();
+	}
+
+	@Test
+	public void slotsAreAssignedDenselyPerAllocator()
+	{
+		final EvaluationContextSlots slots1 = new EvaluationContextSlots();
+		final EvaluationContextSlots slots2 = new EvaluationContextSlots();
+		assertEquals(0, slots1.assignVariableSlot("a"));
+		assertEquals(1, slots1.assignVariableSlot("b"));
+		assertEquals(0, slots1.assignVariableSlot("a"));
+		assertEquals(0, slots2.assignVariableSlot("b"));
+		assertEquals(EvaluationContextSlots.UNASSIGNED_SLOT, slots2.getVariableSlot("a"));
+		assertEquals(2, slots1.getVariableSlotCount());
+		assertEquals(1, slots2.getVariableSlotCount());
+
+		final BasePrimaryPolicyMetadata policy = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "P", new PolicyVersion("1.0"));
+		assertEquals(0, slots2.assignPolicySlot(policy));
+		assertEquals(0, slots2.assignPolicySlot(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "P", new PolicyVersion("1.0"))));
+		assertEquals(1, slots2.assignPolicySlot(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "P", new PolicyVersion("2.0"))));
+		assertEquals(0, slots1.getPolicySlotCount());
+		assertEquals(2, slots2.getPolicySlotCount());
+	}
+
+	@Test
+	public void variablesAndPolicyResultsAreIsolatedAcrossEngines() throws IOException
+	{
+		final Path dir1 = tmpFolder.newFolder().toPath();
+		TestPdpEngines.write(dir1, "policy.xml", newPolicy(TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID));
+		final PdpEngineConfiguration conf1 = TestPdpEngines.newConfiguration(dir1, "", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER);
+
+		/*
+		 * Same policy ID and VariableId 'v' but different definition, and different slot for 'v'
+		 */
+		final Path dir2 = tmpFolder.newFolder().toPath();
+		TestPdpEngines.write(dir2, "policy.xml", newPolicy(TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "u"));
+		final PdpEngineConfiguration conf2 = TestPdpEngines.newConfiguration(dir2, "", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER);
+
+		try (final BasePdpEngine pdp1 = new BasePdpEngine(conf1); final BasePdpEngine pdp2 = new BasePdpEngine(conf2))
+		{
+			final EvaluationContextSlots slots1 = getSlots(conf1);
+			final EvaluationContextSlots slots2 = getSlots(conf2);
+			assertEquals("Variable slots of engine #1", 1, slots1.getVariableSlotCount());
+			assertEquals("Policy slots of engine #1", 1, slots1.getPolicySlotCount());
+			assertEquals("Variable slots of engine #2", 2, slots2.getVariableSlotCount());
+			assertEquals(0, slots1.getVariableSlot("v"));
+			assertEquals(1, slots2.getVariableSlot("v"));
+
+			/*
+			 * Interleave the evaluations in the same thread, i.e. with the thread's reusable contexts of both engines
+			 */
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(DecisionType.PERMIT, pdp1.evaluate(TestPdpEngines.newRequest(pdp1, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice", TestPdpEngines.RESOURCE_CATEGORY,
+						RESOURCE_ID, "doc")).getDecision());
+				assertEquals(DecisionType.DENY, pdp2.evaluate(TestPdpEngines.newRequest(pdp2, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice", TestPdpEngines.RESOURCE_CATEGORY,
+						RESOURCE_ID, "doc")).getDecision());
+				assertEquals(DecisionType.DENY, pdp1.evaluate(TestPdpEngines.newRequest(pdp1, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "bob", TestPdpEngines.RESOURCE_CATEGORY,
+						RESOURCE_ID, "alice")).getDecision());
+				assertEquals(DecisionType.PERMIT, pdp2.evaluate(TestPdpEngines.newRequest(pdp2, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "bob", TestPdpEngines.RESOURCE_CATEGORY,
+						RESOURCE_ID, "alice")).getDecision());
+			}
+
+			// no slot assigned during evaluation
+			assertEquals(1, slots1.getVariableSlotCount());
+			assertEquals(2, slots2.getVariableSlotCount());
+		}
+	}
+
+	@Test
+	public void slotsOfOtherAllocatorAreNotUsed() throws IndeterminateEvaluationException
+	{
+		final EvaluationContextSlots slots1 = new EvaluationContextSlots();
+		final EvaluationContextSlots slots2 = new EvaluationContextSlots();
+		slots1.assignVariableSlot("v");
+		final IndividualDecisionRequestContext ctx = IndividualDecisionRequestContext.newReusableInstance(slots1);
+		assertTrue(ctx.isSlottedBy(slots1));
+		assertFalse(ctx.isSlottedBy(slots2));
+		assertFalse(ctx.isSlottedBy(null));
+		assertFalse(new IndividualDecisionRequestContext(null, null, false).isSlottedBy(slots1));
+
+		/*
+		 * Variable without slot in the context's allocator, e.g. set by an evaluator of another engine with the String-keyed method
+		 */
+		assertNotNull(ctx.acquire(null, false));
+		assertTrue(ctx.putVariableIfAbsent("w", new StringValue("x")));
+		assertFalse(ctx.putVariableIfAbsent("w", new StringValue("y")));
+		assertEquals(new StringValue("x"), ctx.getVariableValue("w", StandardDatatypes.STRING));
+		assertEquals(EvaluationContextSlots.UNASSIGNED_SLOT, slots1.getVariableSlot("w"));
+		ctx.release();
+	}
+
+	@Test
+	public void releasedContextIsReusedWithoutState() throws IndeterminateEvaluationException
+	{
+		final EvaluationContextSlots slots = new EvaluationContextSlots();
+		final int varSlot = slots.assignVariableSlot("v");
+		final int policySlot = slots.assignPolicySlot(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "P", new PolicyVersion("1.0")));
+		final IndividualDecisionRequestContext ctx = IndividualDecisionRequestContext.newReusableInstance(slots);
+
+		assertNotNull(ctx.acquire(null, false));
+		assertNull("Nested acquisition of the same context", ctx.acquire(null, false));
+		assertTrue(ctx.putVariableIfAbsent(varSlot, "v", new StringValue("a")));
+		assertTrue(ctx.putVariableIfAbsent("w", new StringValue("b")));
+		ctx.putPolicyEvaluationResults(policySlot, "results");
+		assertEquals(new StringValue("a"), ctx.getVariableValue("v", StandardDatatypes.STRING));
+		ctx.release();
+
+		/*
+		 * Slots assigned after the context creation (e.g. policy reload)
+		 */
+		final int newVarSlot = slots.assignVariableSlot("x");
+		final int newPolicySlot = slots.assignPolicySlot(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY_SET, "PS", new PolicyVersion("1.0")));
+
+		assertNotNull(ctx.acquire(null, false));
+		assertNull(ctx.getVariableValue(varSlot, "v", StandardDatatypes.STRING));
+		assertNull(ctx.getVariableValue("w", StandardDatatypes.STRING));
+		assertNull(ctx.getPolicyEvaluationResults(policySlot));
+		assertNull(ctx.getVariableValue(newVarSlot, "x", StandardDatatypes.STRING));
+		assertNull(ctx.getPolicyEvaluationResults(newPolicySlot));
+		assertTrue(ctx.putVariableIfAbsent(varSlot, "v", new StringValue("c")));
+		assertTrue(ctx.putVariableIfAbsent(newVarSlot, "x", new StringValue("d")));
+		ctx.putPolicyEvaluationResults(newPolicySlot, "other results");
+		assertEquals(new StringValue("c"), ctx.getVariableValue(varSlot, "v", StandardDatatypes.STRING));
+		assertEquals(new StringValue("d"), ctx.removeVariable("x"));
+		assertNull(ctx.getVariableValue(newVarSlot, "x", StandardDatatypes.STRING));
+		ctx.release();
+
+		assertNotNull(ctx.acquire(null, false));
+		assertNull(ctx.getVariableValue(varSlot, "v", StandardDatatypes.STRING));
+		assertNull(ctx.getPolicyEvaluationResults(newPolicySlot));
+		ctx.release();
+	}
+}
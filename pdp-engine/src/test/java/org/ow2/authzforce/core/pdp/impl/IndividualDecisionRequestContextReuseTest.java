@@ -0,0 +1,244 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.DecisionCache;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.AttributeSelectorExpression;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.api.value.XPathValue;
+import org.ow2.authzforce.core.pdp.impl.test.CountingAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the reuse of {@link IndividualDecisionRequestContext}s by the PDP engine for successive Individual Decision Requests in the same thread
+ */
+public class IndividualDecisionRequestContextReuseTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ROLE_ID = "urn:oasis:names:tc:xacml:2.0:subject:role";
+
+	private static final AttributeFqn RESOURCE_ID_FQN = AttributeFqns.newInstance(TestPdpEngines.RESOURCE_CATEGORY, Optional.empty(), RESOURCE_ID);
+	private static final AttributeFqn ROLE_ID_FQN = AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), ROLE_ID);
+
+	/*
+	 * Permit iff resource-id = 'public' or role (from attribute provider) = 'admin', with a VariableDefinition on the resource-id
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<VariableDefinition VariableId=\"isPublic\"><Apply FunctionId=\"urn:oasis:names:tc:xacml:3.0:function:any-of\"><Function FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\" />"
+			+ TestPdpEngines.stringValue("public") + TestPdpEngines.stringDesignator(TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false) + "</Apply></VariableDefinition>"
+			+ "<Rule RuleId=\"R1\" Effect=\"Permit\"><Condition><VariableReference VariableId=\"isPublic\" /></Condition></Rule>"
+			+ "<Rule RuleId=\"R2\" Effect=\"Permit\"><Target><AnyOf><AllOf>" + TestPdpEngines.stringEqualMatch("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, false)
+			+ "</AllOf></AnyOf></Target></Rule><Rule RuleId=\"R3\" Effect=\"Deny\" /></Policy>";
+
+	private static final class RecordingListener implements EvaluationContext.Listener
+	{
+		private final List<AttributeFqn> notifiedAttributeFqns = new ArrayList<>();
+
+		@Override
+		public <AV extends AttributeValue> void namedAttributeValueConsumed(final AttributeFqn attributeFqn, final AttributeBag<AV> value)
+		{
+			notifiedAttributeFqns.add(attributeFqn);
+		}
+
+		@Override
+		public <AV extends AttributeValue> void namedAttributeValueProduced(final AttributeFqn attributeFqn, final AttributeBag<AV> value)
+		{
+			notifiedAttributeFqns.add(attributeFqn);
+		}
+
+		@Override
+		public <AV extends AttributeValue> void attributeSelectorResultConsumed(final AttributeSelectorExpression<AV> attributeSelector, final Bag<AV> value)
+		{
+			// not used
+		}
+
+		@Override
+		public <AV extends AttributeValue> void attributeSelectorResultProduced(final AttributeSelectorExpression<AV> attributeSelector, final Optional<AttributeBag<XPathValue>> contextSelectorValue,
+				final Bag<AV> value)
+		{
+			// not used
+		}
+	}
+
+	/**
+	 * Decision cache that never returns any result but retains the evaluation contexts it is given
+	 */
+	private static final class ContextRetainingDecisionCache implements DecisionCache
+	{
+		private final List<EvaluationContext> retainedContexts = new ArrayList<>();
+
+		@Override
+		public boolean isEvaluationContextRequired()
+		{
+			return true;
+		}
+
+		@Override
+		public DecisionResult get(final DecisionRequest request, final EvaluationContext evalCtx)
+		{
+			return null;
+		}
+
+		@Override
+		public void put(final DecisionRequest request, final DecisionResult result, final EvaluationContext evalCtx)
+		{
+			retainedContexts.add(evalCtx);
+		}
+
+		@Override
+		public <REQ extends DecisionRequest> Map<REQ, DecisionResult> getAll(final List<REQ> requests)
+		{
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public <REQ extends DecisionRequest> void putAll(final Map<REQ, DecisionResult> resultsByRequest)
+		{
+			// not used, evaluation context required
+		}
+
+		@Override
+		public void close()
+		{
+			retainedContexts.clear();
+		}
+	}
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void releasedContextKeepsNoRequestState() throws IndeterminateEvaluationException
+	{
+		final IndividualDecisionRequestContext ctx = IndividualDecisionRequestContext.newReusableInstance(new EvaluationContextSlots());
+		final Map<AttributeFqn, AttributeBag<?>> namedAttributes = ctx.acquire(null, true);
+		assertNotNull(namedAttributes);
+		namedAttributes.put(RESOURCE_ID_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("public")));
+		final RecordingListener listener = new RecordingListener();
+		ctx.putListener(RecordingListener.class, listener);
+		assertTrue(ctx.putNamedAttributeValueIfAbsent(ROLE_ID_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("admin"))));
+		assertTrue(ctx.putVariableIfAbsent("v", new StringValue("a")));
+		ctx.putOther("k", "value");
+		assertTrue(ctx.isApplicablePolicyIdListRequested());
+		assertEquals(1, listener.notifiedAttributeFqns.size());
+		ctx.release();
+
+		assertTrue(ctx.acquire(null, false).isEmpty());
+		assertFalse(ctx.getNamedAttributes().hasNext());
+		assertNull(ctx.getNamedAttributeValue(RESOURCE_ID_FQN, StandardDatatypes.STRING));
+		assertNull(ctx.getNamedAttributeValue(ROLE_ID_FQN, StandardDatatypes.STRING));
+		assertNull(ctx.getVariableValue("v", StandardDatatypes.STRING));
+		assertFalse(ctx.containsKey("k"));
+		assertNull(ctx.getOther("k"));
+		assertNull(ctx.getListener(RecordingListener.class));
+		assertFalse(ctx.isApplicablePolicyIdListRequested());
+
+		// the listener of the previous request is not notified anymore
+		assertTrue(ctx.putNamedAttributeValueIfAbsent(ROLE_ID_FQN, Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("guest"))));
+		assertEquals(1, listener.notifiedAttributeFqns.size());
+		ctx.release();
+	}
+
+	@Test
+	public void consecutiveRequestsInSameThreadDoNotShareState() throws IOException
+	{
+		final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, null);
+		final Path dir = tmpDir.newFolder().toPath();
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(dir, Collections.singletonList(roleProvider), ROOT_POLICY, Optional.empty()))
+		{
+			roleProvider.setValues("admin");
+			assertEquals(DecisionType.PERMIT, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public")).getDecision());
+			assertEquals(0, roleProvider.getCallCount());
+			assertEquals(DecisionType.PERMIT, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret")).getDecision());
+			assertEquals(1, roleProvider.getCallCount());
+
+			/*
+			 * Neither the variable value nor the role resolved for the previous requests may be reused
+			 */
+			roleProvider.setValues("guest");
+			assertEquals(DecisionType.DENY, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret")).getDecision());
+			assertEquals(2, roleProvider.getCallCount());
+			assertEquals(DecisionType.DENY, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, "guest")).getDecision());
+			// role in the request
+			assertEquals(2, roleProvider.getCallCount());
+			assertEquals(DecisionType.PERMIT, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public")).getDecision());
+		}
+	}
+
+	@Test
+	public void contextsPassedToDecisionCacheAreNotReused() throws IOException
+	{
+		final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, null);
+		final ContextRetainingDecisionCache decisionCache = new ContextRetainingDecisionCache();
+		final Path dir = tmpDir.newFolder().toPath();
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(dir, Collections.singletonList(roleProvider), ROOT_POLICY, Optional.of(decisionCache)))
+		{
+			assertEquals(DecisionType.PERMIT, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public")).getDecision());
+			assertEquals(DecisionType.DENY, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret")).getDecision());
+			assertEquals(2, decisionCache.retainedContexts.size());
+			final EvaluationContext firstCtx = decisionCache.retainedContexts.get(0);
+			final EvaluationContext secondCtx = decisionCache.retainedContexts.get(1);
+			assertNotSame(firstCtx, secondCtx);
+
+			/*
+			 * The contexts retained by the cache still hold the state of their own request
+			 */
+			assertEquals(Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("public")), firstCtx.getNamedAttributeValue(RESOURCE_ID_FQN, StandardDatatypes.STRING));
+			assertNull(firstCtx.getNamedAttributeValue(ROLE_ID_FQN, StandardDatatypes.STRING));
+			assertEquals(Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue("secret")), secondCtx.getNamedAttributeValue(RESOURCE_ID_FQN, StandardDatatypes.STRING));
+			// role resolved by the provider (no value)
+			assertTrue(secondCtx.getNamedAttributeValue(ROLE_ID_FQN, StandardDatatypes.STRING).isEmpty());
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.combining;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.Decidable;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.DecisionResults;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.PepAction;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link AdaptiveEvaluationOrder} and of the combining algorithms using it
+ */
+public class AdaptiveEvaluationOrderTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ACTION_ID = "urn:oasis:names:tc:xacml:1.0:action:action-id";
+	private static final String ROLE = "urn:example:role";
+	private static final String ADAPTIVE_ORDER_PDP_ATTRIBUTE = "adaptiveCombinedElementOrder=\"true\"";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	/*
+	 * Combined element returning a constant decision, taking at least a given time to evaluate
+	 */
+	private static Decidable newConstantElement(final String name, final DecisionResult result, final long minEvaluationNanos)
+	{
+		return new Decidable()
+		{
+
+			@Override
+			public DecisionResult evaluate(final EvaluationContext context)
+			{
+				final long startNanos = System.nanoTime();
+				while (System.nanoTime() - startNanos < minEvaluationNanos)
+				{
+					// busy wait
+				}
+
+				return result;
+			}
+
+			@Override
+			public String toString()
+			{
+				return name;
+			}
+		};
+	}
+
+	/*
+	 * Evaluates the elements in the given order until the short-circuiting decision (Deny), as deny-overrides would, and returns the names of the elements in this order
+	 */
+	private static List<String> evaluateUntilDeny(final List<? extends Decidable> orderedElements)
+	{
+		final List<String> names = new ArrayList<>(orderedElements.size());
+		boolean denied = false;
+		for (final Decidable element : orderedElements)
+		{
+			names.add(element.toString());
+			if (!denied)
+			{
+				denied = element.evaluate(null).getDecision() == DecisionType.DENY;
+			}
+		}
+
+		return names;
+	}
+
+	@Test
+	public void elementsAreReorderedAtTheEndOfEachPeriod()
+	{
+		// the slow element never returns the short-circuiting decision, the fast one always does
+		final AdaptiveEvaluationOrder evaluationOrder = new AdaptiveEvaluationOrder(
+				Arrays.asList(newConstantElement("slow", DecisionResults.SIMPLE_NOT_APPLICABLE, 1000), newConstantElement("fast", DecisionResults.SIMPLE_DENY, 0)), DecisionType.DENY);
+		for (int i = 1; i < AdaptiveEvaluationOrder.REORDERING_PERIOD; i++)
+		{
+			assertEquals(Arrays.asList("slow", "fast"), evaluateUntilDeny(evaluationOrder.next()));
+		}
+
+		assertEquals(Arrays.asList("fast", "slow"), evaluateUntilDeny(evaluationOrder.next()));
+	}
+
+	@Test
+	public void orderOfDeclarationIsKeptForElementsNotEvaluated()
+	{
+		final AdaptiveEvaluationOrder evaluationOrder = new AdaptiveEvaluationOrder(Arrays.asList(newConstantElement("a", DecisionResults.SIMPLE_NOT_APPLICABLE, 0),
+				newConstantElement("b", DecisionResults.SIMPLE_NOT_APPLICABLE, 0), newConstantElement("c", DecisionResults.SIMPLE_NOT_APPLICABLE, 0)), DecisionType.DENY);
+		List<String> names = null;
+		for (int i = 0; i < 2 * AdaptiveEvaluationOrder.REORDERING_PERIOD; i++)
+		{
+			names = new ArrayList<>();
+			for (final Decidable element : evaluationOrder.next())
+			{
+				names.add(element.toString());
+			}
+		}
+
+		assertEquals(Arrays.asList("a", "b", "c"), names);
+	}
+
+	private static String condition(final String value, final String category, final String attributeId, final boolean mustBePresent)
+	{
+		return "<Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue(value)
+				+ TestPdpEngines.stringDesignator(category, attributeId, mustBePresent) + "</Apply></Condition>";
+	}
+
+	private static String obligation(final String obligationId, final String effect)
+	{
+		return "<ObligationExpressions><ObligationExpression ObligationId=\"" + obligationId + "\" FulfillOn=\"" + effect + "\" /></ObligationExpressions>";
+	}
+
+	/*
+	 * Deny rules: R1 applies only to role 'blocked', R2 always applies, with different obligations
+	 */
+	private static final String[] DENY_RULES_WITH_OBLIGATIONS = { "<Rule RuleId=\"R1\" Effect=\"Deny\">" + condition("blocked", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false)
+			+ obligation("o1", "Deny") + "</Rule>", "<Rule RuleId=\"R2\" Effect=\"Deny\">" + obligation("o2", "Deny") + "</Rule>" };
+
+	/*
+	 * Rules with both effects, some Indeterminate if the action is missing, for the decision equivalence tests
+	 */
+	private static final String[] RULES = { "<Rule RuleId=\"R1\" Effect=\"Deny\">" + condition("blocked", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Rule>",
+			"<Rule RuleId=\"R2\" Effect=\"Permit\">" + condition("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Rule>",
+			"<Rule RuleId=\"R3\" Effect=\"Deny\">" + condition("delete", TestPdpEngines.ACTION_CATEGORY, ACTION_ID, true) + "</Rule>",
+			"<Rule RuleId=\"R4\" Effect=\"Permit\">" + condition("read", TestPdpEngines.ACTION_CATEGORY, ACTION_ID, true) + "</Rule>",
+			"<Rule RuleId=\"R5\" Effect=\"Deny\"><Target><AnyOf><AllOf>" + TestPdpEngines.stringEqualMatch("secret", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false)
+					+ "</AllOf></AnyOf></Target></Rule>" };
+
+	private static String newPolicy(final String ruleCombiningAlgId, final String... rules)
+	{
+		return "<Policy xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicyId=\"AdaptiveOrderP\" Version=\"1.0\" RuleCombiningAlgId=\"" + ruleCombiningAlgId + "\"><Target />"
+				+ String.join("", rules) + "</Policy>";
+	}
+
+	/*
+	 * PolicySet combining one Policy per rule
+	 */
+	private static String newPolicySet(final String policyCombiningAlgId, final String... rules)
+	{
+		final StringBuilder policySet = new StringBuilder("<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicySetId=\"AdaptiveOrderPS\" Version=\"1.0\" PolicyCombiningAlgId=\""
+				+ policyCombiningAlgId + "\"><Target />");
+		for (int i = 0; i < rules.length; i++)
+		{
+			policySet.append("<Policy PolicyId=\"AdaptiveOrderP").append(i).append(
+					"\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />").append(rules[i]).append("</Policy>");
+		}
+
+		return policySet.append("</PolicySet>").toString();
+	}
+
+	private static List<String> getObligationIds(final BasePdpEngine pdp, final String role)
+	{
+		final DecisionResult result = pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE, role, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc"));
+		assertEquals(DecisionType.DENY, result.getDecision());
+		final List<String> obligationIds = new ArrayList<>();
+		for (final PepAction pepAction : result.getPepActions())
+		{
+			obligationIds.add(pepAction.getId());
+		}
+
+		return obligationIds;
+	}
+
+	/*
+	 * Evaluates the root policy once per period with a request for which only R2 denies, then with a request for which R1 and R2 both deny, and returns the obligations of the last result
+	 */
+	private List<String> getObligationIdsAfterOnePeriod(final String pdpAttributes, final String rootPolicy) throws IOException
+	{
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), pdpAttributes, rootPolicy))
+		{
+			for (int i = 0; i < AdaptiveEvaluationOrder.REORDERING_PERIOD; i++)
+			{
+				assertEquals(Arrays.asList("o2"), getObligationIds(pdp, "user"));
+			}
+
+			return getObligationIds(pdp, "blocked");
+		}
+	}
+
+	@Test
+	public void rulesAreReorderedByDenyOverrides() throws IOException
+	{
+		final String policy = newPolicy("urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-overrides", DENY_RULES_WITH_OBLIGATIONS);
+		assertEquals(Arrays.asList("o1"), getObligationIdsAfterOnePeriod("", policy));
+		// R2 always returns Deny, therefore evaluated first after the first period
+		assertEquals(Arrays.asList("o2"), getObligationIdsAfterOnePeriod(ADAPTIVE_ORDER_PDP_ATTRIBUTE, policy));
+	}
+
+	@Test
+	public void policiesAreReorderedByDenyOverrides() throws IOException
+	{
+		final String policySet = newPolicySet("urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-overrides", DENY_RULES_WITH_OBLIGATIONS);
+		assertEquals(Arrays.asList("o1"), getObligationIdsAfterOnePeriod("", policySet));
+		assertEquals(Arrays.asList("o2"), getObligationIdsAfterOnePeriod(ADAPTIVE_ORDER_PDP_ATTRIBUTE, policySet));
+	}
+
+	/*
+	 * PolicySet combining one Policy per rule, applicable to resource 'doc', and enough other policies not applicable to this resource for the child policies to be indexed by Target
+	 */
+	private static String newTargetIndexedPolicySet(final String policyCombiningAlgId, final String... rules)
+	{
+		final StringBuilder policySet = new StringBuilder("<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicySetId=\"AdaptiveOrderPS\" Version=\"1.0\" PolicyCombiningAlgId=\""
+				+ policyCombiningAlgId + "\"><Target />");
+		for (int i = 0; i < 8; i++)
+		{
+			policySet.append("<Policy PolicyId=\"AdaptiveOrderP").append(i).append(
+					"\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>")
+					.append(TestPdpEngines.stringEqualMatch(i < rules.length ? "doc" : "other" + i, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false)).append("</AllOf></AnyOf></Target>")
+					.append(i < rules.length ? rules[i] : "<Rule RuleId=\"R\" Effect=\"Permit\" />").append("</Policy>");
+		}
+
+		return policySet.append("</PolicySet>").toString();
+	}
+
+	@Test
+	public void policiesIndexedByTargetAreReorderedByDenyOverrides() throws IOException
+	{
+		final String policySet = newTargetIndexedPolicySet("urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-overrides", DENY_RULES_WITH_OBLIGATIONS);
+		assertEquals(Arrays.asList("o1"), getObligationIdsAfterOnePeriod("", policySet));
+		// the adaptive order is kept across requests, although only the policies applicable to resource 'doc' are evaluated
+		assertEquals(Arrays.asList("o2"), getObligationIdsAfterOnePeriod(ADAPTIVE_ORDER_PDP_ATTRIBUTE, policySet));
+	}
+
+	@Test
+	public void orderedAlgorithmsAreNotReordered() throws IOException
+	{
+		assertEquals(Arrays.asList("o1"), getObligationIdsAfterOnePeriod(ADAPTIVE_ORDER_PDP_ATTRIBUTE,
+				newPolicy("urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:ordered-deny-overrides", DENY_RULES_WITH_OBLIGATIONS)));
+		assertEquals(Arrays.asList("o1"), getObligationIdsAfterOnePeriod(ADAPTIVE_ORDER_PDP_ATTRIBUTE,
+				newPolicySet("urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:ordered-deny-overrides", DENY_RULES_WITH_OBLIGATIONS)));
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final int requestIndex)
+	{
+		final String role = new String[] { "admin", "blocked", "user" }[requestIndex % 3];
+		final String resource = (requestIndex / 3) % 2 == 0 ? "doc" : "secret";
+		final int actionIndex = (requestIndex / 6) % 4;
+		if (actionIndex == 3)
+		{
+			// missing action
+			return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE, role, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, resource)).getDecision();
+		}
+
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE, role, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, resource,
+				TestPdpEngines.ACTION_CATEGORY, ACTION_ID, new String[] { "read", "delete", "write" }[actionIndex])).getDecision();
+	}
+
+	/*
+	 * Checks that the decisions are the same with and without adaptive order, over several periods of all combinations of request attributes
+	 */
+	private void assertSameDecisions(final String rootPolicy) throws IOException
+	{
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), "", rootPolicy);
+				final BasePdpEngine adaptiveOrderPdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), ADAPTIVE_ORDER_PDP_ATTRIBUTE, rootPolicy))
+		{
+			for (int i = 0; i < 3 * AdaptiveEvaluationOrder.REORDERING_PERIOD; i++)
+			{
+				assertEquals("Request #" + i, evaluate(pdp, i), evaluate(adaptiveOrderPdp, i));
+			}
+		}
+	}
+
+	@Test
+	public void decisionsAreTheSameWithAdaptiveOrder() throws IOException
+	{
+		for (final String algName : new String[] { "deny-overrides", "permit-overrides", "deny-unless-permit", "permit-unless-deny" })
+		{
+			assertSameDecisions(newPolicy("urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:" + algName, RULES));
+			assertSameDecisions(newPolicySet("urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:" + algName, RULES));
+		}
+	}
+}
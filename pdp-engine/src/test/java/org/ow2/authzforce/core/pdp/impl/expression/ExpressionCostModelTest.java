@@ -0,0 +1,228 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+import org.ow2.authzforce.core.pdp.impl.test.CountingAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObjectFactory;
+
+/**
+ * Tests of {@link ExpressionCostModel} and of the cost-based order of the arguments of the logical functions
+ */
+public class ExpressionCostModelTest
+{
+	private static final ObjectFactory XACML_OBJECT_FACTORY = new ObjectFactory();
+
+	private static final String XSD_INTEGER = "http://www.w3.org/2001/XMLSchema#integer";
+	private static final String XSD_BOOLEAN = "http://www.w3.org/2001/XMLSchema#boolean";
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ACTION_ID = "urn:oasis:names:tc:xacml:1.0:action:action-id";
+	private static final String MIN_COUNT = "urn:example:min-count";
+	/*
+	 * Attribute provided by an attribute provider module
+	 */
+	private static final String ROLE = "urn:example:role";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private static AttributeDesignatorType newDesignator(final String category, final String attributeId, final String datatype)
+	{
+		return new AttributeDesignatorType(category, attributeId, datatype, null, false);
+	}
+
+	private static AttributeValueType newValue(final String datatype, final Serializable value)
+	{
+		return new AttributeValueType(Collections.singletonList(value), datatype, null);
+	}
+
+	/*
+	 * string-is-in(value, designator)
+	 */
+	private static JAXBElement<ApplyType> newStringIsIn(final String value, final String category, final String attributeId)
+	{
+		return XACML_OBJECT_FACTORY.createApply(new ApplyType(null, Arrays.<JAXBElement<? extends ExpressionType>>asList(
+				XACML_OBJECT_FACTORY.createAttributeValue(newValue(TestPdpEngines.XSD_STRING, value)),
+				XACML_OBJECT_FACTORY.createAttributeDesignator(newDesignator(category, attributeId, TestPdpEngines.XSD_STRING))), "urn:oasis:names:tc:xacml:1.0:function:string-is-in"));
+	}
+
+	private static List<Expression<?>> parse(final DepthLimitingExpressionFactory factory, final List<JAXBElement<? extends ExpressionType>> xacmlArgs)
+	{
+		final List<Expression<?>> args = new ArrayList<>(xacmlArgs.size());
+		for (final JAXBElement<? extends ExpressionType> xacmlArg : xacmlArgs)
+		{
+			args.add(factory.getInstance(xacmlArg.getValue(), null, null));
+		}
+
+		return args;
+	}
+
+	@Test
+	public void logicalFunctionArgumentsAreSortedByCostExceptFirstArgumentOfNOf() throws IOException
+	{
+		final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		try (final DepthLimitingExpressionFactory factory = TestPdpEngines.newExpressionFactory(Collections.singletonList(roleProvider), false, Optional.empty()))
+		{
+			final ExpressionCostModel costModel = new ExpressionCostModel(factory.getAttributeProvider(), variableId -> ExpressionCostModel.CONSTANT_COST);
+			final ApplyType minCountApply = new ApplyType(null, Collections.<JAXBElement<? extends ExpressionType>>singletonList(
+					XACML_OBJECT_FACTORY.createAttributeDesignator(newDesignator(TestPdpEngines.SUBJECT_CATEGORY, MIN_COUNT, XSD_INTEGER))), "urn:oasis:names:tc:xacml:1.0:function:integer-one-and-only");
+			final List<JAXBElement<? extends ExpressionType>> xacmlArgs = Arrays.asList(XACML_OBJECT_FACTORY.createApply(minCountApply),
+					newStringIsIn("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE), newStringIsIn("doc", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID),
+					newStringIsIn("read", TestPdpEngines.ACTION_CATEGORY, ACTION_ID), XACML_OBJECT_FACTORY.createAttributeValue(newValue(XSD_BOOLEAN, "true")));
+			final List<Expression<?>> args = parse(factory, xacmlArgs);
+			final Expression<?> minCount = args.get(0);
+			final Expression<?> providedRoleIsIn = args.get(1);
+			final Expression<?> resourceIdIsIn = args.get(2);
+			final Expression<?> actionIdIsIn = args.get(3);
+			final Expression<?> constantTrue = args.get(4);
+
+			// first argument of n-of fixed although more expensive than the constant; stable order of resource-id and action-id (same cost)
+			assertEquals(Arrays.asList(minCount, constantTrue, resourceIdIsIn, actionIdIsIn, providedRoleIsIn),
+					costModel.reorderLogicalFunctionArguments(StandardFunction.N_OF.getId(), xacmlArgs, args));
+
+			final List<JAXBElement<? extends ExpressionType>> logicalXacmlArgs = xacmlArgs.subList(1, xacmlArgs.size());
+			final List<Expression<?>> logicalArgs = args.subList(1, args.size());
+			assertEquals(Arrays.asList(constantTrue, resourceIdIsIn, actionIdIsIn, providedRoleIsIn),
+					costModel.reorderLogicalFunctionArguments(StandardFunction.AND.getId(), logicalXacmlArgs, logicalArgs));
+			assertEquals(Arrays.asList(constantTrue, resourceIdIsIn, actionIdIsIn, providedRoleIsIn),
+					costModel.reorderLogicalFunctionArguments(StandardFunction.OR.getId(), logicalXacmlArgs, logicalArgs));
+
+			// already ordered, or not a logical function: unchanged
+			final List<JAXBElement<? extends ExpressionType>> orderedXacmlArgs = xacmlArgs.subList(2, xacmlArgs.size() - 1);
+			final List<Expression<?>> orderedArgs = args.subList(2, args.size() - 1);
+			assertSame(orderedArgs, costModel.reorderLogicalFunctionArguments(StandardFunction.AND.getId(), orderedXacmlArgs, orderedArgs));
+			assertSame(logicalArgs, costModel.reorderLogicalFunctionArguments("urn:oasis:names:tc:xacml:1.0:function:string-equal", logicalXacmlArgs, logicalArgs));
+		}
+	}
+
+	private static String stringIsIn(final String value, final String category, final String attributeId, final boolean mustBePresent)
+	{
+		return "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue(value)
+				+ TestPdpEngines.stringDesignator(category, attributeId, mustBePresent) + "</Apply>";
+	}
+
+	/*
+	 * Logical function of: role (provided) is 'admin', resource-id (in the request, must be present) is 'doc', action-id (in the request) is 'read'
+	 */
+	private static String newPolicy(final String functionId, final String firstArg)
+	{
+		return "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicyId=\"CostBasedOrderP\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-unless-permit\"><Target />"
+				+ "<Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"" + functionId + "\">" + firstArg
+				+ stringIsIn("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + stringIsIn("doc", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, true)
+				+ stringIsIn("read", TestPdpEngines.ACTION_CATEGORY, ACTION_ID, false) + "</Apply></Condition></Rule></Policy>";
+	}
+
+	private BasePdpEngine newPdpEngine(final CountingAttributeProvider roleProvider, final String rootPolicy, final boolean costBasedLogicalArgumentOrder) throws IOException
+	{
+		final DepthLimitingExpressionFactory factory = new DepthLimitingExpressionFactory(StandardAttributeValueFactories.getRegistry(false, Optional.empty()),
+				StandardFunction.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER), Collections.singletonList(roleProvider), 0, false, false, false, Optional.empty(),
+				Optional.empty(), costBasedLogicalArgumentOrder, false);
+		return TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), factory, rootPolicy, Optional.empty());
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final String resourceId, final String actionId)
+	{
+		final List<String> categoryIdValueTriples = new ArrayList<>(Arrays.asList(TestPdpEngines.ACTION_CATEGORY, ACTION_ID, actionId));
+		if (resourceId != null)
+		{
+			categoryIdValueTriples.addAll(Arrays.asList(TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, resourceId));
+		}
+
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, categoryIdValueTriples.toArray(new String[categoryIdValueTriples.size()]))).getDecision();
+	}
+
+	@Test
+	public void decisionsAreTheSameWithCostBasedOrder() throws IOException
+	{
+		for (final String policy : Arrays.asList(newPolicy(StandardFunction.AND.getId(), ""), newPolicy(StandardFunction.OR.getId(), ""),
+				newPolicy(StandardFunction.N_OF.getId(), "<AttributeValue DataType=\"" + XSD_INTEGER + "\">2</AttributeValue>")))
+		{
+			final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+			final CountingAttributeProvider otherRoleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+			try (final BasePdpEngine pdp = newPdpEngine(roleProvider, policy, false); final BasePdpEngine costBasedOrderPdp = newPdpEngine(otherRoleProvider, policy, true))
+			{
+				for (final String role : new String[] { "admin", "user" })
+				{
+					roleProvider.setValues(role);
+					otherRoleProvider.setValues(role);
+					// missing resource-id -> Indeterminate argument
+					for (final String resourceId : new String[] { "doc", "other", null })
+					{
+						for (final String actionId : new String[] { "read", "write" })
+						{
+							assertEquals(policy + ": role=" + role + ", resource-id=" + resourceId + ", action-id=" + actionId, evaluate(pdp, resourceId, actionId),
+									evaluate(costBasedOrderPdp, resourceId, actionId));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void providedAttributeIsNotFetchedWhenCheapArgumentShortCircuits() throws IOException
+	{
+		final String policy = newPolicy(StandardFunction.AND.getId(), "");
+		final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		roleProvider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(roleProvider, policy, false))
+		{
+			assertEquals(DecisionType.DENY, evaluate(pdp, "other", "read"));
+			// declaration order: role evaluated first
+			assertEquals(1, roleProvider.getCallCount());
+		}
+
+		final CountingAttributeProvider otherRoleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		otherRoleProvider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(otherRoleProvider, policy, true))
+		{
+			// resource-id is not 'doc' -> False before the role is needed
+			assertEquals(DecisionType.DENY, evaluate(pdp, "other", "read"));
+			assertEquals(0, otherRoleProvider.getCallCount());
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc", "read"));
+			assertEquals(1, otherRoleProvider.getCallCount());
+		}
+	}
+}
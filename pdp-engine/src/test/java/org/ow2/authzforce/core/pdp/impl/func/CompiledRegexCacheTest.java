@@ -0,0 +1,190 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.func;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.Test;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.func.FirstOrderFunction;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContext;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeCategory;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObjectFactory;
+
+/**
+ * Tests of {@link CompiledRegexCache}
+ */
+public class CompiledRegexCacheTest
+{
+	private static final ObjectFactory XACML_OBJECT_FACTORY = new ObjectFactory();
+
+	private static final String REGEX_ATTRIBUTE_ID = "urn:ow2:authzforce:test:attribute:regex";
+
+	private static final String RESOURCE_CATEGORY = XacmlAttributeCategory.XACML_3_0_RESOURCE.value();
+
+	@SuppressWarnings("unchecked")
+	private static final FirstOrderFunction<BooleanValue> UNCACHED_STRING_REGEXP_MATCH_FUNCTION = (FirstOrderFunction<BooleanValue>) StandardFunction
+			.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER).getFunction(StandardFunction.STRING_REGEXP_MATCH.getId());
+
+	private static boolean match(final CompiledRegexCache cache, final String regex, final String value)
+	{
+		return cache.match(UNCACHED_STRING_REGEXP_MATCH_FUNCTION, new StringValue(regex), StandardDatatypes.STRING, new StringValue(value));
+	}
+
+	@Test
+	public void cacheHitsAfterFirstCompilation()
+	{
+		final CompiledRegexCache cache = new CompiledRegexCache(10);
+		assertTrue(match(cache, "^a.*", "abc"));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(false, match(cache, "^a.*", "xyz"));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void capacityIsExactlyMaxEntries()
+	{
+		/*
+		 * Including sizes smaller than or not multiple of the (processor-dependent) number of segments
+		 */
+		for (final int maxEntries : new int[] { 1, 2, 3, 5, 7, 16, 17, 100 })
+		{
+			final CompiledRegexCache cache = new CompiledRegexCache(maxEntries);
+			assertTrue(match(cache, "^r$", "r"));
+			assertEquals("Compiled regex not cached with maxEntries = " + maxEntries, 1, cache.size());
+			final int regexCount = maxEntries * 100;
+			for (int i = 0; i < regexCount; i++)
+			{
+				match(cache, "^r" + i + "$", "r");
+			}
+
+			assertEquals("Wrong cache size with maxEntries = " + maxEntries, maxEntries, cache.size());
+			assertEquals(regexCount + 1 - maxEntries, cache.getEvictionCount());
+			assertEquals(regexCount + 1, cache.getMissCount());
+		}
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted()
+	{
+		final CompiledRegexCache cache = new CompiledRegexCache(1);
+		match(cache, "^a", "a");
+		match(cache, "^b", "b");
+		assertEquals(1, cache.getEvictionCount());
+		match(cache, "^a", "a");
+		assertEquals(3, cache.getMissCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	private static AttributeValueType newAttributeValue(final String datatypeId, final String value)
+	{
+		return new AttributeValueType(Collections.<Serializable>singletonList(value), datatypeId, null);
+	}
+
+	/*
+	 * string-one-and-only(regex attribute)
+	 */
+	private static ApplyType newDynamicRegex()
+	{
+		final AttributeDesignatorType designator = new AttributeDesignatorType(RESOURCE_CATEGORY, REGEX_ATTRIBUTE_ID, StandardDatatypes.STRING.getId(), null, true);
+		return new ApplyType(null, Collections.<JAXBElement<? extends ExpressionType>>singletonList(XACML_OBJECT_FACTORY.createAttributeDesignator(designator)),
+				"urn:oasis:names:tc:xacml:1.0:function:string-one-and-only");
+	}
+
+	private static IndividualDecisionRequestContext newContext(final String regex)
+	{
+		final Map<AttributeFqn, AttributeBag<?>> namedAttributes = Collections.<AttributeFqn, AttributeBag<?>>singletonMap(
+				AttributeFqns.newInstance(RESOURCE_CATEGORY, Optional.empty(), REGEX_ATTRIBUTE_ID), Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue(regex)));
+		return new IndividualDecisionRequestContext(namedAttributes, null, false);
+	}
+
+	private static boolean evaluate(final Expression<?> expression, final String regexAttributeValue) throws IndeterminateEvaluationException
+	{
+		return ((BooleanValue) expression.evaluate(newContext(regexAttributeValue))).getUnderlyingValue().booleanValue();
+	}
+
+	@Test
+	public void regexpMatchFunctionsUseCacheOnlyForDynamicRegex() throws IOException, IndeterminateEvaluationException
+	{
+		final CompiledRegexCache cache = new CompiledRegexCache(10);
+		try (final DepthLimitingExpressionFactory expressionFactory = new DepthLimitingExpressionFactory(StandardAttributeValueFactories.getRegistry(false, Optional.empty()),
+				StandardFunction.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER, cache), null, 0, false, false))
+		{
+			for (final StandardFunction regexpMatchFunction : new StandardFunction[] { StandardFunction.STRING_REGEXP_MATCH, StandardFunction.ANYURI_REGEXP_MATCH })
+			{
+				final String matchedValueTypeId = regexpMatchFunction == StandardFunction.STRING_REGEXP_MATCH ? StandardDatatypes.STRING.getId() : StandardDatatypes.ANYURI.getId();
+				final AttributeValueType matchedValue = newAttributeValue(matchedValueTypeId, "http://example.com/a");
+
+				/*
+				 * Constant regex: pre-compiled by the function, cache not used
+				 */
+				final ApplyType constantRegexApply = new ApplyType(null, Arrays.<JAXBElement<? extends ExpressionType>>asList(
+						XACML_OBJECT_FACTORY.createAttributeValue(newAttributeValue(StandardDatatypes.STRING.getId(), "^http://example\\.com/.*")),
+						XACML_OBJECT_FACTORY.createAttributeValue(matchedValue)), regexpMatchFunction.getId());
+				final Expression<?> constantRegexMatch = expressionFactory.getInstance(constantRegexApply, null, null);
+				final long missCountBefore = cache.getMissCount();
+				final long hitCountBefore = cache.getHitCount();
+				assertTrue(evaluate(constantRegexMatch, "unused"));
+				assertEquals("Cache used for constant regex", missCountBefore, cache.getMissCount());
+				assertEquals("Cache used for constant regex", hitCountBefore, cache.getHitCount());
+
+				/*
+				 * Regex from an attribute: compiled once, then taken from the cache
+				 */
+				final ApplyType dynamicRegexApply = new ApplyType(null, Arrays.<JAXBElement<? extends ExpressionType>>asList(XACML_OBJECT_FACTORY.createApply(newDynamicRegex()),
+						XACML_OBJECT_FACTORY.createAttributeValue(matchedValue)), regexpMatchFunction.getId());
+				final Expression<?> dynamicRegexMatch = expressionFactory.getInstance(dynamicRegexApply, null, null);
+				assertTrue(evaluate(dynamicRegexMatch, "^http://example\\.com/.*"));
+				assertEquals(missCountBefore + 1, cache.getMissCount());
+				assertEquals(false, evaluate(dynamicRegexMatch, "^urn:.*"));
+				assertEquals(missCountBefore + 2, cache.getMissCount());
+				assertTrue(evaluate(dynamicRegexMatch, "^http://example\\.com/.*"));
+				assertEquals(missCountBefore + 2, cache.getMissCount());
+				assertEquals(hitCountBefore + 1, cache.getHitCount());
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.XmlUtils.XmlnsFilteringParser;
+import org.ow2.authzforce.core.pdp.api.io.XacmlJaxbParsingUtils;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRefPolicyProvider.PolicyWithNamespaces;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Policy;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.PolicySet;
+
+/**
+ * Tests of {@link PolicyRepositorySnapshot}
+ */
+public class PolicyRepositorySnapshotTest
+{
+	private static final String POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" xmlns:ex=\"urn:example\" PolicyId=\"P1\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:deny-overrides\"><Target><AnyOf><AllOf>"
+			+ TestPdpEngines.stringEqualMatch("doc1", TestPdpEngines.RESOURCE_CATEGORY, "urn:oasis:names:tc:xacml:1.0:resource:resource-id", false)
+			+ "</AllOf></AnyOf></Target><Rule RuleId=\"R1\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\"><AttributeValue DataType=\""
+			+ TestPdpEngines.XSD_STRING + "\">alice</AttributeValue>" + TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, "urn:oasis:names:tc:xacml:1.0:subject:subject-id", false)
+			+ "</Apply></Condition></Rule><Rule RuleId=\"R2\" Effect=\"Deny\" /></Policy>";
+
+	private static final String POLICY_SET = "<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicySetId=\"PS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable\"><Target /><PolicyIdReference>P1</PolicyIdReference></PolicySet>";
+
+	private static final class SerializableInvocationHandler implements InvocationHandler, Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Object invoke(final Object proxy, final Method method, final Object[] args)
+		{
+			return null;
+		}
+	}
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private Path snapshotFile;
+
+	private List<URL> policyURLs;
+
+	private List<PolicyWithNamespaces<?>> policyDocuments;
+
+	@Before
+	public void setUp() throws IOException, JAXBException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		snapshotFile = dir.resolve("policies.snapshot");
+		final Path policyFile = TestPdpEngines.write(dir, "p1.xml", POLICY);
+		final Path policySetFile = TestPdpEngines.write(dir, "ps.xml", POLICY_SET);
+		// policy documents older than the snapshot (written with the current time as parsing start time)
+		final FileTime policyTime = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+		Files.setLastModifiedTime(policyFile, policyTime);
+		Files.setLastModifiedTime(policySetFile, policyTime);
+		policyURLs = Arrays.asList(policyFile.toUri().toURL(), policySetFile.toUri().toURL());
+		final XmlnsFilteringParser xacmlParser = XacmlJaxbParsingUtils.getXacmlParserFactory(true).getInstance();
+		policyDocuments = Arrays.asList(CoreRefPolicyProvider.parsePolicyDocument(xacmlParser, policyURLs.get(0)), CoreRefPolicyProvider.parsePolicyDocument(xacmlParser, policyURLs.get(1)));
+	}
+
+	@Test
+	public void snapshotRoundTripGivesSamePolicyDocuments() throws IOException
+	{
+		PolicyRepositorySnapshot.write(snapshotFile, policyURLs, policyDocuments, System.currentTimeMillis());
+		final Optional<List<PolicyWithNamespaces<?>>> snapshotPolicyDocuments = PolicyRepositorySnapshot.read(snapshotFile, policyURLs);
+		assertTrue("Up-to-date snapshot not loaded", snapshotPolicyDocuments.isPresent());
+		assertEquals(2, snapshotPolicyDocuments.get().size());
+
+		final PolicyWithNamespaces<?> policyDocument = snapshotPolicyDocuments.get().get(0);
+		assertTrue(policyDocument.getPolicy() instanceof Policy);
+		final Policy policy = (Policy) policyDocument.getPolicy();
+		assertEquals("P1", policy.getPolicyId());
+		assertEquals(policyDocuments.get(0).getNsPrefixUriMap(), policyDocument.getNsPrefixUriMap());
+		assertEquals("urn:example", policyDocument.getNsPrefixUriMap().get("ex"));
+		assertEquals("1.0", policy.getVersion());
+		assertEquals(1, policy.getTarget().getAnyOves().size());
+
+		final PolicyWithNamespaces<?> policySetDocument = snapshotPolicyDocuments.get().get(1);
+		assertTrue(policySetDocument.getPolicy() instanceof PolicySet);
+		assertEquals("PS", ((PolicySet) policySetDocument.getPolicy()).getPolicySetId());
+	}
+
+	@Test
+	public void staleSnapshotIsNotUsed() throws IOException
+	{
+		PolicyRepositorySnapshot.write(snapshotFile, policyURLs, policyDocuments, System.currentTimeMillis());
+		assertTrue(PolicyRepositorySnapshot.read(snapshotFile, policyURLs).isPresent());
+
+		// snapshot older than the policy documents
+		Files.setLastModifiedTime(snapshotFile, FileTime.fromMillis(System.currentTimeMillis() - 120000));
+		assertFalse("Outdated snapshot loaded", PolicyRepositorySnapshot.read(snapshotFile, policyURLs).isPresent());
+	}
+
+	@Test
+	public void snapshotOfOtherPolicyLocationsIsNotUsed() throws IOException
+	{
+		PolicyRepositorySnapshot.write(snapshotFile, policyURLs, policyDocuments, System.currentTimeMillis());
+		assertFalse(PolicyRepositorySnapshot.read(snapshotFile, Arrays.asList(policyURLs.get(1), policyURLs.get(0))).isPresent());
+		assertFalse(PolicyRepositorySnapshot.read(snapshotFile, Collections.singletonList(policyURLs.get(0))).isPresent());
+	}
+
+	@Test
+	public void snapshotWithDisallowedClassIsRejected() throws IOException
+	{
+		/*
+		 * JDK class not part of the allowlist (although in an allowed package, i.e. java.util) hidden in the namespace prefix-URI mappings, that would be deserialized without error otherwise
+		 */
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final Map<String, String> nsPrefixUriMap = (Map) Collections.singletonMap("ex", new AtomicLong(1));
+		final List<PolicyWithNamespaces<?>> badPolicyDocuments = Arrays.asList(new PolicyWithNamespaces<>(policyDocuments.get(0).getPolicy(), new HashMap<>(nsPrefixUriMap)),
+				policyDocuments.get(1));
+		PolicyRepositorySnapshot.write(snapshotFile, policyURLs, badPolicyDocuments, System.currentTimeMillis());
+		assertFalse("Snapshot with disallowed class loaded", PolicyRepositorySnapshot.read(snapshotFile, policyURLs).isPresent());
+	}
+
+	@Test
+	public void snapshotWithProxyIsRejected() throws IOException
+	{
+		final Object proxy = Proxy.newProxyInstance(PolicyRepositorySnapshotTest.class.getClassLoader(), new Class<?>[] { Comparable.class }, new SerializableInvocationHandler());
+		final List<PolicyWithNamespaces<?>> badPolicyDocuments = Arrays.asList(new PolicyWithNamespaces<>(proxy, Collections.emptyMap()), policyDocuments.get(1));
+		PolicyRepositorySnapshot.write(snapshotFile, policyURLs, badPolicyDocuments, System.currentTimeMillis());
+		assertFalse("Snapshot with proxy loaded", PolicyRepositorySnapshot.read(snapshotFile, policyURLs).isPresent());
+	}
+}
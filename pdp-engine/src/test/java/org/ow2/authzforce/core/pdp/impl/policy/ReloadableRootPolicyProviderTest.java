@@ -0,0 +1,308 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link ReloadableRootPolicyProvider}
+ */
+public class ReloadableRootPolicyProviderTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+
+	/*
+	 * Root PolicySet 'PS' (first-applicable) referring to P1 (about resource 'doc1') and P2 (about resource 'doc2')
+	 */
+	private static final String ROOT_POLICY_SET = "<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicySetId=\"PS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable\"><Target />"
+			+ "<PolicyIdReference>P1</PolicyIdReference><PolicyIdReference>P2</PolicyIdReference></PolicySet>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private static String newPolicy(final String policyId, final String version, final String resourceId, final String effect)
+	{
+		return "<Policy xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicyId=\"" + policyId + "\" Version=\"" + version
+				+ "\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>"
+				+ TestPdpEngines.stringEqualMatch(resourceId, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false) + "</AllOf></AnyOf></Target><Rule RuleId=\"R\" Effect=\"" + effect
+				+ "\" /></Policy>";
+	}
+
+	/*
+	 * Writes the policies (P1 permits doc1, P2 permits doc2) and the PDP configuration with a reloadable root policy provider
+	 */
+	private static PdpEngineConfiguration newConfiguration(final Path dir, final long reloadDelayMillis, final String extraPdpContent) throws IOException
+	{
+		TestPdpEngines.write(dir, "ps.xml", ROOT_POLICY_SET);
+		TestPdpEngines.write(dir, "p1.xml", newPolicy("P1", "1.0", "doc1", "Permit"));
+		TestPdpEngines.write(dir, "p2.xml", newPolicy("P2", "1.0", "doc2", "Permit"));
+		return TestPdpEngines.newConfiguration(dir, "",
+				"<rootPolicyProvider id=\"rootPolicyProvider\" xsi:type=\"ReloadableRootPolicyProvider\" reloadDelayMillis=\"" + reloadDelayMillis
+						+ "\"><policyLocation>${PARENT_DIR}/ps.xml</policyLocation><policyLocation>${PARENT_DIR}/p1.xml</policyLocation><policyLocation>${PARENT_DIR}/p2.xml</policyLocation>"
+						+ "<policyRef>PS</policyRef></rootPolicyProvider>" + extraPdpContent);
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final String resourceId)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, resourceId)).getDecision();
+	}
+
+	@Test
+	public void policiesAreReloadedOnFileChange() throws IOException, InterruptedException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		try (final BasePdpEngine pdp = new BasePdpEngine(newConfiguration(dir, 0, "")))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc1"));
+			TestPdpEngines.write(dir, "p1.xml", newPolicy("P1", "1.1", "doc1", "Deny"));
+
+			// wait for the watcher to reload
+			final long deadline = System.currentTimeMillis() + 30000;
+			while (evaluate(pdp, "doc1") != DecisionType.DENY)
+			{
+				if (System.currentTimeMillis() > deadline)
+				{
+					fail("Policy change not detected by the watcher");
+				}
+
+				Thread.sleep(100);
+			}
+
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc2"));
+		}
+	}
+
+	@Test
+	public void onlyChangedPoliciesAndReferringPoliciesAreRebuilt() throws IOException, IndeterminateEvaluationException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		final PdpEngineConfiguration conf = newConfiguration(dir, 60000, "");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			final Object oldP1 = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P1");
+			final Object oldP2 = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P2");
+			final Object oldPS = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS");
+			assertNotNull(oldP1);
+
+			// no change
+			provider.reload();
+			assertSame(oldPS, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS"));
+
+			TestPdpEngines.write(dir, "p2.xml", newPolicy("P2", "1.0", "doc2", "Deny"));
+			provider.reload();
+			assertSame(oldP1, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P1"));
+			assertNotSame(oldP2, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P2"));
+			assertNotSame(oldPS, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc1"));
+			assertEquals(DecisionType.DENY, evaluate(pdp, "doc2"));
+		}
+	}
+
+	@Test
+	public void touchedFileWithSameContentIsNotParsedAgain() throws IOException, IndeterminateEvaluationException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		final PdpEngineConfiguration conf = newConfiguration(dir, 60000, "");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			final Object oldP1 = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P1");
+			final Object oldPS = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS");
+			final Path p1File = dir.resolve("p1.xml");
+			Files.setLastModifiedTime(p1File, FileTime.fromMillis(Files.getLastModifiedTime(p1File).toMillis() + 60000));
+
+			provider.reload();
+			assertSame(oldP1, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P1"));
+			assertSame(oldPS, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS"));
+
+			// same size as "Permit", but new last-modified time
+			TestPdpEngines.write(dir, "p1.xml", newPolicy("P1", "1.0", "doc1", "Deny").replace("Effect=\"Deny\"", "Effect=\"Deny\"  "));
+			Files.setLastModifiedTime(p1File, FileTime.fromMillis(Files.getLastModifiedTime(p1File).toMillis() + 120000));
+			provider.reload();
+			assertNotSame(oldP1, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY, "P1"));
+			assertEquals(DecisionType.DENY, evaluate(pdp, "doc1"));
+		}
+	}
+
+	@Test
+	public void failedReloadKeepsPreviousPolicies() throws IOException, IndeterminateEvaluationException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		final PdpEngineConfiguration conf = newConfiguration(dir, 60000, "");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			final Object oldPS = provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS");
+			TestPdpEngines.write(dir, "p2.xml", "<Policy xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicyId=\"P2\"");
+			try
+			{
+				provider.reload();
+				fail("Invalid policy document accepted");
+			}
+			catch (final IllegalArgumentException e)
+			{
+				// expected
+			}
+
+			assertSame(oldPS, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc1"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc2"));
+
+			// invalid reference: root PolicySet referring to a missing Policy
+			TestPdpEngines.write(dir, "p2.xml", newPolicy("P2", "1.0", "doc2", "Permit"));
+			TestPdpEngines.write(dir, "ps.xml", ROOT_POLICY_SET.replace("</PolicySet>", "<PolicyIdReference>P3</PolicyIdReference></PolicySet>"));
+			try
+			{
+				provider.reload();
+				fail("Invalid policy reference accepted");
+			}
+			catch (final IllegalArgumentException e)
+			{
+				// expected
+			}
+
+			assertSame(oldPS, provider.getLoadedPolicy(TopLevelPolicyElementType.POLICY_SET, "PS"));
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc2"));
+		}
+	}
+
+	@Test
+	public void requestsEvaluatedDuringReloadUseEitherPolicies() throws Exception
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		final PdpEngineConfiguration conf = newConfiguration(dir, 60000, "");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			final DecisionRequest request = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc1");
+			final AtomicBoolean stopped = new AtomicBoolean(false);
+			final ConcurrentLinkedQueue<Object> unexpectedResults = new ConcurrentLinkedQueue<>();
+			final int threadCount = 4;
+			final CountDownLatch startLatch = new CountDownLatch(threadCount);
+			final List<Thread> threads = new ArrayList<>(threadCount);
+			for (int i = 0; i < threadCount; i++)
+			{
+				final Thread thread = new Thread(() -> {
+					startLatch.countDown();
+					while (!stopped.get())
+					{
+						try
+						{
+							final DecisionType decision = pdp.evaluate(request).getDecision();
+							if (decision != DecisionType.PERMIT && decision != DecisionType.DENY)
+							{
+								unexpectedResults.add(decision);
+							}
+						}
+						catch (final RuntimeException e)
+						{
+							unexpectedResults.add(e);
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+
+			assertTrue(startLatch.await(10, TimeUnit.SECONDS));
+			for (int i = 0; i < 20; i++)
+			{
+				TestPdpEngines.write(dir, "p1.xml", newPolicy("P1", "1." + (i + 1), "doc1", i % 2 == 0 ? "Deny" : "Permit"));
+				provider.reload();
+				assertEquals(i % 2 == 0 ? DecisionType.DENY : DecisionType.PERMIT, pdp.evaluate(request).getDecision());
+			}
+
+			stopped.set(true);
+			for (final Thread thread : threads)
+			{
+				thread.join(10000);
+			}
+
+			assertTrue("Unexpected results during reloads: " + unexpectedResults, unexpectedResults.isEmpty());
+		}
+	}
+
+	@Test
+	public void applicablePoliciesAndDecisionCacheFollowReload() throws IOException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		final PdpEngineConfiguration conf = newConfiguration(dir, 60000,
+				"<decisionCache id=\"decisionCache\" xsi:type=\"InMemoryDecisionCache\" maxEntries=\"100\" timeToLiveSeconds=\"0\" concurrencyLevel=\"1\" />");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			assertEquals("P1 version", "1.0", getVersion(pdp.getApplicablePolicies(), "P1"));
+			assertTrue(pdp.getRootPolicyAttributeDependencies().isPresent());
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(DecisionType.PERMIT, evaluate(pdp, "doc1"));
+			}
+
+			TestPdpEngines.write(dir, "p1.xml", newPolicy("P1", "2.0", "doc1", "Deny"));
+			provider.reload();
+			assertEquals("P1 version", "2.0", getVersion(pdp.getApplicablePolicies(), "P1"));
+			// cached Permit invalidated
+			assertEquals(DecisionType.DENY, evaluate(pdp, "doc1"));
+		}
+	}
+
+	private static String getVersion(final Iterable<PrimaryPolicyMetadata> policies, final String policyId)
+	{
+		assertNotNull(policies);
+		for (final PrimaryPolicyMetadata policy : policies)
+		{
+			if (policy.getId().equals(policyId))
+			{
+				return policy.getVersion().toString();
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.ModularAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the asynchronous attribute prefetching in {@link ModularAttributeProvider}: attributes prefetched by group (root policy Target, then each top-level branch of the root policy)
+ */
+public class AsyncAttributePrefetchTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ROLE = "urn:example:role";
+	private static final String R1_ATTRIBUTE_A = "urn:example:r1-a";
+	private static final String R1_ATTRIBUTE_B = "urn:example:r1-b";
+	private static final String R2_ATTRIBUTE = "urn:example:r2";
+
+	private static String isIn(final String value, final String attributeId)
+	{
+		return "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue(value)
+				+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, attributeId, false) + "</Apply>";
+	}
+
+	/*
+	 * Policy Target on the role; R1 permits if r1-a has 'a' and r1-b has 'b' (in this order, 'and' evaluating r1-b only if r1-a matches); else R2 denies if r2 has 'c'
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>"
+			+ TestPdpEngines.stringEqualMatch("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</AllOf></AnyOf></Target>"
+			+ "<Rule RuleId=\"R1\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:and\">" + isIn("a", R1_ATTRIBUTE_A) + isIn("b", R1_ATTRIBUTE_B)
+			+ "</Apply></Condition></Rule><Rule RuleId=\"R2\" Effect=\"Deny\"><Condition>" + isIn("c", R2_ATTRIBUTE) + "</Condition></Rule></Policy>";
+
+	/*
+	 * Same policy without R2
+	 */
+	private static final String ROOT_POLICY_WITHOUT_R2 = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.1\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>"
+			+ TestPdpEngines.stringEqualMatch("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</AllOf></AnyOf></Target>"
+			+ "<Rule RuleId=\"R1\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:and\">" + isIn("a", R1_ATTRIBUTE_A) + isIn("b", R1_ATTRIBUTE_B)
+			+ "</Apply></Condition></Rule></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private CountingAttributeProvider roleProvider;
+	private CountingAttributeProvider r1AttributeAProvider;
+	private CountingAttributeProvider r1AttributeBProvider;
+	private CountingAttributeProvider r2AttributeProvider;
+
+	@Before
+	public void setUp()
+	{
+		roleProvider = new CountingAttributeProvider("role", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null, true);
+		roleProvider.setValues("admin");
+		r1AttributeAProvider = new CountingAttributeProvider("r1-a", TestPdpEngines.SUBJECT_CATEGORY, R1_ATTRIBUTE_A, null, true);
+		r1AttributeBProvider = new CountingAttributeProvider("r1-b", TestPdpEngines.SUBJECT_CATEGORY, R1_ATTRIBUTE_B, null, true);
+		r1AttributeBProvider.setValues("b");
+		r2AttributeProvider = new CountingAttributeProvider("r2", TestPdpEngines.SUBJECT_CATEGORY, R2_ATTRIBUTE, null, true);
+		r2AttributeProvider.setValues("c");
+	}
+
+	private DepthLimitingExpressionFactory newExpressionFactory(final boolean asyncAttributePrefetch) throws IOException
+	{
+		return TestPdpEngines.newExpressionFactory(Arrays.asList(roleProvider, r1AttributeAProvider, r1AttributeBProvider, r2AttributeProvider), asyncAttributePrefetch, Optional.empty());
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc")).getDecision();
+	}
+
+	private void assertCallCounts(final int roleCalls, final int r1ACalls, final int r1BCalls, final int r2Calls)
+	{
+		assertEquals("role provider calls", roleCalls, roleProvider.getCallCount());
+		assertEquals("r1-a provider calls", r1ACalls, r1AttributeAProvider.getCallCount());
+		assertEquals("r1-b provider calls", r1BCalls, r1AttributeBProvider.getCallCount());
+		assertEquals("r2 provider calls", r2Calls, r2AttributeProvider.getCallCount());
+	}
+
+	@Test
+	public void attributesOfBranchNotEvaluatedAreNotPrefetched() throws IOException
+	{
+		r1AttributeAProvider.setValues("a");
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), newExpressionFactory(true), ROOT_POLICY, Optional.empty()))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			// R1 permits -> R2 not evaluated, its attribute not prefetched
+			assertCallCounts(1, 1, 1, 0);
+		}
+	}
+
+	@Test
+	public void attributesOfEvaluatedBranchArePrefetchedTogether() throws IOException
+	{
+		// R1 condition false after r1-a -> r1-b not needed by the evaluation, but prefetched with r1-a
+		r1AttributeAProvider.setValues("x");
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), newExpressionFactory(true), ROOT_POLICY, Optional.empty()))
+		{
+			assertEquals(DecisionType.DENY, evaluate(pdp));
+			assertCallCounts(1, 1, 1, 1);
+
+			// same for the next request (groups prefetched once per request)
+			assertEquals(DecisionType.DENY, evaluate(pdp));
+			assertCallCounts(2, 2, 2, 2);
+		}
+	}
+
+	@Test
+	public void attributesAreNotPrefetchedWhenDisabled() throws IOException
+	{
+		r1AttributeAProvider.setValues("x");
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), newExpressionFactory(false), ROOT_POLICY, Optional.empty()))
+		{
+			assertEquals(DecisionType.DENY, evaluate(pdp));
+			// r1-b not evaluated ('and' short-circuit)
+			assertCallCounts(1, 1, 0, 1);
+		}
+	}
+
+	@Test
+	public void attributesOfPreviousRootPolicyAreNotPrefetched() throws IOException
+	{
+		r1AttributeAProvider.setValues("x");
+		final Path dir = tmpDir.newFolder().toPath();
+		/*
+		 * Same expression factory - therefore the same attribute provider - used to load a new version of the root policy, like a reloadable root policy provider does
+		 */
+		final DepthLimitingExpressionFactory expressionFactory = newExpressionFactory(true);
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(dir, expressionFactory, ROOT_POLICY, Optional.empty()))
+		{
+			assertEquals(DecisionType.DENY, evaluate(pdp));
+			assertCallCounts(1, 1, 1, 1);
+
+			try (final BasePdpEngine newPdp = TestPdpEngines.newPdpEngine(dir, expressionFactory, ROOT_POLICY_WITHOUT_R2, Optional.empty()))
+			{
+				assertEquals(DecisionType.NOT_APPLICABLE, evaluate(newPdp));
+				// R2 (its attribute) no longer in the root policy
+				assertCallCounts(2, 2, 2, 1);
+			}
+		}
+	}
+}
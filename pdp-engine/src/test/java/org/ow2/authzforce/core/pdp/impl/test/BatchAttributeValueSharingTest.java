@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.io.XacmlJaxbParsingUtils;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.combining.StandardCombiningAlgorithm;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRootPolicyProvider;
+import org.ow2.authzforce.core.xmlns.pdp.StandardEnvironmentAttributeSource;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the sharing of attribute values returned by attribute providers between the Individual Decision Requests of a multiple decision request (batch)
+ */
+public class BatchAttributeValueSharingTest
+{
+	private static final String SUBJECT_ID = "urn:oasis:names:tc:xacml:1.0:subject:subject-id";
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ROLE = "urn:example:role";
+
+	private static final Set<AttributeDesignatorType> SUBJECT_ID_DEPENDENCY = Collections
+			.singleton(new AttributeDesignatorType(TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, TestPdpEngines.XSD_STRING, null, true));
+
+	/*
+	 * Permit iff role is 'admin'
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue("admin")
+			+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Apply></Condition></Rule></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private BasePdpEngine newPdpEngine(final CountingAttributeProvider provider, final boolean batchAttributeValueSharing) throws IOException
+	{
+		final Path rootPolicyFile = TestPdpEngines.write(tmpDir.newFolder().toPath(), "policy.xml", ROOT_POLICY);
+		final DepthLimitingExpressionFactory expressionFactory = TestPdpEngines.newExpressionFactory(Collections.singletonList(provider), false, Optional.empty());
+		return new BasePdpEngine(expressionFactory, CoreRootPolicyProvider.getInstance(rootPolicyFile.toUri().toURL(), XacmlJaxbParsingUtils.getXacmlParserFactory(false), expressionFactory,
+				StandardCombiningAlgorithm.REGISTRY, Optional.empty()), false, StandardEnvironmentAttributeSource.REQUEST_ELSE_PDP, Optional.empty(), 0, 0, batchAttributeValueSharing);
+	}
+
+	/*
+	 * Batch of requests about 2 resources for alice, 1 for bob
+	 */
+	private static void evaluateBatch(final BasePdpEngine pdp) throws IndeterminateEvaluationException
+	{
+		final List<DecisionRequest> requests = Arrays.asList(
+				TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc1"),
+				TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "bob", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc1"),
+				TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc2"));
+		final Collection<Entry<DecisionRequest, ? extends DecisionResult>> results = pdp.evaluate(requests);
+		assertEquals(requests.size(), results.size());
+		for (final Entry<DecisionRequest, ? extends DecisionResult> result : results)
+		{
+			assertEquals(DecisionType.PERMIT, result.getValue().getDecision());
+		}
+	}
+
+	@Test
+	public void valuesAreSharedByRequestsWithSameDependencyValuesWhenEnabled() throws IOException, IndeterminateEvaluationException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(provider, true))
+		{
+			evaluateBatch(pdp);
+			// once for alice, once for bob
+			assertEquals(2, provider.getCallCount());
+
+			// not shared across batches
+			evaluateBatch(pdp);
+			assertEquals(4, provider.getCallCount());
+		}
+	}
+
+	@Test
+	public void valuesAreNotSharedWhenDisabled() throws IOException, IndeterminateEvaluationException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, SUBJECT_ID_DEPENDENCY);
+		provider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(provider, false))
+		{
+			evaluateBatch(pdp);
+			assertEquals(3, provider.getCallCount());
+		}
+	}
+
+	@Test
+	public void valuesOfProviderWithUndeclaredDependenciesAreNotShared() throws IOException, IndeterminateEvaluationException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		provider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(provider, true))
+		{
+			evaluateBatch(pdp);
+			assertEquals(3, provider.getCallCount());
+		}
+	}
+
+	@Test
+	public void valuesOfProviderWithNoDependencyAreNotShared() throws IOException, IndeterminateEvaluationException
+	{
+		final CountingAttributeProvider provider = new CountingAttributeProvider("roles", TestPdpEngines.SUBJECT_CATEGORY, ROLE, Collections.emptySet());
+		provider.setValues("admin");
+		try (final BasePdpEngine pdp = newPdpEngine(provider, true))
+		{
+			evaluateBatch(pdp);
+			assertEquals(3, provider.getCallCount());
+		}
+	}
+
+	@Test
+	public void sharingIsDisabledByDefaultInConfiguration() throws IOException
+	{
+		final Path noSharingDir = tmpDir.newFolder().toPath();
+		TestPdpEngines.write(noSharingDir, "policy.xml", ROOT_POLICY);
+		assertFalse(TestPdpEngines.newConfiguration(noSharingDir, "", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER).isBatchAttributeValueSharingEnabled());
+
+		final Path sharingDir = tmpDir.newFolder().toPath();
+		TestPdpEngines.write(sharingDir, "policy.xml", ROOT_POLICY);
+		assertTrue(TestPdpEngines.newConfiguration(sharingDir, "batchAttributeValueSharing=\"true\"", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER).isBatchAttributeValueSharingEnabled());
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.AttributeProvider;
+import org.ow2.authzforce.core.pdp.api.BaseNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.io.XacmlJaxbParsingUtils;
+import org.ow2.authzforce.core.pdp.api.policy.RootPolicyProvider;
+import org.ow2.authzforce.core.pdp.api.policy.StaticTopLevelPolicyElementEvaluator;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.IntegerValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.BulkNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.combining.StandardCombiningAlgorithm;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRootPolicyProvider;
+import org.ow2.authzforce.core.pdp.impl.policy.FlattenedPolicyTree;
+import org.ow2.authzforce.core.pdp.impl.policy.RootPolicyEvaluator;
+import org.ow2.authzforce.core.xmlns.pdp.StandardEnvironmentAttributeSource;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the bulk attribute fetching ({@link BulkNamedAttributeProvider}) from the root policy attribute dependencies
+ */
+public class BulkAttributeFetchTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ATTRIBUTE_A = "urn:example:a";
+	private static final String ATTRIBUTE_B = "urn:example:b";
+	private static final AttributeFqn ATTRIBUTE_A_FQN = AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), ATTRIBUTE_A);
+	private static final AttributeFqn ATTRIBUTE_B_FQN = AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), ATTRIBUTE_B);
+
+	private static String isIn(final String value, final String attributeId)
+	{
+		return "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue(value)
+				+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, attributeId, false) + "</Apply>";
+	}
+
+	/*
+	 * R1 permits if a has 'a', else R2 permits if b has 'b'
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<Rule RuleId=\"R1\" Effect=\"Permit\"><Condition>" + isIn("a", ATTRIBUTE_A) + "</Condition></Rule><Rule RuleId=\"R2\" Effect=\"Permit\"><Condition>" + isIn("b", ATTRIBUTE_B)
+			+ "</Condition></Rule></Policy>";
+
+	/*
+	 * Bulk attribute provider of attributes a (value 'x' by default) and b (value 'b'), counting the calls
+	 */
+	private static final class BulkProviderFactory implements CloseableNamedAttributeProvider.DependencyAwareFactory
+	{
+		private final AtomicInteger bulkCallCount = new AtomicInteger(0);
+		private final AtomicInteger singleCallCount = new AtomicInteger(0);
+		private volatile Set<AttributeFqn> lastBulkRequestedAttributes = null;
+		private volatile String attributeAValue = "x";
+		private volatile boolean isAttributeAOfWrongDatatypeInBulk = false;
+
+		@Override
+		public Set<AttributeDesignatorType> getDependencies()
+		{
+			return null;
+		}
+
+		private AttributeBag<?> getValues(final AttributeFqn attributeFqn)
+		{
+			return Bags.newAttributeBag(StandardDatatypes.STRING, Collections.singleton(new StringValue(attributeFqn.equals(ATTRIBUTE_A_FQN) ? attributeAValue : "b")));
+		}
+
+		@Override
+		public CloseableNamedAttributeProvider getInstance(final AttributeValueFactoryRegistry attributeValueFactories, final AttributeProvider dependencyAttributeProvider)
+		{
+			final Set<AttributeDesignatorType> providedAttributes = new HashSet<>();
+			providedAttributes.add(new AttributeDesignatorType(TestPdpEngines.SUBJECT_CATEGORY, ATTRIBUTE_A, StandardDatatypes.STRING.getId(), null, false));
+			providedAttributes.add(new AttributeDesignatorType(TestPdpEngines.SUBJECT_CATEGORY, ATTRIBUTE_B, StandardDatatypes.STRING.getId(), null, false));
+			return new BulkProvider(providedAttributes);
+		}
+
+		private final class BulkProvider extends BaseNamedAttributeProvider implements BulkNamedAttributeProvider
+		{
+			private final Set<AttributeDesignatorType> providedAttributes;
+
+			private BulkProvider(final Set<AttributeDesignatorType> providedAttributes)
+			{
+				super("bulk");
+				this.providedAttributes = providedAttributes;
+			}
+
+			@Override
+			public void close()
+			{
+				// nothing to close
+			}
+
+			@Override
+			public Set<AttributeDesignatorType> getProvidedAttributes()
+			{
+				return providedAttributes;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public <AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context)
+			{
+				singleCallCount.incrementAndGet();
+				assertEquals(StandardDatatypes.STRING, datatype);
+				return (AttributeBag<AV>) getValues(attributeFqn);
+			}
+
+			@Override
+			public Map<AttributeFqn, AttributeBag<?>> getAll(final Set<AttributeFqn> attributeFqns, final EvaluationContext context)
+			{
+				bulkCallCount.incrementAndGet();
+				lastBulkRequestedAttributes = attributeFqns;
+				final Map<AttributeFqn, AttributeBag<?>> results = new HashMap<>();
+				for (final AttributeFqn attributeFqn : attributeFqns)
+				{
+					results.put(attributeFqn, isAttributeAOfWrongDatatypeInBulk && attributeFqn.equals(ATTRIBUTE_A_FQN)
+							? Bags.newAttributeBag(StandardDatatypes.INTEGER, Collections.singleton(IntegerValue.valueOf(1))) : getValues(attributeFqn));
+				}
+
+				return results;
+			}
+		}
+	}
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private BulkProviderFactory providerFactory;
+
+	@Before
+	public void setUp()
+	{
+		providerFactory = new BulkProviderFactory();
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc")).getDecision();
+	}
+
+	private BasePdpEngine newPdpEngine() throws IOException
+	{
+		return TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), Collections.singletonList(providerFactory), ROOT_POLICY, Optional.empty());
+	}
+
+	/*
+	 * PDP engine with a root policy provider resolving the root policy at evaluation time (no static resolution)
+	 */
+	private BasePdpEngine newPdpEngineWithDynamicRootPolicyProvider() throws IOException
+	{
+		final Path rootPolicyFile = TestPdpEngines.write(tmpDir.newFolder().toPath(), "policy.xml", ROOT_POLICY);
+		final DepthLimitingExpressionFactory expressionFactory = TestPdpEngines.newExpressionFactory(Collections.singletonList(providerFactory), false, Optional.empty());
+		final CoreRootPolicyProvider staticRootPolicyProvider = CoreRootPolicyProvider.getInstance(rootPolicyFile.toUri().toURL(),
+				XacmlJaxbParsingUtils.getXacmlParserFactory(false), expressionFactory, StandardCombiningAlgorithm.REGISTRY, Optional.empty());
+		final RootPolicyProvider dynamicRootPolicyProvider = new RootPolicyProvider()
+		{
+
+			@Override
+			public StaticTopLevelPolicyElementEvaluator getPolicy(final EvaluationContext context) throws IndeterminateEvaluationException
+			{
+				return staticRootPolicyProvider.getPolicy();
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				staticRootPolicyProvider.close();
+			}
+		};
+
+		return new BasePdpEngine(expressionFactory, dynamicRootPolicyProvider, false, StandardEnvironmentAttributeSource.REQUEST_ELSE_PDP, Optional.empty());
+	}
+
+	@Test
+	public void rootPolicyAttributesAreFetchedInOneCall() throws IOException
+	{
+		try (final BasePdpEngine pdp = newPdpEngine())
+		{
+			assertTrue(pdp.getRootPolicyAttributeDependencies().isPresent());
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			assertEquals(1, providerFactory.bulkCallCount.get());
+			assertEquals(new HashSet<>(Arrays.asList(ATTRIBUTE_A_FQN, ATTRIBUTE_B_FQN)), providerFactory.lastBulkRequestedAttributes);
+			assertEquals(0, providerFactory.singleCallCount.get());
+
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			assertEquals(2, providerFactory.bulkCallCount.get());
+			assertEquals(0, providerFactory.singleCallCount.get());
+		}
+	}
+
+	@Test
+	public void bulkValuesOfUnexpectedDatatypeAreIgnored() throws IOException
+	{
+		providerFactory.isAttributeAOfWrongDatatypeInBulk = true;
+		providerFactory.attributeAValue = "a";
+		try (final BasePdpEngine pdp = newPdpEngine())
+		{
+			// attribute 'a' (integer from getAll) requested again as string
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			assertEquals(1, providerFactory.bulkCallCount.get());
+			assertEquals(1, providerFactory.singleCallCount.get());
+		}
+	}
+
+	@Test
+	public void rootPolicyAttributesAreFetchedInBulkWithDynamicRootPolicyProvider() throws IOException
+	{
+		try (final BasePdpEngine pdp = newPdpEngineWithDynamicRootPolicyProvider())
+		{
+			// not resolved once and for all
+			assertFalse(pdp.getRootPolicyAttributeDependencies().isPresent());
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			assertEquals(1, providerFactory.bulkCallCount.get());
+			assertEquals(new HashSet<>(Arrays.asList(ATTRIBUTE_A_FQN, ATTRIBUTE_B_FQN)), providerFactory.lastBulkRequestedAttributes);
+			assertEquals(0, providerFactory.singleCallCount.get());
+		}
+	}
+
+	@Test
+	public void rootPolicyEvaluatorHasNoAttributeDependenciesByDefault()
+	{
+		final RootPolicyEvaluator rootPolicyEvaluator = new RootPolicyEvaluator()
+		{
+
+			@Override
+			public void close()
+			{
+				// nothing to close
+			}
+
+			@Override
+			public DecisionResult findAndEvaluate(final EvaluationContext context)
+			{
+				return null;
+			}
+
+			@Override
+			public FlattenedPolicyTree getStaticApplicablePolicies()
+			{
+				return null;
+			}
+		};
+
+		assertFalse(rootPolicyEvaluator.getAttributeDependencies().isPresent());
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.AttributeProvider;
+import org.ow2.authzforce.core.pdp.api.BaseNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.EvaluationContext;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.Datatype;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.AsyncNamedAttributeProvider;
+import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+
+/**
+ * Test attribute provider factory creating providers of a single string attribute, with a value that can be changed between requests, and counting the calls to the provider(s). The providers may
+ * be asynchronous ({@link AsyncNamedAttributeProvider}).
+ */
+public final class CountingAttributeProvider implements CloseableNamedAttributeProvider.DependencyAwareFactory
+{
+	private final String providerId;
+	private final AttributeFqn providedAttributeFqn;
+	private final Set<AttributeDesignatorType> providedAttributes;
+	private final Set<AttributeDesignatorType> dependencies;
+	private final boolean isAsync;
+	private final AtomicInteger callCount = new AtomicInteger(0);
+	private volatile List<StringValue> values = Collections.emptyList();
+	private volatile boolean failing = false;
+
+	/**
+	 * Creates provider factory
+	 *
+	 * @param providerId
+	 *            provider ID
+	 * @param category
+	 *            category of the provided attribute
+	 * @param attributeId
+	 *            ID of the provided attribute
+	 * @param dependencies
+	 *            dependencies declared by the provider (see {@link #getDependencies()}), possibly null (undeclared)
+	 */
+	public CountingAttributeProvider(final String providerId, final String category, final String attributeId, final Set<AttributeDesignatorType> dependencies)
+	{
+		this(providerId, category, attributeId, dependencies, false);
+	}
+
+	/**
+	 * Creates provider factory
+	 *
+	 * @param providerId
+	 *            provider ID
+	 * @param category
+	 *            category of the provided attribute
+	 * @param attributeId
+	 *            ID of the provided attribute
+	 * @param dependencies
+	 *            dependencies declared by the provider (see {@link #getDependencies()}), possibly null (undeclared)
+	 * @param isAsync
+	 *            true iff the providers implement {@link AsyncNamedAttributeProvider}
+	 */
+	public CountingAttributeProvider(final String providerId, final String category, final String attributeId, final Set<AttributeDesignatorType> dependencies, final boolean isAsync)
+	{
+		this.providerId = providerId;
+		this.providedAttributeFqn = AttributeFqns.newInstance(category, Optional.empty(), attributeId);
+		this.providedAttributes = Collections.singleton(new AttributeDesignatorType(category, attributeId, StandardDatatypes.STRING.getId(), null, false));
+		this.dependencies = dependencies;
+		this.isAsync = isAsync;
+	}
+
+	/**
+	 * Sets the values returned by the provider(s) from now on
+	 *
+	 * @param newValues
+	 *            new values; none for an empty bag
+	 */
+	public void setValues(final String... newValues)
+	{
+		final List<StringValue> mutableValues = new ArrayList<>(newValues.length);
+		for (final String newValue : newValues)
+		{
+			mutableValues.add(new StringValue(newValue));
+		}
+
+		this.values = mutableValues;
+	}
+
+	/**
+	 * Makes the provider(s) fail (Indeterminate) from now on, or not
+	 *
+	 * @param isFailing
+	 *            true iff the provider(s) must fail
+	 */
+	public void setFailing(final boolean isFailing)
+	{
+		this.failing = isFailing;
+	}
+
+	/**
+	 * Gets the number of calls to the provider(s) so far
+	 *
+	 * @return number of calls to the provider(s) get(...) method
+	 */
+	public int getCallCount()
+	{
+		return callCount.get();
+	}
+
+	@Override
+	public Set<AttributeDesignatorType> getDependencies()
+	{
+		return dependencies;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <AV extends AttributeValue> AttributeBag<AV> getValues(final AttributeFqn attributeFqn, final Datatype<AV> datatype) throws IndeterminateEvaluationException
+	{
+		callCount.incrementAndGet();
+		if (failing)
+		{
+			throw new IndeterminateEvaluationException("Test provider '" + providerId + "' failure", XacmlStatusCode.PROCESSING_ERROR.value());
+		}
+
+		if (!attributeFqn.equals(providedAttributeFqn) || !datatype.equals(StandardDatatypes.STRING))
+		{
+			throw new IndeterminateEvaluationException("Unsupported attribute requested from test provider '" + providerId + "': " + attributeFqn + " (" + datatype + ")",
+					XacmlStatusCode.MISSING_ATTRIBUTE.value());
+		}
+
+		return (AttributeBag<AV>) Bags.newAttributeBag(StandardDatatypes.STRING, values);
+	}
+
+	private abstract class AsyncProvider extends BaseNamedAttributeProvider implements AsyncNamedAttributeProvider
+	{
+		private AsyncProvider()
+		{
+			super(providerId);
+		}
+	}
+
+	@Override
+	public CloseableNamedAttributeProvider getInstance(final AttributeValueFactoryRegistry attributeValueFactories, final AttributeProvider dependencyAttributeProvider)
+	{
+		if (isAsync)
+		{
+			return new AsyncProvider()
+			{
+
+				@Override
+				public void close() throws IOException
+				{
+					// nothing to close
+				}
+
+				@Override
+				public Set<AttributeDesignatorType> getProvidedAttributes()
+				{
+					return providedAttributes;
+				}
+
+				@Override
+				public <AV extends AttributeValue> CompletableFuture<AttributeBag<AV>> getAsync(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context)
+				{
+					final CompletableFuture<AttributeBag<AV>> future = new CompletableFuture<>();
+					try
+					{
+						future.complete(getValues(attributeFqn, datatype));
+					}
+					catch (final IndeterminateEvaluationException e)
+					{
+						future.completeExceptionally(e);
+					}
+
+					return future;
+				}
+
+				@Override
+				public <AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context)
+						throws IndeterminateEvaluationException
+				{
+					return AsyncNamedAttributeProvider.join(getAsync(attributeFqn, datatype, context));
+				}
+			};
+		}
+
+		return new BaseNamedAttributeProvider(providerId)
+		{
+
+			@Override
+			public void close() throws IOException
+			{
+				// nothing to close
+			}
+
+			@Override
+			public Set<AttributeDesignatorType> getProvidedAttributes()
+			{
+				return providedAttributes;
+			}
+
+			@Override
+			public <AV extends AttributeValue> AttributeBag<AV> get(final AttributeFqn attributeFqn, final Datatype<AV> datatype, final EvaluationContext context)
+					throws IndeterminateEvaluationException
+			{
+				return getValues(attributeFqn, datatype);
+			}
+		};
+	}
+}
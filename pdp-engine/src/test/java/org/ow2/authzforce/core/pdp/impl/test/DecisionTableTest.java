@@ -0,0 +1,285 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import javax.management.MBeanServerFactory;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.PepAction;
+import org.ow2.authzforce.core.pdp.api.policy.BasePrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.PolicyVersion;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.DecisionTable;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsMXBean;
+import org.ow2.authzforce.core.pdp.impl.metrics.JmxEvaluationMetricsRegistry;
+
+/**
+ * Tests of {@link DecisionTable}: the results of the first-applicable algorithm must be the same with and without decision tables (rule-by-rule evaluation)
+ */
+public class DecisionTableTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ACTION_ID = "urn:oasis:names:tc:xacml:1.0:action:action-id";
+	private static final String ROLE = "urn:example:role";
+
+	/*
+	 * Attribute always present in the requests with value 'x', used in the Condition added to the rules of the reference policy to prevent decision tables
+	 */
+	private static final String ALWAYS_X = "urn:example:always-x";
+	private static final String REFERENCE_CONDITION = "<Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue("x")
+			+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ALWAYS_X, false) + "</Apply></Condition>";
+
+	/*
+	 * Rule in a decision table: Target matching resource-id (and action-id if not null), Permit if even index, Deny if odd, with an obligation identifying the rule
+	 */
+	private static String newRule(final int index, final String resourceId, final String actionId, final boolean mustBePresent, final boolean isReference)
+	{
+		final String effect = index % 2 == 0 ? "Permit" : "Deny";
+		return "<Rule RuleId=\"R" + index + "\" Effect=\"" + effect + "\"><Target><AnyOf><AllOf>"
+				+ TestPdpEngines.stringEqualMatch(resourceId, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, mustBePresent)
+				+ (actionId == null ? "" : TestPdpEngines.stringEqualMatch(actionId, TestPdpEngines.ACTION_CATEGORY, ACTION_ID, mustBePresent)) + "</AllOf></AnyOf></Target>"
+				+ (isReference ? REFERENCE_CONDITION : "") + "<ObligationExpressions><ObligationExpression ObligationId=\"o" + index + "\" FulfillOn=\"" + effect
+				+ "\" /></ObligationExpressions></Rule>";
+	}
+
+	/*
+	 * Rules on resource-id only: r0, r1, ..., with r2 again in the end (never applicable)
+	 */
+	private static List<String> newOneDesignatorRules(final int count, final boolean mustBePresent, final boolean isReference)
+	{
+		final List<String> rules = new ArrayList<>(count);
+		for (int i = 0; i < count - 1; i++)
+		{
+			rules.add(newRule(i, "r" + i, null, mustBePresent, isReference));
+		}
+
+		rules.add(newRule(count - 1, "r2", null, mustBePresent, isReference));
+		return rules;
+	}
+
+	/*
+	 * Rules on resource-id and action-id: (r0, a0), (r1, a0), (r2, a0), (r0, a1), ..., i.e. several rules with the same resource-id
+	 */
+	private static List<String> newTwoDesignatorRules(final int count, final boolean mustBePresent, final boolean isReference)
+	{
+		final List<String> rules = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			rules.add(newRule(i, "r" + i % 3, "a" + i / 3, mustBePresent, isReference));
+		}
+
+		return rules;
+	}
+
+	/*
+	 * Rules after the decision table: one with a Condition, then a default Deny
+	 */
+	private static final List<String> TRAILING_RULES = Arrays.asList("<Rule RuleId=\"Admin\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">"
+			+ TestPdpEngines.stringValue("admin") + TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Apply></Condition></Rule>",
+			"<Rule RuleId=\"Default\" Effect=\"Deny\"><ObligationExpressions><ObligationExpression ObligationId=\"default\" FulfillOn=\"Deny\" /></ObligationExpressions></Rule>");
+
+	private static String newPolicy(final List<String> rules)
+	{
+		return "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicyId=\"DecisionTableP\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+				+ String.join("", rules) + "</Policy>";
+	}
+
+	/*
+	 * Values of the resource-id/action-id in the requests: missing, single value matching a rule or not, several values
+	 */
+	private static final List<List<String>> RESOURCE_IDS = Arrays.asList(Collections.emptyList(), Arrays.asList("r0"), Arrays.asList("r1"), Arrays.asList("r2"), Arrays.asList("r6"),
+			Arrays.asList("r7"), Arrays.asList("none"), Arrays.asList("r5", "r1"), Arrays.asList("none", "r2", "r0"));
+	private static final List<List<String>> ACTION_IDS = Arrays.asList(Collections.emptyList(), Arrays.asList("a0"), Arrays.asList("a1"), Arrays.asList("a3"), Arrays.asList("none"),
+			Arrays.asList("a2", "a0"), Arrays.asList("none", "a1"));
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private static String toString(final DecisionResult result)
+	{
+		final List<String> obligationIds = new ArrayList<>();
+		for (final PepAction pepAction : result.getPepActions())
+		{
+			obligationIds.add(pepAction.getId());
+		}
+
+		return result.getDecision() + " " + obligationIds;
+	}
+
+	private static DecisionResult evaluate(final BasePdpEngine pdp, final List<String> resourceIds, final List<String> actionIds, final String role)
+	{
+		final List<String> categoryIdValueTriples = new ArrayList<>(Arrays.asList(TestPdpEngines.SUBJECT_CATEGORY, ALWAYS_X, "x", TestPdpEngines.SUBJECT_CATEGORY, ROLE, role));
+		for (final String resourceId : resourceIds)
+		{
+			categoryIdValueTriples.addAll(Arrays.asList(TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, resourceId));
+		}
+
+		for (final String actionId : actionIds)
+		{
+			categoryIdValueTriples.addAll(Arrays.asList(TestPdpEngines.ACTION_CATEGORY, ACTION_ID, actionId));
+		}
+
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, categoryIdValueTriples.toArray(new String[categoryIdValueTriples.size()])));
+	}
+
+	/*
+	 * Checks that the results (decision and obligations) of the given policy are the same as the ones of the reference policy (evaluated rule by rule) for all combinations of request attributes
+	 */
+	private void assertSameResults(final List<String> rules, final List<String> referenceRules) throws IOException
+	{
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), "", newPolicy(rules));
+				final BasePdpEngine referencePdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), "", newPolicy(referenceRules)))
+		{
+			for (final List<String> resourceIds : RESOURCE_IDS)
+			{
+				for (final List<String> actionIds : ACTION_IDS)
+				{
+					for (final String role : new String[] { "admin", "user" })
+					{
+						assertEquals("resource-id=" + resourceIds + ", action-id=" + actionIds + ", role=" + role, toString(evaluate(referencePdp, resourceIds, actionIds, role)),
+								toString(evaluate(pdp, resourceIds, actionIds, role)));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void oneDesignatorTableGivesSameResultsAsRuleByRuleEvaluation() throws IOException
+	{
+		for (final boolean mustBePresent : new boolean[] { true, false })
+		{
+			// shorter than a table, then exactly the minimum size of a table, then more
+			for (final int ruleCount : new int[] { 7, 8, 9 })
+			{
+				assertSameResults(newOneDesignatorRules(ruleCount, mustBePresent, false), newOneDesignatorRules(ruleCount, mustBePresent, true));
+			}
+		}
+	}
+
+	@Test
+	public void twoDesignatorTableGivesSameResultsAsRuleByRuleEvaluation() throws IOException
+	{
+		for (final boolean mustBePresent : new boolean[] { true, false })
+		{
+			for (final int ruleCount : new int[] { 7, 8, 12 })
+			{
+				assertSameResults(newTwoDesignatorRules(ruleCount, mustBePresent, false), newTwoDesignatorRules(ruleCount, mustBePresent, true));
+			}
+		}
+	}
+
+	@Test
+	public void tableFollowedByOtherRulesGivesSameResultsAsRuleByRuleEvaluation() throws IOException
+	{
+		for (final boolean mustBePresent : new boolean[] { true, false })
+		{
+			final List<String> rules = new ArrayList<>(newTwoDesignatorRules(8, mustBePresent, false));
+			rules.addAll(TRAILING_RULES);
+			final List<String> referenceRules = new ArrayList<>(newTwoDesignatorRules(8, mustBePresent, true));
+			referenceRules.addAll(TRAILING_RULES);
+			assertSameResults(rules, referenceRules);
+		}
+	}
+
+	/*
+	 * Gets the number of calls to the provider of action-id for a request with a resource-id matching no rule: a decision table evaluates the action-id designator, whereas the rule-by-rule
+	 * evaluation stops at the resource-id Match of each rule
+	 */
+	private int getActionIdProviderCallCount(final int ruleCount) throws IOException
+	{
+		final CountingAttributeProvider actionIdProvider = new CountingAttributeProvider("actionIdProvider", TestPdpEngines.ACTION_CATEGORY, ACTION_ID, null);
+		actionIdProvider.setValues("a0");
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(), Collections.singletonList(actionIdProvider),
+				newPolicy(newTwoDesignatorRules(ruleCount, false, false)), Optional.empty()))
+		{
+			assertEquals("NOT_APPLICABLE []", toString(evaluate(pdp, Arrays.asList("none"), Collections.emptyList(), "user")));
+		}
+
+		return actionIdProvider.getCallCount();
+	}
+
+	@Test
+	public void tableIsUsedForRunsOfAtLeastEightRules() throws IOException
+	{
+		assertEquals(0, getActionIdProviderCallCount(7));
+		assertEquals(1, getActionIdProviderCallCount(8));
+	}
+
+	@Test
+	public void rulesAreEvaluatedOneByOneWhenMetricsAreEnabled() throws IOException
+	{
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(MBeanServerFactory.newMBeanServer());
+		final PrimaryPolicyMetadata policyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "DecisionTableP", new PolicyVersion("1.0"));
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(),
+				TestPdpEngines.newExpressionFactory(Collections.emptyList(), false, Optional.of(registry)), newPolicy(newOneDesignatorRules(8, false, false)), Optional.empty()))
+		{
+			assertEquals("DENY [o3]", toString(evaluate(pdp, Arrays.asList("r3"), Collections.emptyList(), "user")));
+			// rules before the applicable one are evaluated, their Target does not match
+			for (int i = 0; i < 3; i++)
+			{
+				final EvaluationMetricsMXBean ruleMetrics = (EvaluationMetricsMXBean) registry.getRuleMetrics(policyMetadata, "R" + i);
+				assertEquals(1, ruleMetrics.getEvaluationCount());
+				assertEquals(1, ruleMetrics.getTargetNoMatchCount());
+			}
+
+			assertEquals(1, ((EvaluationMetricsMXBean) registry.getRuleMetrics(policyMetadata, "R3")).getTargetMatchCount());
+		}
+	}
+
+	@Test
+	public void childPoliciesAreEvaluatedOneByOneWhenMetricsAreEnabled() throws IOException
+	{
+		final StringBuilder policySet = new StringBuilder("<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicySetId=\"DecisionTablePS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:first-applicable\"><Target />");
+		for (int i = 0; i < 8; i++)
+		{
+			policySet.append("<Policy PolicyId=\"DecisionTableP").append(i)
+					.append("\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>")
+					.append(TestPdpEngines.stringEqualMatch("r" + i, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false))
+					.append("</AllOf></AnyOf></Target><Rule RuleId=\"R\" Effect=\"Permit\" /></Policy>");
+		}
+
+		policySet.append("</PolicySet>");
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(MBeanServerFactory.newMBeanServer());
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(),
+				TestPdpEngines.newExpressionFactory(Collections.emptyList(), false, Optional.of(registry)), policySet.toString(), Optional.empty()))
+		{
+			assertEquals("PERMIT []", toString(evaluate(pdp, Arrays.asList("r3"), Collections.emptyList(), "user")));
+			final EvaluationMetricsMXBean firstPolicyMetrics = (EvaluationMetricsMXBean) registry
+					.getPolicyMetrics(new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "DecisionTableP0", new PolicyVersion("1.0")));
+			assertEquals(1, firstPolicyMetrics.getEvaluationCount());
+			assertEquals(1, firstPolicyMetrics.getTargetNoMatchCount());
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.InMemoryDecisionCache;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link InMemoryDecisionCache} used by a PDP engine
+ */
+public class InMemoryDecisionCacheTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ROLE_ID = "urn:oasis:names:tc:xacml:2.0:subject:role";
+
+	/*
+	 * Rules R0 and R1 depend on the request only (R0 is Indeterminate if there are multiple resource-ids); rule R2 depends on the role resolved by the attribute provider (not in the request)
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"P\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<Rule RuleId=\"R0\" Effect=\"Deny\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">"
+			+ "<Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-one-and-only\">" + TestPdpEngines.stringDesignator(TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false)
+			+ "</Apply>" + TestPdpEngines.stringValue("forbidden") + "</Apply></Condition></Rule>"
+			+ "<Rule RuleId=\"R1\" Effect=\"Permit\"><Target><AnyOf><AllOf>" + TestPdpEngines.stringEqualMatch("public", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, false)
+			+ "</AllOf></AnyOf></Target></Rule>" + "<Rule RuleId=\"R2\" Effect=\"Permit\"><Target><AnyOf><AllOf>"
+			+ TestPdpEngines.stringEqualMatch("admin", TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, false) + "</AllOf></AnyOf></Target></Rule>"
+			+ "<Rule RuleId=\"R3\" Effect=\"Deny\" /></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE_ID, null);
+
+	private BasePdpEngine newPdpEngine(final InMemoryDecisionCache decisionCache) throws IOException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		return TestPdpEngines.newPdpEngine(dir, Collections.singletonList(roleProvider), ROOT_POLICY, Optional.of(decisionCache));
+	}
+
+	@Test
+	public void requestOnlyDependentResultIsReused() throws IOException
+	{
+		final InMemoryDecisionCache decisionCache = new InMemoryDecisionCache(100, 0, 1);
+		try (final BasePdpEngine pdp = newPdpEngine(decisionCache))
+		{
+			final DecisionRequest request = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public");
+			/*
+			 * First evaluation learns the key attributes, second one caches the result, the next ones are hits
+			 */
+			for (int i = 0; i < 4; i++)
+			{
+				assertEquals(DecisionType.PERMIT, pdp.evaluate(request).getDecision());
+			}
+
+			assertEquals(2, decisionCache.getMissCount());
+			assertEquals(2, decisionCache.getHitCount());
+			// R2 never evaluated
+			assertEquals(0, roleProvider.getCallCount());
+
+			// different key value -> miss
+			assertEquals(DecisionType.DENY, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret")).getDecision());
+			assertEquals(2, decisionCache.getHitCount());
+		}
+	}
+
+	@Test
+	public void providerDependentResultIsNotReused() throws IOException
+	{
+		final InMemoryDecisionCache decisionCache = new InMemoryDecisionCache(100, 0, 1);
+		try (final BasePdpEngine pdp = newPdpEngine(decisionCache))
+		{
+			final DecisionRequest request = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret");
+			roleProvider.setValues("admin");
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(DecisionType.PERMIT, pdp.evaluate(request).getDecision());
+			}
+
+			assertEquals(3, roleProvider.getCallCount());
+
+			/*
+			 * The provider result changes for the same request, the decision must follow
+			 */
+			roleProvider.setValues("guest");
+			assertEquals(DecisionType.DENY, pdp.evaluate(request).getDecision());
+			assertEquals(4, roleProvider.getCallCount());
+			assertEquals(0, decisionCache.getHitCount());
+		}
+	}
+
+	@Test
+	public void indeterminateResultIsNotCached() throws IOException
+	{
+		final InMemoryDecisionCache decisionCache = new InMemoryDecisionCache(100, 0, 1);
+		try (final BasePdpEngine pdp = newPdpEngine(decisionCache))
+		{
+			// learn the key attribute (resource-id)
+			assertEquals(DecisionType.PERMIT, pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public")).getDecision());
+
+			// R0 Indeterminate (not a single resource-id)
+			final DecisionRequest request = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "secret");
+			for (int i = 0; i < 3; i++)
+			{
+				assertEquals(DecisionType.INDETERMINATE, pdp.evaluate(request).getDecision());
+			}
+
+			assertEquals(4, decisionCache.getMissCount());
+			assertEquals(0, decisionCache.getHitCount());
+			assertEquals(0, roleProvider.getCallCount());
+		}
+	}
+
+	@Test
+	public void batchLookupReturnsResultsCachedByEvaluation() throws IOException
+	{
+		final InMemoryDecisionCache decisionCache = new InMemoryDecisionCache(100, 0, 1);
+		try (final BasePdpEngine pdp = newPdpEngine(decisionCache))
+		{
+			final DecisionRequest cachedRequest = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "public");
+			final DecisionRequest otherRequest = TestPdpEngines.newRequest(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "other");
+			// first evaluation learns the key attributes, second one caches the result
+			for (int i = 0; i < 2; i++)
+			{
+				assertEquals(DecisionType.PERMIT, pdp.evaluate(cachedRequest).getDecision());
+			}
+
+			final Map<DecisionRequest, DecisionResult> cachedResults = decisionCache.getAll(Arrays.asList(cachedRequest, otherRequest));
+			assertEquals(Collections.singleton(cachedRequest), cachedResults.keySet());
+			assertEquals(DecisionType.PERMIT, cachedResults.get(cachedRequest).getDecision());
+			assertEquals(1, decisionCache.getHitCount());
+			assertEquals(3, decisionCache.getMissCount());
+
+			/*
+			 * Results without evaluation context are not cached
+			 */
+			decisionCache.putAll(Collections.singletonMap(otherRequest, cachedResults.get(cachedRequest)));
+			assertTrue(decisionCache.getAll(Collections.singletonList(otherRequest)).isEmpty());
+		}
+	}
+}
@@ -22,6 +22,15 @@ import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
+import org.ow2.authzforce.core.pdp.impl.AttributeValueCacheTest;
+import org.ow2.authzforce.core.pdp.impl.EvaluationContextSlotsTest;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContextReuseTest;
+import org.ow2.authzforce.core.pdp.impl.combining.AdaptiveEvaluationOrderTest;
+import org.ow2.authzforce.core.pdp.impl.expression.ExpressionCostModelTest;
+import org.ow2.authzforce.core.pdp.impl.func.CompiledRegexCacheTest;
+import org.ow2.authzforce.core.pdp.impl.policy.PolicyRepositorySnapshotTest;
+import org.ow2.authzforce.core.pdp.impl.policy.ReloadableRootPolicyProviderTest;
+import org.ow2.authzforce.core.pdp.impl.test.expression.DepthLimitingExpressionFactoryTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.BagFunctionsTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.DateTimeArithmeticFunctionsTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.EqualityFunctionsTest;
@@ -36,6 +45,9 @@ import org.ow2.authzforce.core.pdp.impl.test.func.SetFunctionsTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.SpecialMatchFunctionsTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.StringConversionFunctionsTest;
 import org.ow2.authzforce.core.pdp.impl.test.func.StringFunctionsTest;
+import org.ow2.authzforce.core.pdp.impl.test.metrics.AttributeProviderMetricsTest;
+import org.ow2.authzforce.core.pdp.impl.test.metrics.JmxEvaluationMetricsRegistryTest;
+import org.ow2.authzforce.core.pdp.impl.test.metrics.StripedEvaluationMetricsTest;
 import org.ow2.authzforce.core.pdp.impl.test.value.AnyURIAttributeTest;
 import org.ow2.authzforce.core.pdp.impl.test.value.StandardJavaTypeToXacmlAttributeDatatypeConversionTest;
 import org.slf4j.Logger;
@@ -53,7 +65,11 @@ import org.slf4j.LoggerFactory;
 @RunWith(Suite.class)
 @SuiteClasses(value = { EqualityFunctionsTest.class, NumericArithmeticFunctionsTest.class, StringConversionFunctionsTest.class, NumericConversionFunctionsTest.class, LogicalFunctionsTest.class,
 		NumericComparisonFunctionsTest.class, DateTimeArithmeticFunctionsTest.class, NonNumericComparisonFunctionsTest.class, StringFunctionsTest.class, BagFunctionsTest.class,
-		SetFunctionsTest.class, HigherOrderFunctionsTest.class, RegExpBasedFunctionsTest.class, SpecialMatchFunctionsTest.class, StandardJavaTypeToXacmlAttributeDatatypeConversionTest.class })
+		SetFunctionsTest.class, HigherOrderFunctionsTest.class, RegExpBasedFunctionsTest.class, SpecialMatchFunctionsTest.class, StandardJavaTypeToXacmlAttributeDatatypeConversionTest.class,
+		EvaluationContextSlotsTest.class, DepthLimitingExpressionFactoryTest.class, MatchEvaluatorTest.class, CompiledRegexCacheTest.class, InMemoryDecisionCacheTest.class,
+		IndividualDecisionRequestContextReuseTest.class, ReloadableRootPolicyProviderTest.class, PolicyRepositorySnapshotTest.class, AsyncAttributePrefetchTest.class, BulkAttributeFetchTest.class,
+		AttributeValueCacheTest.class, BatchAttributeValueSharingTest.class, StripedEvaluationMetricsTest.class, JmxEvaluationMetricsRegistryTest.class, AttributeProviderMetricsTest.class,
+		AdaptiveEvaluationOrderTest.class, DecisionTableTest.class, ExpressionCostModelTest.class })
 public class MainTest
 {
 	/**
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeDatatype;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContext;
+import org.ow2.authzforce.core.pdp.impl.MatchEvaluator;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.FunctionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Match;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObjectFactory;
+
+/**
+ * Tests of {@link MatchEvaluator}: the specialised evaluation of equality, starts-with and regexp-match Matches must give the same results as the equivalent standard 'any-of' function call
+ */
+public class MatchEvaluatorTest
+{
+	private static final ObjectFactory XACML_OBJECT_FACTORY = new ObjectFactory();
+
+	private static final String ATTRIBUTE_ID = "urn:ow2:authzforce:test:attribute:matched";
+
+	private static final AttributeValueFactoryRegistry ATTRIBUTE_VALUE_FACTORIES = StandardAttributeValueFactories.getRegistry(false, Optional.empty());
+
+	private static final DepthLimitingExpressionFactory EXPRESSION_FACTORY;
+	static
+	{
+		try
+		{
+			EXPRESSION_FACTORY = new DepthLimitingExpressionFactory(ATTRIBUTE_VALUE_FACTORIES, StandardFunction.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER), null, 0, false,
+					false);
+		}
+		catch (final IllegalArgumentException | IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	@AfterClass
+	public static void closeExpressionFactory() throws IOException
+	{
+		EXPRESSION_FACTORY.close();
+	}
+
+	private static AttributeValueType newAttributeValue(final String datatypeId, final String value)
+	{
+		return new AttributeValueType(Collections.<Serializable>singletonList(value), datatypeId, null);
+	}
+
+	private static AttributeDesignatorType newDesignator(final String datatypeId, final boolean mustBePresent)
+	{
+		return new AttributeDesignatorType(TestPdpEngines.RESOURCE_CATEGORY, ATTRIBUTE_ID, datatypeId, null, mustBePresent);
+	}
+
+	/*
+	 * Context with the matched attribute's values; or without the attribute at all if bagValues == null
+	 */
+	@SuppressWarnings("unchecked")
+	private static IndividualDecisionRequestContext newContext(final String bagDatatypeId, final String[] bagValues)
+	{
+		if (bagValues == null)
+		{
+			return new IndividualDecisionRequestContext(null, null, false);
+		}
+
+		final List<AttributeValue> values = new ArrayList<>(bagValues.length);
+		for (final String bagValue : bagValues)
+		{
+			values.add(ATTRIBUTE_VALUE_FACTORIES.newExpression(bagDatatypeId, Collections.singletonList(bagValue), null, null).getValue().get());
+		}
+
+		final AttributeDatatype<AttributeValue> bagElementType = (AttributeDatatype<AttributeValue>) ATTRIBUTE_VALUE_FACTORIES.getExtension(bagDatatypeId).getDatatype();
+		final Map<AttributeFqn, AttributeBag<?>> namedAttributes = Collections.<AttributeFqn, AttributeBag<?>>singletonMap(
+				AttributeFqns.newInstance(TestPdpEngines.RESOURCE_CATEGORY, Optional.empty(), ATTRIBUTE_ID), Bags.newAttributeBag(bagElementType, values));
+		return new IndividualDecisionRequestContext(namedAttributes, null, false);
+	}
+
+	/*
+	 * Returns the result of the Match, or null if Indeterminate, after checking it is the same as the result of the equivalent any-of function call
+	 */
+	private static Boolean matchAndCompareWithAnyOf(final String matchId, final String constantDatatypeId, final String constantValue, final String bagDatatypeId, final boolean mustBePresent,
+			final String... bagValues)
+	{
+		final Match jaxbMatch = new Match(newAttributeValue(constantDatatypeId, constantValue), null, newDesignator(bagDatatypeId, mustBePresent), matchId);
+		final MatchEvaluator matchEvaluator = new MatchEvaluator(jaxbMatch, null, EXPRESSION_FACTORY);
+
+		final ApplyType anyOfApply = new ApplyType(null, Arrays.<JAXBElement<? extends ExpressionType>>asList(XACML_OBJECT_FACTORY.createFunction(new FunctionType(matchId)),
+				XACML_OBJECT_FACTORY.createAttributeValue(newAttributeValue(constantDatatypeId, constantValue)),
+				XACML_OBJECT_FACTORY.createAttributeDesignator(newDesignator(bagDatatypeId, mustBePresent))), StandardFunction.ANY_OF.getId());
+		final Expression<?> anyOfExpression = EXPRESSION_FACTORY.getInstance(anyOfApply, null, null);
+
+		Boolean anyOfResult;
+		try
+		{
+			anyOfResult = ((BooleanValue) anyOfExpression.evaluate(newContext(bagDatatypeId, bagValues))).getUnderlyingValue();
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			anyOfResult = null;
+		}
+
+		Boolean matchResult;
+		try
+		{
+			matchResult = matchEvaluator.match(newContext(bagDatatypeId, bagValues));
+		}
+		catch (final IndeterminateEvaluationException e)
+		{
+			matchResult = null;
+		}
+
+		assertEquals("Match result different from equivalent any-of call for " + matchId + "('" + constantValue + "', " + (bagValues == null ? "missing attribute" : String.join(",", bagValues))
+				+ ")", anyOfResult, matchResult);
+		return matchResult;
+	}
+
+	private static void assertMatch(final Boolean expectedResult, final String matchId, final String constantDatatypeId, final String constantValue, final String bagDatatypeId,
+			final String... bagValues)
+	{
+		assertEquals(expectedResult, matchAndCompareWithAnyOf(matchId, constantDatatypeId, constantValue, bagDatatypeId, false, bagValues));
+	}
+
+	@Test
+	public void equalityMatch()
+	{
+		final String stringId = StandardDatatypes.STRING.getId();
+		assertMatch(true, StandardFunction.STRING_EQUAL.getId(), stringId, "a", stringId, "b", "a");
+		assertMatch(false, StandardFunction.STRING_EQUAL.getId(), stringId, "a", stringId, "b", "c");
+		final String integerId = StandardDatatypes.INTEGER.getId();
+		assertMatch(true, StandardFunction.INTEGER_EQUAL.getId(), integerId, "10", integerId, "010");
+		final String anyUriId = StandardDatatypes.ANYURI.getId();
+		assertMatch(false, StandardFunction.ANYURI_EQUAL.getId(), anyUriId, "http://example.com/a", anyUriId, "http://example.com/b");
+	}
+
+	@Test
+	public void startsWithMatch()
+	{
+		final String stringId = StandardDatatypes.STRING.getId();
+		assertMatch(true, StandardFunction.STRING_STARTS_WITH.getId(), stringId, "ab", stringId, "xab", "abc");
+		assertMatch(false, StandardFunction.STRING_STARTS_WITH.getId(), stringId, "ab", stringId, "xab", "ba");
+	}
+
+	@Test
+	public void anyUriStartsWithMatch()
+	{
+		final String anyUriId = StandardDatatypes.ANYURI.getId();
+		assertMatch(true, StandardFunction.ANYURI_STARTS_WITH.getId(), StandardDatatypes.STRING.getId(), "http://example.com/", anyUriId, "urn:x", "http://example.com/a");
+		assertMatch(false, StandardFunction.ANYURI_STARTS_WITH.getId(), StandardDatatypes.STRING.getId(), "http://example.com/", anyUriId, "urn:x", "http://example.org/a");
+	}
+
+	private static void assertRegexpMatch(final StandardFunction regexpMatchFunction, final AttributeDatatype<?> bagDatatype, final String regex, final String matchingValue,
+			final String nonMatchingValue)
+	{
+		final String stringId = StandardDatatypes.STRING.getId();
+		assertMatch(true, regexpMatchFunction.getId(), stringId, regex, bagDatatype.getId(), nonMatchingValue, matchingValue);
+		assertMatch(false, regexpMatchFunction.getId(), stringId, regex, bagDatatype.getId(), nonMatchingValue);
+		assertMatch(false, regexpMatchFunction.getId(), stringId, regex, bagDatatype.getId());
+	}
+
+	@Test
+	public void regexpMatchOfEachDatatype()
+	{
+		assertRegexpMatch(StandardFunction.STRING_REGEXP_MATCH, StandardDatatypes.STRING, "^a.*z$", "abcz", "abc");
+		assertRegexpMatch(StandardFunction.ANYURI_REGEXP_MATCH, StandardDatatypes.ANYURI, "^http://example\\.com/.*", "http://example.com/a", "urn:example:a");
+		assertRegexpMatch(StandardFunction.IPADDRESS_REGEXP_MATCH, StandardDatatypes.IPADDRESS, "^192\\.168\\..*", "192.168.1.1", "10.0.0.1");
+		assertRegexpMatch(StandardFunction.DNSNAME_REGEXP_MATCH, StandardDatatypes.DNSNAME, "^.*\\.example\\.com$", "www.example.com", "www.example.org");
+		assertRegexpMatch(StandardFunction.RFC822NAME_REGEXP_MATCH, StandardDatatypes.RFC822NAME, "^.*@example\\.com$", "alice@example.com", "alice@example.org");
+		assertRegexpMatch(StandardFunction.X500NAME_REGEXP_MATCH, StandardDatatypes.X500NAME, "^.*[Ee]xample$", "cn=Alice,o=Example", "cn=Bob,o=Other");
+	}
+
+	@Test
+	public void emptyBagDoesNotMatch()
+	{
+		final String stringId = StandardDatatypes.STRING.getId();
+		assertMatch(false, StandardFunction.STRING_EQUAL.getId(), stringId, "a", stringId, (String[]) null);
+		assertMatch(false, StandardFunction.STRING_STARTS_WITH.getId(), stringId, "a", stringId, (String[]) null);
+		assertMatch(false, StandardFunction.ANYURI_STARTS_WITH.getId(), stringId, "urn:", StandardDatatypes.ANYURI.getId(), (String[]) null);
+		assertMatch(false, StandardFunction.STRING_REGEXP_MATCH.getId(), stringId, "a", stringId, (String[]) null);
+	}
+
+	private static void assertIndeterminate(final String matchId, final String constantDatatypeId, final String constantValue, final String bagDatatypeId)
+	{
+		if (matchAndCompareWithAnyOf(matchId, constantDatatypeId, constantValue, bagDatatypeId, true, (String[]) null) != null)
+		{
+			fail("Match " + matchId + " on missing attribute with MustBePresent=true is not Indeterminate");
+		}
+	}
+
+	@Test
+	public void indeterminateBagMakesMatchIndeterminate()
+	{
+		final String stringId = StandardDatatypes.STRING.getId();
+		assertIndeterminate(StandardFunction.STRING_EQUAL.getId(), stringId, "a", stringId);
+		assertIndeterminate(StandardFunction.STRING_STARTS_WITH.getId(), stringId, "a", stringId);
+		assertIndeterminate(StandardFunction.ANYURI_STARTS_WITH.getId(), stringId, "urn:", StandardDatatypes.ANYURI.getId());
+		assertIndeterminate(StandardFunction.DNSNAME_REGEXP_MATCH.getId(), stringId, "^.*$", StandardDatatypes.DNSNAME.getId());
+	}
+}
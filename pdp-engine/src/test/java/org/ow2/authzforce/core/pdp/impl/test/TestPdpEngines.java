@@ -0,0 +1,313 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.CloseableNamedAttributeProvider;
+import org.ow2.authzforce.core.pdp.api.DecisionCache;
+import org.ow2.authzforce.core.pdp.api.DecisionRequest;
+import org.ow2.authzforce.core.pdp.api.DecisionRequestBuilder;
+import org.ow2.authzforce.core.pdp.api.PdpEngine;
+import org.ow2.authzforce.core.pdp.api.io.XacmlJaxbParsingUtils;
+import org.ow2.authzforce.core.pdp.api.policy.RootPolicyProvider;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.AttributeValueCache;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.combining.StandardCombiningAlgorithm;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
+import org.ow2.authzforce.core.pdp.impl.policy.CoreRootPolicyProvider;
+import org.ow2.authzforce.core.xmlns.pdp.StandardEnvironmentAttributeSource;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeCategory;
+
+/**
+ * Utilities for unit tests requiring a PDP engine created from inline policies, written to a (temporary) directory with the PDP configuration
+ */
+public final class TestPdpEngines
+{
+	/**
+	 * XACML 3.0 namespace, to be declared on the root policy
+	 */
+	public static final String XACML_NS = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+
+	/**
+	 * PDP configuration namespace
+	 */
+	public static final String PDP_NS = "http://authzforce.github.io/core/xmlns/pdp/6.0";
+
+	/**
+	 * string datatype URI
+	 */
+	public static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+
+	/**
+	 * Access subject category
+	 */
+	public static final String SUBJECT_CATEGORY = XacmlAttributeCategory.XACML_1_0_ACCESS_SUBJECT.value();
+
+	/**
+	 * Resource category
+	 */
+	public static final String RESOURCE_CATEGORY = XacmlAttributeCategory.XACML_3_0_RESOURCE.value();
+
+	/**
+	 * Action category
+	 */
+	public static final String ACTION_CATEGORY = XacmlAttributeCategory.XACML_3_0_ACTION.value();
+
+	/**
+	 * Root policy provider loading the root policy from file 'policy.xml' in the same directory as the PDP configuration
+	 */
+	public static final String STATIC_ROOT_POLICY_PROVIDER = "<rootPolicyProvider id=\"rootPolicyProvider\" xsi:type=\"StaticRootPolicyProvider\" policyLocation=\"${PARENT_DIR}/policy.xml\" />";
+
+	private TestPdpEngines()
+	{
+		// utility class
+	}
+
+	/**
+	 * Writes a UTF-8 text file
+	 *
+	 * @param directory
+	 *            parent directory
+	 * @param filename
+	 *            file name
+	 * @param content
+	 *            file content
+	 * @return the file
+	 * @throws IOException
+	 *             error writing the file
+	 */
+	public static Path write(final Path directory, final String filename, final CharSequence content) throws IOException
+	{
+		return Files.write(directory.resolve(filename), content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a PDP configuration file 'pdp.xml' to a directory and parses it
+	 *
+	 * @param directory
+	 *            directory of the PDP configuration, ${PARENT_DIR} in the configuration
+	 * @param pdpAttributes
+	 *            XML attributes of the 'pdp' element, e.g. {@code enableXPath="true"}; empty if none
+	 * @param pdpContent
+	 *            content of the 'pdp' element, including the root policy provider (e.g. {@link #STATIC_ROOT_POLICY_PROVIDER})
+	 * @return PDP engine configuration
+	 * @throws IOException
+	 *             error writing or parsing the configuration
+	 */
+	public static PdpEngineConfiguration newConfiguration(final Path directory, final String pdpAttributes, final String pdpContent) throws IOException
+	{
+		final Path pdpConfFile = write(directory, "pdp.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><pdp xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"" + PDP_NS
+				+ "\" version=\"6.0.0\" " + pdpAttributes + ">" + pdpContent + "</pdp>");
+		return PdpEngineConfiguration.getInstance(pdpConfFile.toFile(), null, null);
+	}
+
+	/**
+	 * Creates a PDP engine evaluating a given root policy, with the given PDP configuration options
+	 *
+	 * @param directory
+	 *            directory where the PDP configuration and policy files are written
+	 * @param pdpAttributes
+	 *            XML attributes of the 'pdp' element, e.g. {@code enableXPath="true"}; empty if none
+	 * @param rootPolicy
+	 *            root Policy(Set) document (with XACML namespace declaration)
+	 * @return PDP engine
+	 * @throws IOException
+	 *             error writing or parsing the configuration and policy
+	 */
+	public static BasePdpEngine newPdpEngine(final Path directory, final String pdpAttributes, final String rootPolicy) throws IOException
+	{
+		write(directory, "policy.xml", rootPolicy);
+		return new BasePdpEngine(newConfiguration(directory, pdpAttributes, STATIC_ROOT_POLICY_PROVIDER));
+	}
+
+	/**
+	 * Creates a PDP engine evaluating a given root policy, with the given attribute providers and decision cache, without PDP configuration file (standard datatypes and functions only)
+	 *
+	 * @param directory
+	 *            directory where the policy file is written
+	 * @param attributeProviderFactories
+	 *            attribute provider factories, e.g. {@link CountingAttributeProvider}s
+	 * @param rootPolicy
+	 *            root Policy(Set) document (with XACML namespace declaration)
+	 * @param decisionCache
+	 *            decision cache, empty if none
+	 * @return PDP engine
+	 * @throws IOException
+	 *             error writing or parsing the policy
+	 */
+	public static BasePdpEngine newPdpEngine(final Path directory, final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories, final String rootPolicy,
+			final Optional<DecisionCache> decisionCache) throws IOException
+	{
+		return newPdpEngine(directory, newExpressionFactory(attributeProviderFactories, false, Optional.empty()), rootPolicy, decisionCache);
+	}
+
+	/**
+	 * Creates an expression factory supporting standard datatypes and functions only
+	 *
+	 * @param attributeProviderFactories
+	 *            attribute provider factories, e.g. {@link CountingAttributeProvider}s
+	 * @param asyncAttributePrefetch
+	 *            enables asynchronous attribute prefetching
+	 * @param evaluationMetricsRegistry
+	 *            evaluation metrics registry, empty if metrics disabled
+	 * @return expression factory
+	 * @throws IOException
+	 *             error creating the attribute providers
+	 */
+	public static DepthLimitingExpressionFactory newExpressionFactory(final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories,
+			final boolean asyncAttributePrefetch, final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry) throws IOException
+	{
+		return newExpressionFactory(attributeProviderFactories, asyncAttributePrefetch, Optional.empty(), evaluationMetricsRegistry);
+	}
+
+	/**
+	 * Creates an expression factory supporting standard datatypes and functions only, with attribute value cache
+	 *
+	 * @param attributeProviderFactories
+	 *            attribute provider factories, e.g. {@link CountingAttributeProvider}s
+	 * @param asyncAttributePrefetch
+	 *            enables asynchronous attribute prefetching
+	 * @param attributeValueCache
+	 *            attribute value cache shared by all requests, empty if none
+	 * @param evaluationMetricsRegistry
+	 *            evaluation metrics registry, empty if metrics disabled
+	 * @return expression factory
+	 * @throws IOException
+	 *             error creating the attribute providers
+	 */
+	public static DepthLimitingExpressionFactory newExpressionFactory(final List<CloseableNamedAttributeProvider.DependencyAwareFactory> attributeProviderFactories,
+			final boolean asyncAttributePrefetch, final Optional<AttributeValueCache> attributeValueCache, final Optional<EvaluationMetricsRegistry> evaluationMetricsRegistry)
+			throws IOException
+	{
+		return new DepthLimitingExpressionFactory(StandardAttributeValueFactories.getRegistry(false, Optional.empty()),
+				StandardFunction.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER), attributeProviderFactories, 0, false, false, asyncAttributePrefetch, attributeValueCache,
+				evaluationMetricsRegistry, false, false);
+	}
+
+	/**
+	 * Creates a PDP engine evaluating a given root policy, with a given expression factory and decision cache, without PDP configuration file
+	 *
+	 * @param directory
+	 *            directory where the policy file is written
+	 * @param expressionFactory
+	 *            expression factory, e.g. from {@link #newExpressionFactory(List, boolean, Optional)}
+	 * @param rootPolicy
+	 *            root Policy(Set) document (with XACML namespace declaration)
+	 * @param decisionCache
+	 *            decision cache, empty if none
+	 * @return PDP engine
+	 * @throws IOException
+	 *             error writing or parsing the policy
+	 */
+	public static BasePdpEngine newPdpEngine(final Path directory, final DepthLimitingExpressionFactory expressionFactory, final String rootPolicy, final Optional<DecisionCache> decisionCache)
+			throws IOException
+	{
+		final Path rootPolicyFile = write(directory, "policy.xml", rootPolicy);
+		final RootPolicyProvider rootPolicyProvider = CoreRootPolicyProvider.getInstance(rootPolicyFile.toUri().toURL(), XacmlJaxbParsingUtils.getXacmlParserFactory(false), expressionFactory,
+				StandardCombiningAlgorithm.REGISTRY, Optional.empty());
+		return new BasePdpEngine(expressionFactory, rootPolicyProvider, false, StandardEnvironmentAttributeSource.REQUEST_ELSE_PDP, decisionCache);
+	}
+
+	/**
+	 * Creates an AttributeDesignator of datatype string
+	 *
+	 * @param category
+	 *            attribute category
+	 * @param attributeId
+	 *            attribute ID
+	 * @param mustBePresent
+	 *            MustBePresent flag
+	 * @return AttributeDesignator XML
+	 */
+	public static String stringDesignator(final String category, final String attributeId, final boolean mustBePresent)
+	{
+		return "<AttributeDesignator Category=\"" + category + "\" AttributeId=\"" + attributeId + "\" DataType=\"" + XSD_STRING + "\" MustBePresent=\"" + mustBePresent + "\" />";
+	}
+
+	/**
+	 * Creates an AttributeValue of datatype string
+	 *
+	 * @param value
+	 *            string value
+	 * @return AttributeValue XML
+	 */
+	public static String stringValue(final String value)
+	{
+		return "<AttributeValue DataType=\"" + XSD_STRING + "\">" + value + "</AttributeValue>";
+	}
+
+	/**
+	 * Creates a Match of a string AttributeDesignator with function string-equal
+	 *
+	 * @param value
+	 *            value to match
+	 * @param category
+	 *            attribute category
+	 * @param attributeId
+	 *            attribute ID
+	 * @param mustBePresent
+	 *            MustBePresent flag of the AttributeDesignator
+	 * @return Match XML
+	 */
+	public static String stringEqualMatch(final String value, final String category, final String attributeId, final boolean mustBePresent)
+	{
+		return "<Match MatchId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\">" + stringValue(value) + stringDesignator(category, attributeId, mustBePresent) + "</Match>";
+	}
+
+	/**
+	 * Creates an Individual Decision Request with string attributes (without Issuer)
+	 *
+	 * @param pdpEngine
+	 *            PDP engine providing the request builder
+	 * @param categoryIdValueTriples
+	 *            (category, attribute ID, value) triples; one value per attribute, the same attribute being repeated for multiple values
+	 * @return request
+	 */
+	public static DecisionRequest newRequest(final PdpEngine pdpEngine, final String... categoryIdValueTriples)
+	{
+		assert categoryIdValueTriples.length % 3 == 0;
+		final DecisionRequestBuilder<?> requestBuilder = pdpEngine.newRequestBuilder(3, categoryIdValueTriples.length / 3);
+		final Map<AttributeFqn, List<StringValue>> valuesByAttribute = new LinkedHashMap<>();
+		for (int i = 0; i < categoryIdValueTriples.length; i += 3)
+		{
+			valuesByAttribute.computeIfAbsent(AttributeFqns.newInstance(categoryIdValueTriples[i], Optional.empty(), categoryIdValueTriples[i + 1]), k -> new ArrayList<>())
+					.add(new StringValue(categoryIdValueTriples[i + 2]));
+		}
+
+		valuesByAttribute.forEach((attributeFqn, values) -> requestBuilder.putNamedAttributeIfAbsent(attributeFqn, Bags.newAttributeBag(StandardDatatypes.STRING, values)));
+		return requestBuilder.build(false);
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright 2012-2026 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.bind.JAXBElement;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.expression.Expression;
+import org.ow2.authzforce.core.pdp.api.func.EqualTypeMatchFunction;
+import org.ow2.authzforce.core.pdp.api.func.Function;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.Bags;
+import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
+import org.ow2.authzforce.core.pdp.api.value.StandardAttributeValueFactories;
+import org.ow2.authzforce.core.pdp.api.value.StandardDatatypes;
+import org.ow2.authzforce.core.pdp.api.value.StringValue;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.IndividualDecisionRequestContext;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.expression.DepthLimitingExpressionFactory;
+import org.ow2.authzforce.core.pdp.impl.func.FunctionRegistry;
+import org.ow2.authzforce.core.pdp.impl.func.ImmutableFunctionRegistry;
+import org.ow2.authzforce.core.pdp.impl.func.StandardFunction;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+import org.ow2.authzforce.xacml.identifiers.XacmlAttributeId;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ApplyType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeDesignatorType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.AttributeValueType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ExpressionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.ObjectFactory;
+
+/**
+ * Tests of {@link DepthLimitingExpressionFactory}
+ */
+public class DepthLimitingExpressionFactoryTest
+{
+	private static final String SUBJECT_ID = XacmlAttributeId.XACML_1_0_SUBJECT_ID.value();
+	private static final String RESOURCE_ID = XacmlAttributeId.XACML_1_0_RESOURCE_ID.value();
+
+	private static final ObjectFactory XACML_OBJECT_FACTORY = new ObjectFactory();
+
+	private static final String STRING_ONE_AND_ONLY_ID = "urn:oasis:names:tc:xacml:1.0:function:string-one-and-only";
+
+	private static final String COUNTING_STRING_EQUAL_ID = "urn:ow2:authzforce:test:function:counting-string-equal";
+
+	/*
+	 * string-equal counting its calls
+	 */
+	private static final class CountingStringEqualFunction extends EqualTypeMatchFunction<StringValue>
+	{
+		private CountingStringEqualFunction(final AtomicInteger callCount)
+		{
+			super(COUNTING_STRING_EQUAL_ID, StandardDatatypes.STRING, new Matcher<StringValue>()
+			{
+				@Override
+				public boolean match(final StringValue arg0, final StringValue arg1)
+				{
+					callCount.incrementAndGet();
+					return arg0.equals(arg1);
+				}
+			});
+		}
+	}
+
+	@Rule
+	public final TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	/*
+	 * Policy defining variable 'v' = the single value of (category, attributeId), permitting iff v = expectedValue
+	 */
+	private static String newPolicy(final String policyId, final String category, final String attributeId, final String expectedValue)
+	{
+		return "<Policy PolicyId=\"" + policyId + "\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:rule-combining-algorithm:deny-unless-permit\"><Target />"
+				+ "<VariableDefinition VariableId=\"v\"><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-one-and-only\">" + TestPdpEngines.stringDesignator(category, attributeId, true)
+				+ "</Apply></VariableDefinition><Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-equal\"><VariableReference VariableId=\"v\" />"
+				+ TestPdpEngines.stringValue(expectedValue) + "</Apply></Condition></Rule></Policy>";
+	}
+
+	@Test
+	public void variableDefinitionsAreScopedToTheirPolicy() throws IOException
+	{
+		final Path dir = tmpFolder.newFolder().toPath();
+		/*
+		 * Same VariableId in both policies, with different definitions
+		 */
+		TestPdpEngines.write(dir, "policy.xml", "<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicySetId=\"PS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:permit-overrides\"><Target />"
+				+ newPolicy("P1", TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice") + newPolicy("P2", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc") + "</PolicySet>");
+		final PdpEngineConfiguration conf = TestPdpEngines.newConfiguration(dir, "", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER);
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			assertNull("Variable of a parsed Policy left in the expression factory", conf.getXacmlExpressionFactory().getVariableExpression("v"));
+			assertEquals(DecisionType.PERMIT,
+					pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "x")).getDecision());
+			assertEquals(DecisionType.PERMIT,
+					pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "bob", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc")).getDecision());
+			assertEquals(DecisionType.DENY,
+					pdp.evaluate(TestPdpEngines.newRequest(pdp, TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "bob", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "x")).getDecision());
+		}
+	}
+
+	@Test
+	public void newVariableScopeSharesAllButVariables() throws IOException
+	{
+		final Path dir = tmpFolder.newFolder().toPath();
+		TestPdpEngines.write(dir, "policy.xml", "<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicySetId=\"PS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:permit-overrides\"><Target />"
+				+ newPolicy("P", TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, "alice") + "</PolicySet>");
+		final PdpEngineConfiguration conf = TestPdpEngines.newConfiguration(dir, "", TestPdpEngines.STATIC_ROOT_POLICY_PROVIDER);
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			final DepthLimitingExpressionFactory factory = (DepthLimitingExpressionFactory) conf.getXacmlExpressionFactory();
+			final DepthLimitingExpressionFactory scope1 = factory.newVariableScope();
+			final DepthLimitingExpressionFactory scope2 = factory.newVariableScope();
+			assertSame(factory.getEvaluationContextSlots(), scope1.getEvaluationContextSlots());
+			assertSame(factory.getAttributeProvider(), scope2.getAttributeProvider());
+			assertNull(scope1.getVariableExpression("v"));
+			assertNull(scope2.getVariableExpression("v"));
+		}
+	}
+
+	private static ApplyType newApply(final String functionId, final Object... args)
+	{
+		final List<JAXBElement<? extends ExpressionType>> argExpressions = new ArrayList<>(args.length);
+		for (final Object arg : args)
+		{
+			if (arg instanceof ApplyType)
+			{
+				argExpressions.add(XACML_OBJECT_FACTORY.createApply((ApplyType) arg));
+			}
+			else if (arg instanceof AttributeDesignatorType)
+			{
+				argExpressions.add(XACML_OBJECT_FACTORY.createAttributeDesignator((AttributeDesignatorType) arg));
+			}
+			else
+			{
+				argExpressions.add(XACML_OBJECT_FACTORY.createAttributeValue(new AttributeValueType(Collections.singletonList((Serializable) arg), TestPdpEngines.XSD_STRING, null)));
+			}
+		}
+
+		return new ApplyType(null, argExpressions, functionId);
+	}
+
+	/*
+	 * string-one-and-only(subject-id), without nested Apply
+	 */
+	private static ApplyType newTrivialApply()
+	{
+		return newApply(STRING_ONE_AND_ONLY_ID, new AttributeDesignatorType(TestPdpEngines.SUBJECT_CATEGORY, SUBJECT_ID, TestPdpEngines.XSD_STRING, null, true));
+	}
+
+	/*
+	 * counting-string-equal(string-one-and-only(subject-id), 'alice')
+	 */
+	private static ApplyType newNonTrivialApply()
+	{
+		return newApply(COUNTING_STRING_EQUAL_ID, newTrivialApply(), "alice");
+	}
+
+	private static IndividualDecisionRequestContext newContext(final String subjectId)
+	{
+		final Map<AttributeFqn, AttributeBag<?>> namedAttributes = Collections.<AttributeFqn, AttributeBag<?>>singletonMap(
+				AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), SUBJECT_ID), Bags.singletonAttributeBag(StandardDatatypes.STRING, new StringValue(subjectId)));
+		return new IndividualDecisionRequestContext(namedAttributes, null, false);
+	}
+
+	@Test
+	public void sharedApplyIsEvaluatedOncePerRequest() throws IOException, IndeterminateEvaluationException
+	{
+		final AtomicInteger callCount = new AtomicInteger();
+		final FunctionRegistry stdRegistry = StandardFunction.getRegistry(false, StandardAttributeValueFactories.BIG_INTEGER);
+		final Set<Function<?>> functions = HashCollections.newUpdatableSet(stdRegistry.getNonGenericFunctions());
+		functions.add(new CountingStringEqualFunction(callCount));
+		try (final DepthLimitingExpressionFactory factory = new DepthLimitingExpressionFactory(StandardAttributeValueFactories.getRegistry(false, Optional.empty()),
+				new ImmutableFunctionRegistry(functions, stdRegistry.getGenericFunctionFactories()), null, 0, false, false, false, Optional.empty(), Optional.empty(), false, true))
+		{
+			final DepthLimitingExpressionFactory policyTreeScope = factory.newPolicyTreeScope();
+			/*
+			 * Same Apply in two policies of the same tree
+			 */
+			final Expression<?> applyInPolicy1 = policyTreeScope.newVariableScope().getInstance(newNonTrivialApply(), null, null);
+			final Expression<?> applyInPolicy2 = policyTreeScope.newVariableScope().getInstance(newNonTrivialApply(), null, null);
+			assertSame("Structurally identical Apply not shared in the policy tree", applyInPolicy1, applyInPolicy2);
+
+			// not shared with other policy trees, e.g. after policy reload
+			assertNotSame(applyInPolicy1, factory.newPolicyTreeScope().getInstance(newNonTrivialApply(), null, null));
+
+			// trivial Apply (no nested Apply) not shared
+			assertNotSame(policyTreeScope.getInstance(newTrivialApply(), null, null), policyTreeScope.getInstance(newTrivialApply(), null, null));
+
+			final IndividualDecisionRequestContext request1Context = newContext("alice");
+			assertEquals(BooleanValue.TRUE, applyInPolicy1.evaluate(request1Context));
+			assertEquals(BooleanValue.TRUE, applyInPolicy2.evaluate(request1Context));
+			assertEquals("Shared Apply evaluated more than once in the same request", 1, callCount.get());
+
+			// next request: the value of the previous request must not be reused
+			final IndividualDecisionRequestContext request2Context = newContext("bob");
+			assertEquals(BooleanValue.FALSE, applyInPolicy2.evaluate(request2Context));
+			assertEquals(BooleanValue.FALSE, applyInPolicy1.evaluate(request2Context));
+			assertEquals(2, callCount.get());
+		}
+	}
+}
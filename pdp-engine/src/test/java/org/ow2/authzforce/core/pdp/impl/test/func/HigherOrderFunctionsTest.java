@@ -51,6 +51,7 @@ public class HigherOrderFunctionsTest extends StandardFunctionTest
 	private static final String NAME_MAP = "urn:oasis:names:tc:xacml:3.0:function:map";
 
 	private static final String STRING_EQUAL_FUNCTION_ID = "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+	private static final String INTEGER_EQUAL_FUNCTION_ID = "urn:oasis:names:tc:xacml:1.0:function:integer-equal";
 	private static final String INTEGER_GREATER_THAN_FUNCTION_ID = "urn:oasis:names:tc:xacml:1.0:function:integer-greater-than";
 	private static final String STRING_NORMALIZE_TO_LC_FUNCTION_ID = "urn:oasis:names:tc:xacml:1.0:function:string-normalize-to-lower-case";
 	private static final String STRING_SUBSTRING_FUNCTION_ID = "urn:oasis:names:tc:xacml:3.0:function:string-substring";
@@ -163,6 +164,21 @@ public class HigherOrderFunctionsTest extends StandardFunctionTest
 		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George")))), //
 		                BooleanValue.FALSE },
 
+		        /*
+		         * Valid args with equality sub-function on non-string datatype, with duplicate values (hash join)
+		         */
+		        new Object[] { NAME_ANY_OF_ANY, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(1), IntegerValue.valueOf(2))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(3), IntegerValue.valueOf(2), IntegerValue.valueOf(2)))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ANY_OF_ANY, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(1))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(2), IntegerValue.valueOf(3), IntegerValue.valueOf(3)))), //
+		                BooleanValue.FALSE },
+
 		        // urn:oasis:names:tc:xacml:1.0:function:all-of-any
 		        /*
 		         * Invalid number of args
@@ -196,6 +212,45 @@ public class HigherOrderFunctionsTest extends StandardFunctionTest
 		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(11), IntegerValue.valueOf(13), IntegerValue.valueOf(15), IntegerValue.valueOf(19)))), //
 		                BooleanValue.FALSE },
 
+		        /*
+		         * Valid args with equality sub-function (hash join)
+		         */
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Ringo"), new StringValue("Paul"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George"), new StringValue("Ringo")))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Ringo"), new StringValue("Mary"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George"), new StringValue("Ringo")))), //
+		                BooleanValue.FALSE }, //
+
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("Paul"), new StringValue("John"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Paul"), new StringValue("John")))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("Mary"), new StringValue("John"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Paul"), new StringValue("John")))), //
+		                BooleanValue.FALSE }, //
+
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(3), IntegerValue.valueOf(1), IntegerValue.valueOf(3), IntegerValue.valueOf(1))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(3)))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ALL_OF_ANY, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(3), IntegerValue.valueOf(1), IntegerValue.valueOf(4), IntegerValue.valueOf(3))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(3), IntegerValue.valueOf(3)))), //
+		                BooleanValue.FALSE },
+
 		        // urn:oasis:names:tc:xacml:1.0:function:any-of-all
 		        /*
 		         * Invalid number of args
@@ -231,6 +286,39 @@ public class HigherOrderFunctionsTest extends StandardFunctionTest
 		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(3), IntegerValue.valueOf(4)))), //
 		                BooleanValue.FALSE },
 
+		        /*
+		         * Valid args with equality sub-function (hash join)
+		         */
+		        new Object[] { NAME_ANY_OF_ALL, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George"), new StringValue("Ringo"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Ringo"), new StringValue("Paul")))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ANY_OF_ALL, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George"), new StringValue("Ringo"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Ringo"), new StringValue("Mary")))), //
+		                BooleanValue.FALSE }, //
+
+		        new Object[] { NAME_ANY_OF_ALL, //
+		                STRING_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("John"), new StringValue("Paul"), new StringValue("George"), new StringValue("Ringo"))), //
+		                        Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("Ringo"), new StringValue("Ringo")))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ANY_OF_ALL, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(2), IntegerValue.valueOf(3))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(2), IntegerValue.valueOf(2), IntegerValue.valueOf(2)))), //
+		                BooleanValue.TRUE }, //
+
+		        new Object[] { NAME_ANY_OF_ALL, //
+		                INTEGER_EQUAL_FUNCTION_ID, //
+		                Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(2), IntegerValue.valueOf(3))), //
+		                        Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(2), IntegerValue.valueOf(4), IntegerValue.valueOf(2)))), //
+		                BooleanValue.FALSE },
+
 		        // urn:oasis:names:tc:xacml:1.0:function:all-of-all
 		        /*
 		         * Invalid number of args
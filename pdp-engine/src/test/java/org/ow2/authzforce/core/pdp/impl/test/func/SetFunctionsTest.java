@@ -20,6 +20,7 @@
  */
 package org.ow2.authzforce.core.pdp.impl.test.func;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -28,6 +29,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 import org.ow2.authzforce.core.pdp.api.value.AnyUriValue;
+import org.ow2.authzforce.core.pdp.api.value.Bag;
 import org.ow2.authzforce.core.pdp.api.value.Bags;
 import org.ow2.authzforce.core.pdp.api.value.Base64BinaryValue;
 import org.ow2.authzforce.core.pdp.api.value.BooleanValue;
@@ -125,6 +127,40 @@ public class SetFunctionsTest extends StandardFunctionTest
 	private static final String NAME_X500NAME_SET_EQUALS = "urn:oasis:names:tc:xacml:1.0:function:x500Name-set-equals";
 	private static final String NAME_RFC822NAME_SET_EQUALS = "urn:oasis:names:tc:xacml:1.0:function:rfc822Name-set-equals";
 
+	/*
+	 * Bag of strings "String<i>" for i in [fromIndex, toIndex[, each one 'copies' times, big enough for set functions to use hash-indexed bags
+	 */
+	private static Bag<StringValue> newBigStringBag(final int fromIndex, final int toIndex, final int copies)
+	{
+		final List<StringValue> values = new ArrayList<>((toIndex - fromIndex) * copies);
+		for (int i = fromIndex; i < toIndex; i++)
+		{
+			for (int j = 0; j < copies; j++)
+			{
+				values.add(new StringValue("String" + i));
+			}
+		}
+
+		return Bags.newBag(StandardDatatypes.STRING, values);
+	}
+
+	/*
+	 * Bag of integers in [fromValue, toValue[, each one 'copies' times, big enough for set functions to use hash-indexed bags
+	 */
+	private static Bag<IntegerValue> newBigIntegerBag(final int fromValue, final int toValue, final int copies)
+	{
+		final List<IntegerValue> values = new ArrayList<>((toValue - fromValue) * copies);
+		for (int i = fromValue; i < toValue; i++)
+		{
+			for (int j = 0; j < copies; j++)
+			{
+				values.add(IntegerValue.valueOf(i));
+			}
+		}
+
+		return Bags.newBag(StandardDatatypes.INTEGER, values);
+	}
+
 	@Parameters(name = "{index}: {0}")
 	public static Collection<Object[]> params() throws Exception
 	{
@@ -271,6 +307,8 @@ public class SetFunctionsTest extends StandardFunctionTest
 								Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(2), IntegerValue.valueOf(2)))), BooleanValue.TRUE },
 						new Object[] { NAME_INTEGER_AT_LEAST_ONE_MEMBER_OF, Arrays.asList(Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(1))),//
 								Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(2), IntegerValue.valueOf(2)))), BooleanValue.FALSE },
+						new Object[] { NAME_INTEGER_AT_LEAST_ONE_MEMBER_OF, Arrays.asList(newBigIntegerBag(0, 10, 2), newBigIntegerBag(9, 20, 2)), BooleanValue.TRUE },
+						new Object[] { NAME_INTEGER_AT_LEAST_ONE_MEMBER_OF, Arrays.asList(newBigIntegerBag(0, 10, 2), newBigIntegerBag(10, 20, 2)), BooleanValue.FALSE },
 
 						// urn:oasis:names:tc:xacml:1.0:function:double-at-least-one-member-of
 						new Object[] {
@@ -522,6 +560,9 @@ public class SetFunctionsTest extends StandardFunctionTest
 										Bags.newBag(StandardDatatypes.STRING,
 												Arrays.asList(new StringValue("String1"), new StringValue("String2"), new StringValue("String2"), new StringValue("String3"))), //
 										Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("String1"), new StringValue("String2")))), BooleanValue.FALSE },
+						new Object[] { NAME_STRING_SUBSET, Arrays.asList(newBigStringBag(5, 15, 1), newBigStringBag(0, 20, 1)), BooleanValue.TRUE },
+						new Object[] { NAME_STRING_SUBSET, Arrays.asList(newBigStringBag(5, 25, 1), newBigStringBag(0, 20, 1)), BooleanValue.FALSE },
+						new Object[] { NAME_STRING_SUBSET, Arrays.asList(newBigStringBag(0, 10, 3), newBigStringBag(0, 10, 1)), BooleanValue.TRUE },
 
 						// urn:oasis:names:tc:xacml:1.0:function:boolean-subset
 						new Object[] { NAME_BOOLEAN_SUBSET, Arrays.asList(Bags.newBag(StandardDatatypes.BOOLEAN, Arrays.asList(BooleanValue.TRUE, BooleanValue.TRUE)),//
@@ -545,6 +586,8 @@ public class SetFunctionsTest extends StandardFunctionTest
 								Arrays.asList(
 										Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(2), IntegerValue.valueOf(3))),
 										Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2)))), BooleanValue.FALSE },
+						new Object[] { NAME_INTEGER_SUBSET, Arrays.asList(newBigIntegerBag(0, 10, 3), newBigIntegerBag(0, 10, 1)), BooleanValue.TRUE },
+						new Object[] { NAME_INTEGER_SUBSET, Arrays.asList(newBigIntegerBag(0, 10, 1), newBigIntegerBag(0, 9, 3)), BooleanValue.FALSE },
 
 						// urn:oasis:names:tc:xacml:1.0:function:double-subset
 						new Object[] { NAME_DOUBLE_SUBSET, Arrays.asList(Bags.newBag(StandardDatatypes.DOUBLE, Arrays.asList(new DoubleValue("1.23"), new DoubleValue("2."), new DoubleValue("2."))),//
@@ -767,6 +810,12 @@ public class SetFunctionsTest extends StandardFunctionTest
 										Bags.newBag(StandardDatatypes.STRING,
 												Arrays.asList(new StringValue("String1"), new StringValue("String2"), new StringValue("String2"), new StringValue("String3"))), //
 										Bags.newBag(StandardDatatypes.STRING, Arrays.asList(new StringValue("String1"), new StringValue("String2")))), BooleanValue.FALSE },
+						new Object[] { NAME_STRING_SET_EQUALS, Arrays.asList(newBigStringBag(0, 20, 1), newBigStringBag(0, 20, 1)), BooleanValue.TRUE },
+						new Object[] { NAME_STRING_SET_EQUALS, Arrays.asList(newBigStringBag(0, 20, 1), newBigStringBag(0, 21, 1)), BooleanValue.FALSE },
+						new Object[] { NAME_STRING_SET_EQUALS, Arrays.asList(newBigStringBag(0, 21, 1), newBigStringBag(0, 20, 1)), BooleanValue.FALSE },
+						new Object[] { NAME_STRING_SET_EQUALS, Arrays.asList(newBigStringBag(0, 10, 2), newBigStringBag(0, 10, 1)), BooleanValue.TRUE },
+						// same size, different sets
+						new Object[] { NAME_STRING_SET_EQUALS, Arrays.asList(newBigStringBag(0, 10, 2), newBigStringBag(0, 20, 1)), BooleanValue.FALSE },
 
 						// urn:oasis:names:tc:xacml:1.0:function:boolean-set-equals
 						new Object[] { NAME_BOOLEAN_SET_EQUALS, Arrays.asList(Bags.newBag(StandardDatatypes.BOOLEAN, Arrays.asList(BooleanValue.TRUE, BooleanValue.TRUE)),//
@@ -790,6 +839,10 @@ public class SetFunctionsTest extends StandardFunctionTest
 								Arrays.asList(
 										Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2), IntegerValue.valueOf(2), IntegerValue.valueOf(3))),
 										Bags.newBag(StandardDatatypes.INTEGER, Arrays.asList(IntegerValue.valueOf(1), IntegerValue.valueOf(2)))), BooleanValue.FALSE },
+						new Object[] { NAME_INTEGER_SET_EQUALS, Arrays.asList(newBigIntegerBag(0, 10, 2), newBigIntegerBag(0, 10, 1)), BooleanValue.TRUE },
+						// same size, different sets
+						new Object[] { NAME_INTEGER_SET_EQUALS, Arrays.asList(newBigIntegerBag(0, 10, 2), newBigIntegerBag(0, 20, 1)), BooleanValue.FALSE },
+						new Object[] { NAME_INTEGER_SET_EQUALS, Arrays.asList(newBigIntegerBag(0, 20, 1), newBigIntegerBag(0, 10, 2)), BooleanValue.FALSE },
 
 						// urn:oasis:names:tc:xacml:1.0:function:double-set-equals
 						new Object[] { NAME_DOUBLE_SET_EQUALS,
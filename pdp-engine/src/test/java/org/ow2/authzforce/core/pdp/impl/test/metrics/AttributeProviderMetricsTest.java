@@ -0,0 +1,151 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.metrics.AttributeProviderMetricsMXBean;
+import org.ow2.authzforce.core.pdp.impl.metrics.JmxEvaluationMetricsRegistry;
+import org.ow2.authzforce.core.pdp.impl.metrics.StripedAttributeProviderMetrics;
+import org.ow2.authzforce.core.pdp.impl.test.CountingAttributeProvider;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of the attribute resolution metrics ({@link StripedAttributeProviderMetrics}), per attribute and per attribute provider module, as recorded by the PDP
+ */
+public class AttributeProviderMetricsTest
+{
+	private static final String ROLE = "urn:example:role";
+
+	/*
+	 * Rule R1: deny if role is 'blocked'; Rule R2: permit if role is 'admin', i.e. role requested twice per evaluation
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"AttributeMetricsP\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target />"
+			+ "<Rule RuleId=\"R1\" Effect=\"Deny\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue("blocked")
+			+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Apply></Condition></Rule>"
+			+ "<Rule RuleId=\"R2\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">" + TestPdpEngines.stringValue("admin")
+			+ TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, false) + "</Apply></Condition></Rule></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	@Test
+	public void countsAndRatiosAreZeroInitially()
+	{
+		final StripedAttributeProviderMetrics metrics = new StripedAttributeProviderMetrics();
+		assertEquals(0, metrics.getContextHitCount());
+		assertEquals(0, metrics.getProviderCallCount());
+		assertEquals(0, metrics.getContextHitRatio(), 0);
+		assertEquals(0, metrics.getProviderErrorRatio(), 0);
+		assertEquals(0, metrics.getProviderEmptyResultRatio(), 0);
+		assertEquals(0, metrics.getMeanProviderTimeNanos(), 0);
+	}
+
+	@Test
+	public void providerOutcomesAreCountedSeparately()
+	{
+		final StripedAttributeProviderMetrics metrics = new StripedAttributeProviderMetrics();
+		metrics.contextHit();
+		metrics.contextHit();
+		metrics.contextHit();
+		metrics.providerReturned(10, false);
+		metrics.providerReturned(20, true);
+		metrics.providerReturned(30, false);
+		metrics.providerFailed(40);
+
+		assertEquals(3, metrics.getContextHitCount());
+		// failed calls are calls too
+		assertEquals(4, metrics.getProviderCallCount());
+		assertEquals(1, metrics.getProviderErrorCount());
+		assertEquals(1, metrics.getProviderEmptyResultCount());
+		assertEquals(3.0 / 7, metrics.getContextHitRatio(), 1e-9);
+		assertEquals(0.25, metrics.getProviderErrorRatio(), 1e-9);
+		assertEquals(0.25, metrics.getProviderEmptyResultRatio(), 1e-9);
+		assertEquals(100, metrics.getTotalProviderTimeNanos());
+		assertEquals(40, metrics.getMaxProviderTimeNanos());
+		assertEquals(25, metrics.getMeanProviderTimeNanos(), 1e-9);
+	}
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final String... categoryIdValueTriples)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, categoryIdValueTriples)).getDecision();
+	}
+
+	@Test
+	public void contextHitsAndProviderCallsAreRecordedPerAttributeAndPerProvider() throws IOException, JMException
+	{
+		final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(mbeanServer);
+		final CountingAttributeProvider roleProvider = new CountingAttributeProvider("roleProvider", TestPdpEngines.SUBJECT_CATEGORY, ROLE, null);
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(),
+				TestPdpEngines.newExpressionFactory(Collections.singletonList(roleProvider), false, Optional.of(registry)), ROOT_POLICY, Optional.empty()))
+		{
+			// role in the request: context hit for both rules, provider not called
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE, "admin"));
+			assertEquals(0, roleProvider.getCallCount());
+
+			// role not in the request: provider called for R1, context hit for R2 (value resolved for R1 in the same context)
+			roleProvider.setValues("admin");
+			assertEquals(DecisionType.PERMIT, evaluate(pdp));
+			// empty bag from the provider
+			roleProvider.setValues();
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp));
+			// provider error
+			roleProvider.setFailing(true);
+			evaluate(pdp);
+			assertEquals(3, roleProvider.getCallCount());
+
+			final AttributeProviderMetricsMXBean attributeMetrics = (AttributeProviderMetricsMXBean) registry
+					.getAttributeMetrics(AttributeFqns.newInstance(TestPdpEngines.SUBJECT_CATEGORY, Optional.empty(), ROLE));
+			assertEquals(5, attributeMetrics.getContextHitCount());
+			assertEquals(3, attributeMetrics.getProviderCallCount());
+			assertEquals(1, attributeMetrics.getProviderErrorCount());
+			assertEquals(1, attributeMetrics.getProviderEmptyResultCount());
+			assertEquals(5.0 / 8, attributeMetrics.getContextHitRatio(), 1e-9);
+			assertEquals(1.0 / 3, attributeMetrics.getProviderErrorRatio(), 1e-9);
+			assertEquals(1.0 / 3, attributeMetrics.getProviderEmptyResultRatio(), 1e-9);
+
+			// the provider module metrics only record the calls to the module
+			final Set<ObjectName> providerMetricsNames = mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":type=AttributeProvider,*"), null);
+			assertEquals(1, providerMetricsNames.size());
+			final ObjectName providerMetricsName = providerMetricsNames.iterator().next();
+			assertEquals(0L, mbeanServer.getAttribute(providerMetricsName, "ContextHitCount"));
+			assertEquals(3L, mbeanServer.getAttribute(providerMetricsName, "ProviderCallCount"));
+			assertEquals(1L, mbeanServer.getAttribute(providerMetricsName, "ProviderErrorCount"));
+			assertEquals(1L, mbeanServer.getAttribute(providerMetricsName, "ProviderEmptyResultCount"));
+		}
+	}
+}
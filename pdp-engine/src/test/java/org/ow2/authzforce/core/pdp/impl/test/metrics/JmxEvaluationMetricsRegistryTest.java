@@ -0,0 +1,217 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.ow2.authzforce.core.pdp.api.policy.BasePrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.PolicyVersion;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.impl.BasePdpEngine;
+import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetrics;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsMXBean;
+import org.ow2.authzforce.core.pdp.impl.metrics.EvaluationMetricsRegistry;
+import org.ow2.authzforce.core.pdp.impl.metrics.JmxEvaluationMetricsRegistry;
+import org.ow2.authzforce.core.pdp.impl.policy.ReloadableRootPolicyProvider;
+import org.ow2.authzforce.core.pdp.impl.test.TestPdpEngines;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link JmxEvaluationMetricsRegistry}: metrics recorded by the PDP, MXBean registration, and removal of the metrics of the policies removed by a reload
+ */
+public class JmxEvaluationMetricsRegistryTest
+{
+	private static final String RESOURCE_ID = "urn:oasis:names:tc:xacml:1.0:resource:resource-id";
+	private static final String ROLE = "urn:example:role";
+
+	private static final PrimaryPolicyMetadata POLICY_METADATA = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "MetricsP", new PolicyVersion("1.0"));
+
+	/*
+	 * Target: resource-id = 'doc' (must be present); Rule R: permit if role is 'admin' (must be present)
+	 */
+	private static final String ROOT_POLICY = "<Policy xmlns=\"" + TestPdpEngines.XACML_NS
+			+ "\" PolicyId=\"MetricsP\" Version=\"1.0\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target><AnyOf><AllOf>"
+			+ TestPdpEngines.stringEqualMatch("doc", TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, true)
+			+ "</AllOf></AnyOf></Target><Rule RuleId=\"R\" Effect=\"Permit\"><Condition><Apply FunctionId=\"urn:oasis:names:tc:xacml:1.0:function:string-is-in\">"
+			+ TestPdpEngines.stringValue("admin") + TestPdpEngines.stringDesignator(TestPdpEngines.SUBJECT_CATEGORY, ROLE, true) + "</Apply></Condition></Rule></Policy>";
+
+	@Rule
+	public final TemporaryFolder tmpDir = new TemporaryFolder();
+
+	private static DecisionType evaluate(final BasePdpEngine pdp, final String... categoryIdValueTriples)
+	{
+		return pdp.evaluate(TestPdpEngines.newRequest(pdp, categoryIdValueTriples)).getDecision();
+	}
+
+	@Test
+	public void targetAndConditionOutcomesAndDecisionsAreRecorded() throws IOException
+	{
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(MBeanServerFactory.newMBeanServer());
+		try (final BasePdpEngine pdp = TestPdpEngines.newPdpEngine(tmpDir.newFolder().toPath(),
+				TestPdpEngines.newExpressionFactory(Collections.emptyList(), false, Optional.of(registry)), ROOT_POLICY, Optional.empty()))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc", TestPdpEngines.SUBJECT_CATEGORY, ROLE, "admin"));
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc", TestPdpEngines.SUBJECT_CATEGORY, ROLE, "user"));
+			// missing role
+			assertEquals(DecisionType.INDETERMINATE, evaluate(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc"));
+			// Target no-match: Rule not evaluated
+			assertEquals(DecisionType.NOT_APPLICABLE, evaluate(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "other", TestPdpEngines.SUBJECT_CATEGORY, ROLE, "admin"));
+
+			final EvaluationMetricsMXBean ruleMetrics = (EvaluationMetricsMXBean) registry.getRuleMetrics(POLICY_METADATA, "R");
+			assertEquals(3, ruleMetrics.getEvaluationCount());
+			// no Target -> match
+			assertEquals(3, ruleMetrics.getTargetMatchCount());
+			assertEquals(1, ruleMetrics.getConditionTrueCount());
+			assertEquals(1, ruleMetrics.getConditionFalseCount());
+			assertEquals(1, ruleMetrics.getConditionIndeterminateCount());
+			assertEquals(1, ruleMetrics.getPermitCount());
+			assertEquals(1, ruleMetrics.getNotApplicableCount());
+			assertEquals(1, ruleMetrics.getIndeterminateCount());
+
+			// missing resource-id -> Target Indeterminate
+			assertEquals(DecisionType.INDETERMINATE, evaluate(pdp, TestPdpEngines.SUBJECT_CATEGORY, ROLE, "admin"));
+
+			final EvaluationMetricsMXBean policyMetrics = (EvaluationMetricsMXBean) registry.getPolicyMetrics(POLICY_METADATA);
+			assertEquals(5, policyMetrics.getEvaluationCount());
+			assertEquals(3, policyMetrics.getTargetMatchCount());
+			assertEquals(1, policyMetrics.getTargetNoMatchCount());
+			assertEquals(1, policyMetrics.getTargetIndeterminateCount());
+			assertEquals(0, policyMetrics.getConditionTrueCount());
+			assertEquals(1, policyMetrics.getPermitCount());
+			assertEquals(0, policyMetrics.getDenyCount());
+			assertEquals(2, policyMetrics.getNotApplicableCount());
+			assertEquals(2, policyMetrics.getIndeterminateCount());
+			long histogramCount = 0;
+			for (final long bucketCount : policyMetrics.getEvaluationTimeHistogram())
+			{
+				histogramCount += bucketCount;
+			}
+
+			assertEquals(5, histogramCount);
+		}
+	}
+
+	@Test
+	public void metricsAreRegisteredAsMXBeansUntilClose() throws JMException
+	{
+		final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(mbeanServer);
+		final EvaluationMetrics policyMetrics = registry.getPolicyMetrics(POLICY_METADATA);
+		assertSame(policyMetrics, registry.getPolicyMetrics(POLICY_METADATA));
+		registry.getRuleMetrics(POLICY_METADATA, "R");
+		registry.getAttributeProviderMetrics("provider");
+
+		final ObjectName policyMetricsPattern = new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":type=Policy,policyId=\"MetricsP\",version=\"1.0\",*");
+		final ObjectName policyMetricsName = mbeanServer.queryNames(policyMetricsPattern, null).iterator().next();
+		policyMetrics.targetMatched();
+		assertEquals(1L, mbeanServer.getAttribute(policyMetricsName, "TargetMatchCount"));
+		assertEquals(1, mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":type=Rule,ruleId=\"R\",*"), null).size());
+		assertEquals(3, mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":*"), null).size());
+
+		registry.close();
+		assertTrue(mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":*"), null).isEmpty());
+	}
+
+	@Test
+	public void metricsOfPoliciesNotRetainedAreRemoved() throws JMException
+	{
+		final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		final JmxEvaluationMetricsRegistry registry = new JmxEvaluationMetricsRegistry(mbeanServer);
+		final PrimaryPolicyMetadata otherPolicyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "MetricsP", new PolicyVersion("1.1"));
+		final EvaluationMetrics policyMetrics = registry.getPolicyMetrics(POLICY_METADATA);
+		final EvaluationMetrics ruleMetrics = registry.getRuleMetrics(POLICY_METADATA, "R");
+		final EvaluationMetrics otherPolicyMetrics = registry.getPolicyMetrics(otherPolicyMetadata);
+		registry.getRuleMetrics(otherPolicyMetadata, "R");
+		registry.getAttributeProviderMetrics("provider");
+
+		registry.retainPolicyMetrics(Collections.singleton(otherPolicyMetadata));
+		// attribute provider metrics and metrics of MetricsP v1.1 and its rule
+		assertEquals(3, mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":*"), null).size());
+		assertTrue(mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":policyId=\"MetricsP\",version=\"1.0\",*"), null).isEmpty());
+		assertSame(otherPolicyMetrics, registry.getPolicyMetrics(otherPolicyMetadata));
+		assertNotSame(policyMetrics, registry.getPolicyMetrics(POLICY_METADATA));
+		assertNotSame(ruleMetrics, registry.getRuleMetrics(POLICY_METADATA, "R"));
+		registry.close();
+	}
+
+	private static String newPolicy(final String policyId, final String version)
+	{
+		return "<Policy xmlns=\"" + TestPdpEngines.XACML_NS + "\" PolicyId=\"" + policyId + "\" Version=\"" + version
+				+ "\" RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:rule-combining-algorithm:first-applicable\"><Target /><Rule RuleId=\"R\" Effect=\"Permit\" /></Policy>";
+	}
+
+	@Test
+	public void metricsOfPoliciesRemovedByReloadAreRemoved() throws IOException, JMException
+	{
+		final Path dir = tmpDir.newFolder().toPath();
+		// root PolicySet with a nested Policy and a reference to another Policy
+		TestPdpEngines.write(dir, "ps.xml", "<PolicySet xmlns=\"" + TestPdpEngines.XACML_NS
+				+ "\" PolicySetId=\"MetricsPS\" Version=\"1.0\" PolicyCombiningAlgId=\"urn:oasis:names:tc:xacml:3.0:policy-combining-algorithm:deny-unless-permit\"><Target />"
+				+ newPolicy("MetricsNestedP", "1.0").replace(" xmlns=\"" + TestPdpEngines.XACML_NS + "\"", "") + "<PolicyIdReference>MetricsRefP</PolicyIdReference></PolicySet>");
+		TestPdpEngines.write(dir, "p.xml", newPolicy("MetricsRefP", "1.0"));
+		final PdpEngineConfiguration conf = TestPdpEngines.newConfiguration(dir, "evaluationMetricsRegistry=\"" + JmxEvaluationMetricsRegistry.Factory.ID + "\"",
+				"<rootPolicyProvider id=\"rootPolicyProvider\" xsi:type=\"ReloadableRootPolicyProvider\" reloadDelayMillis=\"60000\"><policyLocation>${PARENT_DIR}/ps.xml</policyLocation>"
+						+ "<policyLocation>${PARENT_DIR}/p.xml</policyLocation><policyRef>MetricsPS</policyRef></rootPolicyProvider>");
+		final ReloadableRootPolicyProvider provider = (ReloadableRootPolicyProvider) conf.getRootPolicyProvider();
+		final EvaluationMetricsRegistry registry = conf.getEvaluationMetricsRegistry().get();
+		final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName oldRefPolicyMetricsPattern = new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":policyId=\"MetricsRefP\",version=\"1.0\",*");
+		final PrimaryPolicyMetadata nestedPolicyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "MetricsNestedP", new PolicyVersion("1.0"));
+		final PrimaryPolicyMetadata oldRefPolicyMetadata = new BasePrimaryPolicyMetadata(TopLevelPolicyElementType.POLICY, "MetricsRefP", new PolicyVersion("1.0"));
+		try (final BasePdpEngine pdp = new BasePdpEngine(conf))
+		{
+			assertEquals(DecisionType.PERMIT, evaluate(pdp, TestPdpEngines.RESOURCE_CATEGORY, RESOURCE_ID, "doc"));
+			final EvaluationMetrics nestedPolicyMetrics = registry.getPolicyMetrics(nestedPolicyMetadata);
+			final EvaluationMetrics oldRefPolicyMetrics = registry.getPolicyMetrics(oldRefPolicyMetadata);
+			// Policy and Rule
+			assertEquals(2, mbeanServer.queryNames(oldRefPolicyMetricsPattern, null).size());
+
+			TestPdpEngines.write(dir, "p.xml", newPolicy("MetricsRefP", "1.1"));
+			provider.reload();
+
+			assertTrue(mbeanServer.queryNames(oldRefPolicyMetricsPattern, null).isEmpty());
+			assertFalse(mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":policyId=\"MetricsRefP\",version=\"1.1\",*"), null).isEmpty());
+			// nested Policy still there
+			assertSame(nestedPolicyMetrics, registry.getPolicyMetrics(nestedPolicyMetadata));
+			assertNotSame(oldRefPolicyMetrics, registry.getPolicyMetrics(oldRefPolicyMetadata));
+		}
+
+		assertTrue(mbeanServer.queryNames(new ObjectName(JmxEvaluationMetricsRegistry.JMX_DOMAIN + ":policyId=\"MetricsNestedP\",*"), null).isEmpty());
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.impl.test.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.ow2.authzforce.core.pdp.impl.metrics.StripedEvaluationMetrics;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+
+/**
+ * Tests of {@link StripedEvaluationMetrics}
+ */
+public class StripedEvaluationMetricsTest
+{
+	@Test
+	public void outcomesAreCountedSeparately()
+	{
+		final StripedEvaluationMetrics metrics = new StripedEvaluationMetrics();
+		metrics.targetMatched();
+		metrics.targetMatched();
+		metrics.targetNotMatched();
+		metrics.targetIndeterminate();
+		metrics.conditionTrue();
+		metrics.conditionFalse();
+		metrics.conditionFalse();
+		metrics.conditionIndeterminate();
+		metrics.evaluated(DecisionType.PERMIT, 10);
+		metrics.evaluated(DecisionType.DENY, 10);
+		metrics.evaluated(DecisionType.DENY, 10);
+		metrics.evaluated(DecisionType.NOT_APPLICABLE, 10);
+		metrics.evaluated(DecisionType.INDETERMINATE, 10);
+
+		assertEquals(2, metrics.getTargetMatchCount());
+		assertEquals(1, metrics.getTargetNoMatchCount());
+		assertEquals(1, metrics.getTargetIndeterminateCount());
+		assertEquals(1, metrics.getConditionTrueCount());
+		assertEquals(2, metrics.getConditionFalseCount());
+		assertEquals(1, metrics.getConditionIndeterminateCount());
+		assertEquals(5, metrics.getEvaluationCount());
+		assertEquals(1, metrics.getPermitCount());
+		assertEquals(2, metrics.getDenyCount());
+		assertEquals(1, metrics.getNotApplicableCount());
+		assertEquals(1, metrics.getIndeterminateCount());
+	}
+
+	@Test
+	public void evaluationTimesAreRecordedInPowerOfTwoBuckets()
+	{
+		final StripedEvaluationMetrics metrics = new StripedEvaluationMetrics();
+		assertEquals(0, metrics.getEvaluationTimeMedianNanos());
+		assertEquals(0, metrics.getMeanEvaluationTimeNanos(), 0);
+
+		// bucket 0 (under 2ns)
+		metrics.evaluated(DecisionType.PERMIT, 0);
+		metrics.evaluated(DecisionType.PERMIT, 1);
+		// bucket 1 (2-3ns)
+		metrics.evaluated(DecisionType.PERMIT, 2);
+		metrics.evaluated(DecisionType.PERMIT, 3);
+		// bucket 10 (1024-2047ns)
+		metrics.evaluated(DecisionType.PERMIT, 1024);
+
+		final long[] histogram = metrics.getEvaluationTimeHistogram();
+		final long[] expectedHistogram = new long[histogram.length];
+		expectedHistogram[0] = 2;
+		expectedHistogram[1] = 2;
+		expectedHistogram[10] = 1;
+		assertArrayEquals(expectedHistogram, histogram);
+
+		assertEquals(1030, metrics.getTotalEvaluationTimeNanos());
+		assertEquals(1024, metrics.getMaxEvaluationTimeNanos());
+		assertEquals(206, metrics.getMeanEvaluationTimeNanos(), 0);
+		// upper bound of the bucket of the 3rd value out of 5
+		assertEquals(4, metrics.getEvaluationTimeMedianNanos());
+		// upper bound of the bucket of the 5th value out of 5
+		assertEquals(2048, metrics.getEvaluationTime99thPercentileNanos());
+	}
+
+	@Test
+	public void longestEvaluationTimesAreRecordedInLastBucket()
+	{
+		final StripedEvaluationMetrics metrics = new StripedEvaluationMetrics();
+		metrics.evaluated(DecisionType.PERMIT, Long.MAX_VALUE);
+		final long[] histogram = metrics.getEvaluationTimeHistogram();
+		assertEquals(1, histogram[histogram.length - 1]);
+		// no upper bound for the last bucket -> max
+		assertEquals(Long.MAX_VALUE, metrics.getEvaluationTimeMedianNanos());
+	}
+}
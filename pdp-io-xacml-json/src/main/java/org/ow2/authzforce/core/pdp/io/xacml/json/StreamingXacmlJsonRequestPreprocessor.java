@@ -0,0 +1,750 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.io.xacml.json;
+
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XdmNode;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.ow2.authzforce.core.pdp.api.AttributeFqn;
+import org.ow2.authzforce.core.pdp.api.AttributeFqns;
+import org.ow2.authzforce.core.pdp.api.DecisionRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.api.DecisionResultPostprocessor;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.ImmutableDecisionRequest;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+import org.ow2.authzforce.core.pdp.api.MutableAttributeBag;
+import org.ow2.authzforce.core.pdp.api.XmlUtils;
+import org.ow2.authzforce.core.pdp.api.io.IssuedToNonIssuedCopyingLaxXacmlAttributeParser;
+import org.ow2.authzforce.core.pdp.api.io.NamedXacmlAttributeParser;
+import org.ow2.authzforce.core.pdp.api.io.NamedXacmlAttributeParsingResult;
+import org.ow2.authzforce.core.pdp.api.io.NonIssuedLikeIssuedLaxXacmlAttributeParser;
+import org.ow2.authzforce.core.pdp.api.io.NonIssuedLikeIssuedStrictXacmlAttributeParser;
+import org.ow2.authzforce.core.pdp.api.io.SingleCategoryAttributes;
+import org.ow2.authzforce.core.pdp.api.io.SingleCategoryAttributes.NamedAttributeIteratorConverter;
+import org.ow2.authzforce.core.pdp.api.io.XacmlRequestAttributeParser;
+import org.ow2.authzforce.core.pdp.api.value.AttributeBag;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactory;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValueFactoryRegistry;
+import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * XACML/JSON - according to XACML JSON Profile - Request preprocessor for Individual Decision Requests only (no support of Multiple Decision Profile in particular), that reads the request directly
+ * from an {@link InputStream} (UTF-8-encoded JSON) in a single pass, without building a {@link JSONObject} tree of the whole request and without validating it against the JSON schema beforehand
+ * (like {@link SingleDecisionXacmlJsonRequestPreprocessor} does). Instead, the structure of the request (expected properties and JSON types) is checked while reading it. Only the Attribute objects
+ * with IncludeInResult = true are converted to {@link JSONObject}s, to be included in the Result.
+ * <p>
+ * Request properties that are defined by the XACML JSON Profile but not supported by {@link SingleDecisionXacmlJsonRequestPreprocessor} either (shorthand categories such as 'AccessSubject',
+ * 'RequestDefaults') are skipped; 'MultiRequests' is rejected as unsupported. Any other unexpected property is rejected as a syntax error.
+ */
+public final class StreamingXacmlJsonRequestPreprocessor implements DecisionRequestPreprocessor<InputStream, IndividualXacmlJsonRequest>
+{
+	private static final IllegalArgumentException NULL_REQUEST_ARGUMENT_EXCEPTION = new IllegalArgumentException("Null request arg");
+	private static final UnsupportedOperationException UNSUPPORTED_MODE_EXCEPTION = new UnsupportedOperationException(
+			"Unsupported StreamingXacmlJsonRequestPreprocessor mode: allowAttributeDuplicates == false && strictAttributeIssuerMatch == false");
+
+	private static final IndeterminateEvaluationException MISSING_REQUEST_OBJECT_EXCEPTION = new IndeterminateEvaluationException("Missing Request object", XacmlStatusCode.SYNTAX_ERROR.value());
+
+	private static final IndeterminateEvaluationException UNSUPPORTED_COMBINED_DECISION_EXCEPTION = new IndeterminateEvaluationException("Unsupported CombinedDecision value in Request: 'true'",
+			XacmlStatusCode.SYNTAX_ERROR.value());
+
+	private static final IndeterminateEvaluationException UNSUPPORTED_MULTI_REQUESTS_EXCEPTION = new IndeterminateEvaluationException("Unsupported element in Request: <MultiRequests>",
+			XacmlStatusCode.SYNTAX_ERROR.value());
+
+	private static final IndeterminateEvaluationException UNSUPPORTED_CONTENT_EXCEPTION = new IndeterminateEvaluationException("XACML JSON Profile - Content elements are not supported",
+			XacmlStatusCode.SYNTAX_ERROR.value());
+
+	private static final IllegalArgumentException NULL_ATTRIBUTE_ID_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid XACML Attribute: AttributeId property undefined (but required).");
+
+	/*
+	 * Request properties defined by the XACML JSON Profile that are skipped (not supported)
+	 */
+	private static final Set<String> SKIPPED_REQUEST_PROPERTIES = ImmutableSet.of("AccessSubject", "Action", "Resource", "Environment", "RecipientSubject", "IntermediarySubject",
+			"Codebase", "RequestingMachine", "RequestDefaults");
+
+	/**
+	 * XACML/JSON Attribute object as read from the input stream
+	 */
+	private static final class StreamedXacmlJsonAttribute
+	{
+		private String attributeId = null;
+		private String issuer = null;
+		private String dataType = null;
+		private boolean includeInResult = false;
+		/*
+		 * Null if the Value property is missing. Values are Boolean, Number or String objects as returned by JSONTokener#nextValue().
+		 */
+		private List<Object> values = null;
+		private boolean isValueArray = false;
+
+		/*
+		 * Attribute object to be included in the Result (without IncludeInResult property)
+		 */
+		private JSONObject toJSONObject()
+		{
+			final JSONObject attrJsonObj = new JSONObject();
+			attrJsonObj.put("AttributeId", attributeId);
+			if (issuer != null)
+			{
+				attrJsonObj.put("Issuer", issuer);
+			}
+
+			if (dataType != null)
+			{
+				attrJsonObj.put("DataType", dataType);
+			}
+
+			attrJsonObj.put("Value", isValueArray ? new JSONArray(values) : values.get(0));
+			return attrJsonObj;
+		}
+	}
+
+	/**
+	 * XACML/JSON Category object as read from the input stream
+	 */
+	private static final class StreamedXacmlJsonCategory
+	{
+		private String categoryId = null;
+		private String id = null;
+		private boolean hasContent = false;
+		private final List<StreamedXacmlJsonAttribute> attributes = new ArrayList<>();
+	}
+
+	private static final class NamedStreamedXacmlJsonAttributeParser extends NamedXacmlAttributeParser<StreamedXacmlJsonAttribute>
+	{
+		private NamedStreamedXacmlJsonAttributeParser(final AttributeValueFactoryRegistry attributeValueFactoryRegistry) throws IllegalArgumentException
+		{
+			super(attributeValueFactoryRegistry);
+		}
+
+		@Override
+		protected NamedXacmlAttributeParsingResult<?> parseNamedAttribute(final String attributeCategoryId, final StreamedXacmlJsonAttribute inputXacmlAttribute, final XPathCompiler xPathCompiler)
+				throws IllegalArgumentException
+		{
+			if (inputXacmlAttribute.attributeId == null)
+			{
+				throw NULL_ATTRIBUTE_ID_ARGUMENT_EXCEPTION;
+			}
+
+			final AttributeFqn attrName = AttributeFqns.newInstance(attributeCategoryId, Optional.ofNullable(inputXacmlAttribute.issuer), inputXacmlAttribute.attributeId);
+			if (inputXacmlAttribute.values == null)
+			{
+				throw new IllegalArgumentException("Undefined Value(s) for Attribute '" + attrName + "'");
+			}
+
+			final String actualDatatypeId;
+			if (inputXacmlAttribute.isValueArray)
+			{
+				if (inputXacmlAttribute.dataType == null)
+				{
+					throw new IllegalArgumentException("Invalid Attribute '" + attrName + "': value is JSONArray but DataType undefined (cannot be infered).");
+				}
+
+				if (inputXacmlAttribute.values.isEmpty())
+				{
+					throw new IllegalArgumentException("Invalid Attribute '" + attrName + "': no value (empty JSONArray).");
+				}
+
+				actualDatatypeId = inputXacmlAttribute.dataType;
+			}
+			else
+			{
+				actualDatatypeId = inputXacmlAttribute.dataType == null ? XacmlJsonParsingUtils.getDefaultDatatypeId(inputXacmlAttribute.values.get(0)) : inputXacmlAttribute.dataType;
+			}
+
+			final AttributeValueFactory<?> attValFactory = getAttributeValueFactory(actualDatatypeId, attrName);
+			return XacmlJsonParsingUtils.NamedXacmlJsonAttributeParser.parseNamedAttribute(attrName, inputXacmlAttribute.values, inputXacmlAttribute.values.size(), attValFactory, xPathCompiler);
+		}
+	}
+
+	/**
+	 * Parser of the attributes of a given category, once read from the input stream
+	 *
+	 * @param <BAG>
+	 *            type of bag resulting from parsing XACML AttributeValues
+	 */
+	private static final class StreamedXacmlJsonAttributesParser<BAG extends Iterable<? extends AttributeValue>>
+	{
+		private final XacmlRequestAttributeParser<StreamedXacmlJsonAttribute, BAG> xacmlReqAttributeParser;
+		private final NamedAttributeIteratorConverter<BAG> namedAttrIterConverter;
+
+		private StreamedXacmlJsonAttributesParser(final XacmlRequestAttributeParser<StreamedXacmlJsonAttribute, BAG> xacmlRequestAttributeParser,
+				final NamedAttributeIteratorConverter<BAG> namedAttributeIteratorConverter)
+		{
+			assert xacmlRequestAttributeParser != null && namedAttributeIteratorConverter != null;
+			this.xacmlReqAttributeParser = xacmlRequestAttributeParser;
+			this.namedAttrIterConverter = namedAttributeIteratorConverter;
+		}
+
+		/*
+		 * Returns null if no Attribute in the category
+		 */
+		private SingleCategoryAttributes<?, JSONObject> parseAttributes(final StreamedXacmlJsonCategory category, final XPathCompiler xPathCompiler) throws IndeterminateEvaluationException
+		{
+			if (category.attributes.isEmpty())
+			{
+				/*
+				 * Skipping this Category because no Attribute (and no Content parsed)
+				 */
+				return null;
+			}
+
+			final Map<AttributeFqn, BAG> namedAttrMap = HashCollections.newUpdatableMap();
+			final List<JSONObject> returnedAttributes = new ArrayList<>(category.attributes.size());
+			for (final StreamedXacmlJsonAttribute attribute : category.attributes)
+			{
+				try
+				{
+					xacmlReqAttributeParser.parseNamedAttribute(category.categoryId, attribute, xPathCompiler, namedAttrMap);
+				}
+				catch (final IllegalArgumentException e)
+				{
+					throw new IndeterminateEvaluationException("Invalid Attributes/Attribute element", XacmlStatusCode.SYNTAX_ERROR.value(), e);
+				}
+
+				if (attribute.includeInResult)
+				{
+					returnedAttributes.add(attribute.toJSONObject());
+				}
+			}
+
+			final JSONObject categoryObjectToIncludeInResult;
+			if (returnedAttributes.isEmpty())
+			{
+				categoryObjectToIncludeInResult = null;
+			}
+			else
+			{
+				categoryObjectToIncludeInResult = new JSONObject();
+				categoryObjectToIncludeInResult.put("CategoryId", category.categoryId);
+				if (category.id != null)
+				{
+					categoryObjectToIncludeInResult.put("Id", category.id);
+				}
+
+				categoryObjectToIncludeInResult.put("Attribute", returnedAttributes);
+			}
+
+			return new SingleCategoryAttributes<>(category.categoryId, namedAttrMap.entrySet(), namedAttrIterConverter, categoryObjectToIncludeInResult, null);
+		}
+	}
+
+	/**
+	 * Base factory for this type of request preprocessor
+	 */
+	private static abstract class BaseFactory implements DecisionRequestPreprocessor.Factory<InputStream, IndividualXacmlJsonRequest>
+	{
+		private final String id;
+		private final boolean allowAttributeDuplicates;
+
+		private BaseFactory(final String id, final boolean allowAttributeDuplicates)
+		{
+			this.id = id;
+			this.allowAttributeDuplicates = allowAttributeDuplicates;
+		}
+
+		@Override
+		public final String getId()
+		{
+			return id;
+		}
+
+		@Override
+		public final Class<InputStream> getInputRequestType()
+		{
+			return InputStream.class;
+		}
+
+		@Override
+		public final Class<IndividualXacmlJsonRequest> getOutputRequestType()
+		{
+			return IndividualXacmlJsonRequest.class;
+		}
+
+		@Override
+		public final DecisionRequestPreprocessor<InputStream, IndividualXacmlJsonRequest> getInstance(final AttributeValueFactoryRegistry datatypeFactoryRegistry,
+				final boolean strictAttributeIssuerMatch, final boolean requireContentForXPath, final Processor xmlProcessor, final Set<String> extraPdpFeatures)
+		{
+			return new StreamingXacmlJsonRequestPreprocessor(datatypeFactoryRegistry, strictAttributeIssuerMatch, allowAttributeDuplicates, requireContentForXPath, extraPdpFeatures);
+		}
+	}
+
+	/**
+	 *
+	 * Factory for this type of request preprocessor that allows duplicate &lt;Attribute&gt; with same meta-data in the same &lt;Attributes&gt; element of a Request (complying with XACML 3.0 core
+	 * spec, §7.3.3) but using JSON-Profile-defined format.
+	 *
+	 */
+	public static final class LaxVariantFactory extends BaseFactory
+	{
+		/**
+		 * Request preprocessor ID, as returned by {@link #getId()}
+		 */
+		public static final String ID = "urn:ow2:authzforce:feature:pdp:request-preproc:xacml-json:streaming-lax";
+
+		/**
+		 * Constructor
+		 */
+		public LaxVariantFactory()
+		{
+			super(ID, true);
+		}
+
+		/**
+		 * Singleton instance of this factory
+		 *
+		 */
+		public static final DecisionRequestPreprocessor.Factory<InputStream, IndividualXacmlJsonRequest> INSTANCE = new LaxVariantFactory();
+	}
+
+	/**
+	 *
+	 * Factory for this type of request preprocessor that does NOT allow duplicate &lt;Attribute&gt; with same meta-data in the same &lt;Attributes&gt; element of a Request (NOT complying fully with
+	 * XACML 3.0 core spec, §7.3.3) but using JSON-Profile-defined format.
+	 *
+	 */
+	public static final class StrictVariantFactory extends BaseFactory
+	{
+		/**
+		 * Request preprocessor ID, as returned by {@link #getId()}
+		 */
+		public static final String ID = "urn:ow2:authzforce:feature:pdp:request-preproc:xacml-json:streaming-strict";
+
+		/**
+		 * Constructor
+		 */
+		public StrictVariantFactory()
+		{
+			super(ID, false);
+		}
+	}
+
+	private final StreamedXacmlJsonAttributesParser<?> xacmlAttrsParser;
+	private final boolean isContentRequired;
+	private final boolean isCombinedDecisionSupported;
+
+	/**
+	 * Creates instance of streaming request preprocessor
+	 *
+	 * @param datatypeFactoryRegistry
+	 *            attribute datatype registry
+	 * @param strictAttributeIssuerMatch
+	 *            true iff strict attribute Issuer match must be enforced (in particular request attributes with empty Issuer only match corresponding AttributeDesignators with empty Issuer)
+	 * @param allowAttributeDuplicates
+	 *            true iff duplicate Attribute (with same metadata) elements in Request (for multi-valued attributes) must be allowed
+	 * @param requireContentForXPath
+	 *            true iff Content elements must be parsed, else ignored
+	 * @param extraPdpFeatures
+	 *            extra - not mandatory per XACML 3.0 core specification - features supported by the PDP engine. This preprocessor checks whether it is supported by the PDP before processing the
+	 *            request further.
+	 * @throws UnsupportedOperationException
+	 *             if {@code strictAttributeIssuerMatch == false && allowAttributeDuplicates == false} which is not supported
+	 */
+	public StreamingXacmlJsonRequestPreprocessor(final AttributeValueFactoryRegistry datatypeFactoryRegistry, final boolean strictAttributeIssuerMatch, final boolean allowAttributeDuplicates,
+			final boolean requireContentForXPath, final Set<String> extraPdpFeatures) throws UnsupportedOperationException
+	{
+		final NamedXacmlAttributeParser<StreamedXacmlJsonAttribute> namedXacmlAttParser = new NamedStreamedXacmlJsonAttributeParser(datatypeFactoryRegistry);
+		if (allowAttributeDuplicates)
+		{
+			final XacmlRequestAttributeParser<StreamedXacmlJsonAttribute, MutableAttributeBag<?>> xacmlAttributeParser = strictAttributeIssuerMatch ? new NonIssuedLikeIssuedLaxXacmlAttributeParser<>(
+					namedXacmlAttParser) : new IssuedToNonIssuedCopyingLaxXacmlAttributeParser<>(namedXacmlAttParser);
+			this.xacmlAttrsParser = new StreamedXacmlJsonAttributesParser<>(xacmlAttributeParser, SingleCategoryAttributes.MUTABLE_TO_CONSTANT_ATTRIBUTE_ITERATOR_CONVERTER);
+		}
+		else if (strictAttributeIssuerMatch)
+		{
+			final XacmlRequestAttributeParser<StreamedXacmlJsonAttribute, AttributeBag<?>> xacmlAttributeParser = new NonIssuedLikeIssuedStrictXacmlAttributeParser<>(namedXacmlAttParser);
+			this.xacmlAttrsParser = new StreamedXacmlJsonAttributesParser<>(xacmlAttributeParser, SingleCategoryAttributes.IDENTITY_ATTRIBUTE_ITERATOR_CONVERTER);
+		}
+		else
+		{
+			/*
+			 * Not supported for the same reasons as in BaseXacmlJsonRequestPreprocessor
+			 */
+			throw UNSUPPORTED_MODE_EXCEPTION;
+		}
+
+		this.isContentRequired = requireContentForXPath;
+		this.isCombinedDecisionSupported = extraPdpFeatures.contains(DecisionResultPostprocessor.Features.XACML_MULTIPLE_DECISION_PROFILE_COMBINED_DECISION);
+	}
+
+	@Override
+	public Class<InputStream> getInputRequestType()
+	{
+		return InputStream.class;
+	}
+
+	@Override
+	public Class<IndividualXacmlJsonRequest> getOutputRequestType()
+	{
+		return IndividualXacmlJsonRequest.class;
+	}
+
+	/*
+	 * Reads the next key of the JSON object being read, after the opening brace if isFirst, else after the previous value. Returns null at the end of the object (closing brace consumed).
+	 */
+	private static String nextKey(final JSONTokener tokener, final boolean isFirst) throws JSONException
+	{
+		char c = tokener.nextClean();
+		if (c == '}')
+		{
+			return null;
+		}
+
+		if (!isFirst)
+		{
+			if (c != ',')
+			{
+				throw tokener.syntaxError("Expected ',' or '}'");
+			}
+
+			c = tokener.nextClean();
+		}
+
+		if (c != '"')
+		{
+			throw tokener.syntaxError("Expected a quoted key");
+		}
+
+		final String key = tokener.nextString('"');
+		if (tokener.nextClean() != ':')
+		{
+			throw tokener.syntaxError("Expected ':' after key '" + key + "'");
+		}
+
+		return key;
+	}
+
+	/*
+	 * Checks whether there is a next item in the JSON array being read, after the opening bracket if isFirst, else after the previous item. Returns false at the end of the array (closing bracket
+	 * consumed).
+	 */
+	private static boolean hasNextItem(final JSONTokener tokener, final boolean isFirst) throws JSONException
+	{
+		final char c = tokener.nextClean();
+		if (c == ']')
+		{
+			return false;
+		}
+
+		if (isFirst)
+		{
+			tokener.back();
+			return true;
+		}
+
+		if (c != ',')
+		{
+			throw tokener.syntaxError("Expected ',' or ']'");
+		}
+
+		return true;
+	}
+
+	private static void nextStartOf(final JSONTokener tokener, final char openingChar, final String propertyName) throws JSONException
+	{
+		if (tokener.nextClean() != openingChar)
+		{
+			throw tokener.syntaxError("Invalid '" + propertyName + "': expected JSON " + (openingChar == '{' ? "object" : "array"));
+		}
+	}
+
+	private static String nextString(final JSONTokener tokener, final String propertyName) throws JSONException
+	{
+		if (tokener.nextClean() != '"')
+		{
+			throw tokener.syntaxError("Invalid '" + propertyName + "': expected JSON string");
+		}
+
+		return tokener.nextString('"');
+	}
+
+	/*
+	 * Returns a Boolean, Number or String
+	 */
+	private static Object nextPrimitive(final JSONTokener tokener, final String propertyName) throws JSONException
+	{
+		final char c = tokener.nextClean();
+		if (c == '{' || c == '[')
+		{
+			throw tokener.syntaxError("Invalid '" + propertyName + "': expected JSON boolean, number or string");
+		}
+
+		tokener.back();
+		final Object value = tokener.nextValue();
+		if (!(value instanceof Serializable))
+		{
+			// JSONObject.NULL
+			throw tokener.syntaxError("Invalid '" + propertyName + "': expected JSON boolean, number or string");
+		}
+
+		return value;
+	}
+
+	private static boolean nextBoolean(final JSONTokener tokener, final String propertyName) throws JSONException
+	{
+		final Object value = nextPrimitive(tokener, propertyName);
+		if (!(value instanceof Boolean))
+		{
+			throw tokener.syntaxError("Invalid '" + propertyName + "': expected JSON boolean");
+		}
+
+		return (Boolean) value;
+	}
+
+	private static StreamedXacmlJsonAttribute nextAttribute(final JSONTokener tokener) throws JSONException
+	{
+		nextStartOf(tokener, '{', "Attribute");
+		final StreamedXacmlJsonAttribute attribute = new StreamedXacmlJsonAttribute();
+		boolean isFirst = true;
+		String key;
+		while ((key = nextKey(tokener, isFirst)) != null)
+		{
+			isFirst = false;
+			switch (key)
+			{
+				case "AttributeId":
+					attribute.attributeId = nextString(tokener, key);
+					break;
+				case "Issuer":
+					attribute.issuer = nextString(tokener, key);
+					break;
+				case "DataType":
+					attribute.dataType = nextString(tokener, key);
+					break;
+				case "IncludeInResult":
+					attribute.includeInResult = nextBoolean(tokener, key);
+					break;
+				case "Value":
+					if (tokener.nextClean() == '[')
+					{
+						attribute.isValueArray = true;
+						attribute.values = new ArrayList<>();
+						boolean isFirstItem = true;
+						while (hasNextItem(tokener, isFirstItem))
+						{
+							isFirstItem = false;
+							attribute.values.add(nextPrimitive(tokener, key));
+						}
+					}
+					else
+					{
+						tokener.back();
+						attribute.isValueArray = false;
+						attribute.values = Collections.singletonList(nextPrimitive(tokener, key));
+					}
+					break;
+				default:
+					throw tokener.syntaxError("Invalid Attribute: unexpected property '" + key + "'");
+			}
+		}
+
+		return attribute;
+	}
+
+	private static StreamedXacmlJsonCategory nextCategory(final JSONTokener tokener) throws JSONException
+	{
+		nextStartOf(tokener, '{', "Category");
+		final StreamedXacmlJsonCategory category = new StreamedXacmlJsonCategory();
+		boolean isFirst = true;
+		String key;
+		while ((key = nextKey(tokener, isFirst)) != null)
+		{
+			isFirst = false;
+			switch (key)
+			{
+				case "CategoryId":
+					category.categoryId = nextString(tokener, key);
+					break;
+				case "Id":
+					category.id = nextString(tokener, key);
+					break;
+				case "Content":
+					nextString(tokener, key);
+					category.hasContent = true;
+					break;
+				case "Attribute":
+					nextStartOf(tokener, '[', key);
+					boolean isFirstItem = true;
+					while (hasNextItem(tokener, isFirstItem))
+					{
+						isFirstItem = false;
+						category.attributes.add(nextAttribute(tokener));
+					}
+					break;
+				default:
+					throw tokener.syntaxError("Invalid Category: unexpected property '" + key + "'");
+			}
+		}
+
+		if (category.categoryId == null)
+		{
+			throw tokener.syntaxError("Invalid Category: missing CategoryId");
+		}
+
+		return category;
+	}
+
+	@Override
+	public List<IndividualXacmlJsonRequest> process(final InputStream request, final Map<String, String> namespaceURIsByPrefix) throws IndeterminateEvaluationException
+	{
+		if (request == null)
+		{
+			throw NULL_REQUEST_ARGUMENT_EXCEPTION;
+		}
+
+		final JSONTokener tokener = new JSONTokener(request);
+		final List<StreamedXacmlJsonCategory> categories = new ArrayList<>();
+		boolean isRequestObjectFound = false;
+		boolean combinedDecisionRequested = false;
+		boolean returnPolicyIdList = false;
+		String xPathVersion = null;
+		try
+		{
+			nextStartOf(tokener, '{', "(root)");
+			boolean isFirstRootKey = true;
+			String rootKey;
+			while ((rootKey = nextKey(tokener, isFirstRootKey)) != null)
+			{
+				isFirstRootKey = false;
+				if (!rootKey.equals("Request") || isRequestObjectFound)
+				{
+					throw tokener.syntaxError("Invalid root object: unexpected property '" + rootKey + "'");
+				}
+
+				isRequestObjectFound = true;
+				nextStartOf(tokener, '{', rootKey);
+				boolean isFirst = true;
+				String key;
+				while ((key = nextKey(tokener, isFirst)) != null)
+				{
+					isFirst = false;
+					switch (key)
+					{
+						case "ReturnPolicyIdList":
+							returnPolicyIdList = nextBoolean(tokener, key);
+							break;
+						case "CombinedDecision":
+							combinedDecisionRequested = nextBoolean(tokener, key);
+							break;
+						case "XPathVersion":
+							xPathVersion = nextString(tokener, key);
+							break;
+						case "Category":
+							nextStartOf(tokener, '[', key);
+							boolean isFirstItem = true;
+							while (hasNextItem(tokener, isFirstItem))
+							{
+								isFirstItem = false;
+								categories.add(nextCategory(tokener));
+							}
+							break;
+						case "MultiRequests":
+							/*
+							 * No support for MultiRequests (§2.4 of Multiple Decision Profile). According to 7.19.1 Unsupported functionality, return Indeterminate with syntax-error code for
+							 * unsupported element
+							 */
+							throw UNSUPPORTED_MULTI_REQUESTS_EXCEPTION;
+						default:
+							if (!SKIPPED_REQUEST_PROPERTIES.contains(key))
+							{
+								throw tokener.syntaxError("Invalid Request: unexpected property '" + key + "'");
+							}
+
+							tokener.nextValue();
+					}
+				}
+			}
+
+			if (tokener.nextClean() != 0)
+			{
+				throw tokener.syntaxError("Unexpected content after root object");
+			}
+		}
+		catch (final JSONException e)
+		{
+			throw new IndeterminateEvaluationException("Invalid Request", XacmlStatusCode.SYNTAX_ERROR.value(), e);
+		}
+
+		if (!isRequestObjectFound)
+		{
+			throw MISSING_REQUEST_OBJECT_EXCEPTION;
+		}
+
+		/*
+		 * No support for CombinedDecision = true if result processor does not support it. (The use of the CombinedDecision attribute is specified in Multiple Decision Profile.)
+		 */
+		if (combinedDecisionRequested && !this.isCombinedDecisionSupported)
+		{
+			throw UNSUPPORTED_COMBINED_DECISION_EXCEPTION;
+		}
+
+		final XPathCompiler xPathCompiler = xPathVersion == null ? null : XmlUtils.newXPathCompiler(xPathVersion, namespaceURIsByPrefix);
+		final Map<AttributeFqn, AttributeBag<?>> namedAttributes = HashCollections.newUpdatableMap(categories.size());
+		/*
+		 * TODO: Content object not supported yet (optional in XACML)
+		 */
+		final Map<String, XdmNode> extraContentsByCategory = Collections.emptyMap();
+		final List<JSONObject> requestAttributeCategoryObjectsIncludedInResult = new ArrayList<>(categories.size());
+		for (final StreamedXacmlJsonCategory category : categories)
+		{
+			if (category.hasContent && isContentRequired)
+			{
+				throw UNSUPPORTED_CONTENT_EXCEPTION;
+			}
+
+			final SingleCategoryAttributes<?, JSONObject> categorySpecificAttributes = xacmlAttrsParser.parseAttributes(category, xPathCompiler);
+			if (categorySpecificAttributes == null)
+			{
+				// skip this empty Category
+				continue;
+			}
+
+			for (final Entry<AttributeFqn, AttributeBag<?>> attrEntry : categorySpecificAttributes)
+			{
+				namedAttributes.put(attrEntry.getKey(), attrEntry.getValue());
+			}
+
+			final JSONObject catSpecificAttrsToIncludeInResult = categorySpecificAttributes.getAttributesToIncludeInResult();
+			if (catSpecificAttrsToIncludeInResult != null)
+			{
+				requestAttributeCategoryObjectsIncludedInResult.add(catSpecificAttrsToIncludeInResult);
+			}
+		}
+
+		final ImmutableDecisionRequest pdpEngineReq = ImmutableDecisionRequest.getInstance(namedAttributes, extraContentsByCategory, returnPolicyIdList);
+		return Collections.singletonList(new IndividualXacmlJsonRequest(pdpEngineReq, ImmutableList.copyOf(requestAttributeCategoryObjectsIncludedInResult)));
+	}
+}
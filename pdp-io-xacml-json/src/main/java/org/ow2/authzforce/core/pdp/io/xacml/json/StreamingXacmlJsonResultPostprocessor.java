@@ -0,0 +1,135 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.io.xacml.json;
+
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.DecisionResultPostprocessor;
+import org.ow2.authzforce.core.pdp.api.IndeterminateEvaluationException;
+
+/**
+ * {@link DecisionResultPostprocessor} producing XACML/JSON (XACML-JSON-Profile-standard-compliant) output as {@link WritableXacmlJsonResponse}, i.e. serialized directly from the decision results to
+ * an output stream when {@link WritableXacmlJsonResponse#writeTo(java.io.OutputStream)} is called, as opposed to {@link BaseXacmlJsonResultPostprocessor} that builds a
+ * {@link org.json.JSONObject} tree to be serialized afterwards.
+ */
+public final class StreamingXacmlJsonResultPostprocessor implements DecisionResultPostprocessor<IndividualXacmlJsonRequest, WritableXacmlJsonResponse>
+{
+	private final int maxDepthOfErrorCauseIncludedInResult;
+
+	/**
+	 * Constructor
+	 *
+	 * @param clientRequestErrorVerbosityLevel
+	 *            Level of verbosity of the error message trace returned in case of client request errors, e.g. invalid requests. Only 0 is supported so far (see
+	 *            {@link BaseXacmlJsonResultPostprocessor#BaseXacmlJsonResultPostprocessor(int)}).
+	 * @throws IllegalArgumentException
+	 *             if {@code clientRequestErrorVerbosityLevel != 0}
+	 */
+	public StreamingXacmlJsonResultPostprocessor(final int clientRequestErrorVerbosityLevel) throws IllegalArgumentException
+	{
+		if (clientRequestErrorVerbosityLevel < 0)
+		{
+			throw new IllegalArgumentException("Invalid clientRequestErrorVerbosityLevel: " + clientRequestErrorVerbosityLevel + ". Expected: non-negative.");
+		}
+
+		if (clientRequestErrorVerbosityLevel > 0)
+		{
+			throw new IllegalArgumentException("Unsupported clientRequestErrorVerbosityLevel: " + clientRequestErrorVerbosityLevel + ". Expected: 0.");
+		}
+
+		this.maxDepthOfErrorCauseIncludedInResult = clientRequestErrorVerbosityLevel;
+	}
+
+	@Override
+	public Class<IndividualXacmlJsonRequest> getRequestType()
+	{
+		return IndividualXacmlJsonRequest.class;
+	}
+
+	@Override
+	public Class<WritableXacmlJsonResponse> getResponseType()
+	{
+		return WritableXacmlJsonResponse.class;
+	}
+
+	@Override
+	public WritableXacmlJsonResponse process(final Collection<Entry<IndividualXacmlJsonRequest, ? extends DecisionResult>> resultsByRequest)
+	{
+		return WritableXacmlJsonResponse.ofResults(resultsByRequest);
+	}
+
+	@Override
+	public WritableXacmlJsonResponse processInternalError(final IndeterminateEvaluationException error)
+	{
+		return WritableXacmlJsonResponse.ofError(error.getTopLevelStatus());
+	}
+
+	@Override
+	public WritableXacmlJsonResponse processClientError(final IndeterminateEvaluationException error)
+	{
+		assert maxDepthOfErrorCauseIncludedInResult == 0;
+		// FIXME: maxDepthOfErrorCauseIncludedInResult > 0 not supported so far
+		return WritableXacmlJsonResponse.ofError(error.getTopLevelStatus());
+	}
+
+	/**
+	 *
+	 * Factory creating instances of {@link StreamingXacmlJsonResultPostprocessor}
+	 *
+	 */
+	public static final class Factory implements DecisionResultPostprocessor.Factory<IndividualXacmlJsonRequest, WritableXacmlJsonResponse>
+	{
+		/**
+		 * Result postprocessor ID, as returned by {@link #getId()}
+		 */
+		public static final String ID = "urn:ow2:authzforce:feature:pdp:result-postproc:xacml-json:streaming";
+
+		/**
+		 * Singleton instance of this factory
+		 *
+		 */
+		public static final DecisionResultPostprocessor.Factory<IndividualXacmlJsonRequest, WritableXacmlJsonResponse> INSTANCE = new Factory();
+
+		@Override
+		public String getId()
+		{
+			return ID;
+		}
+
+		@Override
+		public Class<IndividualXacmlJsonRequest> getRequestType()
+		{
+			return IndividualXacmlJsonRequest.class;
+		}
+
+		@Override
+		public Class<WritableXacmlJsonResponse> getResponseType()
+		{
+			return WritableXacmlJsonResponse.class;
+		}
+
+		@Override
+		public DecisionResultPostprocessor<IndividualXacmlJsonRequest, WritableXacmlJsonResponse> getInstance(final int clientRequestErrorVerbosityLevel)
+		{
+			return new StreamingXacmlJsonResultPostprocessor(clientRequestErrorVerbosityLevel);
+		}
+	}
+
+}
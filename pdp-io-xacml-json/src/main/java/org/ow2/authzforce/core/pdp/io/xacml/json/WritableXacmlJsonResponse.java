@@ -0,0 +1,593 @@
+/**
+ * Copyright 2012-2019 THALES.
+ *
+ * This file is part of AuthzForce CE.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.authzforce.core.pdp.io.xacml.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+import org.json.JSONObject;
+import org.ow2.authzforce.core.pdp.api.DecisionResult;
+import org.ow2.authzforce.core.pdp.api.HashCollections;
+import org.ow2.authzforce.core.pdp.api.PepAction;
+import org.ow2.authzforce.core.pdp.api.PepActionAttributeAssignment;
+import org.ow2.authzforce.core.pdp.api.policy.PrimaryPolicyMetadata;
+import org.ow2.authzforce.core.pdp.api.policy.TopLevelPolicyElementType;
+import org.ow2.authzforce.core.pdp.api.value.AttributeValue;
+import org.ow2.authzforce.xacml.identifiers.XacmlStatusCode;
+
+import com.google.common.collect.ImmutableList;
+
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.DecisionType;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.Status;
+import oasis.names.tc.xacml._3_0.core.schema.wd_17.StatusCode;
+
+/**
+ * XACML/JSON (JSON Profile of XACML) Response - or single Result in case of request error - produced by {@link StreamingXacmlJsonResultPostprocessor}, that is serialized (UTF-8-encoded JSON)
+ * directly from the decision results to an {@link OutputStream}, without building intermediate {@link JSONObject}s. Constant JSON fragments (decisions, standard status codes, property names) are
+ * pre-encoded. The JSON output is the same as the one of {@link BaseXacmlJsonResultPostprocessor} (except for the order of object properties).
+ * <p>
+ * Instances are immutable and may be written multiple times.
+ */
+public final class WritableXacmlJsonResponse
+{
+	private static final RuntimeException ILLEGAL_ATTRIBUTE_ASSIGNMENT_RUNTIME_EXCEPTION = new RuntimeException(
+	        "Unsupported AttributeAssignment value for JSON output: no content or mixed content with more than one node or XML attribute(s)");
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/*
+	 * Max number of bytes written for a single char: 6 for an escaped control char (backslash-u + 4 hex digits), 4 for a UTF-8-encoded surrogate pair
+	 */
+	private static final int MAX_BYTES_PER_CHAR = 6;
+
+	private static final byte[] HEX_DIGITS = ascii("0123456789abcdef");
+
+	private static final byte[] RESPONSE_START = ascii("{\"Response\":[");
+	private static final byte[] RESPONSE_END = ascii("]}");
+	private static final byte[] STATUS_MESSAGE_PROPERTY = ascii(",\"StatusMessage\":");
+	private static final byte[] STATUS_PROPERTY = ascii(",\"Status\":");
+	private static final byte[] OBLIGATIONS_PROPERTY = ascii(",\"Obligations\":[");
+	private static final byte[] ASSOCIATED_ADVICE_PROPERTY = ascii(",\"AssociatedAdvice\":[");
+	private static final byte[] PEP_ACTION_ID_PROPERTY = ascii("{\"Id\":");
+	private static final byte[] ATTRIBUTE_ASSIGNMENT_PROPERTY = ascii(",\"AttributeAssignment\":[");
+	private static final byte[] ATTRIBUTE_ID_PROPERTY = ascii("{\"AttributeId\":");
+	private static final byte[] VALUE_PROPERTY = ascii(",\"Value\":");
+	private static final byte[] CATEGORY_PROPERTY = ascii(",\"Category\":");
+	private static final byte[] DATATYPE_PROPERTY = ascii(",\"DataType\":");
+	private static final byte[] ISSUER_PROPERTY = ascii(",\"Issuer\":");
+	private static final byte[] CATEGORIES_PROPERTY = ascii(",\"Category\":[");
+	private static final byte[] POLICY_IDENTIFIER_LIST_PROPERTY = ascii(",\"PolicyIdentifierList\":{");
+	private static final byte[] POLICY_ID_REFERENCE_PROPERTY = ascii("\"PolicyIdReference\":[");
+	private static final byte[] POLICYSET_ID_REFERENCE_PROPERTY = ascii("\"PolicySetIdReference\":[");
+	private static final byte[] POLICY_REF_ID_PROPERTY = ascii("{\"Id\":");
+	private static final byte[] VERSION_PROPERTY = ascii(",\"Version\":");
+
+	/*
+	 * '{"Decision":"..."' for each decision
+	 */
+	private static final Map<DecisionType, byte[]> RESULT_STARTS_BY_DECISION = new EnumMap<>(DecisionType.class);
+
+	/*
+	 * '{"StatusCode":{"Value":"..."}' for each standard status code
+	 */
+	private static final Map<String, byte[]> STATUS_STARTS_BY_STANDARD_CODE;
+
+	static
+	{
+		for (final DecisionType decision : DecisionType.values())
+		{
+			RESULT_STARTS_BY_DECISION.put(decision, ascii("{\"Decision\":\"" + decision.value() + "\""));
+		}
+
+		final Map<String, byte[]> statusStartsByCode = HashCollections.newUpdatableMap(XacmlStatusCode.values().length);
+		for (final XacmlStatusCode statusCode : XacmlStatusCode.values())
+		{
+			statusStartsByCode.put(statusCode.value(), ascii("{\"StatusCode\":{\"Value\":\"" + statusCode.value() + "\"}"));
+		}
+
+		STATUS_STARTS_BY_STANDARD_CODE = HashCollections.newImmutableMap(statusStartsByCode);
+	}
+
+	private static byte[] ascii(final String s)
+	{
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Buffered UTF-8 JSON writer
+	 */
+	private static final class JsonByteWriter
+	{
+		private final OutputStream out;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int position = 0;
+
+		private JsonByteWriter(final OutputStream out)
+		{
+			this.out = out;
+		}
+
+		private void ensureCapacity(final int length) throws IOException
+		{
+			if (position + length > buffer.length)
+			{
+				flush();
+			}
+		}
+
+		private void flush() throws IOException
+		{
+			if (position > 0)
+			{
+				out.write(buffer, 0, position);
+				position = 0;
+			}
+		}
+
+		private void writeByte(final char asciiChar) throws IOException
+		{
+			ensureCapacity(1);
+			buffer[position++] = (byte) asciiChar;
+		}
+
+		private void writeRaw(final byte[] bytes) throws IOException
+		{
+			if (bytes.length > buffer.length)
+			{
+				flush();
+				out.write(bytes);
+				return;
+			}
+
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+
+		/*
+		 * Writes JSON string literal (quoted and escaped)
+		 */
+		private void writeString(final String s) throws IOException
+		{
+			writeByte('"');
+			final int length = s.length();
+			for (int i = 0; i < length; i++)
+			{
+				ensureCapacity(MAX_BYTES_PER_CHAR);
+				final char c = s.charAt(i);
+				if (c < 0x80)
+				{
+					if (c == '"' || c == '\\')
+					{
+						buffer[position++] = '\\';
+						buffer[position++] = (byte) c;
+					}
+					else if (c < 0x20)
+					{
+						buffer[position++] = '\\';
+						switch (c)
+						{
+							case '\b':
+								buffer[position++] = 'b';
+								break;
+							case '\f':
+								buffer[position++] = 'f';
+								break;
+							case '\n':
+								buffer[position++] = 'n';
+								break;
+							case '\r':
+								buffer[position++] = 'r';
+								break;
+							case '\t':
+								buffer[position++] = 't';
+								break;
+							default:
+								buffer[position++] = 'u';
+								buffer[position++] = '0';
+								buffer[position++] = '0';
+								buffer[position++] = HEX_DIGITS[c >> 4];
+								buffer[position++] = HEX_DIGITS[c & 0xf];
+						}
+					}
+					else
+					{
+						buffer[position++] = (byte) c;
+					}
+				}
+				else if (c < 0x800)
+				{
+					buffer[position++] = (byte) (0xc0 | c >> 6);
+					buffer[position++] = (byte) (0x80 | c & 0x3f);
+				}
+				else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+					final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+					buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+					buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+					buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+					buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+				}
+				else if (Character.isSurrogate(c))
+				{
+					// unpaired surrogate, replaced like String#getBytes(UTF_8) does
+					buffer[position++] = '?';
+				}
+				else
+				{
+					buffer[position++] = (byte) (0xe0 | c >> 12);
+					buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+					buffer[position++] = (byte) (0x80 | c & 0x3f);
+				}
+			}
+
+			writeByte('"');
+		}
+	}
+
+	private static void writeStatus(final JsonByteWriter writer, final Status status) throws IOException
+	{
+		/*
+		 * Weirdness: StatusCode is optional in XACML/JSON Status although mandatory in XACML/XML Status
+		 */
+		final StatusCode statusCode = status.getStatusCode();
+		assert statusCode != null;
+		/*
+		 * TODO: support nested statusCode. Is it safe?
+		 */
+		assert statusCode.getStatusCode() == null;
+		final byte[] preEncodedStatusStart = STATUS_STARTS_BY_STANDARD_CODE.get(statusCode.getValue());
+		if (preEncodedStatusStart == null)
+		{
+			writer.writeRaw(ascii("{\"StatusCode\":{\"Value\":"));
+			writer.writeString(statusCode.getValue());
+			writer.writeByte('}');
+		}
+		else
+		{
+			writer.writeRaw(preEncodedStatusStart);
+		}
+
+		final String statusMsg = status.getStatusMessage();
+		if (statusMsg != null)
+		{
+			writer.writeRaw(STATUS_MESSAGE_PROPERTY);
+			writer.writeString(statusMsg);
+		}
+
+		// FIXME: StatusDetail not supported for the moment
+		assert status.getStatusDetail() == null;
+		writer.writeByte('}');
+	}
+
+	private static void writeAttributeAssignment(final JsonByteWriter writer, final PepActionAttributeAssignment<?> aa) throws IOException
+	{
+		final AttributeValue aaVal = aa.getValue();
+		if (!aaVal.getXmlAttributes().isEmpty())
+		{
+			throw ILLEGAL_ATTRIBUTE_ASSIGNMENT_RUNTIME_EXCEPTION;
+		}
+
+		final List<Serializable> contentParts = aaVal.getContent();
+		if (contentParts.isEmpty() || contentParts.size() > 1)
+		{
+			throw ILLEGAL_ATTRIBUTE_ASSIGNMENT_RUNTIME_EXCEPTION;
+		}
+
+		writer.writeRaw(ATTRIBUTE_ID_PROPERTY);
+		writer.writeString(aa.getAttributeId());
+		writer.writeRaw(VALUE_PROPERTY);
+		writer.writeString(contentParts.get(0).toString());
+
+		final Optional<String> category = aa.getCategory();
+		if (category.isPresent())
+		{
+			writer.writeRaw(CATEGORY_PROPERTY);
+			writer.writeString(category.get());
+		}
+
+		writer.writeRaw(DATATYPE_PROPERTY);
+		writer.writeString(aa.getDatatype().getId());
+
+		final Optional<String> issuer = aa.getIssuer();
+		if (issuer.isPresent())
+		{
+			writer.writeRaw(ISSUER_PROPERTY);
+			writer.writeString(issuer.get());
+		}
+
+		writer.writeByte('}');
+	}
+
+	/*
+	 * Writes the property with the obligations (mandatory == true) or advice (mandatory == false) in pepActions, if any
+	 */
+	private static void writePepActions(final JsonByteWriter writer, final ImmutableList<PepAction> pepActions, final boolean mandatory) throws IOException
+	{
+		boolean isFirst = true;
+		for (final PepAction pepAction : pepActions)
+		{
+			if (pepAction.isMandatory() != mandatory)
+			{
+				continue;
+			}
+
+			if (isFirst)
+			{
+				writer.writeRaw(mandatory ? OBLIGATIONS_PROPERTY : ASSOCIATED_ADVICE_PROPERTY);
+				isFirst = false;
+			}
+			else
+			{
+				writer.writeByte(',');
+			}
+
+			writer.writeRaw(PEP_ACTION_ID_PROPERTY);
+			writer.writeString(pepAction.getId());
+			final List<PepActionAttributeAssignment<?>> aaList = pepAction.getAttributeAssignments();
+			if (!aaList.isEmpty())
+			{
+				writer.writeRaw(ATTRIBUTE_ASSIGNMENT_PROPERTY);
+				boolean isFirstAA = true;
+				for (final PepActionAttributeAssignment<?> aa : aaList)
+				{
+					if (!isFirstAA)
+					{
+						writer.writeByte(',');
+					}
+
+					writeAttributeAssignment(writer, aa);
+					isFirstAA = false;
+				}
+
+				writer.writeByte(']');
+			}
+
+			writer.writeByte('}');
+		}
+
+		if (!isFirst)
+		{
+			writer.writeByte(']');
+		}
+	}
+
+	/*
+	 * Writes the property with the references to the policies of the given type in applicablePolicies, if any. Returns true iff the property was written.
+	 */
+	private static boolean writePolicyRefs(final JsonByteWriter writer, final ImmutableList<PrimaryPolicyMetadata> applicablePolicies, final TopLevelPolicyElementType policyType,
+	        final boolean isFirstProperty) throws IOException
+	{
+		boolean isFirst = true;
+		for (final PrimaryPolicyMetadata applicablePolicy : applicablePolicies)
+		{
+			if (applicablePolicy.getType() != policyType)
+			{
+				continue;
+			}
+
+			if (isFirst)
+			{
+				if (!isFirstProperty)
+				{
+					writer.writeByte(',');
+				}
+
+				writer.writeRaw(policyType == TopLevelPolicyElementType.POLICY ? POLICY_ID_REFERENCE_PROPERTY : POLICYSET_ID_REFERENCE_PROPERTY);
+				isFirst = false;
+			}
+			else
+			{
+				writer.writeByte(',');
+			}
+
+			writer.writeRaw(POLICY_REF_ID_PROPERTY);
+			writer.writeString(applicablePolicy.getId());
+			writer.writeRaw(VERSION_PROPERTY);
+			writer.writeString(applicablePolicy.getVersion().toString());
+			writer.writeByte('}');
+		}
+
+		if (isFirst)
+		{
+			return false;
+		}
+
+		writer.writeByte(']');
+		return true;
+	}
+
+	private static void writeResult(final JsonByteWriter writer, final IndividualXacmlJsonRequest request, final DecisionResult result) throws IOException
+	{
+		assert request != null && result != null;
+
+		// Decision
+		writer.writeRaw(RESULT_STARTS_BY_DECISION.get(result.getDecision()));
+
+		// Status
+		final Status status = result.getStatus();
+		if (status != null)
+		{
+			writer.writeRaw(STATUS_PROPERTY);
+			writeStatus(writer, status);
+		}
+
+		// Obligations/Advice
+		final ImmutableList<PepAction> pepActions = result.getPepActions();
+		assert pepActions != null;
+		if (!pepActions.isEmpty())
+		{
+			writePepActions(writer, pepActions, true);
+			writePepActions(writer, pepActions, false);
+		}
+
+		// IncludeInResult categories
+		final List<JSONObject> attributesByCategoryToBeReturned = request.getAttributesByCategoryToBeReturned();
+		if (!attributesByCategoryToBeReturned.isEmpty())
+		{
+			writer.writeRaw(CATEGORIES_PROPERTY);
+			boolean isFirst = true;
+			for (final JSONObject categoryJsonObj : attributesByCategoryToBeReturned)
+			{
+				if (!isFirst)
+				{
+					writer.writeByte(',');
+				}
+
+				/*
+				 * Attributes with IncludeInResult=true are rare, and already JSONObjects anyway
+				 */
+				writer.writeRaw(categoryJsonObj.toString().getBytes(StandardCharsets.UTF_8));
+				isFirst = false;
+			}
+
+			writer.writeByte(']');
+		}
+
+		// PolicyIdentifierList
+		final ImmutableList<PrimaryPolicyMetadata> applicablePolicies = result.getApplicablePolicies();
+		if (applicablePolicies != null && !applicablePolicies.isEmpty())
+		{
+			writer.writeRaw(POLICY_IDENTIFIER_LIST_PROPERTY);
+			final boolean hasPolicyRefs = writePolicyRefs(writer, applicablePolicies, TopLevelPolicyElementType.POLICY, true);
+			writePolicyRefs(writer, applicablePolicies, TopLevelPolicyElementType.POLICY_SET, !hasPolicyRefs);
+			writer.writeByte('}');
+		}
+
+		writer.writeByte('}');
+	}
+
+	/*
+	 * Null iff error result
+	 */
+	private final ImmutableList<Entry<IndividualXacmlJsonRequest, ? extends DecisionResult>> resultsByRequest;
+
+	/*
+	 * Null iff not error result
+	 */
+	private final Status errorStatus;
+
+	private WritableXacmlJsonResponse(final ImmutableList<Entry<IndividualXacmlJsonRequest, ? extends DecisionResult>> resultsByRequest, final Status errorStatus)
+	{
+		assert resultsByRequest == null ^ errorStatus == null;
+		this.resultsByRequest = resultsByRequest;
+		this.errorStatus = errorStatus;
+	}
+
+	/**
+	 * Creates XACML/JSON Response with the results of the Individual Decision Requests
+	 *
+	 * @param resultsByRequest
+	 *            results by Individual Decision Request, in the order they must appear in the Response
+	 * @return XACML/JSON Response
+	 */
+	static WritableXacmlJsonResponse ofResults(final Collection<Entry<IndividualXacmlJsonRequest, ? extends DecisionResult>> resultsByRequest)
+	{
+		return new WritableXacmlJsonResponse(ImmutableList.copyOf(resultsByRequest), null);
+	}
+
+	/**
+	 * Creates Indeterminate XACML/JSON Result for a request error
+	 *
+	 * @param status
+	 *            error status
+	 * @return XACML/JSON Result (Indeterminate)
+	 */
+	static WritableXacmlJsonResponse ofError(final Status status)
+	{
+		assert status != null;
+		return new WritableXacmlJsonResponse(null, status);
+	}
+
+	/**
+	 * Writes the UTF-8-encoded JSON Response (or Result in case of request error) to an output stream. The output stream is flushed but not closed.
+	 *
+	 * @param out
+	 *            output stream
+	 * @throws IOException
+	 *             error writing to {@code out}
+	 */
+	public void writeTo(final OutputStream out) throws IOException
+	{
+		final JsonByteWriter writer = new JsonByteWriter(out);
+		if (resultsByRequest == null)
+		{
+			writer.writeRaw(RESULT_STARTS_BY_DECISION.get(DecisionType.INDETERMINATE));
+			writer.writeRaw(STATUS_PROPERTY);
+			writeStatus(writer, errorStatus);
+			writer.writeByte('}');
+		}
+		else
+		{
+			writer.writeRaw(RESPONSE_START);
+			boolean isFirst = true;
+			for (final Entry<IndividualXacmlJsonRequest, ? extends DecisionResult> resultByRequest : resultsByRequest)
+			{
+				if (!isFirst)
+				{
+					writer.writeByte(',');
+				}
+
+				writeResult(writer, resultByRequest.getKey(), resultByRequest.getValue());
+				isFirst = false;
+			}
+
+			writer.writeRaw(RESPONSE_END);
+		}
+
+		writer.flush();
+		out.flush();
+	}
+
+	/**
+	 * Gets the UTF-8-encoded JSON Response (or Result in case of request error)
+	 *
+	 * @return JSON bytes
+	 */
+	public byte[] toByteArray()
+	{
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try
+		{
+			writeTo(out);
+		}
+		catch (final IOException e)
+		{
+			// never happens with ByteArrayOutputStream
+			throw new UncheckedIOException(e);
+		}
+
+		return out.toByteArray();
+	}
+
+	@Override
+	public String toString()
+	{
+		return new String(toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -56,6 +56,37 @@ import com.google.common.collect.ImmutableList;
  */
 public final class XacmlJsonParsingUtils
 {
+	/**
+	 * Gets the datatype of a single XACML/JSON attribute value when the DataType is omitted, inferred from the JSON type of the value (XACML JSON Profile, §3.3.1)
+	 * 
+	 * @param jsonPrimitiveValue
+	 *            JSON value as returned by {@link JSONObject#opt(String)} (or {@link org.json.JSONTokener#nextValue()})
+	 * @return datatype ID
+	 */
+	static String getDefaultDatatypeId(final Object jsonPrimitiveValue)
+	{
+		if (jsonPrimitiveValue instanceof Boolean)
+		{
+			return StandardDatatypes.BOOLEAN.getId();
+		}
+
+		/*
+		 * Number subtypes possibly returned by JSONObject.opt(...) according to JSONObject#stringToValue(...)
+		 */
+		if (jsonPrimitiveValue instanceof Integer || jsonPrimitiveValue instanceof Long)
+		{
+			return StandardDatatypes.INTEGER.getId();
+		}
+
+		if (jsonPrimitiveValue instanceof Double)
+		{
+			return StandardDatatypes.DOUBLE.getId();
+		}
+
+		// default
+		return StandardDatatypes.STRING.getId();
+	}
+
 	/**
 	 * XACML/JSON named Attribute parser
 	 */
@@ -64,7 +95,7 @@ public final class XacmlJsonParsingUtils
 
 		private static final IllegalArgumentException NULL_ATTRIBUTE_ID_ARGUMENT_EXCEPTION = new IllegalArgumentException("Invalid XACML Attribute: AttributeId property undefined (but required).");
 
-		private static <AV extends AttributeValue> NamedXacmlAttributeParsingResult<AV> parseNamedAttribute(final AttributeFqn attName, final Iterable<Object> nonEmptyInputXacmlJsonAttValues,
+		static <AV extends AttributeValue> NamedXacmlAttributeParsingResult<AV> parseNamedAttribute(final AttributeFqn attName, final Iterable<Object> nonEmptyInputXacmlJsonAttValues,
 				final int numOfValues, final AttributeValueFactory<AV> attValFactory, final XPathCompiler xPathCompiler) throws UnsupportedOperationException, IllegalArgumentException
 		{
 			assert attName != null && nonEmptyInputXacmlJsonAttValues != null && numOfValues > 0 && attValFactory != null;
@@ -144,33 +175,7 @@ public final class XacmlJsonParsingUtils
 				/*
 				 * Not a JSON array (but JSONObject or primitive)
 				 */
-				if (jsonDatatypeId == null)
-				{
-					if (attrValuesObj instanceof Boolean)
-					{
-						actualDatatypeId = StandardDatatypes.BOOLEAN.getId();
-					}
-					/*
-					 * Number subtypes possibly returned by JSONObject.opt(...) according to JSONObject#stringToValue(...)
-					 */
-					else if (attrValuesObj instanceof Integer || attrValuesObj instanceof Long)
-					{
-						actualDatatypeId = StandardDatatypes.INTEGER.getId();
-					}
-					else if (attrValuesObj instanceof Double)
-					{
-						actualDatatypeId = StandardDatatypes.DOUBLE.getId();
-					}
-					else
-					{
-						// default
-						actualDatatypeId = StandardDatatypes.STRING.getId();
-					}
-				}
-				else
-				{
-					actualDatatypeId = jsonDatatypeId;
-				}
+				actualDatatypeId = jsonDatatypeId == null ? getDefaultDatatypeId(attrValuesObj) : jsonDatatypeId;
 
 				numOfVals = 1;
 				jsonAttVals = Collections.singleton(attrValuesObj);
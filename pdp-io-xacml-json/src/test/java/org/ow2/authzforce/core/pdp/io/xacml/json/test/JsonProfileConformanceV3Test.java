@@ -40,6 +40,9 @@ import org.ow2.authzforce.core.pdp.api.io.PdpEngineInoutAdapter;
 import org.ow2.authzforce.core.pdp.impl.PdpEngineConfiguration;
 import org.ow2.authzforce.core.pdp.io.xacml.json.BaseXacmlJsonResultPostprocessor;
 import org.ow2.authzforce.core.pdp.io.xacml.json.SingleDecisionXacmlJsonRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.StreamingXacmlJsonRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.StreamingXacmlJsonResultPostprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.WritableXacmlJsonResponse;
 import org.ow2.authzforce.core.pdp.testutil.TestUtils;
 import org.ow2.authzforce.xacml.json.model.LimitsCheckingJSONObject;
 import org.ow2.authzforce.xacml.json.model.XacmlJsonUtils;
@@ -226,6 +229,20 @@ public class JsonProfileConformanceV3Test
 
 			assertNormalizedEquals(testDirectoryPath.toString(), expectedResponse, actualResponse);
 		}
+
+		/*
+		 * Same request read directly from the file by the streaming request preprocessor, and response written directly to bytes by the streaming result postprocessor
+		 */
+		final PdpEngineConfiguration streamingPdpEngineConf = TestUtils.newPdpEngineConfiguration(rootPolicyFile.toUri().toURL().toString(),
+		        Files.exists(refPoliciesDir) ? refPoliciesDir.toUri().toURL().toString() : null, ENABLE_XPATH,
+		        Files.exists(attributeProviderConfFile) ? attributeProviderConfFile.toUri().toURL().toString() : null, StreamingXacmlJsonRequestPreprocessor.LaxVariantFactory.ID,
+		        StreamingXacmlJsonResultPostprocessor.Factory.ID);
+		try (final PdpEngineInoutAdapter<InputStream, WritableXacmlJsonResponse> pdp = PdpEngineXacmlJsonAdapters.newXacmlJsonStreamingInoutAdapter(streamingPdpEngineConf);
+		        final InputStream inputStream = Files.newInputStream(reqFile))
+		{
+			final JSONObject actualResponse = new JSONObject(pdp.evaluate(inputStream).toString());
+			assertNormalizedEquals(testDirectoryPath.toString() + " (streaming request/result processors)", expectedResponse, actualResponse);
+		}
 	}
 
 	public static void main(final String[] args) throws Exception
@@ -18,6 +18,7 @@
 package org.ow2.authzforce.core.pdp.io.xacml.json.test;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import org.json.JSONObject;
 import org.ow2.authzforce.core.pdp.api.DecisionRequestPreprocessor;
@@ -29,6 +30,9 @@ import org.ow2.authzforce.core.pdp.impl.io.PdpEngineAdapters;
 import org.ow2.authzforce.core.pdp.io.xacml.json.BaseXacmlJsonResultPostprocessor;
 import org.ow2.authzforce.core.pdp.io.xacml.json.IndividualXacmlJsonRequest;
 import org.ow2.authzforce.core.pdp.io.xacml.json.SingleDecisionXacmlJsonRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.StreamingXacmlJsonRequestPreprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.StreamingXacmlJsonResultPostprocessor;
+import org.ow2.authzforce.core.pdp.io.xacml.json.WritableXacmlJsonResponse;
 
 /**
  * Utilities to create PDP Engine Adapters supporting JSON Request/Response according to JSON Profile of XACML
@@ -59,4 +63,30 @@ public final class PdpEngineXacmlJsonAdapters
 		return PdpEngineAdapters.newInoutAdapter(JSONObject.class, JSONObject.class, configuration, defaultReqPreproc, defaultResultPostproc);
 	}
 
+	/**
+	 * Creates a new PDP engine supporting XACML/JSON input as UTF-8-encoded byte stream (read by {@link StreamingXacmlJsonRequestPreprocessor}) and output written directly to a byte stream
+	 * ({@link WritableXacmlJsonResponse}).
+	 * 
+	 * @param configuration
+	 *            PDP engine configuration
+	 * 
+	 * @return new instance of {@link PdpEngineInoutAdapter} supporting XACML/JSON input/output streams
+	 *
+	 * @throws java.lang.IllegalArgumentException
+	 *             if {@code configuration.getXacmlExpressionFactory() == null || configuration.getRootPolicyProvider() == null}
+	 * @throws java.io.IOException
+	 *             error closing {@code configuration.getRootPolicyProvider()} when static resolution is to be used
+	 */
+	public static PdpEngineInoutAdapter<InputStream, WritableXacmlJsonResponse> newXacmlJsonStreamingInoutAdapter(final PdpEngineConfiguration configuration) throws IllegalArgumentException,
+			IOException
+	{
+		final DecisionResultPostprocessor<IndividualXacmlJsonRequest, WritableXacmlJsonResponse> defaultResultPostproc = new StreamingXacmlJsonResultPostprocessor(
+				configuration.getClientRequestErrorVerbosityLevel());
+		final DecisionRequestPreprocessor<InputStream, IndividualXacmlJsonRequest> defaultReqPreproc = StreamingXacmlJsonRequestPreprocessor.LaxVariantFactory.INSTANCE.getInstance(
+				configuration.getAttributeValueFactoryRegistry(), configuration.isStrictAttributeIssuerMatchEnabled(), configuration.isXpathEnabled(), XmlUtils.SAXON_PROCESSOR,
+				defaultResultPostproc.getFeatures());
+
+		return PdpEngineAdapters.newInoutAdapter(InputStream.class, WritableXacmlJsonResponse.class, configuration, defaultReqPreproc, defaultResultPostproc);
+	}
+
 }